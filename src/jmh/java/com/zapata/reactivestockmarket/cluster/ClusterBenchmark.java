@@ -0,0 +1,123 @@
+package com.zapata.reactivestockmarket.cluster;
+
+import com.zapata.reactivestockmarket.MarketProperties;
+import com.zapata.reactivestockmarket.domain.BookAggregateRepository;
+import com.zapata.reactivestockmarket.domain.bus.CommandBus;
+import com.zapata.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.zapata.reactivestockmarket.domain.journal.Journal;
+import com.zapata.reactivestockmarket.domain.query.BookQueryRepository;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import com.zapata.reactivestockmarket.gateway.OrderEntryServer;
+import com.zapata.reactivestockmarket.util.UuidGenerator;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregate throughput of a cluster of {@code nodes} nodes for multi-asset load, nodes run in the benchmark JVM and
+ * talk over their binary listeners on loopback, the same way separate JVMs do.
+ * <p>
+ * Each invocation sends {@link #BATCH} orders of {@link #ASSETS} assets, spread round-robin over the routers of all
+ * nodes with up to {@link #IN_FLIGHT} of them in flight, and waits for all of them to be accepted. With one node every
+ * command is local, with more nodes most of them are forwarded to the owner of their asset. Nodes share the cores of
+ * the machine, so the scaling measured here is bounded by the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ClusterBenchmark {
+
+    private static final int BATCH = 1_000;
+    private static final int IN_FLIGHT = 256;
+    private static final int ASSETS = 16;
+    private static final int PRICE_LEVELS = 20;
+
+    @Param({"1", "2", "4"})
+    public int nodes;
+
+    private BookQueryRepository[] queryRepositories;
+    private CommandBus[] commandBuses;
+    private OrderEntryServer[] servers;
+    private ClusterRouter[] routers;
+    private String[] assetNames;
+    private BigDecimal[] prices;
+    private SplittableRandom random;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        queryRepositories = new BookQueryRepository[nodes];
+        commandBuses = new CommandBus[nodes];
+        servers = new OrderEntryServer[nodes];
+        routers = new ClusterRouter[nodes];
+        Map<String, MarketProperties.NodeProperties> cluster = new HashMap<>();
+        for (int i = 0; i < nodes; i++) {
+            MarketProperties properties = new MarketProperties(null, null, null, null, null, null,
+                                                               new MarketProperties.GatewayProperties(true, null, 0,
+                                                                                                      null, null,
+                                                                                                      null, null),
+                                                               null, null);
+            queryRepositories[i] = new BookQueryRepository(properties);
+            BookAggregateRepository aggregateRepository = new BookAggregateRepository(queryRepositories[i],
+                                                                                      properties,
+                                                                                      new Journal(properties));
+            commandBuses[i] = new CommandBus(aggregateRepository, properties);
+            servers[i] = new OrderEntryServer(commandBuses[i], aggregateRepository, properties);
+            cluster.put("node-" + i, new MarketProperties.NodeProperties(null, servers[i].port(), null));
+        }
+        //assets are spread evenly, the hash ring may give a node of a small cluster most of 16 assets
+        assetNames = new String[ASSETS];
+        Map<String, String> assignments = new HashMap<>();
+        for (int i = 0; i < ASSETS; i++) {
+            assetNames[i] = "ASSET-" + i;
+            assignments.put(assetNames[i], "node-" + i % nodes);
+        }
+        for (int i = 0; i < nodes; i++) {
+            MarketProperties properties = new MarketProperties(null, null, null, null, null, null, null,
+                                                               new MarketProperties.ClusterProperties(
+                                                                       true, "node-" + i, cluster, null,
+                                                                       assignments),
+                                                               null);
+            routers[i] = new ClusterRouter(commandBuses[i], properties);
+        }
+        prices = new BigDecimal[PRICE_LEVELS];
+        for (int i = 0; i < PRICE_LEVELS; i++) {
+            prices[i] = BigDecimal.valueOf(100_00 - PRICE_LEVELS / 2 + i, 2);
+        }
+        random = new SplittableRandom(42);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        for (int i = 0; i < nodes; i++) {
+            routers[i].close();
+            servers[i].stop();
+            commandBuses[i].destroy();
+            queryRepositories[i].close();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object sendCommand() {
+        return Flux.range(0, BATCH)
+                   .flatMap(i -> routers[i % nodes].sendCommand(order()), IN_FLIGHT)
+                   .blockLast(Duration.ofSeconds(30));
+    }
+
+    private MakeOrderCommand order() {
+        return new MakeOrderCommand(assetNames[random.nextInt(ASSETS)],
+                                    UuidGenerator.next(),
+                                    random.nextBoolean() ? OrderType.BUY : OrderType.SELL,
+                                    BigDecimal.ONE,
+                                    prices[random.nextInt(PRICE_LEVELS)]);
+    }
+}
@@ -0,0 +1,60 @@
+package com.zapata.reactivestockmarket.domain;
+
+import com.zapata.reactivestockmarket.util.UuidGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures generation of command / event ids and order ids from {@link #THREADS} threads, as if every thread was an
+ * aggregate thread of a different book. {@link UUID#randomUUID()} and one shared {@link AtomicLong} are the previous
+ * generators, {@link UuidGenerator} and {@link OrderIdGenerator} replace them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Threads(IdGenerationBenchmark.THREADS)
+public class IdGenerationBenchmark {
+
+    static final int THREADS = 4;
+
+    private final AtomicLong sharedOrderIds = new AtomicLong();
+    private final OrderIdGenerator shardedOrderIds = new OrderIdGenerator(OrderIdGenerator.DEFAULT_SHARD_BITS);
+    private final AtomicLong threads = new AtomicLong();
+
+    @State(Scope.Thread)
+    public static class BookThread {
+
+        int shard;
+
+        @Setup
+        public void setUp(IdGenerationBenchmark benchmark) {
+            shard = benchmark.shardedOrderIds.shardOf("ASSET-" + benchmark.threads.getAndIncrement());
+        }
+    }
+
+    @Benchmark
+    public UUID randomUuid() {
+        return UUID.randomUUID();
+    }
+
+    @Benchmark
+    public UUID uuidGenerator() {
+        return UuidGenerator.next();
+    }
+
+    @Benchmark
+    public long sharedOrderId() {
+        return sharedOrderIds.incrementAndGet();
+    }
+
+    @Benchmark
+    public long shardedOrderId(BookThread book) {
+        return shardedOrderIds.next(book.shard);
+    }
+}
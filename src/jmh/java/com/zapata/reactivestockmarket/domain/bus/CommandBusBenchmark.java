@@ -0,0 +1,105 @@
+package com.zapata.reactivestockmarket.domain.bus;
+
+import com.zapata.reactivestockmarket.MarketProperties;
+import com.zapata.reactivestockmarket.domain.BookAggregateRepository;
+import com.zapata.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.zapata.reactivestockmarket.domain.journal.Journal;
+import com.zapata.reactivestockmarket.domain.query.BookQueryRepository;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import com.zapata.reactivestockmarket.util.UuidGenerator;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link CommandBus#sendCommand} end-to-end - routing, book command handling, matching and acknowledgement -
+ * with the projection subscribed to book events like in the application.
+ * <p>
+ * Each invocation sends {@link #BATCH} orders and waits for all of them to be accepted, one by one with up to
+ * {@link #IN_FLIGHT} of them in flight or all of them by single {@link CommandBus#sendCommands} call. Orders are
+ * spread over {@code assets} books, single asset is the hot asset case. Prices are drawn around the same mid for both
+ * sides, so about half of the orders cross. Repositories are recreated every iteration to keep the projection from
+ * growing over the whole run. {@code metrics} shows the overhead of latency instrumentation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class CommandBusBenchmark {
+
+    private static final int BATCH = 1_000;
+    private static final int IN_FLIGHT = 256;
+    private static final int PRICE_LEVELS = 20;
+
+    @Param({"REACTOR", "RING_BUFFER"})
+    public BusType busType;
+
+    @Param({"1", "16"})
+    public int assets;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private CommandBus commandBus;
+    private String[] assetNames;
+    private BigDecimal[] prices;
+    private SplittableRandom random;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        MarketProperties properties = new MarketProperties(null, null,
+                                                           new MarketProperties.BusProperties(busType, 2, 4096, null,
+                                                                                              null),
+                                                           null, null,
+                                                           new MarketProperties.MetricsProperties(metrics, null),
+                                                           null, null, null);
+        BookAggregateRepository aggregateRepository = new BookAggregateRepository(new BookQueryRepository(),
+                                                                                  properties,
+                                                                                  new Journal(properties));
+        commandBus = new CommandBus(aggregateRepository, properties);
+        assetNames = new String[assets];
+        for (int i = 0; i < assets; i++) {
+            assetNames[i] = "ASSET-" + i;
+            aggregateRepository.getOrCreate(assetNames[i]);
+        }
+        prices = new BigDecimal[PRICE_LEVELS];
+        for (int i = 0; i < PRICE_LEVELS; i++) {
+            prices[i] = BigDecimal.valueOf(100_00 - PRICE_LEVELS / 2 + i, 2);
+        }
+        random = new SplittableRandom(42);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        commandBus.destroy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object sendCommand() {
+        return orders().flatMap(commandBus::sendCommand, IN_FLIGHT)
+                       .blockLast(Duration.ofSeconds(30));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object sendCommands() {
+        return commandBus.sendCommands(orders())
+                         .blockLast(Duration.ofSeconds(30));
+    }
+
+    private Flux<MakeOrderCommand> orders() {
+        return Flux.range(0, BATCH)
+                   .map(i -> new MakeOrderCommand(assetNames[random.nextInt(assets)],
+                                                  UuidGenerator.next(),
+                                                  random.nextBoolean() ? OrderType.BUY : OrderType.SELL,
+                                                  BigDecimal.ONE,
+                                                  prices[random.nextInt(PRICE_LEVELS)]));
+    }
+}
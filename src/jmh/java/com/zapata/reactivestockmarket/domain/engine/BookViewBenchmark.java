@@ -0,0 +1,114 @@
+package com.zapata.reactivestockmarket.domain.engine;
+
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link BookView} reads while the engine thread keeps re-quoting the book. Each group runs one engine
+ * thread, that cancels and replaces a random order of a book with {@link #DEPTH} levels per side, and one reader
+ * thread, that reads the top of the book or {@link #LEVELS} levels per side. Reported time of the reader includes
+ * retries of reads that overlapped with an engine call.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class BookViewBenchmark {
+
+    private static final String ASSET = "BTC";
+    private static final int DEPTH = 100;
+    private static final int ORDERS_PER_LEVEL = 4;
+    private static final int LEVELS = 10;
+    private static final int WINDOW = 1024;
+    private static final long MID = 100_000;
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+    private static final Instant TIMESTAMP = Instant.ofEpochSecond(1_700_000_000L);
+
+    private MatchingEngine engine;
+    private BigDecimal[] bidPrices;
+    private BigDecimal[] askPrices;
+    private SplittableRandom random;
+    private long nextOrderId;
+    private final long[] window = new long[WINDOW];
+    private int windowIndex;
+
+    @Setup(Level.Iteration)
+    public void setUp(Blackhole blackhole) {
+        engine = new MatchingEngine(new BookSpec(OrderBookType.PRICE_LEVEL, 2, 8, RoundingMode.UNNECESSARY,
+                                                 2 * DEPTH * ORDERS_PER_LEVEL + WINDOW));
+        engine.engineEvents().subscribe(blackhole::consume);
+        random = new SplittableRandom(42);
+        nextOrderId = 1;
+        bidPrices = new BigDecimal[DEPTH];
+        askPrices = new BigDecimal[DEPTH];
+        for (int i = 0; i < DEPTH; i++) {
+            bidPrices[i] = BigDecimal.valueOf(MID - 1 - i, 2);
+            askPrices[i] = BigDecimal.valueOf(MID + 1 + i, 2);
+        }
+        for (int order = 0; order < ORDERS_PER_LEVEL; order++) {
+            for (int i = 0; i < DEPTH; i++) {
+                place(OrderType.BUY, bidPrices[i]);
+                place(OrderType.SELL, askPrices[i]);
+            }
+        }
+        for (int i = 0; i < WINDOW; i++) {
+            window[i] = placeRandomPassive();
+        }
+        windowIndex = 0;
+    }
+
+    @Benchmark
+    @Group("top")
+    @GroupThreads(1)
+    public void quoteTop() {
+        quote();
+    }
+
+    @Benchmark
+    @Group("top")
+    @GroupThreads(1)
+    public Object readTop() {
+        return engine.view().top(ASSET);
+    }
+
+    @Benchmark
+    @Group("depth")
+    @GroupThreads(1)
+    public void quoteDepth() {
+        quote();
+    }
+
+    @Benchmark
+    @Group("depth")
+    @GroupThreads(1)
+    public Object readDepth() {
+        return engine.view().depth(ASSET, LEVELS);
+    }
+
+    private void quote() {
+        engine.cancelAll(window[windowIndex], ASSET);
+        window[windowIndex] = placeRandomPassive();
+        windowIndex = (windowIndex + 1) % WINDOW;
+    }
+
+    private long placeRandomPassive() {
+        int level = random.nextInt(DEPTH);
+        return random.nextBoolean() ? place(OrderType.BUY, bidPrices[level])
+                                    : place(OrderType.SELL, askPrices[level]);
+    }
+
+    private long place(OrderType type, BigDecimal price) {
+        long orderId = nextOrderId++;
+        engine.placeOrder(orderId, ASSET, TIMESTAMP, type, price, AMOUNT);
+        return orderId;
+    }
+}
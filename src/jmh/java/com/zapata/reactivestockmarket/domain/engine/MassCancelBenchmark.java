@@ -0,0 +1,74 @@
+package com.zapata.reactivestockmarket.domain.engine;
+
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures pulling {@link #ORDERS} resting orders of one book spread over {@code levels} price levels per side.
+ * <p>
+ * - {@link #massCancel} cancels both sides with one {@link MatchingEngine#massCancel} call, one event in total
+ * - {@link #cancelEach} cancels the same orders one by one, one event per order
+ * <p>
+ * The book is refilled before every invocation, refilling is not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class MassCancelBenchmark {
+
+    private static final String ASSET = "BTC";
+    private static final int ORDERS = 10_000;
+    private static final long MID = 100_000;
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+    private static final Instant TIMESTAMP = Instant.ofEpochSecond(1_700_000_000L);
+
+    @Param({"TREE", "PRICE_LEVEL"})
+    public OrderBookType orderBookType;
+
+    @Param({"10", "1000"})
+    public int levels;
+
+    private MatchingEngine engine;
+    private long nextOrderId;
+    private long firstOrderId;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) {
+        engine = new MatchingEngine(new BookSpec(orderBookType, 2, 8, RoundingMode.UNNECESSARY, ORDERS));
+        engine.engineEvents().subscribe(blackhole::consume);
+        nextOrderId = 1;
+    }
+
+    @Setup(Level.Invocation)
+    public void fill() {
+        firstOrderId = nextOrderId;
+        for (int i = 0; i < ORDERS / 2; i++) {
+            int level = i % levels;
+            engine.placeOrder(nextOrderId++, ASSET, TIMESTAMP, OrderType.BUY, BigDecimal.valueOf(MID - 1 - level, 2),
+                              AMOUNT);
+            engine.placeOrder(nextOrderId++, ASSET, TIMESTAMP, OrderType.SELL, BigDecimal.valueOf(MID + 1 + level, 2),
+                              AMOUNT);
+        }
+    }
+
+    @Benchmark
+    public int massCancel() {
+        return engine.massCancel(ASSET, null, null, null);
+    }
+
+    @Benchmark
+    public void cancelEach() {
+        for (long orderId = firstOrderId; orderId < nextOrderId; orderId++) {
+            engine.cancelAll(orderId, ASSET);
+        }
+    }
+}
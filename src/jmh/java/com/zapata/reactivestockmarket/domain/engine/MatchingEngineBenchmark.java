@@ -0,0 +1,149 @@
+package com.zapata.reactivestockmarket.domain.engine;
+
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link MatchingEngine} on a book prefilled with {@code depth} price levels per side,
+ * {@link #ORDERS_PER_LEVEL} orders each. Every flow leaves the book with the same shape, so the measured book doesn't
+ * drift between iterations.
+ * <p>
+ * - {@link #passive} places an order inside the book that doesn't cross and cancels the order placed
+ * {@link #WINDOW} operations earlier
+ * - {@link #crossing} fully fills the first order at the best level and replenishes the level, sides alternate
+ * - {@link #marketMaker} re-quotes a ladder of orders, 19 of 20 quotes are canceled before they trade
+ * - {@link #marketMakerAmend} re-quotes the same ladder by amending quotes to a new price instead of canceling and
+ * placing them, one engine call per re-quote instead of two
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class MatchingEngineBenchmark {
+
+    private static final String ASSET = "BTC";
+    private static final int ORDERS_PER_LEVEL = 4;
+    private static final int WINDOW = 64;
+    private static final int QUOTES = 20;
+    private static final long MID = 100_000;
+    private static final BigDecimal MID_PRICE = BigDecimal.valueOf(MID, 2);
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+    private static final Instant TIMESTAMP = Instant.ofEpochSecond(1_700_000_000L);
+
+    @Param({"TREE", "PRICE_LEVEL"})
+    public OrderBookType orderBookType;
+
+    @Param({"10", "1000"})
+    public int depth;
+
+    private MatchingEngine engine;
+    private BigDecimal[] bidPrices;
+    private BigDecimal[] askPrices;
+    private SplittableRandom random;
+    private long nextOrderId;
+    private final long[] window = new long[WINDOW];
+    private int windowIndex;
+    private final long[] quotes = new long[QUOTES];
+    private boolean buySide;
+
+    @Setup(Level.Iteration)
+    public void setUp(Blackhole blackhole) {
+        int restingOrders = 2 * depth * ORDERS_PER_LEVEL + WINDOW + QUOTES;
+        engine = new MatchingEngine(new BookSpec(orderBookType, 2, 8, RoundingMode.UNNECESSARY, restingOrders));
+        engine.engineEvents().subscribe(blackhole::consume);
+        random = new SplittableRandom(42);
+        nextOrderId = 1;
+
+        //level i is i ticks away from the touch
+        bidPrices = new BigDecimal[depth];
+        askPrices = new BigDecimal[depth];
+        for (int i = 0; i < depth; i++) {
+            bidPrices[i] = BigDecimal.valueOf(MID - 1 - i, 2);
+            askPrices[i] = BigDecimal.valueOf(MID + 1 + i, 2);
+        }
+        for (int order = 0; order < ORDERS_PER_LEVEL; order++) {
+            for (int i = 0; i < depth; i++) {
+                place(OrderType.BUY, bidPrices[i]);
+                place(OrderType.SELL, askPrices[i]);
+            }
+        }
+        for (int i = 0; i < WINDOW; i++) {
+            window[i] = placeRandomPassive();
+        }
+        windowIndex = 0;
+        for (int i = 0; i < QUOTES; i++) {
+            quotes[i] = placeRandomPassive();
+        }
+    }
+
+    @Benchmark
+    public void passive() {
+        engine.cancelAll(window[windowIndex], ASSET);
+        window[windowIndex] = placeRandomPassive();
+        windowIndex = (windowIndex + 1) % WINDOW;
+    }
+
+    @Benchmark
+    public void crossing() {
+        buySide = !buySide;
+        if (buySide) {
+            place(OrderType.BUY, askPrices[0]);
+            place(OrderType.SELL, askPrices[0]);
+        } else {
+            place(OrderType.SELL, bidPrices[0]);
+            place(OrderType.BUY, bidPrices[0]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUOTES)
+    public void marketMaker() {
+        for (int i = 0; i < QUOTES - 1; i++) {
+            engine.cancelAll(quotes[i], ASSET);
+            quotes[i] = placeRandomPassive();
+        }
+        //the last quote is aggressive, takes the best level and is replaced by a passive one
+        engine.cancelAll(quotes[QUOTES - 1], ASSET);
+        crossing();
+        quotes[QUOTES - 1] = placeRandomPassive();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUOTES)
+    public void marketMakerAmend() {
+        for (int i = 0; i < QUOTES - 1; i++) {
+            BigDecimal price = engine.restingPrice(quotes[i]);
+            if (price == null) {
+                //quote has been taken by a crossing order
+                quotes[i] = placeRandomPassive();
+            } else {
+                BigDecimal[] prices = price.compareTo(MID_PRICE) < 0 ? bidPrices : askPrices;
+                engine.amend(quotes[i], ASSET, prices[random.nextInt(depth)], AMOUNT);
+            }
+        }
+        engine.cancelAll(quotes[QUOTES - 1], ASSET);
+        crossing();
+        quotes[QUOTES - 1] = placeRandomPassive();
+    }
+
+    private long placeRandomPassive() {
+        int level = random.nextInt(depth);
+        return random.nextBoolean() ? place(OrderType.BUY, bidPrices[level])
+                                    : place(OrderType.SELL, askPrices[level]);
+    }
+
+    private long place(OrderType type, BigDecimal price) {
+        long orderId = nextOrderId++;
+        engine.placeOrder(orderId, ASSET, TIMESTAMP, type, price, AMOUNT);
+        return orderId;
+    }
+}
@@ -0,0 +1,138 @@
+package com.zapata.reactivestockmarket.domain.query;
+
+import com.zapata.reactivestockmarket.cqrs.Event;
+import com.zapata.reactivestockmarket.cqrs.EventFanout;
+import com.zapata.reactivestockmarket.cqrs.OverflowPolicy;
+import com.zapata.reactivestockmarket.cqrs.UpdateEvent;
+import com.zapata.reactivestockmarket.domain.engine.BookSpec;
+import com.zapata.reactivestockmarket.domain.engine.MatchingEngine;
+import com.zapata.reactivestockmarket.domain.engine.OrderBookType;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link BookQueryRepository#updateProjection} applied one by one in order, and
+ * {@link BookQueryRepository#project} the way books drive it - events published to the book event ring on the
+ * benchmark thread and applied in batches by a pipeline worker.
+ * <p>
+ * Events are recorded once from {@link MatchingEngine} running the order {@code flow}, every invocation applies all
+ * {@link #EVENTS} of them to an empty repository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class BookQueryRepositoryBenchmark {
+
+    private static final int EVENTS = 10_000;
+    private static final String ASSET = "BTC";
+    private static final long MID = 100_00;
+    private static final int PRICE_LEVELS = 20;
+
+    /**
+     * Order flow the events are recorded from
+     */
+    public enum Flow {
+        /**
+         * Orders never cross, half of the operations cancel an earlier order
+         */
+        PASSIVE,
+        /**
+         * Both sides are priced over the same range, so about half of the orders cross, nothing is canceled
+         */
+        CROSSING,
+        /**
+         * Orders never cross, nine of ten operations cancel an earlier order, half of the cancels are partial
+         */
+        CANCEL_HEAVY
+    }
+
+    @Param({"PASSIVE", "CROSSING", "CANCEL_HEAVY"})
+    public Flow flow;
+
+    private List<UpdateEvent> events;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        events = record(flow);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public Object updateProjection() {
+        BookQueryRepository repository = new BookQueryRepository();
+        return Flux.fromIterable(events)
+                   .concatMap(repository::updateProjection)
+                   .then(repository.getProjection(1))
+                   .block();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public Object projectBatched() {
+        BookQueryRepository repository = new BookQueryRepository();
+        try {
+            EventFanout<Event> ring = new EventFanout<>(EventFanout.DEFAULT_CAPACITY);
+            repository.project(ASSET, ring.events(OverflowPolicy.BLOCK));
+            for (UpdateEvent event : events) {
+                ring.publish(event);
+            }
+            while (repository.stats().pipeline().appliedEvents() < EVENTS) {
+                Thread.onSpinWait();
+            }
+            return repository.getProjection(1).block();
+        } finally {
+            repository.close();
+        }
+    }
+
+    private static List<UpdateEvent> record(Flow flow) {
+        MatchingEngine engine = new MatchingEngine(new BookSpec(OrderBookType.PRICE_LEVEL, 2));
+        List<UpdateEvent> recorded = new ArrayList<>(EVENTS + 16);
+        engine.engineEvents().subscribe(recorded::add);
+
+        SplittableRandom random = new SplittableRandom(42);
+        Instant timestamp = Instant.ofEpochSecond(1_700_000_000L);
+        double cancelRatio = switch (flow) {
+            case PASSIVE -> 0.5;
+            case CROSSING -> 0;
+            case CANCEL_HEAVY -> 0.9;
+        };
+        long[] live = new long[EVENTS];
+        int liveCount = 0;
+        long nextOrderId = 1;
+        while (recorded.size() < EVENTS) {
+            if (liveCount > 0 && random.nextDouble() < cancelRatio) {
+                int index = random.nextInt(liveCount);
+                if (random.nextBoolean()) {
+                    engine.cancelAll(live[index], ASSET);
+                    live[index] = live[--liveCount];
+                } else {
+                    engine.cancel(live[index], ASSET, new BigDecimal("0.5"));
+                }
+                continue;
+            }
+            OrderType type = random.nextBoolean() ? OrderType.BUY : OrderType.SELL;
+            long offset = 1 + random.nextInt(PRICE_LEVELS);
+            long ticks = switch (flow) {
+                case CROSSING -> MID - PRICE_LEVELS / 2 + offset;
+                case PASSIVE, CANCEL_HEAVY -> type == OrderType.BUY ? MID - offset : MID + offset;
+            };
+            engine.placeOrder(nextOrderId, ASSET, timestamp, type, BigDecimal.valueOf(ticks, 2), BigDecimal.ONE);
+            if (liveCount < live.length) {
+                live[liveCount++] = nextOrderId;
+            }
+            nextOrderId++;
+        }
+        return List.copyOf(recorded.subList(0, EVENTS));
+    }
+}
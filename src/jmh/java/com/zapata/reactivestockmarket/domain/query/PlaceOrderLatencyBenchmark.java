@@ -0,0 +1,99 @@
+package com.zapata.reactivestockmarket.domain.query;
+
+import com.zapata.reactivestockmarket.MarketProperties;
+import com.zapata.reactivestockmarket.domain.BookAggregateRepository;
+import com.zapata.reactivestockmarket.domain.bus.CommandBus;
+import com.zapata.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.zapata.reactivestockmarket.domain.events.OrderAcceptedEvent;
+import com.zapata.reactivestockmarket.domain.journal.Journal;
+import com.zapata.reactivestockmarket.util.UuidGenerator;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures latency of placing order and reading it back from the projection, the path of
+ * {@code MarketController.placeOrder}. Sampled time shows the percentiles, compare p99 of both {@code read} modes.
+ * <p>
+ * Prices are drawn around the same mid for both sides, so about half of the orders cross. Repositories are recreated
+ * every iteration to keep the projection from growing over the whole run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class PlaceOrderLatencyBenchmark {
+
+    private static final String ASSET = "BTC";
+    private static final int PRICE_LEVELS = 20;
+
+    /**
+     * How the placed order is read back
+     */
+    public enum Read {
+        /**
+         * Projection is polled every 50 ms until the order is there, the way the controller used to read it
+         */
+        POLL,
+        /**
+         * {@link BookQueryRepository#awaitProjection}
+         */
+        AWAIT
+    }
+
+    @Param({"POLL", "AWAIT"})
+    public Read read;
+
+    private CommandBus commandBus;
+    private BookQueryRepository queryRepository;
+    private BigDecimal[] prices;
+    private SplittableRandom random;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        queryRepository = new BookQueryRepository();
+        BookAggregateRepository aggregateRepository = new BookAggregateRepository(queryRepository,
+                                                                                  MarketProperties.DEFAULT,
+                                                                                  new Journal(
+                                                                                          MarketProperties.DEFAULT));
+        commandBus = new CommandBus(aggregateRepository, MarketProperties.DEFAULT);
+        aggregateRepository.getOrCreate(ASSET);
+        prices = new BigDecimal[PRICE_LEVELS];
+        for (int i = 0; i < PRICE_LEVELS; i++) {
+            prices[i] = BigDecimal.valueOf(100_00 - PRICE_LEVELS / 2 + i, 2);
+        }
+        random = new SplittableRandom(42);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        commandBus.destroy();
+    }
+
+    @Benchmark
+    public Object placeOrder() {
+        MakeOrderCommand command = new MakeOrderCommand(ASSET,
+                                                        UuidGenerator.next(),
+                                                        random.nextBoolean() ? OrderType.BUY : OrderType.SELL,
+                                                        BigDecimal.ONE,
+                                                        prices[random.nextInt(PRICE_LEVELS)]);
+        return commandBus.sendCommand(command)
+                         .cast(OrderAcceptedEvent.class)
+                         .flatMap(this::readProjection)
+                         .block(Duration.ofSeconds(30));
+    }
+
+    private Mono<OrderEntry> readProjection(OrderAcceptedEvent event) {
+        return switch (read) {
+            case POLL -> queryRepository.getProjection(event.orderId())
+                                        .repeatWhenEmpty(10, o -> o.delayElements(Duration.ofMillis(50)));
+            case AWAIT -> queryRepository.awaitProjection(event.orderId());
+        };
+    }
+}
@@ -0,0 +1,145 @@
+package com.zapata.reactivestockmarket.gateway;
+
+import com.zapata.reactivestockmarket.ReactiveStockMarketApplication;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loopback load test of placing orders through the REST API vs the binary order entry listener of a running
+ * application. One operation places {@code depth} orders, all of them sent before the first response is awaited - depth
+ * 1 is the round trip of a single order, throughput is {@code depth} divided by the average time.
+ * <p>
+ * REST responds once the order is in the projection, binary acknowledgement once it's durable, which is what a binary
+ * client waits for. Prices are drawn around the same mid for both sides, so about half of the orders cross.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.SampleTime, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class OrderEntryBenchmark {
+
+    private static final String ASSET = "BTC";
+    private static final int PRICE_LEVELS = 20;
+
+    public enum Transport {
+        REST,
+        BINARY
+    }
+
+    @Param({"REST", "BINARY"})
+    public Transport transport;
+
+    @Param({"1", "64"})
+    public int depth;
+
+    private ConfigurableApplicationContext context;
+    private WebClient webClient;
+    private SocketChannel channel;
+    private ByteBuf requests;
+    private ByteBuffer responses;
+    private BigDecimal[] prices;
+    private SplittableRandom random;
+    private long nextClientId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = SpringApplication.run(ReactiveStockMarketApplication.class,
+                                        "--server.port=0",
+                                        "--market.gateway.enabled=true",
+                                        "--market.gateway.port=0",
+                                        "--logging.level.root=WARN");
+        int httpPort = ((WebServerApplicationContext) context).getWebServer().getPort();
+        webClient = WebClient.create("http://127.0.0.1:" + httpPort);
+        channel = SocketChannel.open(new InetSocketAddress("127.0.0.1",
+                                                           context.getBean(OrderEntryServer.class).port()));
+        requests = Unpooled.directBuffer(depth * (OrderEntryCodec.LENGTH_FIELD + OrderEntryCodec.NEW_ORDER_LENGTH));
+        responses = ByteBuffer.allocateDirect(64 * 1024);
+        prices = new BigDecimal[PRICE_LEVELS];
+        for (int i = 0; i < PRICE_LEVELS; i++) {
+            prices[i] = BigDecimal.valueOf(100_00 - PRICE_LEVELS / 2 + i, 2);
+        }
+        random = new SplittableRandom(42);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        channel.close();
+        requests.release();
+        context.close();
+    }
+
+    @Benchmark
+    public Object placeOrders() throws IOException {
+        return switch (transport) {
+            case REST -> Flux.range(0, depth)
+                             .flatMap(i -> webClient.post()
+                                                    .uri("/orders")
+                                                    .contentType(MediaType.APPLICATION_JSON)
+                                                    .bodyValue(restOrder())
+                                                    .retrieve()
+                                                    .bodyToMono(String.class), depth)
+                             .blockLast(Duration.ofSeconds(30));
+            case BINARY -> placeBinary();
+        };
+    }
+
+    private String restOrder() {
+        return "{\"asset\":\"" + ASSET + "\",\"price\":" + prices[random.nextInt(PRICE_LEVELS)]
+                + ",\"amount\":1,\"direction\":\"" + (random.nextBoolean() ? "BUY" : "SELL") + "\"}";
+    }
+
+    private long placeBinary() throws IOException {
+        requests.clear();
+        for (int i = 0; i < depth; i++) {
+            OrderEntryCodec.encodeNewOrder(requests, ++nextClientId, ASSET,
+                                           random.nextBoolean() ? OrderType.BUY : OrderType.SELL,
+                                           prices[random.nextInt(PRICE_LEVELS)], BigDecimal.ONE);
+        }
+        ByteBuffer out = requests.nioBuffer();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        //execution reports are only sent for orders of the connection that are matched, skip them
+        int acknowledged = 0;
+        long lastOrderId = 0;
+        while (acknowledged < depth) {
+            channel.read(responses);
+            responses.flip();
+            while (responses.remaining() >= OrderEntryCodec.LENGTH_FIELD
+                    && responses.remaining() >= OrderEntryCodec.LENGTH_FIELD
+                    + Short.toUnsignedInt(responses.getShort(responses.position()))) {
+                int length = Short.toUnsignedInt(responses.getShort());
+                int next = responses.position() + length;
+                byte type = responses.get(responses.position());
+                if (type == OrderEntryCodec.ACK) {
+                    acknowledged++;
+                    lastOrderId = responses.getLong(responses.position() + 9);
+                } else if (type == OrderEntryCodec.REJECT) {
+                    acknowledged++;
+                }
+                responses.position(next);
+            }
+            responses.compact();
+        }
+        return lastOrderId;
+    }
+}
@@ -0,0 +1,286 @@
+package com.zapata.reactivestockmarket;
+
+import com.zapata.reactivestockmarket.domain.CommandDedupCache;
+import com.zapata.reactivestockmarket.domain.bus.BusType;
+import com.zapata.reactivestockmarket.domain.engine.BookSpec;
+import com.zapata.reactivestockmarket.domain.engine.OrderBookType;
+import com.zapata.reactivestockmarket.domain.journal.FsyncPolicy;
+import com.zapata.reactivestockmarket.replication.ReplicationRole;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Market configuration bound from {@code market.*} properties.
+ * <p>
+ * {@code market.book.*} configures all books, {@code market.assets.<asset>.*} overrides it for single asset, i.e.
+ * <pre>
+ * market.book.order-book-type=TREE
+ * market.assets.BTC.order-book-type=PRICE_LEVEL
+ * market.assets.BTC.price-scale=2
+ * market.assets.BTC.order-pool-size=100000
+ * </pre>
+ *
+ * @param book        - defaults for all books
+ * @param assets      - per asset overrides
+ * @param bus         - command bus configuration
+ * @param journal     - event journal configuration
+ * @param projection  - order projection retention and event pipeline configuration
+ * @param metrics     - latency instrumentation configuration
+ * @param gateway     - binary and WebSocket order entry listeners configuration
+ * @param cluster     - assignment of assets to nodes of a cluster
+ * @param replication - streaming of journaled events from primary to hot-standby replica
+ */
+@ConfigurationProperties(prefix = "market")
+public record MarketProperties(BookProperties book, Map<String, BookProperties> assets, BusProperties bus,
+                               JournalProperties journal, ProjectionProperties projection,
+                               MetricsProperties metrics, GatewayProperties gateway, ClusterProperties cluster,
+                               ReplicationProperties replication) {
+
+    public static final MarketProperties DEFAULT = new MarketProperties(null, null, null, null, null, null, null,
+                                                                        null, null);
+
+    public MarketProperties {
+        book = book == null ? new BookProperties(null, null, null, null, null, null) : book;
+        assets = assets == null ? Map.of() : assets;
+        bus = bus == null ? new BusProperties(null, null, null, null, null) : bus;
+        journal = journal == null ? new JournalProperties(null, null, null, null, null, null) : journal;
+        projection = projection == null ? new ProjectionProperties(null, null, null, null, null, null, null, null,
+                                                                                        null)
+                                        : projection;
+        metrics = metrics == null ? new MetricsProperties(null, null) : metrics;
+        gateway = gateway == null ? new GatewayProperties(null, null, null, null, null, null, null) : gateway;
+        cluster = cluster == null ? new ClusterProperties(null, null, null, null, null) : cluster;
+        replication = replication == null ? new ReplicationProperties(null, null, null, null, null) : replication;
+    }
+
+    /**
+     * Resolves book configuration for asset
+     *
+     * @param asset - asset name / aggregate identifier
+     * @return book configuration, asset overrides take precedence over defaults
+     */
+    public BookSpec bookSpec(String asset) {
+        BookProperties override = assets.getOrDefault(asset, book);
+        return new BookSpec(firstNonNull(override.orderBookType(), book.orderBookType(),
+                                         BookSpec.DEFAULT.orderBookType()),
+                            firstNonNull(override.priceScale(), book.priceScale(), BookSpec.DEFAULT.priceScale()),
+                            firstNonNull(override.amountScale(), book.amountScale(), BookSpec.DEFAULT.amountScale()),
+                            firstNonNull(override.amountRounding(), book.amountRounding(),
+                                         BookSpec.DEFAULT.amountRounding()),
+                            firstNonNull(override.orderPoolSize(), book.orderPoolSize(),
+                                         BookSpec.DEFAULT.orderPoolSize()),
+                            firstNonNull(override.eventBufferSize(), book.eventBufferSize(),
+                                         BookSpec.DEFAULT.eventBufferSize()));
+    }
+
+    private static <T> T firstNonNull(T override, T value, T defaultValue) {
+        if (override != null) {
+            return override;
+        }
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Book configuration, unset values fall back to defaults
+     *
+     * @param orderBookType   - data structure used to keep resting orders
+     * @param priceScale      - number of decimal places of price tick
+     * @param amountScale     - number of decimal places of amount unit
+     * @param amountRounding  - rounding applied to amounts with more decimal places than amount scale
+     * @param orderPoolSize   - number of preallocated orders that are recycled, 0 disables pooling
+     * @param eventBufferSize - capacity of the book event ring, power of 2
+     */
+    public record BookProperties(OrderBookType orderBookType, Integer priceScale, Integer amountScale,
+                                 RoundingMode amountRounding, Integer orderPoolSize, Integer eventBufferSize) {
+    }
+
+    /**
+     * Command bus configuration, unset values fall back to defaults
+     *
+     * @param type           - backend used to route commands
+     * @param shards         - number of shard threads of {@link BusType#RING_BUFFER} backend
+     * @param ringBufferSize - capacity of ring buffer of each shard, power of 2
+     * @param dedupCapacity  - number of recently handled command ids remembered per book, 0 disables deduplication
+     * @param dedupWindow    - how long handled command id is remembered, retry within it gets the original event
+     */
+    public record BusProperties(BusType type, Integer shards, Integer ringBufferSize, Integer dedupCapacity,
+                                Duration dedupWindow) {
+
+        public BusProperties {
+            type = type == null ? BusType.REACTOR : type;
+            shards = shards == null ? Runtime.getRuntime().availableProcessors() : shards;
+            ringBufferSize = ringBufferSize == null ? 4096 : ringBufferSize;
+            dedupCapacity = dedupCapacity == null ? CommandDedupCache.DEFAULT_CAPACITY : dedupCapacity;
+            dedupWindow = dedupWindow == null ? CommandDedupCache.DEFAULT_WINDOW : dedupWindow;
+        }
+    }
+
+    /**
+     * Event journal configuration, unset values fall back to defaults
+     *
+     * @param enabled          - journals sourcing events and replays them on startup, disabled by default
+     * @param directory        - directory of journal and snapshot files
+     * @param fsyncPolicy      - when journal is forced to the storage device
+     * @param fsyncInterval    - force interval of {@link FsyncPolicy#INTERVAL}
+     * @param regionSize       - size of memory-mapped region of journal file in bytes
+     * @param snapshotInterval - number of applied events between book snapshots, 0 disables snapshots
+     */
+    public record JournalProperties(Boolean enabled, String directory, FsyncPolicy fsyncPolicy,
+                                    Duration fsyncInterval, Integer regionSize, Long snapshotInterval) {
+
+        public JournalProperties {
+            enabled = enabled != null && enabled;
+            directory = directory == null ? "journal" : directory;
+            fsyncPolicy = fsyncPolicy == null ? FsyncPolicy.BATCH : fsyncPolicy;
+            fsyncInterval = fsyncInterval == null ? Duration.ofMillis(10) : fsyncInterval;
+            regionSize = regionSize == null ? 64 * 1024 * 1024 : regionSize;
+            snapshotInterval = snapshotInterval == null ? 1_000_000L : snapshotInterval;
+        }
+    }
+
+    /**
+     * Order projection retention configuration, unset values fall back to defaults
+     *
+     * @param archiveEnabled   - moves terminal orders to on-disk archive, disabled by default
+     * @param archiveDirectory - directory of archive files, cleared on startup
+     * @param retentionAge     - how long fully matched or canceled order stays in memory
+     * @param retentionCount   - how many fully matched or canceled orders stay in memory
+     * @param archiveInterval  - delay between archiver runs
+     * @param archiveCacheSize - number of recently read archived orders kept in memory
+     * @param workers          - number of threads that apply book events, each book is pinned to one of them
+     * @param maxBatchSize     - maximum number of events of one book applied in one batch
+     * @param awaitTimeout     - how long placing an order waits for the order to be applied to the projection
+     */
+    public record ProjectionProperties(Boolean archiveEnabled, String archiveDirectory, Duration retentionAge,
+                                       Integer retentionCount, Duration archiveInterval, Integer archiveCacheSize,
+                                       Integer workers, Integer maxBatchSize, Duration awaitTimeout) {
+
+        public ProjectionProperties {
+            archiveEnabled = archiveEnabled != null && archiveEnabled;
+            archiveDirectory = archiveDirectory == null ? "archive" : archiveDirectory;
+            retentionAge = retentionAge == null ? Duration.ofMinutes(10) : retentionAge;
+            retentionCount = retentionCount == null ? 100_000 : retentionCount;
+            archiveInterval = archiveInterval == null ? Duration.ofSeconds(1) : archiveInterval;
+            archiveCacheSize = archiveCacheSize == null ? 1024 : archiveCacheSize;
+            workers = workers == null ? Math.max(1, Runtime.getRuntime().availableProcessors() / 2) : workers;
+            maxBatchSize = maxBatchSize == null ? 256 : maxBatchSize;
+            awaitTimeout = awaitTimeout == null ? Duration.ofSeconds(1) : awaitTimeout;
+        }
+    }
+
+    /**
+     * Latency instrumentation configuration, unset values fall back to defaults
+     *
+     * @param enabled        - stamps commands at each stage and records latency histograms, enabled by default
+     * @param sampleInterval - one of this many commands is timed, 1 times every command
+     */
+    public record MetricsProperties(Boolean enabled, Integer sampleInterval) {
+
+        public MetricsProperties {
+            enabled = enabled == null || enabled;
+            sampleInterval = sampleInterval == null ? 16 : sampleInterval;
+        }
+    }
+
+    /**
+     * Binary order entry listener configuration, unset values fall back to defaults
+     *
+     * @param enabled          - listens for binary order entry connections, disabled by default
+     * @param host             - address to bind to, loopback by default
+     * @param port             - port of binary listener, 0 picks a free port
+     * @param maxInFlight      - number of requests of one connection sent to the command bus and not acknowledged yet
+     * @param reportBuffer     - number of execution reports queued for one connection, connection that falls further
+     *                         behind is closed
+     * @param webSocketEnabled - listens for WebSocket order entry sessions, disabled by default
+     * @param webSocketPort    - port of WebSocket listener, 0 picks a free port
+     */
+    public record GatewayProperties(Boolean enabled, String host, Integer port, Integer maxInFlight,
+                                    Integer reportBuffer, Boolean webSocketEnabled, Integer webSocketPort) {
+
+        public GatewayProperties {
+            enabled = enabled != null && enabled;
+            host = host == null ? "127.0.0.1" : host;
+            port = port == null ? 9090 : port;
+            maxInFlight = maxInFlight == null ? 256 : maxInFlight;
+            reportBuffer = reportBuffer == null ? 8192 : reportBuffer;
+            webSocketEnabled = webSocketEnabled != null && webSocketEnabled;
+            webSocketPort = webSocketPort == null ? 9091 : webSocketPort;
+        }
+    }
+
+    /**
+     * Cluster configuration, unset values fall back to defaults. Every node of the cluster is configured with the same
+     * nodes, i.e.
+     * <pre>
+     * market.cluster.enabled=true
+     * market.cluster.node-id=a
+     * market.cluster.nodes.a.gateway-port=9090
+     * market.cluster.nodes.a.http-port=8080
+     * market.cluster.nodes.b.gateway-port=9190
+     * market.cluster.nodes.b.http-port=8180
+     * </pre>
+     *
+     * @param enabled      - assigns assets to nodes and forwards commands of foreign assets, disabled by default
+     * @param nodeId       - identifier of this node, one of the nodes
+     * @param nodes        - all nodes of the cluster by their identifiers
+     * @param virtualNodes - number of points of each node on the hash ring
+     * @param assignments  - assets assigned to nodes explicitly, take precedence over the hash ring
+     */
+    public record ClusterProperties(Boolean enabled, String nodeId, Map<String, NodeProperties> nodes,
+                                    Integer virtualNodes, Map<String, String> assignments) {
+
+        public ClusterProperties {
+            enabled = enabled != null && enabled;
+            nodeId = nodeId == null ? "local" : nodeId;
+            nodes = nodes == null ? Map.of() : nodes;
+            virtualNodes = virtualNodes == null ? 128 : virtualNodes;
+            assignments = assignments == null ? Map.of() : assignments;
+        }
+    }
+
+    /**
+     * Address of cluster node, unset values fall back to defaults
+     *
+     * @param host        - address of the node, loopback by default
+     * @param gatewayPort - port of binary order entry listener of the node, commands are forwarded to it
+     * @param httpPort    - port of REST API of the node, queries are redirected to it
+     */
+    public record NodeProperties(String host, Integer gatewayPort, Integer httpPort) {
+
+        public NodeProperties {
+            host = host == null ? "127.0.0.1" : host;
+            gatewayPort = gatewayPort == null ? 9090 : gatewayPort;
+            httpPort = httpPort == null ? 8080 : httpPort;
+        }
+    }
+
+    /**
+     * Replication configuration, unset values fall back to defaults. Primary serves its journal to replicas, replica
+     * applies it and rejects commands until it's promoted, i.e.
+     * <pre>
+     * market.replication.role=REPLICA
+     * market.replication.port=9095
+     * market.journal.directory=replica-journal
+     * </pre>
+     *
+     * @param role              - role of this instance, {@link ReplicationRole#NONE} by default
+     * @param host              - address primary binds to and replica connects to, loopback by default
+     * @param port              - port of replication listener of the primary, 0 picks a free port on the primary
+     * @param batchSize         - maximum number of journal bytes sent in one frame
+     * @param heartbeatInterval - how often an idle primary tells replicas it's alive
+     */
+    public record ReplicationProperties(ReplicationRole role, String host, Integer port, Integer batchSize,
+                                        Duration heartbeatInterval) {
+
+        public ReplicationProperties {
+            role = role == null ? ReplicationRole.NONE : role;
+            host = host == null ? "127.0.0.1" : host;
+            port = port == null ? 9095 : port;
+            batchSize = batchSize == null ? 64 * 1024 : batchSize;
+            heartbeatInterval = heartbeatInterval == null ? Duration.ofMillis(100) : heartbeatInterval;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.zapata.reactivestockmarket.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assignment of assets to cluster nodes - consistent hash ring with explicit per asset assignments on top of it.
+ * <p>
+ * Each node has {@code virtualNodes} points on the ring, asset is owned by the node of the first point at or after the
+ * hash of the asset. Every node computes the same ring from the same node identifiers, so nodes agree on owners
+ * without talking to each other, and adding or removing a node moves only assets between it and the others.
+ * Explicit assignments are changed at runtime, i.e. to move a hot asset off a busy node, the ring is rebuilt only when
+ * the nodes change.
+ * <p>
+ * Thread-safe, lookups read an immutable ring and don't lock.
+ */
+public class AssetAssignment {
+
+    private final int virtualNodes;
+    private final Map<String, String> assignments = new ConcurrentHashMap<>();
+    private volatile Ring ring;
+
+    /**
+     * @param nodes        - identifiers of all nodes
+     * @param virtualNodes - number of points of each node on the ring
+     */
+    public AssetAssignment(Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty() || virtualNodes < 1) {
+            throw new IllegalArgumentException("Cluster must have nodes and virtual nodes must be positive!");
+        }
+        this.virtualNodes = virtualNodes;
+        this.ring = new Ring(nodes, virtualNodes);
+    }
+
+    /**
+     * @param asset - asset name / aggregate identifier
+     * @return identifier of node that owns the asset
+     */
+    public String owner(String asset) {
+        String assigned = assignments.isEmpty() ? null : assignments.get(asset);
+        return assigned != null ? assigned : ring.owner(hash(asset));
+    }
+
+    /**
+     * Assigns asset to node explicitly
+     *
+     * @param asset  - asset name
+     * @param nodeId - one of the nodes
+     */
+    public void assign(String asset, String nodeId) {
+        if (!ring.nodes.contains(nodeId)) {
+            throw new IllegalArgumentException("Unknown node " + nodeId + "!");
+        }
+        assignments.put(asset, nodeId);
+    }
+
+    /**
+     * Returns asset to the node chosen by the ring
+     *
+     * @param asset - asset name
+     */
+    public void unassign(String asset) {
+        assignments.remove(asset);
+    }
+
+    /**
+     * Replaces nodes of the ring, explicit assignments to removed nodes are dropped
+     *
+     * @param nodes - identifiers of all nodes
+     */
+    public void nodes(Collection<String> nodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("Cluster must have nodes!");
+        }
+        Ring rebuilt = new Ring(nodes, virtualNodes);
+        ring = rebuilt;
+        assignments.values().removeIf(nodeId -> !rebuilt.nodes.contains(nodeId));
+    }
+
+    /**
+     * @return identifiers of all nodes, sorted
+     */
+    public List<String> nodes() {
+        return ring.nodes;
+    }
+
+    /**
+     * @return explicit assignments, asset to node
+     */
+    public Map<String, String> assignments() {
+        return Map.copyOf(assignments);
+    }
+
+    /**
+     * FNV-1a of UTF-8 bytes with murmur3 finalizer, so that similar asset names land far apart on the ring
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static final class Ring {
+
+        private final List<String> nodes;
+        private final TreeMap<Long, String> points = new TreeMap<>();
+
+        private Ring(Collection<String> nodes, int virtualNodes) {
+            this.nodes = nodes.stream().distinct().sorted().toList();
+            for (String node : this.nodes) {
+                for (int i = 0; i < virtualNodes; i++) {
+                    //the smaller node id wins a collision, so every node builds the same ring
+                    points.putIfAbsent(hash(node + "#" + i), node);
+                }
+            }
+        }
+
+        private String owner(long hash) {
+            Entry<Long, String> point = points.ceilingEntry(hash);
+            return point != null ? point.getValue() : points.firstEntry().getValue();
+        }
+    }
+}
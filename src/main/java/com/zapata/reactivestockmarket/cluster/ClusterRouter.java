@@ -0,0 +1,175 @@
+package com.zapata.reactivestockmarket.cluster;
+
+import com.zapata.reactivestockmarket.MarketProperties;
+import com.zapata.reactivestockmarket.cqrs.Command;
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+import com.zapata.reactivestockmarket.domain.bus.CommandBus;
+import com.zapata.reactivestockmarket.domain.events.CommandRejectedEvent;
+import com.zapata.reactivestockmarket.util.UuidGenerator;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routes commands of assets owned by other nodes of the cluster to their owners, commands of own assets to the local
+ * {@link CommandBus}.
+ * <p>
+ * Owner of an asset is chosen by {@link AssetAssignment}, every node is configured with the same nodes so all of them
+ * agree. Commands are forwarded by {@link NodeClient} to the binary order entry listener of the owner, which sends
+ * them to its own command bus without routing them again - a command is forwarded at most once, even while nodes
+ * disagree during a change of the assignment. Changing the assignment moves new commands only, resting orders of an
+ * asset stay in the book of its previous owner, so assets should be moved before they're traded.
+ * <p>
+ * With cluster mode disabled this node owns all assets and commands go straight to the command bus.
+ */
+@Component
+public class ClusterRouter {
+
+    private final CommandBus commandBus;
+    private final MarketProperties.ClusterProperties properties;
+    private final AssetAssignment assignment;
+    private final Map<String, NodeClient> clients = new ConcurrentHashMap<>();
+
+    public ClusterRouter(CommandBus commandBus, MarketProperties marketProperties) {
+        this.commandBus = commandBus;
+        this.properties = marketProperties.cluster();
+        if (properties.enabled()) {
+            if (!properties.nodes().containsKey(properties.nodeId())) {
+                throw new IllegalArgumentException("Node " + properties.nodeId() + " is not one of cluster nodes!");
+            }
+            assignment = new AssetAssignment(properties.nodes().keySet(), properties.virtualNodes());
+            properties.assignments().forEach(assignment::assign);
+        } else {
+            assignment = null;
+        }
+    }
+
+    /**
+     * @return true if assets are assigned to nodes of a cluster
+     */
+    public boolean enabled() {
+        return assignment != null;
+    }
+
+    /**
+     * @return identifier of this node
+     */
+    public String nodeId() {
+        return properties.nodeId();
+    }
+
+    /**
+     * @param asset - asset name / aggregate identifier
+     * @return identifier of node that owns the asset
+     */
+    public String owner(String asset) {
+        return assignment != null ? assignment.owner(asset) : properties.nodeId();
+    }
+
+    /**
+     * @param asset - asset name / aggregate identifier
+     * @return true if this node owns the asset
+     */
+    public boolean isLocal(String asset) {
+        return assignment == null || properties.nodeId().equals(assignment.owner(asset));
+    }
+
+    /**
+     * @param nodeId - one of the nodes
+     * @return base URL of REST API of the node
+     */
+    public String httpUrl(String nodeId) {
+        MarketProperties.NodeProperties node = properties.nodes().get(nodeId);
+        if (node == null) {
+            throw new IllegalArgumentException("Unknown node " + nodeId + "!");
+        }
+        return "http://" + node.host() + ":" + node.httpPort();
+    }
+
+    /**
+     * @return assignment of assets to nodes, changes are local to this node
+     * @throws IllegalStateException if cluster mode is disabled
+     */
+    public AssetAssignment assignment() {
+        if (assignment == null) {
+            throw new IllegalStateException("Cluster mode is disabled!");
+        }
+        return assignment;
+    }
+
+    /**
+     * Sends command to the command bus of the owner of its asset, see {@link CommandBus#sendCommand}
+     *
+     * @param command to send
+     * @return sourcing event once it has been materialized by the owner
+     */
+    public Mono<SourcingEvent> sendCommand(Command command) {
+        String owner = owner(command.aggregateId());
+        return owner.equals(properties.nodeId()) ? commandBus.sendCommand(command) : client(owner).send(command);
+    }
+
+    /**
+     * Sends commands in batches, own commands are batched by the local command bus and the others are forwarded
+     * concurrently, see {@link CommandBus#sendCommands}
+     *
+     * @param commands to send
+     * @return event of each command in the order of commands
+     */
+    public Flux<SourcingEvent> sendCommands(Flux<? extends Command> commands) {
+        if (assignment == null) {
+            return commandBus.sendCommands(commands);
+        }
+        return commands.buffer(CommandBus.MAX_BATCH_SIZE)
+                       .concatMap(this::sendBatch);
+    }
+
+    /**
+     * Closes connections to other nodes on bean destruction
+     */
+    @PreDestroy
+    public void close() {
+        clients.values().forEach(NodeClient::close);
+    }
+
+    private Flux<SourcingEvent> sendBatch(List<? extends Command> commands) {
+        SourcingEvent[] results = new SourcingEvent[commands.size()];
+        List<Integer> local = new ArrayList<>();
+        List<Integer> forwarded = new ArrayList<>();
+        for (int i = 0; i < commands.size(); i++) {
+            (isLocal(commands.get(i).aggregateId()) ? local : forwarded).add(i);
+        }
+        Mono<Void> localDone = commandBus.sendCommands(Flux.fromIterable(local).map(commands::get))
+                                         .index()
+                                         .doOnNext(result -> results[local.get(result.getT1().intValue())] =
+                                                 result.getT2())
+                                         .then();
+        Mono<Void> forwardedDone = Flux.fromIterable(forwarded)
+                                       .flatMap(i -> sendCommand(commands.get(i))
+                                                       .onErrorResume(e -> Mono.just(reject(commands.get(i), e)))
+                                                       .doOnNext(event -> results[i] = event),
+                                                forwarded.isEmpty() ? 1 : forwarded.size())
+                                       .then();
+        return Mono.when(localDone, forwardedDone)
+                   .thenMany(Flux.defer(() -> Flux.fromArray(results)));
+    }
+
+    private static CommandRejectedEvent reject(Command command, Throwable error) {
+        return new CommandRejectedEvent(command.aggregateId(),
+                                        UuidGenerator.next(),
+                                        command.commandId(),
+                                        String.valueOf(error.getMessage()));
+    }
+
+    private NodeClient client(String nodeId) {
+        return clients.computeIfAbsent(nodeId, id -> {
+            MarketProperties.NodeProperties node = properties.nodes().get(id);
+            return new NodeClient(id, node.host(), node.gatewayPort());
+        });
+    }
+}
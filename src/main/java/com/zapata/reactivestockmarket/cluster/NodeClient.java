@@ -0,0 +1,228 @@
+package com.zapata.reactivestockmarket.cluster;
+
+import com.zapata.reactivestockmarket.cqrs.Command;
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+import com.zapata.reactivestockmarket.domain.command.AmendOrderCommand;
+import com.zapata.reactivestockmarket.domain.command.CancelOrderCommand;
+import com.zapata.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.zapata.reactivestockmarket.domain.events.AmendmentRequestedEvent;
+import com.zapata.reactivestockmarket.domain.events.CancellationRequestedEvent;
+import com.zapata.reactivestockmarket.domain.events.OrderAcceptedEvent;
+import com.zapata.reactivestockmarket.gateway.OrderEntryCodec;
+import com.zapata.reactivestockmarket.util.UuidGenerator;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.netty.Connection;
+import reactor.netty.tcp.TcpClient;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Forwards commands to another node over one pipelined connection to its binary order entry listener, see
+ * {@link OrderEntryCodec}.
+ * <p>
+ * Requests are written as soon as they are sent and matched with acknowledgements by client id, so any number of
+ * them share the connection. Writes of one caller reach the node in order, so commands of one asset keep their order.
+ * The owner only acknowledges the command, the event returned is rebuilt from the command and the acknowledgement,
+ * i.e. placed order has the amount as sent, not as rounded by the owner. Execution reports of forwarded orders are
+ * not used and are skipped.
+ * <p>
+ * Connection is opened by the first command and reopened by the first command after it's lost, commands in flight on
+ * a lost connection fail.
+ */
+public class NodeClient {
+
+    private static final int MAX_REQUEST_LENGTH = OrderEntryCodec.LENGTH_FIELD + OrderEntryCodec.AMEND_LENGTH;
+
+    private final String nodeId;
+    private final TcpClient client;
+    private final ConcurrentHashMap<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicLong nextClientId = new AtomicLong();
+    private volatile Connection connection;
+    private volatile boolean closed;
+
+    /**
+     * @param nodeId - identifier of the node
+     * @param host   - address of the node
+     * @param port   - port of binary order entry listener of the node
+     */
+    public NodeClient(String nodeId, String host, int port) {
+        this.nodeId = nodeId;
+        this.client = TcpClient.create()
+                               .host(host)
+                               .port(port)
+                               .option(ChannelOption.TCP_NODELAY, true)
+                               .doOnConnected(connected -> connected
+                                       //writes of concurrent callers share syscalls
+                                       .addHandlerFirst(new FlushConsolidationHandler(256, true))
+                                       .addHandlerLast("orderEntryFrames", OrderEntryCodec.frameDecoder()))
+                               .handle((inbound, outbound) -> inbound.receive()
+                                                                     .doOnNext(this::onFrame)
+                                                                     .then());
+    }
+
+    /**
+     * @param command - {@link MakeOrderCommand}, {@link CancelOrderCommand} of the whole order or
+     *                {@link AmendOrderCommand}
+     * @return event of the command once the owner has acknowledged it, error if the owner has rejected it
+     */
+    public Mono<SourcingEvent> send(Command command) {
+        return connection().flatMap(connected -> Mono.create(sink -> write(connected, command, sink)));
+    }
+
+    /**
+     * @return number of commands sent and not acknowledged yet
+     */
+    public int inFlight() {
+        return pending.size();
+    }
+
+    /**
+     * Closes the connection, commands in flight fail
+     */
+    public void close() {
+        closed = true;
+        Connection current = connection;
+        if (current != null) {
+            current.dispose();
+        }
+        failPending();
+    }
+
+    private Mono<Connection> connection() {
+        Connection current = connection;
+        if (current != null && !current.isDisposed()) {
+            return Mono.just(current);
+        }
+        if (closed) {
+            return Mono.error(new IllegalStateException("Node " + nodeId + " client is closed!"));
+        }
+        return client.connect()
+                     .map(this::adopt)
+                     .onErrorMap(e -> new IllegalStateException("Node " + nodeId + " is not reachable!", e));
+    }
+
+    /**
+     * Keeps the first of concurrently opened connections
+     */
+    private synchronized Connection adopt(Connection opened) {
+        Connection current = connection;
+        if (current != null && !current.isDisposed()) {
+            opened.dispose();
+            return current;
+        }
+        connection = opened;
+        opened.onDispose(() -> {
+            if (connection == opened) {
+                failPending();
+            }
+        });
+        return opened;
+    }
+
+    private void write(Connection connected, Command command, MonoSink<SourcingEvent> sink) {
+        long clientId = nextClientId.incrementAndGet();
+        ByteBuf frame = connected.channel().alloc().directBuffer(MAX_REQUEST_LENGTH);
+        try {
+            encode(frame, clientId, command);
+        } catch (RuntimeException e) {
+            frame.release();
+            sink.error(e);
+            return;
+        }
+        pending.put(clientId, new Pending(command, sink));
+        connected.channel().writeAndFlush(frame).addListener(future -> {
+            if (!future.isSuccess()) {
+                Pending failed = pending.remove(clientId);
+                if (failed != null) {
+                    failed.sink.error(new IllegalStateException("Node " + nodeId + " is not reachable!",
+                                                                future.cause()));
+                }
+            }
+        });
+    }
+
+    private static void encode(ByteBuf frame, long clientId, Command command) {
+        switch (command) {
+            case MakeOrderCommand cmd -> OrderEntryCodec.encodeNewOrder(frame, clientId, cmd.aggregateId(), cmd.type(),
+                                                                        cmd.price(), cmd.amount());
+            case CancelOrderCommand cmd -> {
+                if (!cmd.cancelAll()) {
+                    throw new IllegalArgumentException("Partial cancel can't be forwarded!");
+                }
+                OrderEntryCodec.encodeCancel(frame, clientId, cmd.aggregateId(), cmd.orderId());
+            }
+            case AmendOrderCommand cmd -> OrderEntryCodec.encodeAmend(frame, clientId, cmd.aggregateId(),
+                                                                      cmd.orderId(), cmd.newPrice(), cmd.newAmount());
+            default -> throw new IllegalArgumentException(command.getClass().getSimpleName()
+                                                                  + " can't be forwarded!");
+        }
+    }
+
+    /**
+     * Called on the event loop for each response frame, the frame is released after it returns
+     */
+    private void onFrame(ByteBuf frame) {
+        byte type = frame.readByte();
+        if (type != OrderEntryCodec.ACK && type != OrderEntryCodec.REJECT) {
+            return;
+        }
+        Pending request = pending.remove(frame.readLong());
+        if (request == null) {
+            return;
+        }
+        if (type == OrderEntryCodec.ACK) {
+            long orderId = frame.readLong();
+            long epochNanos = frame.readLong();
+            request.sink.success(toEvent(request.command, orderId, epochNanos));
+        } else {
+            int length = frame.readUnsignedShort();
+            request.sink.error(new IllegalStateException(frame.readCharSequence(length, StandardCharsets.UTF_8)
+                                                              .toString()));
+        }
+    }
+
+    private static SourcingEvent toEvent(Command command, long orderId, long epochNanos) {
+        return switch (command) {
+            case MakeOrderCommand cmd -> new OrderAcceptedEvent(cmd.aggregateId(),
+                                                                UuidGenerator.next(),
+                                                                orderId,
+                                                                cmd.type(),
+                                                                cmd.amount(),
+                                                                cmd.price(),
+                                                                Instant.ofEpochSecond(0, epochNanos));
+            case CancelOrderCommand cmd -> new CancellationRequestedEvent(cmd.aggregateId(),
+                                                                          UuidGenerator.next(),
+                                                                          orderId,
+                                                                          true,
+                                                                          BigDecimal.ZERO);
+            default -> {
+                AmendOrderCommand cmd = (AmendOrderCommand) command;
+                yield new AmendmentRequestedEvent(cmd.aggregateId(),
+                                                  UuidGenerator.next(),
+                                                  orderId,
+                                                  cmd.newPrice(),
+                                                  cmd.newAmount());
+            }
+        };
+    }
+
+    private void failPending() {
+        for (Long clientId : pending.keySet()) {
+            Pending failed = pending.remove(clientId);
+            if (failed != null) {
+                failed.sink.error(new IllegalStateException("Connection to node " + nodeId + " has been lost!"));
+            }
+        }
+    }
+
+    private record Pending(Command command, MonoSink<SourcingEvent> sink) {
+    }
+}
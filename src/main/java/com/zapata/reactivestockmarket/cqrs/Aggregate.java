@@ -15,20 +15,61 @@ public interface Aggregate {
      */
     String aggregateId();
 
+    /**
+     * Handles command on the calling thread, commands of one aggregate must be handled sequentially
+     *
+     * @param command to handle
+     * @return event that has been materialized
+     * @throws RuntimeException if command has been rejected
+     */
+    SourcingEvent handle(Command command);
+
+    /**
+     * Event materialized by command with the same command id handled earlier, retried command must not be handled
+     * again. Called on the aggregate thread before {@link #handle(Command)}.
+     *
+     * @param command to look up
+     * @return event of the original command, null if command has not been handled
+     */
+    default SourcingEvent handled(Command command) {
+        return null;
+    }
+
+    /**
+     * Applies event on the calling thread, events of one aggregate must be applied sequentially
+     *
+     * @param event to apply
+     * @throws RuntimeException if event is not supported
+     */
+    void apply(SourcingEvent event);
+
+    /**
+     * Runs action once all events handled so far are durable, immediately if aggregate events are not journaled
+     *
+     * @param action to run
+     */
+    default void whenDurable(Runnable action) {
+        action.run();
+    }
+
     /**
      * Routes commands to corresponding handler
      *
      * @param command to handle
      * @return event that has been materialized
      */
-    Mono<SourcingEvent> routeCommand(Command command);
+    default Mono<SourcingEvent> routeCommand(Command command) {
+        return Mono.fromCallable(() -> handle(command));
+    }
 
     /**
      * Routes event  to corresponding handler
      *
      * @param event to handle
      */
-    Mono<Void> routeEvent(SourcingEvent event);
+    default Mono<Void> routeEvent(SourcingEvent event) {
+        return Mono.fromRunnable(() -> apply(event));
+    }
 
     /**
      * Hot stream that emits all aggregate events
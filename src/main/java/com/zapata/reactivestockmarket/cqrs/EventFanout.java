@@ -0,0 +1,316 @@
+package com.zapata.reactivestockmarket.cqrs;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Operators;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Bounded single-producer, multi-subscriber hot stream of events of one aggregate.
+ * <p>
+ * Events are stored once in a fixed size ring and every subscriber only keeps a cursor into it, so memory doesn't
+ * grow with slow subscribers. Subscriber that falls a whole ring behind is handled by its {@link OverflowPolicy}:
+ * {@link OverflowPolicy#BLOCK} subscribers gate the producer, {@link OverflowPolicy#DROP} and
+ * {@link OverflowPolicy#RESYNC} subscribers detect on their own that their next event has been overwritten.
+ * <p>
+ * {@link OverflowPolicy#BLOCK} subscribers get events on the producer thread, the others on
+ * {@link Schedulers#parallel()}. Subscriber gets events published after its subscription has been attached by the
+ * next {@link #publish}, there is no replay.
+ *
+ * @param <T> event type
+ */
+public final class EventFanout<T> {
+
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private static final int SPIN_TRIES = 256;
+    private static final long PARK_NANOS = 1_000L;
+    private static final FanoutSubscription<?>[] NO_SUBSCRIBERS = new FanoutSubscription<?>[0];
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<T> ring;
+    /**
+     * Number of published events, the next event gets this sequence
+     */
+    private final AtomicLong published = new AtomicLong();
+
+    private volatile FanoutSubscription<T>[] subscribers = noSubscribers();
+    private volatile int subscribersVersion;
+
+    /**
+     * Producer state - subscribers version seen by the last attach and the lowest cursor of blocking subscribers
+     */
+    private int attachedVersion;
+    private long gatingCursor = Long.MAX_VALUE;
+
+    private volatile long blockedPublishes;
+    private volatile long blockedNanos;
+    private final LongAdder droppedSubscribers = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+
+    public EventFanout(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Event buffer size must be power of 2!");
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.ring = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Publishes event to all subscribers, only one thread may publish at a time. Waits while a
+     * {@link OverflowPolicy#BLOCK} subscriber hasn't taken the event in the slot being overwritten.
+     *
+     * @param event to publish
+     */
+    public void publish(T event) {
+        long sequence = published.get();
+        if (subscribersVersion != attachedVersion) {
+            attachSubscribers(sequence);
+        }
+        if (sequence - capacity >= gatingCursor) {
+            awaitBlockingSubscribers(sequence);
+        }
+        //release store, subscriber that reads the slot sees published count of the previous event
+        ring.lazySet((int) sequence & mask, event);
+        published.lazySet(sequence + 1);
+        for (FanoutSubscription<T> subscriber : subscribers) {
+            subscriber.signal();
+        }
+    }
+
+    /**
+     * @return number of published events, sequence of the next event
+     */
+    public long published() {
+        return published.get();
+    }
+
+    /**
+     * Hot stream of events with {@link OverflowPolicy#BLOCK} or {@link OverflowPolicy#DROP} policy
+     *
+     * @param policy - what happens when the subscriber falls a whole ring behind
+     * @return published events
+     */
+    public Flux<T> events(OverflowPolicy policy) {
+        return events(policy, null);
+    }
+
+    /**
+     * Hot stream of events
+     *
+     * @param policy    - what happens when the subscriber falls a whole ring behind
+     * @param snapshots - supplies snapshots to {@link OverflowPolicy#RESYNC} subscribers, called on the subscriber
+     *                  thread
+     * @return published events
+     */
+    public Flux<T> events(OverflowPolicy policy, Supplier<Snapshot<T>> snapshots) {
+        if (policy == OverflowPolicy.RESYNC && snapshots == null) {
+            throw new IllegalArgumentException("Resync policy needs snapshots!");
+        }
+        return Flux.from(actual -> {
+            FanoutSubscription<T> subscription = new FanoutSubscription<>(this, actual, policy, snapshots);
+            add(subscription);
+            actual.onSubscribe(subscription);
+        });
+    }
+
+    public FanoutStats stats() {
+        return new FanoutStats(capacity, published.get(), subscribers.length, blockedPublishes, blockedNanos,
+                               droppedSubscribers.sum(), resyncs.sum());
+    }
+
+    private void attachSubscribers(long sequence) {
+        attachedVersion = subscribersVersion;
+        for (FanoutSubscription<T> subscriber : subscribers) {
+            if (subscriber.cursor.get() < 0) {
+                subscriber.cursor.set(sequence);
+            }
+        }
+        gatingCursor = lowestBlockingCursor();
+    }
+
+    private long lowestBlockingCursor() {
+        long lowest = Long.MAX_VALUE;
+        for (FanoutSubscription<T> subscriber : subscribers) {
+            long cursor = subscriber.cursor.get();
+            if (subscriber.policy == OverflowPolicy.BLOCK && cursor >= 0) {
+                lowest = Math.min(lowest, cursor);
+            }
+        }
+        return lowest;
+    }
+
+    private void awaitBlockingSubscribers(long sequence) {
+        gatingCursor = lowestBlockingCursor();
+        if (sequence - capacity < gatingCursor) {
+            return;
+        }
+        long start = System.nanoTime();
+        int tries = 0;
+        do {
+            if (++tries < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+            if (subscribersVersion != attachedVersion) {
+                attachSubscribers(sequence);
+            }
+            gatingCursor = lowestBlockingCursor();
+        } while (sequence - capacity >= gatingCursor);
+        blockedPublishes = blockedPublishes + 1;
+        blockedNanos = blockedNanos + System.nanoTime() - start;
+    }
+
+    private synchronized void add(FanoutSubscription<T> subscription) {
+        FanoutSubscription<T>[] current = subscribers;
+        FanoutSubscription<T>[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = subscription;
+        subscribers = updated;
+        subscribersVersion++;
+    }
+
+    private synchronized void remove(FanoutSubscription<T> subscription) {
+        FanoutSubscription<T>[] current = subscribers;
+        int index = Arrays.asList(current).indexOf(subscription);
+        if (index < 0) {
+            return;
+        }
+        FanoutSubscription<T>[] updated = Arrays.copyOf(current, current.length - 1);
+        System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        subscribers = updated;
+        subscribersVersion++;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> FanoutSubscription<T>[] noSubscribers() {
+        return (FanoutSubscription<T>[]) NO_SUBSCRIBERS;
+    }
+
+    /**
+     * Replacement of events missed by {@link OverflowPolicy#RESYNC} subscriber
+     *
+     * @param sequence - sequence of the first event that is not included in the snapshot
+     * @param events   - events that rebuild the state up to sequence
+     */
+    public record Snapshot<T>(long sequence, List<T> events) {
+    }
+
+    /**
+     * Cursor of one subscriber, at most one drain runs at a time
+     */
+    private static final class FanoutSubscription<T> implements Subscription {
+
+        private final EventFanout<T> fanout;
+        private final Subscriber<? super T> actual;
+        private final OverflowPolicy policy;
+        private final Supplier<Snapshot<T>> snapshots;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        /**
+         * Sequence of the next event to deliver, -1 until the producer attaches the subscription
+         */
+        private final AtomicLong cursor = new AtomicLong(-1);
+        private volatile boolean cancelled;
+        /**
+         * Snapshot events not delivered yet, accessed by the drain only
+         */
+        private Iterator<T> snapshot;
+
+        private FanoutSubscription(EventFanout<T> fanout, Subscriber<? super T> actual, OverflowPolicy policy,
+                                   Supplier<Snapshot<T>> snapshots) {
+            this.fanout = fanout;
+            this.actual = actual;
+            this.policy = policy;
+            this.snapshots = snapshots;
+        }
+
+        @Override
+        public void request(long n) {
+            if (Operators.validate(n)) {
+                requested.getAndUpdate(current -> Operators.addCap(current, n));
+                if (wip.getAndIncrement() == 0) {
+                    drain();
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            fanout.remove(this);
+        }
+
+        /**
+         * Called by the producer after publishing
+         */
+        private void signal() {
+            if (wip.getAndIncrement() == 0) {
+                if (policy == OverflowPolicy.BLOCK) {
+                    drain();
+                } else {
+                    Schedulers.parallel().schedule(this::drain);
+                }
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                long next = cursor.get();
+                long emitted = 0;
+                long demand = requested.get();
+                while (next >= 0 && emitted != demand && !cancelled) {
+                    if (snapshot != null) {
+                        if (snapshot.hasNext()) {
+                            actual.onNext(snapshot.next());
+                            emitted++;
+                            continue;
+                        }
+                        snapshot = null;
+                    }
+                    if (next == fanout.published.get()) {
+                        break;
+                    }
+                    T event = fanout.ring.get((int) next & fanout.mask);
+                    if (policy != OverflowPolicy.BLOCK && fanout.published.get() - next >= fanout.capacity) {
+                        if (policy == OverflowPolicy.DROP) {
+                            cancel();
+                            fanout.droppedSubscribers.increment();
+                            actual.onError(Exceptions.failWithOverflow(
+                                    "Subscriber fell " + fanout.capacity + " events behind"));
+                            return;
+                        }
+                        Snapshot<T> resync = snapshots.get();
+                        fanout.resyncs.increment();
+                        snapshot = resync.events().iterator();
+                        next = resync.sequence();
+                        cursor.set(next);
+                        continue;
+                    }
+                    cursor.lazySet(++next);
+                    actual.onNext(event);
+                    emitted++;
+                }
+                if (emitted != 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
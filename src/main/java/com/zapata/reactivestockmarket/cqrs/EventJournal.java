@@ -0,0 +1,95 @@
+package com.zapata.reactivestockmarket.cqrs;
+
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Append-only log of sourcing events of single aggregate, used to rebuild the aggregate after restart.
+ * <p>
+ * Events are appended by the thread that handles aggregate commands, so implementations may assume a single writer.
+ */
+public interface EventJournal {
+
+    /**
+     * Journal that does not keep any events
+     */
+    EventJournal NONE = new EventJournal() {
+
+        @Override
+        public void replay(long fromPosition, BiConsumer<UUID, SourcingEvent> consumer) {
+        }
+
+        @Override
+        public long position() {
+            return 0;
+        }
+
+        @Override
+        public void append(UUID commandId, SourcingEvent event) {
+        }
+
+        @Override
+        public void whenDurable(Runnable action) {
+            action.run();
+        }
+    };
+
+    /**
+     * Replays journaled events in append order together with ids of commands that materialized them, must be called
+     * once before the first append
+     *
+     * @param fromPosition position returned by {@link #position()}, events before it are skipped
+     * @param consumer     receives command id, null if it has not been journaled, and journaled event
+     */
+    void replay(long fromPosition, BiConsumer<UUID, SourcingEvent> consumer);
+
+    /**
+     * Replays journaled events in append order, must be called once before the first append
+     *
+     * @param fromPosition position returned by {@link #position()}, events before it are skipped
+     * @param consumer     receives journaled events
+     */
+    default void replay(long fromPosition, Consumer<SourcingEvent> consumer) {
+        replay(fromPosition, (commandId, event) -> consumer.accept(event));
+    }
+
+    /**
+     * Replays all journaled events in append order, must be called once before the first append
+     *
+     * @param consumer receives journaled events
+     */
+    default void replay(Consumer<SourcingEvent> consumer) {
+        replay(0, consumer);
+    }
+
+    /**
+     * @return position right after the last appended event
+     */
+    long position();
+
+    /**
+     * Appends event to the journal, event is durable once {@link #whenDurable} runs its action
+     *
+     * @param commandId command that materialized the event, null if there is none
+     * @param event     to append
+     */
+    void append(UUID commandId, SourcingEvent event);
+
+    /**
+     * Appends event without command id, see {@link #append(UUID, SourcingEvent)}
+     *
+     * @param event to append
+     */
+    default void append(SourcingEvent event) {
+        append(null, event);
+    }
+
+    /**
+     * Runs action once all events appended so far are durable according to journal fsync policy, action may run on
+     * the calling thread or on the journal flusher thread
+     *
+     * @param action to run
+     */
+    void whenDurable(Runnable action);
+}
@@ -0,0 +1,16 @@
+package com.zapata.reactivestockmarket.cqrs;
+
+/**
+ * Counters of single {@link EventFanout} since start.
+ *
+ * @param capacity           - ring capacity
+ * @param published          - number of published events
+ * @param subscribers        - number of current subscribers
+ * @param blockedPublishes   - number of publishes that had to wait for a {@link OverflowPolicy#BLOCK} subscriber
+ * @param blockedNanos       - total time the producer spent waiting
+ * @param droppedSubscribers - number of {@link OverflowPolicy#DROP} subscribers terminated by overflow
+ * @param resyncs            - number of snapshots sent to {@link OverflowPolicy#RESYNC} subscribers
+ */
+public record FanoutStats(int capacity, long published, int subscribers, long blockedPublishes, long blockedNanos,
+                          long droppedSubscribers, long resyncs) {
+}
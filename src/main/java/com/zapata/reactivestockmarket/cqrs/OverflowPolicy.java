@@ -0,0 +1,20 @@
+package com.zapata.reactivestockmarket.cqrs;
+
+/**
+ * What happens when a subscriber of {@link EventFanout} falls a whole ring behind the producer
+ */
+public enum OverflowPolicy {
+    /**
+     * Producer waits until the subscriber frees the slot, the subscriber never loses events. Events are delivered on
+     * the producer thread while the subscriber has demand, so the subscriber must be cheap and must keep requesting.
+     */
+    BLOCK,
+    /**
+     * Subscriber is terminated with overflow error, producer is never slowed down
+     */
+    DROP,
+    /**
+     * Subscriber skips missed events and gets a snapshot that replaces them, producer is never slowed down
+     */
+    RESYNC
+}
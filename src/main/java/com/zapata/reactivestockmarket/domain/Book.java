@@ -3,23 +3,36 @@ package com.zapata.reactivestockmarket.domain;
 import com.zapata.reactivestockmarket.cqrs.Aggregate;
 import com.zapata.reactivestockmarket.cqrs.Command;
 import com.zapata.reactivestockmarket.cqrs.Event;
+import com.zapata.reactivestockmarket.cqrs.EventFanout;
+import com.zapata.reactivestockmarket.cqrs.EventJournal;
+import com.zapata.reactivestockmarket.cqrs.FanoutStats;
+import com.zapata.reactivestockmarket.cqrs.OverflowPolicy;
 import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+import com.zapata.reactivestockmarket.domain.command.AmendOrderCommand;
 import com.zapata.reactivestockmarket.domain.command.CancelOrderCommand;
 import com.zapata.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.zapata.reactivestockmarket.domain.command.MassCancelCommand;
+import com.zapata.reactivestockmarket.domain.dtos.BookDepth;
+import com.zapata.reactivestockmarket.domain.dtos.TopOfBook;
+import com.zapata.reactivestockmarket.domain.engine.BookSpec;
 import com.zapata.reactivestockmarket.domain.engine.MatchingEngine;
+import com.zapata.reactivestockmarket.domain.engine.events.BookResyncEvent;
+import com.zapata.reactivestockmarket.domain.events.AmendmentRequestedEvent;
 import com.zapata.reactivestockmarket.domain.events.CancellationRequestedEvent;
+import com.zapata.reactivestockmarket.domain.events.MassCancelRequestedEvent;
 import com.zapata.reactivestockmarket.domain.events.OrderAcceptedEvent;
 import com.zapata.reactivestockmarket.domain.events.OrderRejectedEvent;
+import com.zapata.reactivestockmarket.domain.feed.CandleFeed;
+import com.zapata.reactivestockmarket.domain.feed.DepthFeed;
+import com.zapata.reactivestockmarket.domain.journal.SnapshotStore;
+import com.zapata.reactivestockmarket.util.UuidGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -32,22 +45,81 @@ public class Book implements Aggregate {
 
     private final String aggregateId;
 
+    private final BookSpec spec;
     private final MatchingEngine matchingEngine;
-    private static final AtomicLong orderIdGenerator = new AtomicLong();
-    Sinks.Many<Event> aggregateEventSink = Sinks.many().multicast().onBackpressureBuffer();
-    Flux<Event> aggregateEventFlux = aggregateEventSink.asFlux()
-                                                             .doOnNext(n -> logger.debug(n.toString()))
-                                                             .publish()
-                                                             .autoConnect();
+    private final OrderIdGenerator orderIdGenerator;
+    private final int shard;
+    private final EventJournal journal;
+    private final SnapshotStore snapshots;
+    private final DepthFeed depthFeed;
+    private final CandleFeed candleFeed;
+    private final CommandDedupCache handledCommands;
+    private final OrderRoutes orderRoutes;
+    private final int route;
+    private final ExecutionReports.BookReports executionReports;
+    /**
+     * The last order id applied by this book and number of events applied since the last snapshot, only accessed by
+     * the aggregate thread
+     */
+    private long lastOrderId;
+    private long appliedSinceSnapshot;
+    /**
+     * Event ring shared with the matching engine, book and engine events are published in the order they happened
+     */
+    private final EventFanout<Event> events;
 
     public Book(String aggregateId, MatchingEngine matchingEngine) {
         this.aggregateId = aggregateId;
+        this.spec = BookSpec.DEFAULT;
         this.matchingEngine = matchingEngine;
+        this.orderIdGenerator = new OrderIdGenerator(0);
+        this.shard = orderIdGenerator.shardOf(aggregateId);
+        this.journal = EventJournal.NONE;
+        this.snapshots = SnapshotStore.DISABLED;
+        this.depthFeed = new DepthFeed(aggregateId);
+        this.candleFeed = new CandleFeed(aggregateId, spec);
+        this.handledCommands = new CommandDedupCache(CommandDedupCache.DEFAULT_CAPACITY,
+                                                     CommandDedupCache.DEFAULT_WINDOW);
+        this.orderRoutes = OrderRoutes.DISABLED;
+        this.route = 0;
+        this.executionReports = new ExecutionReports().book(this::aggregateEvents);
+        this.events = matchingEngine.events();
     }
 
-    public Book(String aggregateId) {
+    /**
+     * @param aggregateId      - asset name / aggregate identifier
+     * @param spec             - matching engine configuration
+     * @param orderIdGenerator - generator shared by all books of one repository, so that order ids are unique
+     * @param journal          - journal of sourcing events, events are appended before they are applied
+     * @param snapshots        - store of book snapshots taken every {@link SnapshotStore#interval()} applied events
+     * @param handledCommands  - events of recently handled commands, retried commands get the original event
+     * @param orderRoutes      - index shared by all books of one repository, accepted orders are routed to this book
+     * @param executionReports - index shared by all books of one repository, accepted session orders are reported
+     *                         to their sessions
+     */
+    public Book(String aggregateId, BookSpec spec, OrderIdGenerator orderIdGenerator, EventJournal journal,
+                SnapshotStore snapshots, CommandDedupCache handledCommands, OrderRoutes orderRoutes,
+                ExecutionReports executionReports) {
         this.aggregateId = aggregateId;
-        this.matchingEngine = new MatchingEngine();
+        this.spec = spec;
+        this.matchingEngine = new MatchingEngine(spec);
+        this.orderIdGenerator = orderIdGenerator;
+        this.shard = orderIdGenerator.shardOf(aggregateId);
+        this.journal = journal;
+        this.snapshots = snapshots;
+        this.depthFeed = new DepthFeed(aggregateId);
+        this.candleFeed = new CandleFeed(aggregateId, spec);
+        this.handledCommands = handledCommands;
+        this.orderRoutes = orderRoutes;
+        this.route = orderRoutes.register(aggregateId);
+        this.executionReports = executionReports.book(this::aggregateEvents);
+        this.events = matchingEngine.events();
+    }
+
+    public Book(String aggregateId) {
+        this(aggregateId, BookSpec.DEFAULT, new OrderIdGenerator(0), EventJournal.NONE, SnapshotStore.DISABLED,
+             new CommandDedupCache(CommandDedupCache.DEFAULT_CAPACITY, CommandDedupCache.DEFAULT_WINDOW),
+             OrderRoutes.DISABLED, new ExecutionReports());
     }
 
     @Override
@@ -55,94 +127,333 @@ public class Book implements Aggregate {
         return aggregateId;
     }
 
+    /**
+     * Aggregated depth feed of the book, fed by {@link #aggregateEvents()}
+     *
+     * @return depth feed
+     */
+    public DepthFeed depthFeed() {
+        return depthFeed;
+    }
+
+    /**
+     * Candles and trade statistics of the book, fed by {@link #aggregateEvents()}
+     *
+     * @return candle feed
+     */
+    public CandleFeed candleFeed() {
+        return candleFeed;
+    }
+
+    /**
+     * Best bid and ask, safe to call from any thread
+     *
+     * @return top of the book
+     */
+    public TopOfBook topOfBook() {
+        return matchingEngine.view().top(aggregateId);
+    }
+
+    /**
+     * Best levels of both sides, safe to call from any thread
+     *
+     * @param levels - maximum number of levels per side
+     * @return aggregated depth
+     */
+    public BookDepth depth(int levels) {
+        return matchingEngine.view().depth(aggregateId, levels);
+    }
+
+    /**
+     * Book and engine events with {@link OverflowPolicy#BLOCK} policy - events are never lost, subscriber that falls
+     * behind blocks the book
+     */
     @Override
     public Flux<Event> aggregateEvents() {
-        return aggregateEventFlux
-                .mergeWith(matchingEngine.engineEvents())
-                .cast(Event.class);
+        return aggregateEvents(OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Book and engine events, {@link OverflowPolicy#RESYNC} subscriber gets {@link BookResyncEvent} with all levels
+     * instead of missed events
+     *
+     * @param policy - what happens when subscriber falls {@link BookSpec#eventBufferSize()} events behind
+     * @return infinitive stream of events
+     */
+    public Flux<Event> aggregateEvents(OverflowPolicy policy) {
+        return events.events(policy, () -> matchingEngine.view().snapshot(aggregateId));
+    }
+
+    /**
+     * @return counters of book event ring
+     */
+    public FanoutStats eventStats() {
+        return events.stats();
+    }
+
+    /**
+     * @return journal position right after the last event of the book, 0 if its events are not journaled
+     */
+    public long journalPosition() {
+        return journal.position();
     }
 
     //---------------------------COMMAND HANDLING---------------------------------
 
     @Override
-    public Mono<SourcingEvent> routeCommand(Command command) {
-        return switch (command) {
+    public SourcingEvent handle(Command command) {
+        SourcingEvent event = switch (command) {
             case MakeOrderCommand cmd -> handleMakeOrderCommand(cmd);
             case CancelOrderCommand cmd -> handleCancelOrderCommand(cmd);
-            default -> Mono.error(new RuntimeException(
-                    command.getClass().getSimpleName() + ": event not implemented!"));
+            case AmendOrderCommand cmd -> handleAmendOrderCommand(cmd);
+            case MassCancelCommand cmd -> handleMassCancelCommand(cmd);
+            default -> throw new RuntimeException(command.getClass().getSimpleName() + ": event not implemented!");
         };
+        handledCommands.put(command.commandId(), event);
+        if (event instanceof OrderAcceptedEvent accepted) {
+            executionReports.accepted(command.commandId(), accepted.orderId());
+        }
+        return event;
     }
 
-    public Mono<SourcingEvent> handleMakeOrderCommand(MakeOrderCommand cmd) {
-        return Mono.defer(() -> {
-
-            if (cmd.amount().compareTo(BigDecimal.ZERO) <= 0 || cmd.price().compareTo(BigDecimal.ZERO) <= 0) {
-                aggregateEventSink.tryEmitNext(new OrderRejectedEvent(cmd.aggregateId(),
-                                                                      UUID.randomUUID(),
-                                                                      cmd.type(),
-                                                                      cmd.amount(),
-                                                                      cmd.price(),
-                                                                      "Amount/Price needs to be larger then zero!"));
-                return Mono.error(new IllegalStateException("Amount/Price needs to be larger then zero!"));
-            } else {
-                OrderAcceptedEvent orderAcceptedEvent = new OrderAcceptedEvent(cmd.aggregateId(),
-                                                                               UUID.randomUUID(),
-                                                                               orderIdGenerator.incrementAndGet(),
-                                                                               cmd.type(),
-                                                                               cmd.amount(),
-                                                                               cmd.price(),
-                                                                               Instant.now());
-                aggregateEventSink.tryEmitNext(orderAcceptedEvent);
-                return Mono.just(orderAcceptedEvent);
-            }
-        });
+    /**
+     * Rejected commands are not remembered, their retry is validated again
+     */
+    @Override
+    public SourcingEvent handled(Command command) {
+        return handledCommands.get(command.commandId());
     }
 
-    public Mono<SourcingEvent> handleCancelOrderCommand(CancelOrderCommand cmd) {
-        return Mono.defer(() -> {
-            if (!cmd.cancelAll() && cmd.newAmount().compareTo(BigDecimal.ZERO) <= 0) {
-                return Mono.error(new IllegalStateException("Cancellation: new amount can't be <= 0!"));
-            } else {
-                CancellationRequestedEvent event = new CancellationRequestedEvent(cmd.aggregateId(),
-                                                                                  UUID.randomUUID(),
-                                                                                  cmd.orderId(),
-                                                                                  cmd.cancelAll(),
-                                                                                  cmd.newAmount());
-                aggregateEventSink.tryEmitNext(event);
-                return Mono.just(event);
-            }
-        });
+    public SourcingEvent handleMakeOrderCommand(MakeOrderCommand cmd) {
+        if (cmd.amount().compareTo(BigDecimal.ZERO) <= 0 || cmd.price().compareTo(BigDecimal.ZERO) <= 0) {
+            throw rejectOrder(cmd, "Amount/Price needs to be larger then zero!");
+        }
+        if (!spec.supportsPrice(cmd.price())) {
+            throw rejectOrder(cmd, "Price exceeds supported precision!");
+        }
+        BigDecimal amount = spec.roundAmount(cmd.amount());
+        if (amount == null) {
+            throw rejectOrder(cmd, "Amount exceeds supported precision!");
+        }
+        if (amount.signum() <= 0) {
+            throw rejectOrder(cmd, "Amount/Price needs to be larger then zero!");
+        }
+
+        OrderAcceptedEvent orderAcceptedEvent = new OrderAcceptedEvent(cmd.aggregateId(),
+                                                                       UuidGenerator.next(),
+                                                                       orderIdGenerator.next(shard),
+                                                                       cmd.type(),
+                                                                       amount,
+                                                                       cmd.price(),
+                                                                       Instant.now());
+        journal.append(cmd.commandId(), orderAcceptedEvent);
+        events.publish(orderAcceptedEvent);
+        return orderAcceptedEvent;
+    }
+
+    private IllegalStateException rejectOrder(MakeOrderCommand cmd, String cause) {
+        events.publish(new OrderRejectedEvent(cmd.aggregateId(),
+                                              UuidGenerator.next(),
+                                              cmd.type(),
+                                              cmd.amount(),
+                                              cmd.price(),
+                                              cause));
+        return new IllegalStateException(cause);
+    }
+
+    public SourcingEvent handleCancelOrderCommand(CancelOrderCommand cmd) {
+        if (!cmd.cancelAll() && cmd.newAmount().compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalStateException("Cancellation: new amount can't be <= 0!");
+        }
+        BigDecimal newAmount = cmd.cancelAll() ? BigDecimal.ZERO : spec.roundAmount(cmd.newAmount());
+        if (newAmount == null) {
+            throw new IllegalStateException("Cancellation: new amount exceeds supported precision!");
+        }
+        //validated against the engine, accepted cancellation always cancels when applied
+        BigDecimal remainingAmount = matchingEngine.remainingAmount(cmd.orderId());
+        if (remainingAmount == null) {
+            throw new IllegalStateException("Cancellation: order is not open!");
+        }
+        if (newAmount.compareTo(remainingAmount) >= 0) {
+            throw new IllegalStateException("Cancellation: new amount must be lower than remaining amount!");
+        }
+
+        CancellationRequestedEvent event = new CancellationRequestedEvent(cmd.aggregateId(),
+                                                                          UuidGenerator.next(),
+                                                                          cmd.orderId(),
+                                                                          cmd.cancelAll(),
+                                                                          newAmount);
+        journal.append(cmd.commandId(), event);
+        events.publish(event);
+        return event;
     }
 
+    public SourcingEvent handleAmendOrderCommand(AmendOrderCommand cmd) {
+        //validated against the engine, accepted amendment always amends when applied
+        BigDecimal remainingAmount = matchingEngine.remainingAmount(cmd.orderId());
+        if (remainingAmount == null) {
+            throw new IllegalStateException("Amend: order is not open!");
+        }
+        BigDecimal price = matchingEngine.restingPrice(cmd.orderId());
+        BigDecimal newPrice = cmd.newPrice() != null ? cmd.newPrice() : price;
+        if (newPrice.signum() <= 0 || !spec.supportsPrice(newPrice)) {
+            throw new IllegalStateException("Amend: new price needs to be larger then zero and supported!");
+        }
+        BigDecimal newAmount = cmd.newAmount() != null ? spec.roundAmount(cmd.newAmount()) : remainingAmount;
+        if (newAmount == null) {
+            throw new IllegalStateException("Amend: new amount exceeds supported precision!");
+        }
+        if (newAmount.signum() <= 0) {
+            throw new IllegalStateException("Amend: new amount can't be <= 0!");
+        }
+        if (newAmount.compareTo(remainingAmount) > 0) {
+            throw new IllegalStateException("Amend: new amount can't be larger than remaining amount!");
+        }
+        if (newPrice.compareTo(price) == 0 && newAmount.compareTo(remainingAmount) == 0) {
+            throw new IllegalStateException("Amend: order already has this price and amount!");
+        }
+
+        AmendmentRequestedEvent event = new AmendmentRequestedEvent(cmd.aggregateId(),
+                                                                    UuidGenerator.next(),
+                                                                    cmd.orderId(),
+                                                                    newPrice,
+                                                                    newAmount);
+        journal.append(cmd.commandId(), event);
+        events.publish(event);
+        return event;
+    }
+
+    public SourcingEvent handleMassCancelCommand(MassCancelCommand cmd) {
+        if (!supportsBound(cmd.minPrice()) || !supportsBound(cmd.maxPrice())) {
+            throw new IllegalStateException("Mass cancel: price bound must be larger then zero and supported!");
+        }
+        if (cmd.minPrice() != null && cmd.maxPrice() != null && cmd.minPrice().compareTo(cmd.maxPrice()) > 0) {
+            throw new IllegalStateException("Mass cancel: min price can't be larger then max price!");
+        }
+
+        MassCancelRequestedEvent event = new MassCancelRequestedEvent(cmd.aggregateId(),
+                                                                      UuidGenerator.next(),
+                                                                      cmd.side(),
+                                                                      cmd.minPrice(),
+                                                                      cmd.maxPrice());
+        journal.append(cmd.commandId(), event);
+        events.publish(event);
+        return event;
+    }
+
+    private boolean supportsBound(BigDecimal price) {
+        return price == null || price.signum() > 0 && spec.supportsPrice(price);
+    }
+
+    @Override
+    public void whenDurable(Runnable action) {
+        journal.whenDurable(action);
+    }
 
     //---------------------------EVENT HANDLING---------------------------------
 
     @Override
-    public Mono<Void> routeEvent(SourcingEvent event) {
-        return switch (event) {
+    public void apply(SourcingEvent event) {
+        applyEvent(event);
+        if (snapshots.interval() > 0 && ++appliedSinceSnapshot >= snapshots.interval()) {
+            snapshot();
+        }
+    }
+
+    /**
+     * Rebuilds book from the latest snapshot and journaled events after it, must be called before the first command.
+     * Order id generator is advanced past the last recovered order, commands of replayed events are remembered, so
+     * their retry after restart gets the original event.
+     */
+    public void recover() {
+        long fromPosition = 0;
+        SnapshotStore.Snapshot snapshot = snapshots.load(aggregateId);
+        if (snapshot != null) {
+            matchingEngine.restore(aggregateId, snapshot.engine());
+            lastOrderId = snapshot.lastOrderId();
+            fromPosition = snapshot.journalPosition();
+        }
+        journal.replay(fromPosition, (commandId, event) -> {
+            applyEvent(event);
+            rememberCommand(commandId, event);
+        });
+        orderIdGenerator.advancePast(lastOrderId);
+    }
+
+    /**
+     * Journals, publishes and applies event of the primary the same way as event of a handled command. Called by the
+     * replica instead of handling commands, for events of this book in their journal order. The command is remembered
+     * like a handled one, so a client retrying it against the promoted replica gets the original event.
+     *
+     * @param commandId - command that materialized the event on the primary, null if it has not been journaled
+     * @param event     - sourcing event journaled by the primary
+     */
+    public void replicate(UUID commandId, SourcingEvent event) {
+        journal.append(commandId, event);
+        events.publish(event);
+        apply(event);
+        rememberCommand(commandId, event);
+        if (event instanceof OrderAcceptedEvent accepted) {
+            //replica promoted to primary continues after the replicated orders
+            orderIdGenerator.advancePast(accepted.orderId());
+        }
+    }
+
+    private void rememberCommand(UUID commandId, SourcingEvent event) {
+        if (commandId != null) {
+            handledCommands.put(commandId, event);
+        }
+    }
+
+    /**
+     * Copies engine state on the aggregate thread and leaves writing it to the snapshot store. Snapshot is written
+     * only once the journal is durable up to the snapshot position, so it never gets ahead of the journal.
+     */
+    private void snapshot() {
+        appliedSinceSnapshot = 0;
+        if (!snapshots.tryBegin(aggregateId)) {
+            return;
+        }
+        long start = System.nanoTime();
+        SnapshotStore.Snapshot snapshot = new SnapshotStore.Snapshot(journal.position(),
+                                                                     lastOrderId,
+                                                                     matchingEngine.snapshot());
+        logger.debug("Snapshot of {} copied in {} us", aggregateId, (System.nanoTime() - start) / 1_000);
+        journal.whenDurable(() -> snapshots.save(aggregateId, snapshot));
+    }
+
+    private void applyEvent(SourcingEvent event) {
+        switch (event) {
             case OrderAcceptedEvent evt -> handleOrderAcceptedEvent(evt);
             case CancellationRequestedEvent evt -> handleOrderCancellationRequestedEvent(evt);
-            default -> Mono.error(new RuntimeException(event.getClass().getSimpleName() + ": event not implemented!"));
-        };
+            case AmendmentRequestedEvent evt -> matchingEngine.amend(evt.orderId(),
+                                                                     evt.aggregateId(),
+                                                                     evt.newPrice(),
+                                                                     evt.newAmount());
+            case MassCancelRequestedEvent evt -> matchingEngine.massCancel(evt.aggregateId(),
+                                                                           evt.side(),
+                                                                           evt.minPrice(),
+                                                                           evt.maxPrice());
+            default -> throw new RuntimeException(event.getClass().getSimpleName() + ": event not implemented!");
+        }
     }
 
-    private Mono<Void> handleOrderAcceptedEvent(OrderAcceptedEvent evt) {
-        return Mono.fromRunnable(() -> matchingEngine.placeOrder(evt.orderId(),
-                                                                 evt.aggregateId(),
-                                                                 evt.entryTimestamp(),
-                                                                 evt.type(),
-                                                                 evt.price(),
-                                                                 evt.amount()));
+    private void handleOrderAcceptedEvent(OrderAcceptedEvent evt) {
+        lastOrderId = Math.max(lastOrderId, evt.orderId());
+        orderRoutes.put(evt.orderId(), route);
+        matchingEngine.placeOrder(evt.orderId(),
+                                  evt.aggregateId(),
+                                  evt.entryTimestamp(),
+                                  evt.type(),
+                                  evt.price(),
+                                  evt.amount());
     }
 
-    private Mono<Void> handleOrderCancellationRequestedEvent(CancellationRequestedEvent evt) {
-        return Mono.fromRunnable(() -> {
-            if (evt.cancelAll()) {
-                matchingEngine.cancelAll(evt.orderId(), evt.aggregateId());
-            } else {
-                matchingEngine.cancel(evt.orderId(),evt.aggregateId(), evt.newAmount());
-            }
-        });
+    private void handleOrderCancellationRequestedEvent(CancellationRequestedEvent evt) {
+        if (evt.cancelAll()) {
+            matchingEngine.cancelAll(evt.orderId(), evt.aggregateId());
+        } else {
+            matchingEngine.cancel(evt.orderId(), evt.aggregateId(), evt.newAmount());
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,43 +1,212 @@
 package com.zapata.reactivestockmarket.domain;
 
+import com.zapata.reactivestockmarket.MarketProperties;
 import com.zapata.reactivestockmarket.cqrs.AggregateRepository;
+import com.zapata.reactivestockmarket.cqrs.OverflowPolicy;
+import com.zapata.reactivestockmarket.domain.journal.Journal;
 import com.zapata.reactivestockmarket.domain.query.BookQueryRepository;
+import com.zapata.reactivestockmarket.metrics.LatencyMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 
 import static com.zapata.reactivestockmarket.Config.DEFAULT_CONCURRENCY_LEVEL;
 
 /**
  * Thread-safe implementation of {@link AggregateRepository} used to store Book aggregates
- *
+ * <p>
+ * If {@link Journal} is enabled, all journaled books are rebuilt on startup from their latest snapshot and the
+ * sourcing events journaled after it.
  */
 @Component("aggregateRepository")
 public class BookAggregateRepository implements AggregateRepository<Book> {
 
+    private final Logger logger = LoggerFactory.getLogger(BookAggregateRepository.class);
+
     private final ConcurrentHashMap<String, Book> aggregates = new ConcurrentHashMap<>(32,0.75f,DEFAULT_CONCURRENCY_LEVEL);
+    private final ConcurrentHashMap<String, Creation> creating = new ConcurrentHashMap<>();
+    private final OrderIdGenerator orderIdGenerator = new OrderIdGenerator(OrderIdGenerator.DEFAULT_SHARD_BITS);
+    private final OrderRoutes orderRoutes = new OrderRoutes(OrderRoutes.DEFAULT_CAPACITY);
+    private final ExecutionReports executionReports = new ExecutionReports();
     private final BookQueryRepository bookQueryRepository;
+    private final MarketProperties marketProperties;
+    private final Journal journal;
+    private final LatencyMetrics latencyMetrics;
 
     public BookAggregateRepository(BookQueryRepository bookQueryRepository) {
+        this(bookQueryRepository, MarketProperties.DEFAULT, new Journal(MarketProperties.DEFAULT));
+    }
+
+    public BookAggregateRepository(BookQueryRepository bookQueryRepository, MarketProperties marketProperties,
+                                   Journal journal) {
+        this(bookQueryRepository, marketProperties, journal, new LatencyMetrics(marketProperties));
+    }
+
+    @Autowired
+    public BookAggregateRepository(BookQueryRepository bookQueryRepository, MarketProperties marketProperties,
+                                   Journal journal, LatencyMetrics latencyMetrics) {
         this.bookQueryRepository = bookQueryRepository;
+        this.marketProperties = marketProperties;
+        this.journal = journal;
+        this.latencyMetrics = latencyMetrics;
+        recover();
+    }
+
+    /**
+     * @return latency metrics that command bus records stages of commands of these books to
+     */
+    public LatencyMetrics latencyMetrics() {
+        return latencyMetrics;
+    }
+
+    /**
+     * @return asset of recently accepted orders of these books
+     */
+    public OrderRoutes orderRoutes() {
+        return orderRoutes;
+    }
+
+    /**
+     * @return index of orders placed by sessions of these books
+     */
+    public ExecutionReports executionReports() {
+        return executionReports;
+    }
+
+    /**
+     * @return asset names of books that have been created or recovered
+     */
+    public Set<String> assets() {
+        return Collections.unmodifiableSet(aggregates.keySet());
+    }
+
+    /**
+     * Rebuilds all journaled books, so that order id generator continues after the last journaled order before any
+     * new order is accepted
+     */
+    private void recover() {
+        long start = System.nanoTime();
+        journal.aggregateIds().forEach(this::getOrCreate);
+        if (!aggregates.isEmpty()) {
+            logger.info("Recovered {} books from journal in {} ms, last order sequence {}",
+                        aggregates.size(), (System.nanoTime() - start) / 1_000_000, orderIdGenerator.maxSequence());
+        }
     }
 
     /**
      * Loads aggregate from repository.
      * For convenience of demo if aggregate is not found it will be automatically created and stored in repository.
-     * Once aggregate is created, query repository subscribes to its events.
+     * Once aggregate is created, query repository and depth feed subscribe to its events and the book is recovered
+     * from its snapshot and journal. Both subscribe with {@link OverflowPolicy#BLOCK} policy, the book waits for
+     * them rather than losing events.
      *
      * @param aggregateId / asset name to load or create from repository
      * @return book aggregate
      */
     @Override
     public Mono<Book> load(String aggregateId) {
-        return Mono.fromCallable(() -> aggregates.computeIfAbsent(aggregateId, (k) -> {
-            Book book = new Book(aggregateId);
-            //subscribe query projection for book events
-            book.aggregateEvents().concatMap(bookQueryRepository::updateProjection).subscribe();
+        return Mono.fromCallable(() -> getOrCreate(aggregateId));
+    }
+
+    /**
+     * Synchronous variant of {@link #load(String)}. Book is created and recovered by the first caller outside of the
+     * aggregate map, callers of the same asset wait for it meanwhile and books of other assets are not held up by the
+     * recovery.
+     *
+     * @param aggregateId / asset name to load or create from repository
+     * @return book aggregate
+     * @throws IllegalStateException if called for the book being created by the same thread
+     */
+    public Book getOrCreate(String aggregateId) {
+        Book book = aggregates.get(aggregateId);
+        if (book != null) {
             return book;
-        }));
+        }
+        Creation creation = new Creation(Thread.currentThread(), new CompletableFuture<>());
+        Creation pending = creating.putIfAbsent(aggregateId, creation);
+        if (pending != null) {
+            return pending.await(aggregateId);
+        }
+        try {
+            //another caller may have finished the book right before this one registered
+            book = aggregates.get(aggregateId);
+            if (book == null) {
+                book = create(aggregateId);
+                aggregates.put(aggregateId, book);
+            }
+            creation.book().complete(book);
+            return book;
+        } catch (RuntimeException | Error e) {
+            creation.book().completeExceptionally(e);
+            throw e;
+        } finally {
+            creating.remove(aggregateId, creation);
+        }
+    }
+
+    /**
+     * Looks the book up without creating it, for readers that must not create books of unknown assets. Book being
+     * created by another caller is waited for.
+     *
+     * @param aggregateId - asset name
+     * @return book aggregate, null if the book has not been created or recovered
+     */
+    public Book find(String aggregateId) {
+        Book book = aggregates.get(aggregateId);
+        if (book != null) {
+            return book;
+        }
+        Creation pending = creating.get(aggregateId);
+        return pending != null ? pending.await(aggregateId) : aggregates.get(aggregateId);
+    }
+
+    private Book create(String aggregateId) {
+        Book created = new Book(aggregateId, marketProperties.bookSpec(aggregateId), orderIdGenerator,
+                                journal.open(aggregateId), journal.snapshots(),
+                                new CommandDedupCache(marketProperties.bus().dedupCapacity(),
+                                                      marketProperties.bus().dedupWindow()),
+                                orderRoutes, executionReports);
+        //subscribe query projection for book events
+        bookQueryRepository.project(aggregateId, created.aggregateEvents());
+        created.aggregateEvents().subscribe(created.depthFeed()::accept);
+        created.aggregateEvents().subscribe(created.candleFeed()::accept);
+        if (logger.isDebugEnabled()) {
+            //events are formatted off the book thread, event log that falls behind is dropped
+            created.aggregateEvents(OverflowPolicy.DROP)
+                   .subscribe(event -> logger.debug("{}", event),
+                              error -> logger.debug("Event log of {} dropped: {}", aggregateId,
+                                                    error.getMessage()));
+        }
+        //restore snapshot and replay journal synchronously, events rebuild the projection as well
+        created.recover();
+        return created;
+    }
+
+    /**
+     * Book being created and recovered by a thread
+     */
+    private record Creation(Thread thread, CompletableFuture<Book> book) {
+
+        private Book await(String aggregateId) {
+            if (thread == Thread.currentThread()) {
+                throw new IllegalStateException("Book " + aggregateId + " is being created by this thread!");
+            }
+            try {
+                return book.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
     }
 }
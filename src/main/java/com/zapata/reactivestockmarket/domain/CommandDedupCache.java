@@ -0,0 +1,146 @@
+package com.zapata.reactivestockmarket.domain;
+
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Events materialized by recently handled commands of one book, keyed by command id, so that a retried command gets
+ * the original event instead of being handled again. Not thread-safe, only accessed by the aggregate thread.
+ * <p>
+ * Entries are kept in a ring of fixed capacity in the order they were handled, with an open addressing index of
+ * ring slots. Command ids are stored as two primitive longs, nothing is allocated per command. Entry is evicted once
+ * it is older than the window or when the ring is full, whichever comes first.
+ * <p>
+ * The cache itself is not persisted, it is rebuilt from command ids journaled with events - on recovery from events
+ * after the latest snapshot and on a replica from replicated events, see {@link Book#recover} and
+ * {@link Book#replicate}. Commands of events before the snapshot are not recognized after restart.
+ */
+public class CommandDedupCache {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final Duration DEFAULT_WINDOW = Duration.ofMinutes(1);
+    /**
+     * Cache that never finds a duplicate
+     */
+    public static final CommandDedupCache DISABLED = new CommandDedupCache(0, Duration.ZERO);
+
+    private final long windowNanos;
+    private final int ringMask;
+    private final int indexMask;
+    private final long[] mostSigBits;
+    private final long[] leastSigBits;
+    private final long[] handledAt;
+    private final SourcingEvent[] events;
+    /**
+     * Ring slot + 1 of each entry, 0 is empty, at most half full
+     */
+    private final int[] index;
+    /**
+     * Number of entries ever added and number of entries ever evicted, ring slot of entry is its number & ring mask
+     */
+    private long head;
+    private long tail;
+
+    /**
+     * @param capacity - maximum number of entries, rounded up to power of 2, 0 disables the cache
+     * @param window   - how long entry is kept
+     */
+    public CommandDedupCache(int capacity, Duration window) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+        }
+        int ringSize = capacity == 0 ? 0 : Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.windowNanos = window.toNanos();
+        this.ringMask = ringSize - 1;
+        this.mostSigBits = new long[ringSize];
+        this.leastSigBits = new long[ringSize];
+        this.handledAt = new long[ringSize];
+        this.events = new SourcingEvent[ringSize];
+        this.index = new int[ringSize * 2];
+        this.indexMask = index.length - 1;
+    }
+
+    /**
+     * @param commandId - command identifier
+     * @return event materialized by the command within the window, null if the command has not been handled
+     */
+    public SourcingEvent get(UUID commandId) {
+        if (index.length == 0) {
+            return null;
+        }
+        long msb = commandId.getMostSignificantBits();
+        long lsb = commandId.getLeastSignificantBits();
+        for (int i = hash(msb, lsb) & indexMask; index[i] != 0; i = (i + 1) & indexMask) {
+            int slot = index[i] - 1;
+            if (mostSigBits[slot] == msb && leastSigBits[slot] == lsb) {
+                return System.nanoTime() - handledAt[slot] <= windowNanos ? events[slot] : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds event of command that has not been handled within the window, evicts expired entries and the oldest
+     * entry if the cache is full
+     *
+     * @param commandId - command identifier
+     * @param event     - event materialized by the command
+     */
+    public void put(UUID commandId, SourcingEvent event) {
+        if (index.length == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        while (tail < head && now - handledAt[(int) tail & ringMask] > windowNanos) {
+            evictOldest();
+        }
+        if (head - tail > ringMask) {
+            evictOldest();
+        }
+        int slot = (int) head++ & ringMask;
+        long msb = commandId.getMostSignificantBits();
+        long lsb = commandId.getLeastSignificantBits();
+        mostSigBits[slot] = msb;
+        leastSigBits[slot] = lsb;
+        handledAt[slot] = now;
+        events[slot] = event;
+        int i = hash(msb, lsb) & indexMask;
+        while (index[i] != 0) {
+            i = (i + 1) & indexMask;
+        }
+        index[i] = slot + 1;
+    }
+
+    /**
+     * @return number of entries, including expired ones that have not been evicted yet
+     */
+    public int size() {
+        return (int) (head - tail);
+    }
+
+    private void evictOldest() {
+        int slot = (int) tail++ & ringMask;
+        events[slot] = null;
+        int hole = hash(mostSigBits[slot], leastSigBits[slot]) & indexMask;
+        while (index[hole] != slot + 1) {
+            hole = (hole + 1) & indexMask;
+        }
+        //shift back entries of the probe sequence that would not be reachable across the hole
+        for (int i = (hole + 1) & indexMask; index[i] != 0; i = (i + 1) & indexMask) {
+            int moved = index[i] - 1;
+            int home = hash(mostSigBits[moved], leastSigBits[moved]) & indexMask;
+            if (((i - home) & indexMask) >= ((i - hole) & indexMask)) {
+                index[hole] = index[i];
+                hole = i;
+            }
+        }
+        index[hole] = 0;
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32);
+    }
+}
@@ -0,0 +1,168 @@
+package com.zapata.reactivestockmarket.domain;
+
+import com.zapata.reactivestockmarket.cqrs.Event;
+import com.zapata.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.zapata.reactivestockmarket.domain.dtos.ExecutionReport;
+import com.zapata.reactivestockmarket.domain.engine.events.OrderAmendedEvent;
+import com.zapata.reactivestockmarket.domain.engine.events.OrderCanceledEvent;
+import com.zapata.reactivestockmarket.domain.engine.events.OrderMatchedEvent;
+import com.zapata.reactivestockmarket.domain.engine.events.OrdersCanceledEvent;
+import com.zapata.reactivestockmarket.util.LongHashMap;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Index of orders placed by sessions, so that book events of an order are pushed to its session as
+ * {@link ExecutionReport}s without broadcasting the events to all sessions.
+ * <p>
+ * Session registers its listener by command id before it sends {@link MakeOrderCommand}. The book moves the listener
+ * to its own index by order id when it accepts the command - on the aggregate thread, before the order is applied -
+ * so trades of the incoming order are reported even though they happen before the session gets its acknowledgement.
+ * Index of a book is only accessed by its aggregate thread, it starts to follow the book events when the first
+ * session order of the book is accepted, so books without session orders don't pay for it.
+ * <p>
+ * Orders are removed once they are done, orders of closed sessions with the next event of the order.
+ */
+public class ExecutionReports {
+
+    /**
+     * Session side of the index, called by aggregate threads and must not block
+     */
+    public interface Listener {
+
+        /**
+         * @param report - change of an order of the session
+         * @return false if the session is closed and doesn't want reports of the order any more
+         */
+        boolean onExecution(ExecutionReport report);
+    }
+
+    private final ConcurrentHashMap<UUID, Listener> expected = new ConcurrentHashMap<>();
+
+    /**
+     * Registers listener of order placed by command, must be called before the command is sent
+     *
+     * @param commandId - identifier of {@link MakeOrderCommand}
+     * @param listener  - session that gets reports of the order
+     */
+    public void expect(UUID commandId, Listener listener) {
+        expected.put(commandId, listener);
+    }
+
+    /**
+     * Drops registration of command that has not been accepted, no-op for accepted commands
+     *
+     * @param commandId - identifier of command passed to {@link #expect}
+     */
+    public void forget(UUID commandId) {
+        expected.remove(commandId);
+    }
+
+    /**
+     * @return number of commands expected and not accepted yet
+     */
+    public int expectedCount() {
+        return expected.size();
+    }
+
+    /**
+     * Creates index of single book, called once when the book is created
+     *
+     * @param events - events of the book, subscribed on the aggregate thread
+     * @return index of book orders
+     */
+    public BookReports book(Supplier<Flux<Event>> events) {
+        return new BookReports(events);
+    }
+
+    /**
+     * Session orders of one book, only accessed by the aggregate thread
+     */
+    public final class BookReports {
+
+        private final Supplier<Flux<Event>> events;
+        private final LongHashMap<Owner> owners = new LongHashMap<>();
+        private boolean subscribed;
+
+        private BookReports(Supplier<Flux<Event>> events) {
+            this.events = events;
+        }
+
+        /**
+         * Moves listener of command to accepted order, called by the book before the order is applied
+         *
+         * @param commandId - identifier of accepted command
+         * @param orderId   - identifier of accepted order
+         */
+        public void accepted(UUID commandId, long orderId) {
+            if (expected.isEmpty()) {
+                return;
+            }
+            Listener listener = expected.remove(commandId);
+            if (listener == null) {
+                return;
+            }
+            owners.put(orderId, new Owner(listener, commandId));
+            if (!subscribed) {
+                //attached by the next publish, that is the first event of the order
+                subscribed = true;
+                events.get().subscribe(this::accept);
+            }
+        }
+
+        /**
+         * @return number of open session orders of the book
+         */
+        public int size() {
+            return owners.size();
+        }
+
+        private void accept(Event event) {
+            if (owners.isEmpty()) {
+                return;
+            }
+            switch (event) {
+                case OrderMatchedEvent evt -> {
+                    BigDecimal traded = evt.previousRestingAmount().subtract(evt.restingRemainingAmount());
+                    report(evt.restingId(), evt.aggregateId(), ExecutionReport.Type.TRADE, evt.incomingId(),
+                           evt.restingPrice(), traded, evt.restingRemainingAmount());
+                    report(evt.incomingId(), evt.aggregateId(), ExecutionReport.Type.TRADE, evt.restingId(),
+                           evt.restingPrice(), traded, evt.incomingAmount().subtract(traded));
+                }
+                case OrderCanceledEvent evt -> report(evt.orderId(), evt.aggregateId(), ExecutionReport.Type.CANCELED,
+                                                      0, evt.price(), evt.canceledAmount(), evt.remainingAmount());
+                case OrderAmendedEvent evt -> report(evt.orderId(), evt.aggregateId(), ExecutionReport.Type.AMENDED,
+                                                     0, evt.price(), BigDecimal.ZERO, evt.remainingAmount());
+                case OrdersCanceledEvent evt -> {
+                    for (long orderId : evt.orderIds()) {
+                        report(orderId, evt.aggregateId(), ExecutionReport.Type.CANCELED, 0, null, null,
+                               BigDecimal.ZERO);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        private void report(long orderId, String aggregateId, ExecutionReport.Type type, long counterOrderId,
+                            BigDecimal price, BigDecimal amount, BigDecimal remainingAmount) {
+            Owner owner = owners.get(orderId);
+            if (owner == null) {
+                return;
+            }
+            boolean open = owner.listener.onExecution(new ExecutionReport(aggregateId, owner.commandId, orderId, type,
+                                                                          counterOrderId, price, amount,
+                                                                          remainingAmount));
+            if (!open || remainingAmount.signum() == 0) {
+                owners.remove(orderId);
+            }
+        }
+    }
+
+    private record Owner(Listener listener, UUID commandId) {
+    }
+}
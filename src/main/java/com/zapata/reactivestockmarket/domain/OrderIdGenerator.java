@@ -0,0 +1,95 @@
+package com.zapata.reactivestockmarket.domain;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Order id generator shared by all books of one repository, ids are unique across books without books contending on
+ * one counter.
+ * <p>
+ * Assets are hashed to one of {@code 2^shardBits} shards, each with its own sequence. Order id is the shard in the
+ * high bits followed by the shard's sequence, so ids of one book are monotonic and ids of different shards never
+ * collide. Shard of an asset depends only on its name, so it is the same after restart and {@link #advancePast(long)}
+ * with recovered order ids keeps new ids after the journaled ones.
+ * <p>
+ * With the default {@value #DEFAULT_SHARD_BITS} shard bits ids stay below {@code 2^53} and are exact in JSON clients
+ * that read numbers as doubles. Zero shard bits make a single sequence 1, 2, 3...
+ */
+public class OrderIdGenerator {
+
+    /**
+     * 64 shards, 47 bits of sequence per shard
+     */
+    public static final int DEFAULT_SHARD_BITS = 6;
+    private static final int ID_BITS = 53;
+    /**
+     * Order id shifted right by this many bits is its shard with {@link #DEFAULT_SHARD_BITS}
+     */
+    public static final int DEFAULT_SEQUENCE_BITS = ID_BITS - DEFAULT_SHARD_BITS;
+    /**
+     * Sequences are 128 bytes apart, so that books of different shards don't share a cache line
+     */
+    private static final int STRIDE = 16;
+
+    private final int shards;
+    private final int sequenceBits;
+    private final long sequenceMask;
+    private final AtomicLongArray sequences;
+
+    /**
+     * @param shardBits - number of high order id bits taken by the shard, 0 to {@code 16}
+     */
+    public OrderIdGenerator(int shardBits) {
+        if (shardBits < 0 || shardBits > 16) {
+            throw new IllegalArgumentException("Shard bits must be between 0 and 16: " + shardBits);
+        }
+        this.shards = 1 << shardBits;
+        this.sequenceBits = ID_BITS - shardBits;
+        this.sequenceMask = (1L << sequenceBits) - 1;
+        this.sequences = new AtomicLongArray(shards * STRIDE);
+    }
+
+    /**
+     * @param asset - asset name / aggregate identifier
+     * @return shard of asset, books should resolve it once and keep it
+     */
+    public int shardOf(String asset) {
+        return Math.floorMod(asset.hashCode(), shards);
+    }
+
+    /**
+     * @param shard - shard returned by {@link #shardOf(String)}
+     * @return next order id of shard
+     * @throws IllegalStateException if the shard's sequence is exhausted
+     */
+    public long next(int shard) {
+        long sequence = sequences.incrementAndGet(shard * STRIDE);
+        if (sequence > sequenceMask) {
+            throw new IllegalStateException("Order ids of shard " + shard + " are exhausted");
+        }
+        return (long) shard << sequenceBits | sequence;
+    }
+
+    /**
+     * Advances sequences of all shards past the sequence of order id, so that new ids never repeat recovered ones -
+     * including ids generated with a different number of shard bits
+     *
+     * @param orderId - recovered order id
+     */
+    public void advancePast(long orderId) {
+        long sequence = orderId & sequenceMask;
+        for (int shard = 0; shard < shards; shard++) {
+            sequences.accumulateAndGet(shard * STRIDE, sequence, Math::max);
+        }
+    }
+
+    /**
+     * @return the highest sequence of all shards, for logging
+     */
+    public long maxSequence() {
+        long max = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            max = Math.max(max, sequences.get(shard * STRIDE));
+        }
+        return max;
+    }
+}
@@ -0,0 +1,93 @@
+package com.zapata.reactivestockmarket.domain;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free index of the asset of recently accepted orders, so that commands of an order are routed to its book
+ * without reading the order projection.
+ * <p>
+ * Books are numbered when they are created, each slot packs the book number into the high bits of the order id
+ * ({@link OrderIdGenerator} ids are below {@code 2^53}), so a route is written and read as a single volatile long and
+ * a reader never sees order id of one order with book of another. The index is direct-mapped - order whose slot is
+ * taken by a newer order loses its route, {@link #assetOf(long)} returns null and callers fall back to the
+ * projection. Routes of terminal orders are not removed, the book rejects commands of orders that are not open.
+ */
+public class OrderRoutes {
+
+    /**
+     * Index that knows no routes
+     */
+    public static final OrderRoutes DISABLED = new OrderRoutes(0);
+    public static final int DEFAULT_CAPACITY = 1 << 18;
+
+    private static final int ID_BITS = 53;
+    private static final long ID_MASK = (1L << ID_BITS) - 1;
+    private static final int MAX_BOOKS = (1 << (Long.SIZE - ID_BITS)) - 1;
+
+    private final AtomicLongArray slots;
+    private final int shift;
+    /**
+     * Asset of each book number, 0 is not used - empty slot
+     */
+    private final AtomicReferenceArray<String> assets;
+    private int books;
+
+    /**
+     * @param capacity - number of slots, rounded up to power of 2, 0 disables the index
+     */
+    public OrderRoutes(int capacity) {
+        int size = capacity == 0 ? 0 : Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.slots = new AtomicLongArray(size);
+        this.shift = Long.SIZE - Integer.numberOfTrailingZeros(size);
+        this.assets = new AtomicReferenceArray<>(size == 0 ? 0 : MAX_BOOKS + 1);
+    }
+
+    /**
+     * Numbers book, called once when the book is created
+     *
+     * @param asset - asset name / aggregate identifier
+     * @return book number, 0 if the index is disabled or full - orders of the book are not routed
+     */
+    public synchronized int register(String asset) {
+        if (assets.length() == 0 || books == MAX_BOOKS) {
+            return 0;
+        }
+        assets.set(++books, asset);
+        return books;
+    }
+
+    /**
+     * Routes order to book, called by the book thread once the order is accepted
+     *
+     * @param orderId - order identifier
+     * @param book    - number returned by {@link #register(String)}
+     */
+    public void put(long orderId, int book) {
+        if (book != 0 && (orderId & ~ID_MASK) == 0) {
+            slots.set(slot(orderId), (long) book << ID_BITS | orderId);
+        }
+    }
+
+    /**
+     * @param orderId - order identifier
+     * @return asset of order, null if the order has no route
+     */
+    public String assetOf(long orderId) {
+        if (slots.length() == 0) {
+            return null;
+        }
+        long route = slots.get(slot(orderId));
+        if (route == 0 || (route & ID_MASK) != orderId) {
+            return null;
+        }
+        return assets.get((int) (route >>> ID_BITS));
+    }
+
+    /**
+     * Fibonacci hashing, the high bits of the product spread sequential ids of all shards over the slots
+     */
+    private int slot(long orderId) {
+        return (int) ((orderId * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+}
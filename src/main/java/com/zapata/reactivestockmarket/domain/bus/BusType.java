@@ -0,0 +1,18 @@
+package com.zapata.reactivestockmarket.domain.bus;
+
+/**
+ * Backend used by {@link CommandBus} to route commands to aggregates.
+ *
+ */
+public enum BusType {
+
+    /**
+     * Reactor pipeline that groups commands by aggregate {@link ReactorCommandDispatcher}
+     */
+    REACTOR,
+
+    /**
+     * Preallocated ring buffers drained by dedicated shard threads {@link RingBufferCommandDispatcher}
+     */
+    RING_BUFFER
+}
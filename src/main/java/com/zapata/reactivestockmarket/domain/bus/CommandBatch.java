@@ -0,0 +1,130 @@
+package com.zapata.reactivestockmarket.domain.bus;
+
+import com.zapata.reactivestockmarket.cqrs.Aggregate;
+import com.zapata.reactivestockmarket.cqrs.Command;
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+import com.zapata.reactivestockmarket.domain.events.CommandRejectedEvent;
+import com.zapata.reactivestockmarket.util.UuidGenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Commands of one aggregate sent together by {@link CommandBus#sendCommands}, dispatched as a single command.
+ * <p>
+ * Dispatcher handles all commands in one pass on the aggregate thread and signals the batch callback once, after
+ * the last event is durable. Rejected command doesn't stop the batch, its result is {@link CommandRejectedEvent}.
+ * Event that fails to apply has been journaled already, so the failure fails the whole batch like it fails a single
+ * command, instead of rejecting a command whose retry would get the event.
+ */
+final class CommandBatch implements Command {
+
+    private final String aggregateId;
+    private final UUID commandId = UuidGenerator.next();
+    private final List<Command> commands = new ArrayList<>();
+    /**
+     * Position of each command in the whole batch sent by the client
+     */
+    private int[] positions = new int[16];
+    private SourcingEvent[] results;
+
+    CommandBatch(String aggregateId) {
+        this.aggregateId = aggregateId;
+    }
+
+    @Override
+    public String aggregateId() {
+        return aggregateId;
+    }
+
+    @Override
+    public UUID commandId() {
+        return commandId;
+    }
+
+    void add(int position, Command command) {
+        if (commands.size() == positions.length) {
+            positions = Arrays.copyOf(positions, positions.length * 2);
+        }
+        positions[commands.size()] = position;
+        commands.add(command);
+    }
+
+    /**
+     * @return number of commands in the batch
+     */
+    int size() {
+        return commands.size();
+    }
+
+    /**
+     * Handles and applies commands in order, retried commands get their original event, must be called on the
+     * aggregate thread
+     *
+     * @param aggregate - aggregate of all commands
+     * @throws RuntimeException if event of a command couldn't be applied, commands after it are not handled
+     */
+    void handle(Aggregate aggregate) {
+        results = new SourcingEvent[commands.size()];
+        for (int i = 0; i < results.length; i++) {
+            Command command = commands.get(i);
+            SourcingEvent event;
+            try {
+                event = aggregate.handled(command);
+                if (event != null) {
+                    results[i] = event;
+                    continue;
+                }
+                event = aggregate.handle(command);
+            } catch (RuntimeException e) {
+                results[i] = reject(command, e);
+                continue;
+            }
+            aggregate.apply(event);
+            results[i] = event;
+        }
+    }
+
+    /**
+     * @return true once the aggregate has started handling the batch, its failure is not a dispatch failure then
+     */
+    boolean isStarted() {
+        return results != null;
+    }
+
+    /**
+     * Rejects commands that have not been handled, used when the batch couldn't be dispatched at all
+     *
+     * @param error - dispatch failure
+     */
+    void fail(Throwable error) {
+        if (results == null) {
+            results = new SourcingEvent[commands.size()];
+        }
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                results[i] = reject(commands.get(i), error);
+            }
+        }
+    }
+
+    /**
+     * Copies results to their positions in the whole batch
+     *
+     * @param target - results of the whole batch
+     */
+    void copyResults(SourcingEvent[] target) {
+        for (int i = 0; i < results.length; i++) {
+            target[positions[i]] = results[i];
+        }
+    }
+
+    private static CommandRejectedEvent reject(Command command, Throwable error) {
+        return new CommandRejectedEvent(command.aggregateId(),
+                                        UuidGenerator.next(),
+                                        command.commandId(),
+                                        String.valueOf(error.getMessage()));
+    }
+}
@@ -1,64 +1,78 @@
 package com.zapata.reactivestockmarket.domain.bus;
 
+import com.zapata.reactivestockmarket.MarketProperties;
 import com.zapata.reactivestockmarket.cqrs.Command;
 import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
 import com.zapata.reactivestockmarket.domain.BookAggregateRepository;
+import com.zapata.reactivestockmarket.metrics.LatencyMetrics;
 import jakarta.annotation.PreDestroy;
-import lombok.Getter;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.publisher.MonoSink;
 
-import java.util.function.Consumer;
-
-import static com.zapata.reactivestockmarket.Config.DEFAULT_CONCURRENCY_LEVEL;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Routes commands to corresponding aggregate.
  * <p>
  * Routes command for district assets/aggregates in parallel, but routes commands withing one aggregate sequentially.
  * <p>
- * Thread synchronization is done by Reactor {@see <a href="https://github.com/reactor/reactor-core/blob/178e0c7cf799122afdd6bf89be32975d2b433609/reactor-core/src/main/java/reactor/core/publisher/SinksSpecs.java#L46">tryAcquire</a>}
+ * Routing is done by {@link CommandDispatcher} backend selected by {@link BusType}
+ * - {@link BusType#REACTOR} groups commands of single hot stream by aggregate
+ * - {@link BusType#RING_BUFFER} shards aggregates over dedicated threads fed by preallocated ring buffers
  * <p>
  * Is fire and forget, canceling subscription will not change execution flow, but subscriber has option to "stay" and
  * get signaled once corresponding event has been materialized or if execution has failed.
+ * <p>
+ * Commands are stamped when sent, dispatchers record their stages to {@link LatencyMetrics} of the aggregate
+ * repository.
+ * <p>
+ * Read-only bus rejects all commands, books of a replica are changed only by events of its primary.
  */
 @Component
 public class CommandBus {
 
-    private final Logger logger = LoggerFactory.getLogger(CommandBus.class);
-
-    private final Sinks.Many<CommandWrapper> commandExecutor = Sinks.many()
-            .unicast()
-            .onBackpressureBuffer();
+    /**
+     * Maximum number of commands dispatched together by {@link #sendCommands}
+     */
+    public static final int MAX_BATCH_SIZE = 1024;
 
-    private final Disposable commandExecutorDisposable;
+    private final CommandDispatcher dispatcher;
+    private final LatencyMetrics metrics;
+    private volatile boolean readOnly;
 
     /**
-     * Instantiate command bus by subscribing to hot stream on which commands are published
+     * Instantiate command bus with {@link BusType#REACTOR} backend
      *
      * @param aggregateRepository bookAggregate
      */
     public CommandBus(BookAggregateRepository aggregateRepository) {
+        this.dispatcher = new ReactorCommandDispatcher(aggregateRepository);
+        this.metrics = aggregateRepository.latencyMetrics();
+        metrics.queueDepth(dispatcher::queueDepth);
+    }
 
-        commandExecutorDisposable = commandExecutor.asFlux()
-                .doOnNext(n -> logger.debug("{} being executed....",
-                        n.getCommand().getClass().getSimpleName()))
-                .groupBy(cw -> cw.getCommand().aggregateId()) //multiplex
-                .flatMap(aggregateCommands -> aggregateCommands //and execute distinct assets in parallel
-                        .concatMap(cmd -> aggregateRepository
-                                .load(cmd.getCommand().aggregateId())
-                                .flatMap(aggregate -> aggregate.routeCommand(cmd.getCommand())
-                                        .flatMap(event -> aggregate.routeEvent(event)
-                                                .then(cmd.signalMaterialized(event)))
-                                        .doOnError(cmd::signalError)
-                                )
-                        ), DEFAULT_CONCURRENCY_LEVEL)
-                .subscribe();
+    /**
+     * Instantiate command bus with backend configured by {@code market.bus.*} properties
+     *
+     * @param aggregateRepository bookAggregate
+     * @param marketProperties    market configuration
+     */
+    @Autowired
+    public CommandBus(BookAggregateRepository aggregateRepository, MarketProperties marketProperties) {
+        MarketProperties.BusProperties bus = marketProperties.bus();
+        this.dispatcher = switch (bus.type()) {
+            case REACTOR -> new ReactorCommandDispatcher(aggregateRepository);
+            case RING_BUFFER -> new RingBufferCommandDispatcher(aggregateRepository,
+                                                                bus.shards(),
+                                                                bus.ringBufferSize());
+        };
+        this.metrics = aggregateRepository.latencyMetrics();
+        metrics.queueDepth(dispatcher::queueDepth);
     }
 
     /**
@@ -71,17 +85,69 @@ public class CommandBus {
      * @return sourcing event once it has been materialized
      */
     public Mono<SourcingEvent> sendCommand(Command command) {
-        return Mono.defer(() -> {
-            Sinks.One<SourcingEvent> actionResult = Sinks.one();
-            //de-multiplexes multiple subscriptions by publishing commands to a single flow
-            return Mono.<Void>fromRunnable(() -> commandExecutor.emitNext(new CommandWrapper(command,
-                                    actionResult::tryEmitValue,
-                                    actionResult::tryEmitError),
-                            (signalType, emitResult) -> emitResult
-                                    .equals(Sinks.EmitResult.FAIL_NON_SERIALIZED)))
-                    .subscribeOn(Schedulers.parallel())
-                    .then(actionResult.asMono());
-        });
+        if (readOnly) {
+            return Mono.error(readOnlyError());
+        }
+        return Mono.create(sink -> dispatcher.dispatch(command, new SinkCallback(sink, metrics.sample())));
+    }
+
+    /**
+     * Sends commands in batches of up to {@link #MAX_BATCH_SIZE}. Commands of each batch are grouped by aggregate
+     * and each group is dispatched as a single command, that is handled by the aggregate in one pass and acknowledged
+     * once all its events are durable. Aggregates of a batch are handled in parallel.
+     * <p>
+     * Rejected command doesn't fail the others, its result is
+     * {@link com.zapata.reactivestockmarket.domain.events.CommandRejectedEvent}.
+     *
+     * @param commands to send
+     * @return event of each command in the order of commands
+     */
+    public Flux<SourcingEvent> sendCommands(Flux<? extends Command> commands) {
+        if (readOnly) {
+            return Flux.error(readOnlyError());
+        }
+        return commands.buffer(MAX_BATCH_SIZE)
+                       .concatMap(this::sendBatch);
+    }
+
+    /**
+     * Rejects or accepts commands from now on, commands sent before keep going
+     *
+     * @param readOnly - true to reject all commands
+     */
+    public void readOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    private static IllegalStateException readOnlyError() {
+        return new IllegalStateException("Replica is read-only, send commands to the primary!");
+    }
+
+    private Flux<SourcingEvent> sendBatch(List<? extends Command> commands) {
+        Map<String, CommandBatch> batches = new LinkedHashMap<>();
+        for (int i = 0; i < commands.size(); i++) {
+            Command command = commands.get(i);
+            batches.computeIfAbsent(command.aggregateId(), CommandBatch::new).add(i, command);
+        }
+        SourcingEvent[] results = new SourcingEvent[commands.size()];
+        return Flux.fromIterable(batches.values())
+                   .flatMap(this::dispatchBatch, batches.size())
+                   .doOnNext(batch -> batch.copyResults(results))
+                   .thenMany(Flux.defer(() -> Flux.fromArray(results)));
+    }
+
+    private Mono<CommandBatch> dispatchBatch(CommandBatch batch) {
+        return Mono.<CommandBatch>create(sink -> dispatcher.dispatch(batch, new BatchCallback(sink, batch,
+                                                                                             metrics.sample())))
+                   //only batch that couldn't be dispatched is rejected, failure to apply an event fails all commands
+                   .onErrorResume(e -> !batch.isStarted(), e -> {
+                       batch.fail(e);
+                       return Mono.just(batch);
+                   });
     }
 
     /**
@@ -89,31 +155,34 @@ public class CommandBus {
      */
     @PreDestroy
     public void destroy() {
-        commandExecutor.tryEmitComplete();
-        commandExecutorDisposable.dispose();
+        dispatcher.shutdown();
     }
 
-    private static class CommandWrapper {
+    private record BatchCallback(MonoSink<CommandBatch> sink, CommandBatch batch, long sentAt)
+            implements CommandDispatcher.CommandCallback {
 
-        @Getter
-        private final Command command;
-        private final Consumer<SourcingEvent> signalDone;
-        private final Consumer<Throwable> signalError;
+        @Override
+        public void success(SourcingEvent event) {
+            sink.success(batch);
+        }
 
-        public CommandWrapper(Command command,
-                              Consumer<SourcingEvent> action,
-                              Consumer<Throwable> signalError) {
-            this.command = command;
-            this.signalDone = action;
-            this.signalError = signalError;
+        @Override
+        public void error(Throwable error) {
+            sink.error(error);
         }
+    }
+
+    private record SinkCallback(MonoSink<SourcingEvent> sink, long sentAt)
+            implements CommandDispatcher.CommandCallback {
 
-        public Mono<Void> signalMaterialized(SourcingEvent event) {
-            return Mono.fromRunnable(() -> signalDone.accept(event));
+        @Override
+        public void success(SourcingEvent event) {
+            sink.success(event);
         }
 
-        public void signalError(Throwable t) {
-            signalError.accept(t);
+        @Override
+        public void error(Throwable error) {
+            sink.error(error);
         }
     }
 }
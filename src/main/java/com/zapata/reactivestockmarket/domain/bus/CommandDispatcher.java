@@ -0,0 +1,50 @@
+package com.zapata.reactivestockmarket.domain.bus;
+
+import com.zapata.reactivestockmarket.cqrs.Command;
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+
+/**
+ * Backend of {@link CommandBus} that routes commands to the corresponding aggregate.
+ * <p>
+ * Implementations must handle commands of one aggregate sequentially, commands of distinct aggregates may be
+ * handled in parallel.
+ */
+interface CommandDispatcher {
+
+    /**
+     * Routes command to corresponding aggregate, handles it and applies materialized event
+     *
+     * @param command  to route
+     * @param callback signaled once event has been materialized and applied or command has failed
+     */
+    void dispatch(Command command, CommandCallback callback);
+
+    /**
+     * @return number of commands waiting to be handled
+     */
+    long queueDepth();
+
+    /**
+     * Stops accepting commands and releases resources
+     */
+    void shutdown();
+
+    /**
+     * Completion callback of single command
+     */
+    interface CommandCallback {
+
+        /**
+         * @param event materialized by the command, null for {@link CommandBatch} that keeps results itself
+         */
+        void success(SourcingEvent event);
+
+        void error(Throwable error);
+
+        /**
+         * @return {@link com.zapata.reactivestockmarket.metrics.LatencyMetrics#sample()} when the command was sent,
+         * 0 if its stages are not timed
+         */
+        long sentAt();
+    }
+}
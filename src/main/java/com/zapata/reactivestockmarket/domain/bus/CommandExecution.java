@@ -0,0 +1,78 @@
+package com.zapata.reactivestockmarket.domain.bus;
+
+import com.zapata.reactivestockmarket.cqrs.Aggregate;
+import com.zapata.reactivestockmarket.cqrs.Command;
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+import com.zapata.reactivestockmarket.metrics.LatencyMetrics;
+import com.zapata.reactivestockmarket.metrics.Stage;
+
+/**
+ * Handles dispatched command on the aggregate thread the same way for all {@link CommandDispatcher}s, recording
+ * {@link Stage#QUEUE}, {@link Stage#HANDLE}, {@link Stage#APPLY} and {@link Stage#DURABLE} latencies of sampled
+ * commands.
+ * <p>
+ * {@link CommandBatch} is recorded as a single command that waits and becomes durable, the handling of its
+ * commands is not split into stages. Command already handled by the aggregate, see {@link Aggregate#handled(Command)},
+ * is not handled again.
+ */
+final class CommandExecution {
+
+    private CommandExecution() {
+    }
+
+    /**
+     * Handles command, applies its event and signals callback once the event is durable
+     *
+     * @param aggregate - aggregate of the command
+     * @param command   - command to handle
+     * @param callback  - signaled with materialized event, or with the original event of retried command
+     * @param metrics   - metrics to record stages to
+     * @throws RuntimeException if command has been rejected, callback is not signaled
+     */
+    static void execute(Aggregate aggregate, Command command, CommandDispatcher.CommandCallback callback,
+                        LatencyMetrics metrics) {
+        LatencyMetrics.AssetLatency latency = metrics.asset(aggregate.aggregateId());
+        long sentAt = callback.sentAt();
+        if (command instanceof CommandBatch batch) {
+            long now = sentAt != 0 ? latency.record(Stage.QUEUE, sentAt) : 0;
+            batch.handle(aggregate);
+            latency.applied(batch.size());
+            whenDurable(aggregate, callback, latency, null, now);
+            return;
+        }
+        SourcingEvent original = aggregate.handled(command);
+        if (original != null) {
+            //retried command, acknowledged with the original event once it is durable
+            whenDurable(aggregate, callback, latency, original, 0);
+        } else if (sentAt == 0) {
+            //command is not sampled, don't read the clock
+            SourcingEvent event = aggregate.handle(command);
+            aggregate.apply(event);
+            latency.applied(1);
+            whenDurable(aggregate, callback, latency, event, 0);
+        } else {
+            long now = latency.record(Stage.QUEUE, sentAt);
+            SourcingEvent event = aggregate.handle(command);
+            now = latency.record(Stage.HANDLE, now);
+            aggregate.apply(event);
+            now = latency.record(Stage.APPLY, now);
+            latency.applied(1);
+            whenDurable(aggregate, callback, latency, event, now);
+        }
+    }
+
+    /**
+     * @param applied - {@link System#nanoTime()} when the event was applied or 0 if command is not sampled
+     */
+    private static void whenDurable(Aggregate aggregate, CommandDispatcher.CommandCallback callback,
+                                    LatencyMetrics.AssetLatency latency, SourcingEvent event, long applied) {
+        if (applied == 0) {
+            aggregate.whenDurable(() -> callback.success(event));
+            return;
+        }
+        aggregate.whenDurable(() -> {
+            latency.record(Stage.DURABLE, applied);
+            callback.success(event);
+        });
+    }
+}
@@ -0,0 +1,122 @@
+package com.zapata.reactivestockmarket.domain.bus;
+
+import com.zapata.reactivestockmarket.cqrs.Command;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated multi-producer, single-consumer ring buffer of commands (Disruptor style).
+ * <p>
+ * Producers claim a sequence with a single atomic increment, write the slot and publish it by storing the sequence
+ * into {@link #published}. The consumer reads slots strictly in sequence order and frees them by advancing
+ * {@link #consumed}. Producers wait (spin, then park) while the buffer is full, so the buffer also applies
+ * backpressure to producers.
+ */
+final class CommandRingBuffer {
+
+    private static final int SPIN_TRIES = 256;
+    private static final long PARK_NANOS = 1_000L;
+
+    private final int mask;
+    private final int capacity;
+    private final Command[] commands;
+    private final CommandDispatcher.CommandCallback[] callbacks;
+    private final AtomicLongArray published;
+
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final AtomicLong consumed = new AtomicLong(-1);
+
+    private volatile Thread consumer;
+    private volatile boolean consumerParked;
+    private long next;
+
+    CommandRingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring buffer size must be power of 2!");
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.commands = new Command[capacity];
+        this.callbacks = new CommandDispatcher.CommandCallback[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * Publishes command, waits while the buffer is full. Safe to call from multiple threads.
+     *
+     * @return false if the buffer was full and publisher had to wait
+     */
+    boolean publish(Command command, CommandDispatcher.CommandCallback callback) {
+        long sequence = claimed.incrementAndGet();
+        int tries = 0;
+        while (sequence - capacity > consumed.get()) {
+            if (++tries < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+
+        int index = (int) sequence & mask;
+        commands[index] = command;
+        callbacks[index] = callback;
+        published.set(index, sequence);
+
+        if (consumerParked) {
+            LockSupport.unpark(consumer);
+        }
+        return tries == 0;
+    }
+
+    /**
+     * Number of published commands that have not been taken by the consumer yet
+     */
+    long size() {
+        return Math.max(0, claimed.get() - consumed.get());
+    }
+
+    /**
+     * Takes next command, only the consumer thread may call it
+     *
+     * @param handler - receives command and its callback
+     * @return false if there is no published command
+     */
+    boolean poll(CommandHandler handler) {
+        int index = (int) next & mask;
+        if (published.get(index) != next) {
+            return false;
+        }
+
+        Command command = commands[index];
+        CommandDispatcher.CommandCallback callback = callbacks[index];
+        commands[index] = null;
+        callbacks[index] = null;
+        consumed.set(next++);
+
+        handler.handle(command, callback);
+        return true;
+    }
+
+    /**
+     * Parks the consumer thread until a producer publishes, only the consumer thread may call it
+     */
+    void awaitPublished(long maxNanos) {
+        consumer = Thread.currentThread();
+        consumerParked = true;
+        //re-check after announcing, producer either sees the flag or the consumer sees the published slot
+        if (published.get((int) next & mask) != next) {
+            LockSupport.parkNanos(this, maxNanos);
+        }
+        consumerParked = false;
+    }
+
+    @FunctionalInterface
+    interface CommandHandler {
+        void handle(Command command, CommandDispatcher.CommandCallback callback);
+    }
+}
@@ -0,0 +1,81 @@
+package com.zapata.reactivestockmarket.domain.bus;
+
+import com.zapata.reactivestockmarket.cqrs.Command;
+import com.zapata.reactivestockmarket.domain.BookAggregateRepository;
+import com.zapata.reactivestockmarket.metrics.LatencyMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.Scannable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import static com.zapata.reactivestockmarket.Config.DEFAULT_CONCURRENCY_LEVEL;
+
+/**
+ * {@link CommandDispatcher} that publishes all commands to a single hot stream, groups them by aggregate and
+ * executes distinct aggregates in parallel.
+ * <p>
+ * Commands are emitted from {@link Schedulers#parallel()}, the thread that emits may drain the stream and handle
+ * commands of any aggregate, so it must never be the caller's - a web request thread or a Netty event loop.
+ * <p>
+ * Thread synchronization is done by Reactor {@see <a href="https://github.com/reactor/reactor-core/blob/178e0c7cf799122afdd6bf89be32975d2b433609/reactor-core/src/main/java/reactor/core/publisher/SinksSpecs.java#L46">tryAcquire</a>}
+ */
+class ReactorCommandDispatcher implements CommandDispatcher {
+
+    private final Logger logger = LoggerFactory.getLogger(ReactorCommandDispatcher.class);
+
+    private final Sinks.Many<CommandWrapper> commandExecutor = Sinks.many()
+            .unicast()
+            .onBackpressureBuffer();
+
+    private final Disposable commandExecutorDisposable;
+    private final LatencyMetrics metrics;
+    private final Scheduler scheduler = Schedulers.parallel();
+
+    ReactorCommandDispatcher(BookAggregateRepository aggregateRepository) {
+        this.metrics = aggregateRepository.latencyMetrics();
+
+        commandExecutorDisposable = commandExecutor.asFlux()
+                .doOnNext(n -> logger.debug("{} being executed....",
+                        n.command().getClass().getSimpleName()))
+                .groupBy(cw -> cw.command().aggregateId()) //multiplex
+                .flatMap(aggregateCommands -> aggregateCommands //and execute distinct assets in parallel
+                        .concatMap(cmd -> aggregateRepository
+                                .load(cmd.command().aggregateId())
+                                .flatMap(aggregate -> Mono.fromRunnable(() -> CommandExecution.execute(
+                                        aggregate, cmd.command(), cmd.callback(), metrics)))
+                                .doOnError(e -> cmd.callback().error(e))
+                                .onErrorResume(e -> Mono.empty()) //failed command must not stop the aggregate
+                        ), DEFAULT_CONCURRENCY_LEVEL)
+                .subscribe();
+    }
+
+    @Override
+    public void dispatch(Command command, CommandCallback callback) {
+        //de-multiplexes multiple subscriptions by publishing commands to a single flow
+        scheduler.schedule(() -> commandExecutor.emitNext(new CommandWrapper(command, callback),
+                                                          (signalType, emitResult) -> {
+                                                              metrics.recordEmitFailure();
+                                                              return emitResult.equals(
+                                                                      Sinks.EmitResult.FAIL_NON_SERIALIZED);
+                                                          }));
+    }
+
+    @Override
+    public long queueDepth() {
+        Integer buffered = commandExecutor.scan(Scannable.Attr.BUFFERED);
+        return buffered != null ? buffered : 0;
+    }
+
+    @Override
+    public void shutdown() {
+        commandExecutor.tryEmitComplete();
+        commandExecutorDisposable.dispose();
+    }
+
+    private record CommandWrapper(Command command, CommandCallback callback) {
+    }
+}
@@ -0,0 +1,134 @@
+package com.zapata.reactivestockmarket.domain.bus;
+
+import com.zapata.reactivestockmarket.cqrs.Command;
+import com.zapata.reactivestockmarket.domain.Book;
+import com.zapata.reactivestockmarket.domain.BookAggregateRepository;
+import com.zapata.reactivestockmarket.metrics.LatencyMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link CommandDispatcher} that shards aggregates over a fixed number of dedicated consumer threads.
+ * <p>
+ * Each aggregate is always handled by the same shard, so commands of one aggregate are handled sequentially on
+ * one thread without any further synchronization. Each shard drains its own {@link CommandRingBuffer} and calls
+ * {@link Book#handle} and {@link Book#apply} directly - there are no reactive operators between publishing a
+ * command and applying its event. {@link CommandBatch} takes a single slot and is handled in one go.
+ */
+class RingBufferCommandDispatcher implements CommandDispatcher {
+
+    private static final int SPIN_TRIES = 1_000;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = 1_000_000L;
+
+    private final Logger logger = LoggerFactory.getLogger(RingBufferCommandDispatcher.class);
+
+    private final BookAggregateRepository aggregateRepository;
+    private final LatencyMetrics metrics;
+    private final Shard[] shards;
+
+    private volatile boolean running = true;
+
+    RingBufferCommandDispatcher(BookAggregateRepository aggregateRepository, int shardCount, int ringBufferSize) {
+        this.aggregateRepository = aggregateRepository;
+        this.metrics = aggregateRepository.latencyMetrics();
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, ringBufferSize);
+            shards[i].thread.start();
+        }
+    }
+
+    @Override
+    public void dispatch(Command command, CommandCallback callback) {
+        if (!running) {
+            callback.error(new IllegalStateException("Command bus has been shut down!"));
+            return;
+        }
+        if (!shardOf(command.aggregateId()).ringBuffer.publish(command, callback)) {
+            metrics.recordEmitFailure();
+        }
+    }
+
+    /**
+     * Number of commands waiting in ring buffers of all shards
+     */
+    @Override
+    public long queueDepth() {
+        long depth = 0;
+        for (Shard shard : shards) {
+            depth += shard.ringBuffer.size();
+        }
+        return depth;
+    }
+
+    private Shard shardOf(String aggregateId) {
+        return shards[Math.floorMod(aggregateId.hashCode(), shards.length)];
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        for (Shard shard : shards) {
+            shard.thread.interrupt();
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join(1_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private final class Shard implements Runnable, CommandRingBuffer.CommandHandler {
+
+        private final CommandRingBuffer ringBuffer;
+        private final Thread thread;
+        /**
+         * Shard local cache of aggregates, only accessed by shard thread
+         */
+        private final Map<String, Book> books = new HashMap<>();
+
+        private Shard(int index, int ringBufferSize) {
+            this.ringBuffer = new CommandRingBuffer(ringBufferSize);
+            this.thread = new Thread(this, "command-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (running) {
+                if (ringBuffer.poll(this)) {
+                    idle = 0;
+                } else if (++idle < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else if (idle < SPIN_TRIES + YIELD_TRIES) {
+                    Thread.yield();
+                } else {
+                    ringBuffer.awaitPublished(PARK_NANOS);
+                }
+            }
+            //fail commands that were published during shutdown
+            while (ringBuffer.poll((command, callback) -> callback.error(
+                    new IllegalStateException("Command bus has been shut down!")))) {
+                logger.debug("Rejected {} on shutdown", thread.getName());
+            }
+        }
+
+        @Override
+        public void handle(Command command, CommandCallback callback) {
+            try {
+                Book book = books.computeIfAbsent(command.aggregateId(), aggregateRepository::getOrCreate);
+                CommandExecution.execute(book, command, callback, metrics);
+            } catch (Throwable e) {
+                callback.error(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.zapata.reactivestockmarket.domain.command;
+
+import com.zapata.reactivestockmarket.cqrs.Command;
+import org.springframework.lang.NonNull;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Command to change price and/or reduce amount of resting order in one step, unset value is kept as it is
+ *
+ * @param newPrice  - new price of the order, null keeps the price
+ * @param newAmount - new remaining amount of the order, null keeps the amount
+ */
+public record AmendOrderCommand(@NonNull String aggregateId, @NonNull UUID commandId, long orderId,
+                                BigDecimal newPrice, BigDecimal newAmount)
+        implements Command {
+
+}
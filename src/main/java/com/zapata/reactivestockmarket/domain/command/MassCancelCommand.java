@@ -0,0 +1,21 @@
+package com.zapata.reactivestockmarket.domain.command;
+
+import com.zapata.reactivestockmarket.cqrs.Command;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import org.springframework.lang.NonNull;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Command to cancel all resting orders of the book, or those of one side within price band
+ *
+ * @param side     - side of cancelled orders, null cancels both sides
+ * @param minPrice - lowest price of cancelled orders, null if unbounded
+ * @param maxPrice - highest price of cancelled orders, null if unbounded
+ */
+public record MassCancelCommand(@NonNull String aggregateId, @NonNull UUID commandId, OrderType side,
+                                BigDecimal minPrice, BigDecimal maxPrice)
+        implements Command {
+
+}
@@ -0,0 +1,12 @@
+package com.zapata.reactivestockmarket.domain.dtos;
+
+import java.util.UUID;
+
+/**
+ * New values of resting order, unset value is kept as it is
+ *
+ * @param price     - new limit price
+ * @param amount    - new amount to fill, not larger than pending amount
+ * @param commandId - optional client generated id, request retried with the same id is not applied again
+ */
+public record AmendOrderRequest(Double price, Double amount, UUID commandId) {}
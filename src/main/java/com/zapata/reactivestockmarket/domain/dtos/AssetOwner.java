@@ -0,0 +1,11 @@
+package com.zapata.reactivestockmarket.domain.dtos;
+
+/**
+ * Node that owns the book of an asset
+ *
+ * @param asset  - asset name / aggregate identifier
+ * @param nodeId - identifier of the owner
+ * @param url    - base URL of REST API of the owner
+ * @param local  - true if the node answering is the owner
+ */
+public record AssetOwner(String asset, String nodeId, String url, boolean local) {}
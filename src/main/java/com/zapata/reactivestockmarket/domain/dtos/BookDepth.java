@@ -0,0 +1,14 @@
+package com.zapata.reactivestockmarket.domain.dtos;
+
+import java.util.List;
+
+/**
+ * Aggregated depth of a book limited to number of levels per side. Bids are ordered from the best, highest price,
+ * asks from the lowest.
+ *
+ * @param asset   - asset name / aggregate identifier
+ * @param version - number of book updates included
+ * @param bids    - buy levels
+ * @param asks    - sell levels
+ */
+public record BookDepth(String asset, long version, List<DepthLevel> bids, List<DepthLevel> asks) {}
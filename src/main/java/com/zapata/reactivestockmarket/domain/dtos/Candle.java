@@ -0,0 +1,21 @@
+package com.zapata.reactivestockmarket.domain.dtos;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * OHLCV bar of trades of one interval
+ *
+ * @param asset    - asset name / aggregate identifier
+ * @param interval - interval label, i.e. {@code 1m}
+ * @param start    - start of the interval, inclusive
+ * @param open     - price of the first trade
+ * @param high     - the highest trade price
+ * @param low      - the lowest trade price
+ * @param close    - price of the last trade
+ * @param volume   - traded amount
+ * @param vwap     - volume weighted average price
+ * @param trades   - number of trades
+ */
+public record Candle(String asset, String interval, Instant start, BigDecimal open, BigDecimal high, BigDecimal low,
+                     BigDecimal close, BigDecimal volume, BigDecimal vwap, long trades) {}
@@ -0,0 +1,13 @@
+package com.zapata.reactivestockmarket.domain.dtos;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cluster as seen by one node
+ *
+ * @param nodeId      - identifier of the node answering
+ * @param nodes       - identifiers of all nodes
+ * @param assignments - explicit assignments of assets to nodes, other assets are assigned by hash
+ */
+public record ClusterStatus(String nodeId, List<String> nodes, Map<String, String> assignments) {}
@@ -0,0 +1,8 @@
+package com.zapata.reactivestockmarket.domain.dtos;
+
+import java.math.BigDecimal;
+
+/**
+ * Aggregated amount of all resting orders at price, zero amount removes the level
+ */
+public record DepthLevel(BigDecimal price, BigDecimal amount) {}
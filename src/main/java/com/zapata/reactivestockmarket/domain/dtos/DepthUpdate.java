@@ -0,0 +1,16 @@
+package com.zapata.reactivestockmarket.domain.dtos;
+
+import java.util.List;
+
+/**
+ * Message of aggregated depth feed. Snapshot carries all levels of the book, update carries the latest state of levels
+ * that have changed since the previous message. Bids are ordered from the best, highest price, asks from the lowest.
+ *
+ * @param asset    - asset name / aggregate identifier
+ * @param sequence - number of book changes included in the message
+ * @param snapshot - true if the message replaces the whole book
+ * @param bids     - buy levels
+ * @param asks     - sell levels
+ */
+public record DepthUpdate(String asset, long sequence, boolean snapshot, List<DepthLevel> bids,
+                          List<DepthLevel> asks) {}
@@ -0,0 +1,26 @@
+package com.zapata.reactivestockmarket.domain.dtos;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Change of an order pushed to the session that placed it
+ *
+ * @param asset           - asset name / aggregate identifier
+ * @param commandId       - identifier of the command that placed the order
+ * @param orderId         - order identifier
+ * @param type            - what happened to the order
+ * @param counterOrderId  - order on the other side of the trade, 0 for other types
+ * @param price           - trade price, new price of amended order, price of canceled order, null for mass cancel
+ * @param amount          - traded or canceled amount, 0 for amendment, null for mass cancel
+ * @param remainingAmount - amount still open, 0 once the order is done
+ */
+public record ExecutionReport(String asset, UUID commandId, long orderId, Type type, long counterOrderId,
+                              BigDecimal price, BigDecimal amount, BigDecimal remainingAmount) {
+
+    public enum Type {
+        TRADE,
+        CANCELED,
+        AMENDED
+    }
+}
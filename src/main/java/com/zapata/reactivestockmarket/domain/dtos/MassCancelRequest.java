@@ -0,0 +1,13 @@
+package com.zapata.reactivestockmarket.domain.dtos;
+
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+
+/**
+ * Filter of orders to cancel, unset field matches any
+ *
+ * @param asset     - asset name, orders of all books if unset
+ * @param direction - side to cancel, both sides if unset
+ * @param minPrice  - the lowest price to cancel, inclusive
+ * @param maxPrice  - the highest price to cancel, inclusive
+ */
+public record MassCancelRequest(String asset, OrderType direction, Double minPrice, Double maxPrice) {}
@@ -2,4 +2,9 @@ package com.zapata.reactivestockmarket.domain.dtos;
 
 import com.zapata.reactivestockmarket.domain.query.OrderType;
 
-public record PlaceOrderRequest(String asset, double price, double amount, OrderType direction) {}
+import java.util.UUID;
+
+/**
+ * @param commandId - optional client generated id, request retried with the same id is not placed again
+ */
+public record PlaceOrderRequest(String asset, double price, double amount, OrderType direction, UUID commandId) {}
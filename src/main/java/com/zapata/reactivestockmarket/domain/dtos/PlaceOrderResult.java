@@ -0,0 +1,18 @@
+package com.zapata.reactivestockmarket.domain.dtos;
+
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import lombok.Builder;
+
+/**
+ * Result of single order of a batch, either accepted order with its id or rejected order with error
+ */
+@Builder
+public record PlaceOrderResult(
+    Long id,
+    String timestamp,
+    String asset,
+    double price,
+    double amount,
+    OrderType direction,
+    String error
+) {}
@@ -0,0 +1,42 @@
+package com.zapata.reactivestockmarket.domain.dtos;
+
+import lombok.Builder;
+
+import java.math.BigDecimal;
+
+/**
+ * Message pushed over order entry WebSocket session - response to a request or execution report of session order
+ *
+ * @param type            - kind of message
+ * @param requestId       - request the response belongs to, request that placed the order for execution report
+ * @param orderId         - placed, canceled or amended order, order of execution report
+ * @param timestamp       - time the order was accepted, time of the response for cancel and amend
+ * @param error           - why the request has been rejected
+ * @param asset           - asset of execution report
+ * @param execution       - what happened to the order
+ * @param counterOrderId  - order on the other side of the trade
+ * @param price           - see {@link ExecutionReport#price()}
+ * @param amount          - see {@link ExecutionReport#amount()}
+ * @param remainingAmount - amount still open, 0 once the order is done
+ */
+@Builder
+public record SessionMessage(
+    Type type,
+    long requestId,
+    Long orderId,
+    String timestamp,
+    String error,
+    String asset,
+    ExecutionReport.Type execution,
+    Long counterOrderId,
+    BigDecimal price,
+    BigDecimal amount,
+    BigDecimal remainingAmount
+) {
+
+    public enum Type {
+        ACK,
+        REJECT,
+        EXECUTION
+    }
+}
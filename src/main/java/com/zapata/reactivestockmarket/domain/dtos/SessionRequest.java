@@ -0,0 +1,24 @@
+package com.zapata.reactivestockmarket.domain.dtos;
+
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+
+/**
+ * Request sent over order entry WebSocket session, one JSON message per request
+ *
+ * @param type      - what the request does
+ * @param requestId - client's id of the request, unique within the session, responses and execution reports carry it
+ * @param asset     - asset name, required to place order, cancel and amend are routed by order id if unset
+ * @param price     - limit price of placed order, new price of amended order
+ * @param amount    - amount of placed order, new amount of amended order
+ * @param direction - side of placed order
+ * @param orderId   - order to cancel or amend
+ */
+public record SessionRequest(Type type, long requestId, String asset, Double price, Double amount,
+                             OrderType direction, Long orderId) {
+
+    public enum Type {
+        PLACE,
+        CANCEL,
+        AMEND
+    }
+}
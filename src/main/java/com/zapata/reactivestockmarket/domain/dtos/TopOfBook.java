@@ -0,0 +1,16 @@
+package com.zapata.reactivestockmarket.domain.dtos;
+
+import java.math.BigDecimal;
+
+/**
+ * Best bid and best ask of a book, price and amount of a side are null if the side is empty
+ *
+ * @param asset     - asset name / aggregate identifier
+ * @param version   - number of book updates included
+ * @param bidPrice  - highest buy price
+ * @param bidAmount - aggregated amount resting at the highest buy price
+ * @param askPrice  - lowest sell price
+ * @param askAmount - aggregated amount resting at the lowest sell price
+ */
+public record TopOfBook(String asset, long version, BigDecimal bidPrice, BigDecimal bidAmount, BigDecimal askPrice,
+                        BigDecimal askAmount) {}
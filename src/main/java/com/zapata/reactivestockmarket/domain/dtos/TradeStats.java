@@ -0,0 +1,17 @@
+package com.zapata.reactivestockmarket.domain.dtos;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Trade statistics of a book, last trade values are null until the first trade
+ *
+ * @param asset         - asset name / aggregate identifier
+ * @param lastPrice     - price of the last trade
+ * @param lastTradeTime - time of the last trade
+ * @param volume24h     - amount traded in the last 24 hourly bars
+ * @param vwap24h       - volume weighted average price of the last 24 hourly bars, null without trades
+ * @param trades24h     - number of trades in the last 24 hourly bars
+ */
+public record TradeStats(String asset, BigDecimal lastPrice, Instant lastTradeTime, BigDecimal volume24h,
+                         BigDecimal vwap24h, long trades24h) {}
@@ -0,0 +1,157 @@
+package com.zapata.reactivestockmarket.domain.engine;
+
+import com.zapata.reactivestockmarket.cqrs.EventFanout;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Per asset configuration of {@link MatchingEngine}.
+ * <p>
+ * Engine keeps prices and amounts as scaled {@code long}s - price 10.05 with price scale 2 is 1005 ticks, amount
+ * 0.25 with amount scale 8 is 25000000 units.
+ *
+ * @param orderBookType   - data structure used to keep resting orders
+ * @param priceScale      - number of decimal places of price tick
+ * @param amountScale     - number of decimal places of amount unit
+ * @param amountRounding  - rounding applied to amounts with more decimal places than amount scale,
+ *                        {@link RoundingMode#UNNECESSARY} rejects such amounts
+ * @param orderPoolSize   - number of preallocated orders that are recycled, 0 disables pooling
+ * @param eventBufferSize - capacity of the book event ring, power of 2
+ */
+public record BookSpec(OrderBookType orderBookType, int priceScale, int amountScale, RoundingMode amountRounding,
+                       int orderPoolSize, int eventBufferSize) {
+
+    private static final int MAX_LONG_DIGITS = 18;
+    private static final long[] POWERS_OF_TEN = new long[MAX_LONG_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    public static final BookSpec DEFAULT = new BookSpec(OrderBookType.TREE, 8, 8, RoundingMode.UNNECESSARY, 0,
+                                                        EventFanout.DEFAULT_CAPACITY);
+
+    public BookSpec {
+        if (orderBookType == null || amountRounding == null) {
+            throw new IllegalArgumentException("Order book type and amount rounding must be set!");
+        }
+        if (priceScale < 0 || priceScale > MAX_LONG_DIGITS || amountScale < 0 || amountScale > MAX_LONG_DIGITS) {
+            throw new IllegalArgumentException("Price and amount scale must be between 0 and 18!");
+        }
+        if (orderPoolSize < 0) {
+            throw new IllegalArgumentException("Order pool size can't be negative!");
+        }
+        if (Integer.bitCount(eventBufferSize) != 1) {
+            throw new IllegalArgumentException("Event buffer size must be power of 2!");
+        }
+    }
+
+    public BookSpec(OrderBookType orderBookType, int priceScale, int amountScale, RoundingMode amountRounding,
+                    int orderPoolSize) {
+        this(orderBookType, priceScale, amountScale, amountRounding, orderPoolSize, DEFAULT.eventBufferSize);
+    }
+
+    public BookSpec(OrderBookType orderBookType, int priceScale) {
+        this(orderBookType, priceScale, DEFAULT.amountScale, DEFAULT.amountRounding, DEFAULT.orderPoolSize);
+    }
+
+    /**
+     * Checks if price can be represented as whole number of ticks
+     *
+     * @param price - limit price
+     * @return true if price fits into configured price scale
+     */
+    public boolean supportsPrice(BigDecimal price) {
+        return fits(price, priceScale);
+    }
+
+    /**
+     * Rounds amount to configured amount scale, amounts that already fit are returned as they are
+     *
+     * @param amount - order amount
+     * @return rounded amount or null if amount can't be rounded with configured rounding mode
+     */
+    public BigDecimal roundAmount(BigDecimal amount) {
+        if (amount.scale() <= amountScale) {
+            return fits(amount, amountScale) ? amount : null;
+        }
+        try {
+            BigDecimal rounded = amount.setScale(amountScale, amountRounding);
+            return fits(rounded, amountScale) ? rounded : null;
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Converts price to number of ticks
+     *
+     * @param price - limit price
+     * @return price expressed in ticks
+     * @throws ArithmeticException if price doesn't fit into configured price scale
+     */
+    public long toTicks(BigDecimal price) {
+        return price.movePointRight(priceScale).longValueExact();
+    }
+
+    /**
+     * Converts amount to number of units
+     *
+     * @param amount - order amount
+     * @return amount expressed in units
+     * @throws ArithmeticException if amount doesn't fit into configured amount scale
+     */
+    public long toUnits(BigDecimal amount) {
+        return amount.movePointRight(amountScale).longValueExact();
+    }
+
+    /**
+     * Converts number of units to amount
+     *
+     * @param units - amount expressed in units
+     * @return amount
+     */
+    public BigDecimal toAmount(long units) {
+        return BigDecimal.valueOf(units, amountScale);
+    }
+
+    /**
+     * Converts number of units to amount with the scale the amount was entered with, so that amounts published by
+     * the engine look the same as the amounts it was given - 10 stays 10, not 10.00000000
+     *
+     * @param units - amount expressed in units
+     * @param scale - scale of the amount, not lower than the number of decimal places the units need
+     * @return amount
+     * @throws ArithmeticException if units need more decimal places than the scale has
+     */
+    public BigDecimal toAmount(long units, int scale) {
+        if (scale >= amountScale) {
+            BigDecimal amount = BigDecimal.valueOf(units, amountScale);
+            return scale == amountScale ? amount : amount.setScale(scale, RoundingMode.UNNECESSARY);
+        }
+        int shift = amountScale - scale;
+        if (shift <= MAX_LONG_DIGITS && units % POWERS_OF_TEN[shift] == 0) {
+            return BigDecimal.valueOf(units / POWERS_OF_TEN[shift], scale);
+        }
+        return BigDecimal.valueOf(units, amountScale).setScale(scale, RoundingMode.UNNECESSARY);
+    }
+
+    /**
+     * Converts number of ticks to price
+     *
+     * @param ticks - price expressed in ticks
+     * @return price
+     */
+    public BigDecimal toPrice(long ticks) {
+        return BigDecimal.valueOf(ticks, priceScale);
+    }
+
+    private static boolean fits(BigDecimal value, int scale) {
+        return value.stripTrailingZeros().scale() <= scale
+                && value.precision() - value.scale() + scale <= MAX_LONG_DIGITS;
+    }
+}
@@ -0,0 +1,283 @@
+package com.zapata.reactivestockmarket.domain.engine;
+
+import com.zapata.reactivestockmarket.cqrs.Event;
+import com.zapata.reactivestockmarket.cqrs.EventFanout;
+import com.zapata.reactivestockmarket.domain.dtos.BookDepth;
+import com.zapata.reactivestockmarket.domain.dtos.DepthLevel;
+import com.zapata.reactivestockmarket.domain.dtos.TopOfBook;
+import com.zapata.reactivestockmarket.domain.engine.events.BookResyncEvent;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Read-optimized view of {@link MatchingEngine} levels - aggregated amount per price, updated incrementally by the
+ * engine thread and readable from any thread.
+ * <p>
+ * Levels are kept as ticks and units in sorted primitive arrays with the best price at the end, the same layout as
+ * {@link PriceLevelOrderBook}, independently of the order book type. Level changes of one engine call are buffered
+ * and applied at once under the write lock of {@link StampedLock} when the call ends, after its events have been
+ * published, so the lock is never held while a blocking event subscriber keeps the engine waiting. Readers never
+ * take the lock, they copy levels optimistically and retry if the engine has updated the view meanwhile (seqlock),
+ * so reading never blocks matching and readers never see state in the middle of a match.
+ * <p>
+ * While an engine call is in progress readers see levels before the call together with the event sequence at its
+ * first level change, events of the call are then replayed after a snapshot instead of being included in it.
+ * Prices and amounts are converted to {@link java.math.BigDecimal} outside of the optimistic read, the view can be
+ * read from any thread including event subscribers on the engine thread.
+ */
+public final class BookView {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int SPIN_TRIES = 256;
+    private static final long PARK_NANOS = 1_000L;
+
+    private final BookSpec spec;
+    /**
+     * Number of events published by the book
+     */
+    private final LongSupplier eventSequence;
+    private final StampedLock lock = new StampedLock();
+    private final Side bids = new Side(true);
+    private final Side asks = new Side(false);
+    /**
+     * Number of engine calls that have changed the view
+     */
+    private long version;
+    /**
+     * Event sequence at the first level change of the current engine call, -1 if no change is pending. Written
+     * before the call publishes events describing the change and cleared together with applying the change.
+     */
+    private volatile long pendingSequence = -1;
+    /**
+     * Level changes of the current engine call, consecutive changes of the same level are merged
+     */
+    private boolean[] deltaBids = new boolean[INITIAL_CAPACITY];
+    private long[] deltaTicks = new long[INITIAL_CAPACITY];
+    private long[] deltaUnits = new long[INITIAL_CAPACITY];
+    private int deltaCount;
+
+    BookView(BookSpec spec, LongSupplier eventSequence) {
+        this.spec = spec;
+        this.eventSequence = eventSequence;
+    }
+
+    /**
+     * Best bid and best ask, lock free
+     *
+     * @param asset - asset name included in the result
+     * @return top of the book
+     */
+    public TopOfBook top(String asset) {
+        Levels bidLevels = new Levels(1);
+        Levels askLevels = new Levels(1);
+        Read read = read(bidLevels, askLevels);
+        return new TopOfBook(asset,
+                             read.version(),
+                             bidLevels.size > 0 ? spec.toPrice(bidLevels.ticks[0]) : null,
+                             bidLevels.size > 0 ? spec.toAmount(bidLevels.units[0]) : null,
+                             askLevels.size > 0 ? spec.toPrice(askLevels.ticks[0]) : null,
+                             askLevels.size > 0 ? spec.toAmount(askLevels.units[0]) : null);
+    }
+
+    /**
+     * Best levels of both sides, lock free
+     *
+     * @param asset  - asset name included in the result
+     * @param levels - maximum number of levels per side
+     * @return aggregated depth
+     */
+    public BookDepth depth(String asset, int levels) {
+        Levels bidLevels = new Levels(Math.max(levels, 0));
+        Levels askLevels = new Levels(Math.max(levels, 0));
+        Read read = read(bidLevels, askLevels);
+        return new BookDepth(asset, read.version(), toDepthLevels(bidLevels), toDepthLevels(askLevels));
+    }
+
+    /**
+     * All levels as {@link BookResyncEvent} together with the sequence of the first book event not included in them,
+     * lock free
+     *
+     * @param asset - asset name included in the event
+     * @return snapshot that replaces book events before its sequence
+     */
+    public EventFanout.Snapshot<Event> snapshot(String asset) {
+        Levels bidLevels = new Levels(Integer.MAX_VALUE);
+        Levels askLevels = new Levels(Integer.MAX_VALUE);
+        Read read = read(bidLevels, askLevels);
+        return new EventFanout.Snapshot<>(read.eventSequence(), List.of(
+                new BookResyncEvent(asset, read.version(), toDepthLevels(bidLevels), toDepthLevels(askLevels))));
+    }
+
+    private Read read(Levels bidLevels, Levels askLevels) {
+        int tries = 0;
+        while (true) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                long version = this.version;
+                //events of a pending call are published after its first change, read them in the same order
+                long published = this.eventSequence.getAsLong();
+                long pending = pendingSequence;
+                boolean copied = bids.copy(bidLevels) && asks.copy(askLevels);
+                if (lock.validate(stamp) && copied) {
+                    return new Read(version, pending >= 0 ? pending : published);
+                }
+            }
+            //engine holds the lock only while it applies changes of one call
+            if (++tries < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+    }
+
+    private List<DepthLevel> toDepthLevels(Levels levels) {
+        List<DepthLevel> result = new ArrayList<>(levels.size);
+        for (int i = 0; i < levels.size; i++) {
+            result.add(new DepthLevel(spec.toPrice(levels.ticks[i]), spec.toAmount(levels.units[i])));
+        }
+        return result;
+    }
+
+    //---------------------------ENGINE THREAD---------------------------------
+
+    /**
+     * Adds units to level, the level is removed once it has no units left. Changes are visible to readers after
+     * {@link #publish()}, the change must be made before the event describing it is published.
+     */
+    void change(OrderType side, long ticks, long deltaUnits) {
+        boolean bid = side == OrderType.BUY;
+        if (deltaCount == 0) {
+            if (pendingSequence < 0) {
+                pendingSequence = eventSequence.getAsLong();
+            }
+        } else if (deltaBids[deltaCount - 1] == bid && deltaTicks[deltaCount - 1] == ticks) {
+            this.deltaUnits[deltaCount - 1] += deltaUnits;
+            return;
+        }
+        if (deltaCount == deltaTicks.length) {
+            deltaBids = Arrays.copyOf(deltaBids, deltaCount << 1);
+            deltaTicks = Arrays.copyOf(deltaTicks, deltaCount << 1);
+            this.deltaUnits = Arrays.copyOf(this.deltaUnits, deltaCount << 1);
+        }
+        deltaBids[deltaCount] = bid;
+        deltaTicks[deltaCount] = ticks;
+        this.deltaUnits[deltaCount] = deltaUnits;
+        deltaCount++;
+    }
+
+    /**
+     * Applies changes of the engine call under the write lock, if there are any
+     */
+    void publish() {
+        if (deltaCount == 0) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            for (int i = 0; i < deltaCount; i++) {
+                (deltaBids[i] ? bids : asks).change(deltaTicks[i], deltaUnits[i]);
+            }
+            version++;
+            pendingSequence = -1;
+        } finally {
+            lock.unlockWrite(stamp);
+            deltaCount = 0;
+        }
+    }
+
+    private record Read(long version, long eventSequence) {
+    }
+
+    /**
+     * Copy of the best levels of one side
+     */
+    private static final class Levels {
+
+        private long[] ticks;
+        private long[] units;
+        private final int limit;
+        private int size;
+
+        private Levels(int limit) {
+            this.limit = limit;
+            this.ticks = new long[Math.min(limit, INITIAL_CAPACITY)];
+            this.units = new long[ticks.length];
+        }
+    }
+
+    /**
+     * Levels of one side, keyed like {@link PriceLevelOrderBook} so that the best price is the highest key
+     */
+    private static final class Side {
+
+        private final boolean bids;
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private long[] units = new long[INITIAL_CAPACITY];
+        private int size;
+
+        private Side(boolean bids) {
+            this.bids = bids;
+        }
+
+        private void change(long ticks, long deltaUnits) {
+            long key = bids ? ticks : -ticks;
+            int index = size > 0 && keys[size - 1] == key ? size - 1 : Arrays.binarySearch(keys, 0, size, key);
+            if (index >= 0) {
+                long remaining = units[index] + deltaUnits;
+                if (remaining > 0) {
+                    units[index] = remaining;
+                } else {
+                    System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+                    System.arraycopy(units, index + 1, units, index, size - index - 1);
+                    size--;
+                }
+            } else if (deltaUnits > 0) {
+                insertAt(-index - 1, key, deltaUnits);
+            }
+        }
+
+        private void insertAt(int index, long key, long amount) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size << 1);
+                units = Arrays.copyOf(units, size << 1);
+            }
+            System.arraycopy(keys, index, keys, index + 1, size - index);
+            System.arraycopy(units, index, units, index + 1, size - index);
+            keys[index] = key;
+            units[index] = amount;
+            size++;
+        }
+
+        /**
+         * Copies the best levels during optimistic read. Fields may be torn by concurrent update, the copy is then
+         * only kept from failing and the caller retries.
+         *
+         * @return false if target was too small and has been enlarged
+         */
+        private boolean copy(Levels target) {
+            long[] keys = this.keys;
+            long[] units = this.units;
+            int size = Math.min(this.size, Math.min(keys.length, units.length));
+            int count = Math.min(size, target.limit);
+            if (count > target.ticks.length) {
+                target.ticks = new long[count];
+                target.units = new long[count];
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                long key = keys[size - 1 - i];
+                target.ticks[i] = bids ? key : -key;
+                target.units[i] = units[size - 1 - i];
+            }
+            target.size = count;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.zapata.reactivestockmarket.domain.engine;
+
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+
+/**
+ * Copy of {@link MatchingEngine} state - resting orders in price-time priority and the term counter.
+ * <p>
+ * Orders are stored column-wise in primitive arrays, so taking a snapshot on the engine thread is a plain copy and
+ * the snapshot can be serialized by another thread while the engine keeps matching. Price levels and the order index
+ * are not copied, {@link MatchingEngine#restore} rebuilds them by adding orders in the stored order.
+ *
+ * @param term           - term counter of the engine
+ * @param size           - number of resting orders
+ * @param ids            - order identifiers
+ * @param types          - order directions
+ * @param priceTicks     - prices in ticks
+ * @param priceScales    - scales of prices as they were entered
+ * @param remainingUnits - remaining amounts in units
+ * @param amountScales   - scales of remaining amounts
+ * @param terms          - terms of orders
+ * @param entrySeconds   - entry timestamps, seconds part
+ * @param entryNanos     - entry timestamps, nanoseconds part
+ */
+public record EngineSnapshot(long term, int size, long[] ids, OrderType[] types, long[] priceTicks,
+                             int[] priceScales, long[] remainingUnits, int[] amountScales, long[] terms,
+                             long[] entrySeconds, int[] entryNanos) {
+
+    /**
+     * Allocates snapshot of given size, arrays are filled by caller
+     */
+    public static EngineSnapshot allocate(long term, int size) {
+        return new EngineSnapshot(term, size, new long[size], new OrderType[size], new long[size], new int[size],
+                                  new long[size], new int[size], new long[size], new long[size], new int[size]);
+    }
+}
@@ -1,82 +1,121 @@
 package com.zapata.reactivestockmarket.domain.engine;
 
+import com.zapata.reactivestockmarket.cqrs.Event;
+import com.zapata.reactivestockmarket.cqrs.EventFanout;
+import com.zapata.reactivestockmarket.cqrs.OverflowPolicy;
 import com.zapata.reactivestockmarket.cqrs.UpdateEvent;
+import com.zapata.reactivestockmarket.domain.engine.events.OrderAmendedEvent;
 import com.zapata.reactivestockmarket.domain.engine.events.OrderCanceledEvent;
 import com.zapata.reactivestockmarket.domain.engine.events.OrderMatchedEvent;
 import com.zapata.reactivestockmarket.domain.engine.events.OrderPlacedEvent;
+import com.zapata.reactivestockmarket.domain.engine.events.OrdersCanceledEvent;
 import com.zapata.reactivestockmarket.domain.query.OrderType;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.zapata.reactivestockmarket.util.LongHashMap;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.Instant;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.TreeSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Single threaded matching engine - any thread synchronization should be done externally.
  * <p>
- * Uses Max-Heap and Min-Heap {@link TreeSet}
+ * Resting orders are kept in {@link OrderBook} selected by {@link BookSpec#orderBookType()}
+ * - {@link OrderBookType#TREE} uses Max-Heap and Min-Heap {@link java.util.TreeSet}
+ * - {@link OrderBookType#PRICE_LEVEL} uses FIFO price levels keyed by tick count
  * <p>
- * Time complexity for critical operations are as.
- * - Add – O(log N)
- * - Cancel – O(1)
+ * Both order books produce exactly the same sequence of events.
  * <p>
- * Asynchronous - no immediate return values, all events are publishes to local event bus {@link
- * MatchingEngine#engineEventSink}
+ * Prices and amounts are converted to scaled {@code long}s once on entry (see {@link BookSpec}), matching itself
+ * works on primitives only. Amounts must fit the amount scale of the spec,
+ * {@link com.zapata.reactivestockmarket.domain.Book} rounds or rejects them before they get here. Published amounts
+ * keep the scale they were entered with, as if they were {@link BigDecimal}s added and subtracted - 10 minus 0.5 is
+ * 9.5, not 9.50000000. Resting orders are indexed by primitive keyed {@link LongHashMap} and recycled through
+ * {@link OrderPool}, so with {@link OrderBookType#PRICE_LEVEL} book and pool enabled the book reaches a steady state
+ * where matching, adding and canceling orders don't allocate - only published events do.
+ * <p>
+ * State can be copied by {@link #snapshot()} and restored by {@link #restore}.
+ * <p>
+ * Aggregated levels are mirrored into {@link BookView}, which other threads can read without synchronizing with the
+ * engine.
+ * <p>
+ * Asynchronous - no immediate return values, all events are published to the book event ring {@link #events()}
  */
 public class MatchingEngine {
 
-    private final Logger logger = LoggerFactory.getLogger(MatchingEngine.class);
-    private final TreeSet<Order> bids;
-    private final TreeSet<Order> asks;
-    private final Map<Long, Order> orders;
+    private final BookSpec spec;
+    private final OrderBook bids;
+    private final OrderBook asks;
+    private final LongHashMap<Order> orders;
+    private final OrderPool orderPool;
     private final AtomicLong term;
-
-    Sinks.Many<UpdateEvent> engineEventSink = Sinks.many().multicast().onBackpressureBuffer();
-
-    Flux<UpdateEvent> engineEventFlux = engineEventSink.asFlux()
-            .doOnNext(n -> logger.info(n.toString()))
-            .publish()
-            .autoConnect();
+    private final EventFanout<Event> events;
+    private final BookView view;
+    /**
+     * Scale of the incoming amount while it is being matched, raised by the scales of resting amounts it fills
+     */
+    private int matchScale;
+    /**
+     * True until incoming order being placed has its first fill, amended order is known before it is matched
+     */
+    private boolean firstFill;
 
     public MatchingEngine() {
-        this.bids = new TreeSet<>(MatchingEngine::compareBids);
-        this.asks = new TreeSet<>(MatchingEngine::compareAsks);
-
-        this.orders = new HashMap<>();
-        this.term = new AtomicLong(0);
+        this(BookSpec.DEFAULT);
     }
 
-    private static int compareBids(Order a, Order b) {
-        int result = b.getPrice().compareTo(a.getPrice());
-        if (result != 0) {
-            return result;
-        }
+    public MatchingEngine(BookSpec spec) {
+        this.spec = spec;
+        this.bids = newOrderBook(spec, OrderType.BUY);
+        this.asks = newOrderBook(spec, OrderType.SELL);
 
-        return Long.compare(a.getTerm(), b.getTerm());
+        this.orders = new LongHashMap<>(spec.orderPoolSize());
+        this.orderPool = new OrderPool(spec.orderPoolSize());
+        this.term = new AtomicLong(0);
+        this.events = new EventFanout<>(spec.eventBufferSize());
+        this.view = new BookView(spec, events::published);
     }
 
-    private static int compareAsks(Order a, Order b) {
-        int result = a.getPrice().compareTo(b.getPrice());
-        if (result != 0) {
-            return result;
-        }
-
-        return Long.compare(a.getTerm(), b.getTerm());
+    private static OrderBook newOrderBook(BookSpec spec, OrderType side) {
+        return switch (spec.orderBookType()) {
+            case TREE -> new TreeOrderBook(side);
+            case PRICE_LEVEL -> new PriceLevelOrderBook(side);
+        };
     }
 
     /**
-     * All engine execution events are published to this bus
+     * All engine execution events are published to this bus, subscriber gets them on the engine thread and blocks
+     * the engine once it falls {@link BookSpec#eventBufferSize()} events behind
      *
      * @return local engine event bus - hot stream
      */
     public Flux<UpdateEvent> engineEvents() {
-        return engineEventFlux;
+        return events.events(OverflowPolicy.BLOCK)
+                     .ofType(UpdateEvent.class);
+    }
+
+    /**
+     * Event ring of the book, the book publishes its own events into it as well, so subscribers get book and engine
+     * events in the order they happened
+     *
+     * @return book event ring
+     */
+    public EventFanout<Event> events() {
+        return events;
+    }
+
+    /**
+     * Levels of the book readable from any thread, updated once per engine call
+     *
+     * @return read-optimized view of the book
+     */
+    public BookView view() {
+        return view;
     }
 
     /**
@@ -94,135 +133,259 @@ public class MatchingEngine {
         if (orders.containsKey(orderId)) {
             return;
         }
-        if (type == OrderType.BUY) {
-            buy(orderId, aggregateId, entryTimestamp, price, amount);
-        } else {
-            sell(orderId, aggregateId, entryTimestamp, price, amount);
+        long priceTicks = spec.toTicks(price);
+        long units = spec.toUnits(amount);
+        matchScale = amount.scale();
+        firstFill = true;
+        try {
+            long restingUnits = match(orderId, aggregateId, entryTimestamp, type, price, priceTicks, units);
+            if (restingUnits > 0) {
+                rest(orderId, type, price, priceTicks, restingUnits, matchScale, entryTimestamp);
+                events.publish(new OrderPlacedEvent(orderId,
+                        aggregateId,
+                        entryTimestamp,
+                        type,
+                        price,
+                        spec.toAmount(restingUnits, matchScale)));
+            }
+        } finally {
+            view.publish();
         }
     }
 
-    private void buy(long incomingId, String aggregateId, Instant entryTimestamp, BigDecimal incomingPrice,
-                     BigDecimal incomingAmount) {
+    /**
+     * Matches incoming order against the opposite side, {@link #matchScale} must be set to the scale of incoming
+     * amount
+     *
+     * @return units left to rest in the book, 0 if the order has been filled
+     */
+    private long match(long incomingId, String aggregateId, Instant entryTimestamp, OrderType type,
+                       BigDecimal incomingPrice, long incomingTicks, long incomingUnits) {
+        return type == OrderType.BUY
+                ? buy(incomingId, aggregateId, entryTimestamp, incomingPrice, incomingTicks, incomingUnits)
+                : sell(incomingId, aggregateId, entryTimestamp, incomingPrice, incomingTicks, incomingUnits);
+    }
+
+    private long buy(long incomingId, String aggregateId, Instant entryTimestamp, BigDecimal incomingPrice,
+                     long incomingTicks, long incomingUnits) {
         while (!asks.isEmpty()) {
             Order resting = asks.first();
 
-            BigDecimal restingPrice = resting.getPrice();
-            if (restingPrice.compareTo(incomingPrice) > 0) {
+            if (resting.getPriceTicks() > incomingTicks) {
                 break;
             }
 
             long restingId = resting.getId();
+            BigDecimal restingPrice = resting.getPrice();
+            int restingScale = resting.getAmountScale();
 
-            BigDecimal restingAmount = resting.getRemainingAmount();
+            long restingUnits = resting.getRemainingUnits();
 
-            if (restingAmount.compareTo(incomingAmount) > 0) {
-                resting.reduce(incomingAmount);
+            if (restingUnits > incomingUnits) {
+                resting.reduce(incomingUnits, matchScale);
+                view.change(resting.type(), resting.getPriceTicks(), -incomingUnits);
 
-                engineEventSink.tryEmitNext(new OrderMatchedEvent(restingId,
+                events.publish(new OrderMatchedEvent(restingId,
                         aggregateId,
                         entryTimestamp,
                         incomingId,
                         OrderType.BUY,
                         incomingPrice,
                         restingPrice,
-                        incomingAmount,
-                        restingAmount,
-                        resting.getRemainingAmount()));
+                        spec.toAmount(incomingUnits, matchScale),
+                        spec.toAmount(restingUnits, restingScale),
+                        spec.toAmount(resting.getRemainingUnits(), resting.getAmountScale()),
+                        firstFill));
 
-                return;
+                return 0;
             }
 
+            view.change(OrderType.SELL, resting.getPriceTicks(), -restingUnits);
             asks.remove(resting);
             orders.remove(restingId);
+            orderPool.release(resting);
 
-            engineEventSink.tryEmitNext(new OrderMatchedEvent(restingId,
+            events.publish(new OrderMatchedEvent(restingId,
                     aggregateId,
                     entryTimestamp,
                     incomingId,
                     OrderType.BUY,
                     incomingPrice,
                     restingPrice,
-                    incomingAmount,
-                    restingAmount,
-                    BigDecimal.ZERO));
+                    spec.toAmount(incomingUnits, matchScale),
+                    spec.toAmount(restingUnits, restingScale),
+                    BigDecimal.ZERO,
+                    firstFill));
+            firstFill = false;
 
 
-            incomingAmount = incomingAmount.subtract(restingAmount);
+            incomingUnits -= restingUnits;
+            matchScale = Math.max(matchScale, restingScale);
 
-            if (incomingAmount.compareTo(BigDecimal.ZERO) == 0) {
-                return;
+            if (incomingUnits == 0) {
+                return 0;
             }
         }
 
-        add(incomingId, aggregateId, entryTimestamp, OrderType.BUY, incomingPrice, incomingAmount, bids);
+        return incomingUnits;
     }
 
-    private void sell(long incomingId, String aggregateId, Instant entryTimestamp, BigDecimal incomingPrice,
-                      BigDecimal incomingAmount) {
+    private long sell(long incomingId, String aggregateId, Instant entryTimestamp, BigDecimal incomingPrice,
+                      long incomingTicks, long incomingUnits) {
         while (!bids.isEmpty()) {
             Order resting = bids.first();
 
-            BigDecimal restingPrice = resting.getPrice();
-            if (restingPrice.compareTo(incomingPrice) < 0) {
+            if (resting.getPriceTicks() < incomingTicks) {
                 break;
             }
 
             long restingId = resting.getId();
+            BigDecimal restingPrice = resting.getPrice();
+            int restingScale = resting.getAmountScale();
 
-            BigDecimal restingAmount = resting.getRemainingAmount();
-            if (restingAmount.compareTo(incomingAmount) > 0) {
-                resting.reduce(incomingAmount);
+            long restingUnits = resting.getRemainingUnits();
+            if (restingUnits > incomingUnits) {
+                resting.reduce(incomingUnits, matchScale);
+                view.change(resting.type(), resting.getPriceTicks(), -incomingUnits);
 
-                engineEventSink.tryEmitNext(new OrderMatchedEvent(restingId,
+                events.publish(new OrderMatchedEvent(restingId,
                         aggregateId,
                         entryTimestamp,
                         incomingId,
                         OrderType.SELL,
                         incomingPrice,
                         restingPrice,
-                        incomingAmount,
-                        restingAmount,
-                        resting.getRemainingAmount()));
+                        spec.toAmount(incomingUnits, matchScale),
+                        spec.toAmount(restingUnits, restingScale),
+                        spec.toAmount(resting.getRemainingUnits(), resting.getAmountScale()),
+                        firstFill));
 
-                return;
+                return 0;
             }
 
+            view.change(OrderType.BUY, resting.getPriceTicks(), -restingUnits);
             bids.remove(resting);
             orders.remove(restingId);
+            orderPool.release(resting);
 
-            engineEventSink.tryEmitNext(new OrderMatchedEvent(restingId,
+            events.publish(new OrderMatchedEvent(restingId,
                     aggregateId,
                     entryTimestamp,
                     incomingId,
                     OrderType.SELL,
                     incomingPrice,
                     restingPrice,
-                    incomingAmount,
-                    restingAmount,
-                    BigDecimal.ZERO));
-
-            incomingAmount = incomingAmount.subtract(restingAmount);
-            if (incomingAmount.compareTo(BigDecimal.ZERO) == 0) {
-                return;
+                    spec.toAmount(incomingUnits, matchScale),
+                    spec.toAmount(restingUnits, restingScale),
+                    BigDecimal.ZERO,
+                    firstFill));
+            firstFill = false;
+
+            incomingUnits -= restingUnits;
+            matchScale = Math.max(matchScale, restingScale);
+            if (incomingUnits == 0) {
+                return 0;
             }
         }
 
-        add(incomingId, aggregateId, entryTimestamp, OrderType.SELL, incomingPrice, incomingAmount, asks);
+        return incomingUnits;
     }
 
-    private void add(long orderId, String aggregateId, Instant entryTimestamp, OrderType type, BigDecimal price,
-                     BigDecimal amount, TreeSet<Order> queue) {
-        Order order = new Order(orderId, type, price, amount, term.incrementAndGet());
+    /**
+     * Adds order to the book with a new term, so it goes behind orders already resting at its price
+     */
+    private void rest(long orderId, OrderType type, BigDecimal price, long priceTicks, long units, int amountScale,
+                      Instant entryTimestamp) {
+        Order order = orderPool.acquire();
+        order.init(orderId, type, price, priceTicks, units, amountScale, term.incrementAndGet(), entryTimestamp);
 
-        queue.add(order);
+        (type == OrderType.BUY ? bids : asks).add(order);
         orders.put(orderId, order);
+        view.change(type, priceTicks, units);
+    }
+
+    /**
+     * Remaining amount of resting order, must be called on the engine thread
+     *
+     * @param orderId - order identifier
+     * @return remaining amount, null if the order is not resting in the book
+     */
+    public BigDecimal remainingAmount(long orderId) {
+        Order order = orders.get(orderId);
+        return order != null ? spec.toAmount(order.getRemainingUnits(), order.getAmountScale()) : null;
+    }
+
+    /**
+     * Limit price of resting order, must be called on the engine thread
+     *
+     * @param orderId - order identifier
+     * @return price, null if the order is not resting in the book
+     */
+    public BigDecimal restingPrice(long orderId) {
+        Order order = orders.get(orderId);
+        return order != null ? order.getPrice() : null;
+    }
 
-        engineEventSink.tryEmitNext(new OrderPlacedEvent(orderId,
-                aggregateId,
-                entryTimestamp,
-                type,
-                price,
-                amount));
+    /**
+     * Amends price and amount of resting order in one step. Amount can only be reduced. Reduced order at the same
+     * price keeps its time priority, repriced order loses it - it is matched at the new price like an incoming order
+     * and the rest goes behind orders already resting at that price. Publishes single {@link OrderAmendedEvent},
+     * after the matches of repriced order.
+     *
+     * @param orderId     - order identifier
+     * @param aggregateId - asset name / aggregate identifier
+     * @param newPrice    - new limit price
+     * @param newAmount   - new amount to fill, not larger than remaining amount
+     */
+    public void amend(long orderId, String aggregateId, BigDecimal newPrice, BigDecimal newAmount) {
+        Order order = orders.get(orderId);
+        if (order == null) {
+            return;
+        }
+
+        long priceTicks = order.getPriceTicks();
+        long remainingUnits = order.getRemainingUnits();
+        long newTicks = spec.toTicks(newPrice);
+        long newUnits = spec.toUnits(newAmount);
+
+        if (newUnits <= 0 || newUnits > remainingUnits || newTicks == priceTicks && newUnits == remainingUnits) {
+            return;
+        }
+
+        OrderType type = order.type();
+        BigDecimal price = order.getPrice();
+        BigDecimal remainingAmount = spec.toAmount(remainingUnits, order.getAmountScale());
+        BigDecimal amendedPrice = price;
+        long restingUnits = newUnits;
+        matchScale = newAmount.scale();
+        firstFill = false;
+        try {
+            if (newTicks == priceTicks) {
+                view.change(type, priceTicks, newUnits - remainingUnits);
+                order.resize(newUnits, matchScale);
+            } else {
+                Instant entryTimestamp = Instant.ofEpochSecond(order.getEntrySeconds(), order.getEntryNanos());
+                view.change(type, priceTicks, -remainingUnits);
+                (type == OrderType.BUY ? bids : asks).remove(order);
+                orders.remove(orderId);
+                orderPool.release(order);
+
+                amendedPrice = newPrice;
+                restingUnits = match(orderId, aggregateId, entryTimestamp, type, newPrice, newTicks, newUnits);
+                if (restingUnits > 0) {
+                    rest(orderId, type, newPrice, newTicks, restingUnits, matchScale, entryTimestamp);
+                }
+            }
+            events.publish(new OrderAmendedEvent(orderId,
+                    aggregateId,
+                    type,
+                    price,
+                    remainingAmount,
+                    amendedPrice,
+                    spec.toAmount(restingUnits, matchScale)));
+        } finally {
+            view.publish();
+        }
     }
 
     /**
@@ -248,26 +411,187 @@ public class MatchingEngine {
             return;
         }
 
-        BigDecimal remainingAmount = order.getRemainingAmount();
+        long remainingUnits = order.getRemainingUnits();
+        long newUnits = spec.toUnits(newAmount);
 
-        if (newAmount.compareTo(remainingAmount) >= 0) {
+        if (newUnits >= remainingUnits) {
             return;
         }
 
-        if (newAmount.compareTo(BigDecimal.ZERO) > 0) {
-            order.resize(newAmount);
-        } else {
-            TreeSet<Order> queue = order.type() == OrderType.BUY ? bids : asks;
+        OrderType type = order.type();
+        BigDecimal price = order.getPrice();
+        int canceledScale = Math.max(order.getAmountScale(), newAmount.scale());
+        try {
+            view.change(type, order.getPriceTicks(), newUnits - remainingUnits);
+            if (newUnits > 0) {
+                order.resize(newUnits, newAmount.scale());
+            } else {
+                OrderBook queue = type == OrderType.BUY ? bids : asks;
+
+                queue.remove(order);
+                orders.remove(orderId);
+                orderPool.release(order);
+            }
 
-            queue.remove(order);
-            orders.remove(orderId);
+            events.publish(new OrderCanceledEvent(orderId,
+                    aggregateId,
+                    type,
+                    price,
+                    spec.toAmount(remainingUnits - newUnits, canceledScale),
+                    newAmount));
+        } finally {
+            view.publish();
         }
+    }
 
-        engineEventSink.tryEmitNext(new OrderCanceledEvent(orderId,
-                aggregateId,
-                order.type(),
-                remainingAmount.subtract(newAmount),
-                newAmount));
+    /**
+     * Fully cancels all resting orders of side priced within band in one pass over the affected price levels, and
+     * publishes single {@link OrdersCanceledEvent} instead of an event per order
+     *
+     * @param aggregateId - asset name / aggregate identifier
+     * @param side        - side to cancel, null cancels both sides
+     * @param minPrice    - the lowest price to cancel, inclusive, null for no lower bound
+     * @param maxPrice    - the highest price to cancel, inclusive, null for no upper bound
+     * @return number of canceled orders
+     */
+    public int massCancel(String aggregateId, OrderType side, BigDecimal minPrice, BigDecimal maxPrice) {
+        long minTicks = minPrice == null ? 0 : Math.max(spec.toTicks(minPrice), 0);
+        long maxTicks = maxPrice == null ? Long.MAX_VALUE : spec.toTicks(maxPrice);
+        MassCancel canceled = new MassCancel();
+        try {
+            if (side != OrderType.SELL) {
+                bids.removeRange(minTicks, maxTicks, canceled);
+                canceled.endLevel();
+            }
+            if (side != OrderType.BUY) {
+                asks.removeRange(minTicks, maxTicks, canceled);
+                canceled.endLevel();
+            }
+            if (canceled.count == 0) {
+                return 0;
+            }
+            events.publish(new OrdersCanceledEvent(aggregateId,
+                    Arrays.copyOf(canceled.orderIds, canceled.count),
+                    canceled.levels));
+            return canceled.count;
+        } finally {
+            view.publish();
+        }
+    }
+
+    /**
+     * Copies resting orders and term counter, must be called on the engine thread. Matching can continue as soon as
+     * the method returns, returned snapshot shares no state with the engine.
+     *
+     * @return copy of engine state
+     */
+    public EngineSnapshot snapshot() {
+        EngineSnapshot snapshot = EngineSnapshot.allocate(term.get(), orders.size());
+        int[] index = new int[1];
+        Consumer<Order> copy = order -> {
+            int i = index[0]++;
+            snapshot.ids()[i] = order.getId();
+            snapshot.types()[i] = order.type();
+            snapshot.priceTicks()[i] = order.getPriceTicks();
+            snapshot.priceScales()[i] = order.getPriceScale();
+            snapshot.remainingUnits()[i] = order.getRemainingUnits();
+            snapshot.amountScales()[i] = order.getAmountScale();
+            snapshot.terms()[i] = order.getTerm();
+            snapshot.entrySeconds()[i] = order.getEntrySeconds();
+            snapshot.entryNanos()[i] = order.getEntryNanos();
+        };
+        bids.forEach(copy);
+        asks.forEach(copy);
+        return snapshot;
+    }
+
+    /**
+     * Restores state copied by {@link #snapshot()} into empty engine and publishes {@link OrderPlacedEvent} with
+     * remaining amount for every restored order, so that projections learn about resting orders.
+     *
+     * @param aggregateId - asset name / aggregate identifier
+     * @param snapshot    - engine state
+     */
+    public void restore(String aggregateId, EngineSnapshot snapshot) {
+        if (!orders.isEmpty()) {
+            throw new IllegalStateException("Snapshot can be restored only into empty engine!");
+        }
+        orders.ensureCapacity(snapshot.size());
+        try {
+            BigDecimal price = null;
+            for (int i = 0; i < snapshot.size(); i++) {
+                OrderType type = snapshot.types()[i];
+                long priceTicks = snapshot.priceTicks()[i];
+                //orders come level by level, so consecutive orders mostly share the price
+                if (price == null || priceTicks != snapshot.priceTicks()[i - 1]
+                        || snapshot.priceScales()[i] != price.scale()) {
+                    price = BigDecimal.valueOf(priceTicks, spec.priceScale())
+                                      .setScale(snapshot.priceScales()[i], RoundingMode.UNNECESSARY);
+                }
+                Instant entryTimestamp = Instant.ofEpochSecond(snapshot.entrySeconds()[i], snapshot.entryNanos()[i]);
+
+                Order order = orderPool.acquire();
+                order.init(snapshot.ids()[i], type, price, priceTicks, snapshot.remainingUnits()[i],
+                           snapshot.amountScales()[i], snapshot.terms()[i], entryTimestamp);
+                (type == OrderType.BUY ? bids : asks).add(order);
+                orders.put(order.getId(), order);
+                view.change(type, priceTicks, order.getRemainingUnits());
+
+                events.publish(new OrderPlacedEvent(order.getId(),
+                        aggregateId,
+                        entryTimestamp,
+                        type,
+                        price,
+                        spec.toAmount(order.getRemainingUnits(), order.getAmountScale())));
+            }
+            term.set(snapshot.term());
+        } finally {
+            view.publish();
+        }
     }
 
+    /**
+     * Collects orders removed by {@link #massCancel}, they come level by level, so level amounts are summed up and
+     * the view is changed once per level
+     */
+    private final class MassCancel implements Consumer<Order> {
+
+        private long[] orderIds = new long[64];
+        private int count;
+        private final List<OrdersCanceledEvent.CanceledLevel> levels = new ArrayList<>();
+        private OrderType levelSide;
+        private BigDecimal levelPrice;
+        private long levelTicks = -1;
+        private long levelUnits;
+        private int levelScale = Integer.MIN_VALUE;
+
+        @Override
+        public void accept(Order order) {
+            if (order.getPriceTicks() != levelTicks || order.type() != levelSide) {
+                endLevel();
+                levelSide = order.type();
+                levelPrice = order.getPrice();
+                levelTicks = order.getPriceTicks();
+            }
+            levelUnits += order.getRemainingUnits();
+            levelScale = Math.max(levelScale, order.getAmountScale());
+            if (count == orderIds.length) {
+                orderIds = Arrays.copyOf(orderIds, count * 2);
+            }
+            orderIds[count++] = order.getId();
+            orders.remove(order.getId());
+            orderPool.release(order);
+        }
+
+        private void endLevel() {
+            if (levelUnits > 0) {
+                view.change(levelSide, levelTicks, -levelUnits);
+                levels.add(new OrdersCanceledEvent.CanceledLevel(levelSide, levelPrice,
+                                                                 spec.toAmount(levelUnits, levelScale)));
+            }
+            levelUnits = 0;
+            levelScale = Integer.MIN_VALUE;
+            levelTicks = -1;
+        }
+    }
 }
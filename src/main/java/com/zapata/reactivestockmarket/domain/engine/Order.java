@@ -3,53 +3,127 @@ package com.zapata.reactivestockmarket.domain.engine;
 import com.zapata.reactivestockmarket.domain.query.OrderType;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 
 /**
  * Representation of order used by {@link com.zapata.reactivestockmarket.domain.engine.MatchingEngine}
- *
+ * <p>
+ * Price and amount are kept as scaled {@code long}s, see {@link BookSpec}. Instances are mutable so they can be
+ * recycled by {@link OrderPool}.
  */
 public class Order {
-    private final OrderType type;
-    private final BigDecimal price;
-    private final long term;
-    private final long id;
+    private OrderType type;
+    private BigDecimal price;
+    private long priceTicks;
+    private long term;
+    private long id;
+    /**
+     * Kept as primitives so that snapshots copy orders without dereferencing price and timestamp objects
+     */
+    private int priceScale;
+    /**
+     * Scale of remaining amount as if it was a {@link BigDecimal} - scale of entered amount, raised by amounts of
+     * different scale subtracted from it
+     */
+    private int amountScale;
+    private long entrySeconds;
+    private int entryNanos;
 
-    private BigDecimal remainingAmount;
+    private long remainingUnits;
 
-    public Order(long id, OrderType type, BigDecimal price, BigDecimal amount, long term) {
+    /**
+     * Intrusive queue links used by {@link PriceLevelOrderBook} and {@link OrderPool}
+     */
+    PriceLevel level;
+    Order prev;
+    Order next;
+
+    Order() {
+    }
+
+    public Order(long id, OrderType type, BigDecimal price, long priceTicks, long remainingUnits, int amountScale,
+                 long term, Instant entryTimestamp) {
+        init(id, type, price, priceTicks, remainingUnits, amountScale, term, entryTimestamp);
+    }
+
+    void init(long id, OrderType type, BigDecimal price, long priceTicks, long remainingUnits, int amountScale,
+              long term, Instant entryTimestamp) {
         this.id = id;
-        this.type  = type;
+        this.type = type;
         this.price = price;
+        this.priceTicks = priceTicks;
         this.term = term;
+        this.priceScale = price.scale();
+        this.entrySeconds = entryTimestamp.getEpochSecond();
+        this.entryNanos = entryTimestamp.getNano();
 
-        this.remainingAmount = amount;
+        this.remainingUnits = remainingUnits;
+        this.amountScale = amountScale;
+    }
+
+    void clear() {
+        this.type = null;
+        this.price = null;
+        this.level = null;
+        this.prev = null;
+        this.next = null;
     }
 
     public BigDecimal getPrice() {
         return price;
     }
 
+    public long getPriceTicks() {
+        return priceTicks;
+    }
+
     public OrderType type() {
         return type;
     }
 
-    public BigDecimal getRemainingAmount() {
-        return remainingAmount;
+    public long getRemainingUnits() {
+        return remainingUnits;
     }
 
     public long getTerm() {
         return term;
     }
 
-    public void reduce(BigDecimal amount) {
-        remainingAmount = remainingAmount.subtract(amount);
+    public int getAmountScale() {
+        return amountScale;
+    }
+
+    /**
+     * @param units - filled units
+     * @param scale - scale of filled amount
+     */
+    public void reduce(long units, int scale) {
+        remainingUnits -= units;
+        amountScale = Math.max(amountScale, scale);
+    }
+
+    public int getPriceScale() {
+        return priceScale;
+    }
+
+    public long getEntrySeconds() {
+        return entrySeconds;
+    }
+
+    public int getEntryNanos() {
+        return entryNanos;
     }
 
     public long getId() {
         return id;
     }
 
-    public void resize(BigDecimal newAmount) {
-        remainingAmount = newAmount;
+    /**
+     * @param newUnits - new remaining units
+     * @param scale    - scale of new amount
+     */
+    public void resize(long newUnits, int scale) {
+        remainingUnits = newUnits;
+        amountScale = scale;
     }
 }
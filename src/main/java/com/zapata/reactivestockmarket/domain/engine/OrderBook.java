@@ -0,0 +1,54 @@
+package com.zapata.reactivestockmarket.domain.engine;
+
+import java.util.function.Consumer;
+
+/**
+ * One side of the book (bids or asks) used by {@link MatchingEngine}.
+ * <p>
+ * Orders are kept in price-time priority - {@link #first()} returns the order that should be matched next.
+ * <p>
+ * Not thread-safe - any thread synchronization should be done externally.
+ */
+interface OrderBook {
+
+    /**
+     * @return true if there are no resting orders
+     */
+    boolean isEmpty();
+
+    /**
+     * @return order with the best price, the oldest one if there are multiple orders on the best price
+     */
+    Order first();
+
+    /**
+     * Adds order to the end of the queue on its price
+     *
+     * @param order - order to rest on the book
+     */
+    void add(Order order);
+
+    /**
+     * Removes resting order from the book
+     *
+     * @param order - order previously added to this book
+     */
+    void remove(Order order);
+
+    /**
+     * Removes all resting orders priced within range in one pass over the affected prices, orders are passed to the
+     * action in price-time priority once they have been removed
+     *
+     * @param minTicks - the lowest price in ticks, inclusive, not negative
+     * @param maxTicks - the highest price in ticks, inclusive
+     * @param removed  - receives removed orders, may recycle them
+     */
+    void removeRange(long minTicks, long maxTicks, Consumer<Order> removed);
+
+    /**
+     * Visits all resting orders in price-time priority, the same order {@link #first()} would return them
+     *
+     * @param action - receives resting orders
+     */
+    void forEach(Consumer<Order> action);
+}
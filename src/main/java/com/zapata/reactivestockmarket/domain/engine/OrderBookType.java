@@ -0,0 +1,23 @@
+package com.zapata.reactivestockmarket.domain.engine;
+
+/**
+ * Data structure used by {@link MatchingEngine} to keep resting orders of one side of the book.
+ *
+ */
+public enum OrderBookType {
+
+    /**
+     * Orders sorted by price and term in a red-black tree {@link TreeOrderBook}
+     * - Add – O(log N)
+     * - Match – O(log N)
+     */
+    TREE,
+
+    /**
+     * Orders grouped into FIFO price levels keyed by tick count {@link PriceLevelOrderBook}
+     * - Add – O(1) at the top of the book
+     * - Match – O(1)
+     * - Cancel – O(1)
+     */
+    PRICE_LEVEL
+}
@@ -0,0 +1,44 @@
+package com.zapata.reactivestockmarket.domain.engine;
+
+/**
+ * Free list of {@link Order} instances recycled by {@link MatchingEngine}.
+ * <p>
+ * Preallocates {@code capacity} orders, once the pool is drained new orders are allocated and returned to the pool
+ * when released, so pool grows to the peak number of resting orders and steady state is allocation free.
+ * Pool of capacity 0 never recycles orders.
+ * <p>
+ * Not thread-safe - any thread synchronization should be done externally.
+ */
+final class OrderPool {
+
+    private final boolean enabled;
+    private Order free;
+
+    OrderPool(int capacity) {
+        this.enabled = capacity > 0;
+        for (int i = 0; i < capacity; i++) {
+            Order order = new Order();
+            order.next = free;
+            free = order;
+        }
+    }
+
+    Order acquire() {
+        Order order = free;
+        if (order == null) {
+            return new Order();
+        }
+        free = order.next;
+        order.next = null;
+        return order;
+    }
+
+    void release(Order order) {
+        if (!enabled) {
+            return;
+        }
+        order.clear();
+        order.next = free;
+        free = order;
+    }
+}
@@ -0,0 +1,51 @@
+package com.zapata.reactivestockmarket.domain.engine;
+
+/**
+ * FIFO queue of orders resting on the same price, used by {@link PriceLevelOrderBook}.
+ * <p>
+ * Orders are linked intrusively (see {@link Order#prev} and {@link Order#next}) so that any order can be
+ * unlinked in O(1) without searching the queue.
+ */
+final class PriceLevel {
+
+    long ticks;
+
+    Order head;
+    Order tail;
+
+    PriceLevel(long ticks) {
+        this.ticks = ticks;
+    }
+
+    boolean isEmpty() {
+        return head == null;
+    }
+
+    void append(Order order) {
+        order.level = this;
+        order.prev = tail;
+        order.next = null;
+        if (tail == null) {
+            head = order;
+        } else {
+            tail.next = order;
+        }
+        tail = order;
+    }
+
+    void unlink(Order order) {
+        if (order.prev == null) {
+            head = order.next;
+        } else {
+            order.prev.next = order.next;
+        }
+        if (order.next == null) {
+            tail = order.prev;
+        } else {
+            order.next.prev = order.prev;
+        }
+        order.level = null;
+        order.prev = null;
+        order.next = null;
+    }
+}
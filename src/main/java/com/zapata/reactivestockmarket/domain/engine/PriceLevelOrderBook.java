@@ -0,0 +1,186 @@
+package com.zapata.reactivestockmarket.domain.engine;
+
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * {@link OrderBook} that groups orders into {@link PriceLevel}s keyed by price expressed as a {@code long} tick
+ * count.
+ * <p>
+ * Levels are kept in a sorted array with the best price at the end, so the top of the book is always the last
+ * element. Most of the activity happens close to the top, which makes array insert/remove cheap.
+ * <p>
+ * Empty levels are recycled, so once the book has reached its working depth adding and removing orders doesn't
+ * allocate.
+ * <p>
+ * Time complexity for critical operations are as.
+ * - First – O(1)
+ * - Add – O(1) on existing or new top level, O(log L) + shift of levels above it otherwise
+ * - Remove – O(1) unless level becomes empty, then O(log L) + shift of levels above it
+ * - Remove range – O(log L) + removed orders + one shift of levels above the range
+ */
+class PriceLevelOrderBook implements OrderBook {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final boolean bids;
+
+    /**
+     * Sorted level keys, bids are keyed by ticks and asks by negated ticks so that best price is always the highest
+     * key and sits at {@code keys[size - 1]}
+     */
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private PriceLevel[] levels = new PriceLevel[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Empty levels kept for reuse
+     */
+    private PriceLevel[] freeLevels = new PriceLevel[INITIAL_CAPACITY];
+    private int freeSize;
+
+    PriceLevelOrderBook(OrderType side) {
+        this.bids = side == OrderType.BUY;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Order first() {
+        return levels[size - 1].head;
+    }
+
+    @Override
+    public void add(Order order) {
+        long ticks = order.getPriceTicks();
+        long key = bids ? ticks : -ticks;
+
+        PriceLevel level;
+        if (size > 0 && keys[size - 1] == key) {
+            level = levels[size - 1];
+        } else {
+            int index = indexOf(key);
+            if (index >= 0) {
+                level = levels[index];
+            } else {
+                level = newLevel(ticks);
+                insertAt(-index - 1, key, level);
+            }
+        }
+
+        level.append(order);
+    }
+
+    @Override
+    public void remove(Order order) {
+        PriceLevel level = order.level;
+        if (level == null) {
+            return;
+        }
+
+        level.unlink(order);
+
+        if (level.isEmpty()) {
+            long key = bids ? level.ticks : -level.ticks;
+            int index = size > 0 && keys[size - 1] == key ? size - 1 : indexOf(key);
+            removeAt(index);
+            releaseLevel(level);
+        }
+    }
+
+    /**
+     * Levels within range are adjacent in the sorted array, they are unlinked as whole and removed by one array copy
+     */
+    @Override
+    public void removeRange(long minTicks, long maxTicks, Consumer<Order> removed) {
+        long fromKey = bids ? minTicks : -maxTicks;
+        long toKey = bids ? maxTicks : -minTicks;
+        int from = lowerBound(fromKey);
+        int to = toKey == Long.MAX_VALUE ? size : lowerBound(toKey + 1);
+        if (from >= to) {
+            return;
+        }
+        for (int i = to - 1; i >= from; i--) {
+            PriceLevel level = levels[i];
+            Order order = level.head;
+            level.head = null;
+            level.tail = null;
+            while (order != null) {
+                Order next = order.next;
+                order.level = null;
+                order.prev = null;
+                order.next = null;
+                removed.accept(order);
+                order = next;
+            }
+            releaseLevel(level);
+        }
+        System.arraycopy(keys, to, keys, from, size - to);
+        System.arraycopy(levels, to, levels, from, size - to);
+        int newSize = size - (to - from);
+        Arrays.fill(levels, newSize, size, null);
+        size = newSize;
+    }
+
+    @Override
+    public void forEach(Consumer<Order> action) {
+        for (int i = size - 1; i >= 0; i--) {
+            for (Order order = levels[i].head; order != null; order = order.next) {
+                action.accept(order);
+            }
+        }
+    }
+
+    private PriceLevel newLevel(long ticks) {
+        if (freeSize == 0) {
+            return new PriceLevel(ticks);
+        }
+        PriceLevel level = freeLevels[--freeSize];
+        freeLevels[freeSize] = null;
+        level.ticks = ticks;
+        return level;
+    }
+
+    private void releaseLevel(PriceLevel level) {
+        if (freeSize == freeLevels.length) {
+            freeLevels = Arrays.copyOf(freeLevels, freeSize << 1);
+        }
+        freeLevels[freeSize++] = level;
+    }
+
+    private int indexOf(long key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    /**
+     * @return index of the first level with key greater than or equal to key
+     */
+    private int lowerBound(long key) {
+        int index = indexOf(key);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private void insertAt(int index, long key, PriceLevel level) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size << 1);
+            levels = Arrays.copyOf(levels, size << 1);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(levels, index, levels, index + 1, size - index);
+        keys[index] = key;
+        levels[index] = level;
+        size++;
+    }
+
+    private void removeAt(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(levels, index + 1, levels, index, size - index - 1);
+        size--;
+        levels[size] = null;
+    }
+}
@@ -0,0 +1,94 @@
+package com.zapata.reactivestockmarket.domain.engine;
+
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * {@link OrderBook} backed by Max-Heap or Min-Heap {@link TreeSet}
+ * <p>
+ * Time complexity for critical operations are as.
+ * - Add – O(log N)
+ * - First – O(log N)
+ * - Remove – O(log N)
+ * - Remove range – O(log N) + removed orders
+ */
+class TreeOrderBook implements OrderBook {
+
+    private final TreeSet<Order> orders;
+    private final boolean bids;
+
+    TreeOrderBook(OrderType side) {
+        this.bids = side == OrderType.BUY;
+        this.orders = new TreeSet<>(side == OrderType.BUY ? TreeOrderBook::compareBids : TreeOrderBook::compareAsks);
+    }
+
+    private static int compareBids(Order a, Order b) {
+        int result = Long.compare(b.getPriceTicks(), a.getPriceTicks());
+        if (result != 0) {
+            return result;
+        }
+
+        return Long.compare(a.getTerm(), b.getTerm());
+    }
+
+    private static int compareAsks(Order a, Order b) {
+        int result = Long.compare(a.getPriceTicks(), b.getPriceTicks());
+        if (result != 0) {
+            return result;
+        }
+
+        return Long.compare(a.getTerm(), b.getTerm());
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return orders.isEmpty();
+    }
+
+    @Override
+    public Order first() {
+        return orders.first();
+    }
+
+    @Override
+    public void add(Order order) {
+        orders.add(order);
+    }
+
+    @Override
+    public void remove(Order order) {
+        orders.remove(order);
+    }
+
+    @Override
+    public void removeRange(long minTicks, long maxTicks, Consumer<Order> removed) {
+        if (minTicks > maxTicks) {
+            return;
+        }
+        //bounds sort before and after all orders on the boundary prices, bids are sorted from the highest price
+        Order lowest = bound(minTicks, bids ? Long.MAX_VALUE : Long.MIN_VALUE);
+        Order highest = bound(maxTicks, bids ? Long.MIN_VALUE : Long.MAX_VALUE);
+        Iterator<Order> range = (bids ? orders.subSet(highest, true, lowest, true)
+                                      : orders.subSet(lowest, true, highest, true)).iterator();
+        while (range.hasNext()) {
+            Order order = range.next();
+            range.remove();
+            removed.accept(order);
+        }
+    }
+
+    private Order bound(long ticks, long term) {
+        return new Order(0, bids ? OrderType.BUY : OrderType.SELL, BigDecimal.ZERO, ticks, 0, 0, term,
+                         Instant.EPOCH);
+    }
+
+    @Override
+    public void forEach(Consumer<Order> action) {
+        orders.forEach(action);
+    }
+}
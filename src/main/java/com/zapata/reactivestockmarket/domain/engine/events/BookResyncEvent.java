@@ -0,0 +1,18 @@
+package com.zapata.reactivestockmarket.domain.engine.events;
+
+import com.zapata.reactivestockmarket.cqrs.UpdateEvent;
+import com.zapata.reactivestockmarket.domain.dtos.DepthLevel;
+
+import java.util.List;
+
+/**
+ * Update event sent instead of events that a slow subscriber has missed - replaces everything the subscriber knows
+ * about book levels. Events that follow it are applied on top of these levels.
+ */
+public record BookResyncEvent(
+        String aggregateId,
+        long version,
+        List<DepthLevel> bids,
+        List<DepthLevel> asks) implements UpdateEvent {
+
+}
@@ -0,0 +1,22 @@
+package com.zapata.reactivestockmarket.domain.engine.events;
+
+import com.zapata.reactivestockmarket.cqrs.UpdateEvent;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+
+import java.math.BigDecimal;
+
+/**
+ * Update event that signals that resting order has been amended. Repriced order that crossed the book is published
+ * after its {@link OrderMatchedEvent}s, remaining amount is what is left resting at the new price.
+ *
+ */
+public record OrderAmendedEvent(
+        long orderId,
+        String aggregateId,
+        OrderType orderType,
+        BigDecimal previousPrice,
+        BigDecimal previousAmount,
+        BigDecimal price,
+        BigDecimal remainingAmount) implements UpdateEvent {
+
+}
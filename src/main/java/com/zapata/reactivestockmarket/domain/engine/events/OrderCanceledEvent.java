@@ -13,6 +13,7 @@ public record OrderCanceledEvent(
         long orderId,
         String aggregateId,
         OrderType orderType,
+        BigDecimal price,
         BigDecimal canceledAmount,
         BigDecimal remainingAmount) implements UpdateEvent {
 
@@ -7,7 +7,8 @@ import java.math.BigDecimal;
 import java.time.Instant;
 
 /**
- * Update event that signals that order has been matched.
+ * Update event that signals that order has been matched. First fill of incoming order being placed is the first event
+ * of the order, the other fills - and all fills of amended order - belong to an order that has been published before.
  *
  */
 public record OrderMatchedEvent(
@@ -20,6 +21,7 @@ public record OrderMatchedEvent(
         BigDecimal restingPrice,
         BigDecimal incomingAmount,
         BigDecimal previousRestingAmount,
-        BigDecimal restingRemainingAmount) implements UpdateEvent {
+        BigDecimal restingRemainingAmount,
+        boolean firstFill) implements UpdateEvent {
 
 }
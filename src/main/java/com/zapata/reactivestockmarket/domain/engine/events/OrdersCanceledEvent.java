@@ -0,0 +1,50 @@
+package com.zapata.reactivestockmarket.domain.engine.events;
+
+import com.zapata.reactivestockmarket.cqrs.UpdateEvent;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Update event that signals that orders have been canceled by one mass cancel, all of them fully. Instead of one
+ * {@link OrderCanceledEvent} per order it carries order ids and the amount canceled on each price level.
+ *
+ */
+public record OrdersCanceledEvent(
+        String aggregateId,
+        long[] orderIds,
+        List<CanceledLevel> levels) implements UpdateEvent {
+
+    /**
+     * @param orderType      - side of the level
+     * @param price          - price of the level
+     * @param canceledAmount - amount of all canceled orders of the level
+     */
+    public record CanceledLevel(OrderType orderType, BigDecimal price, BigDecimal canceledAmount) {
+    }
+
+    /**
+     * Order ids are compared by content, unlike the generated record equality
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof OrdersCanceledEvent other
+                && aggregateId.equals(other.aggregateId)
+                && Arrays.equals(orderIds, other.orderIds)
+                && levels.equals(other.levels);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(aggregateId, Arrays.hashCode(orderIds), levels);
+    }
+
+    @Override
+    public String toString() {
+        return "OrdersCanceledEvent[aggregateId=" + aggregateId + ", orders=" + orderIds.length + ", levels=" + levels
+                + "]";
+    }
+}
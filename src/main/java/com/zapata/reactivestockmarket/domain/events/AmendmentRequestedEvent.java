@@ -0,0 +1,18 @@
+package com.zapata.reactivestockmarket.domain.events;
+
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+import org.springframework.lang.NonNull;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Event that user requested amendment of resting order to new price and remaining amount. Like
+ * {@link CancellationRequestedEvent} it acknowledges the request, the result is published by the engine's
+ * {@link com.zapata.reactivestockmarket.domain.engine.events.OrderAmendedEvent}.
+ */
+public record AmendmentRequestedEvent(@NonNull String aggregateId, @NonNull UUID eventId, long orderId,
+                                      @NonNull BigDecimal newPrice, @NonNull BigDecimal newAmount)
+        implements SourcingEvent {
+
+}
@@ -7,8 +7,9 @@ import java.math.BigDecimal;
 import java.util.UUID;
 
 /**
- * Event that user requested cancellation of order
- * Not used - POC
+ * Event that user requested cancellation of open order. Command is acknowledged with this event, it tells that the
+ * cancellation has been accepted, not how much has been canceled - that is published by the engine's
+ * {@link com.zapata.reactivestockmarket.domain.engine.events.OrderCanceledEvent} when the event is applied.
  */
 public record CancellationRequestedEvent(@NonNull String aggregateId, @NonNull UUID eventId,
                                          @NonNull long orderId, @NonNull Boolean cancelAll, @NonNull BigDecimal newAmount)
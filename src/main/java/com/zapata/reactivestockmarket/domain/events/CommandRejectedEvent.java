@@ -0,0 +1,16 @@
+package com.zapata.reactivestockmarket.domain.events;
+
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+import org.springframework.lang.NonNull;
+
+import java.util.UUID;
+
+/**
+ * Result of command of a batch that has been rejected, the batch continues with the next command.
+ * Event is never journaled nor applied to the book.
+ */
+public record CommandRejectedEvent(@NonNull String aggregateId, @NonNull UUID eventId, @NonNull UUID commandId,
+                                   @NonNull String cause)
+        implements SourcingEvent {
+
+}
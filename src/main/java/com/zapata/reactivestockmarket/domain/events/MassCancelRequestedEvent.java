@@ -0,0 +1,22 @@
+package com.zapata.reactivestockmarket.domain.events;
+
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import org.springframework.lang.NonNull;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Event that user requested cancellation of all resting orders matching the filter, unset side or price bound
+ * matches any
+ *
+ * @param side     - side of cancelled orders, null for both sides
+ * @param minPrice - lowest price of cancelled orders, null if unbounded
+ * @param maxPrice - highest price of cancelled orders, null if unbounded
+ */
+public record MassCancelRequestedEvent(@NonNull String aggregateId, @NonNull UUID eventId, OrderType side,
+                                       BigDecimal minPrice, BigDecimal maxPrice)
+        implements SourcingEvent {
+
+}
@@ -0,0 +1,314 @@
+package com.zapata.reactivestockmarket.domain.feed;
+
+import com.zapata.reactivestockmarket.cqrs.Event;
+import com.zapata.reactivestockmarket.domain.dtos.Candle;
+import com.zapata.reactivestockmarket.domain.dtos.TradeStats;
+import com.zapata.reactivestockmarket.domain.engine.BookSpec;
+import com.zapata.reactivestockmarket.domain.engine.events.OrderMatchedEvent;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * OHLCV bars and trade statistics of single book, maintained incrementally from {@link OrderMatchedEvent}s.
+ * <p>
+ * Each {@link CandleInterval} keeps the last {@link #CAPACITY} bars in a ring of primitive arrays - prices in ticks and
+ * amounts in units of the book's {@link BookSpec} - so a trade updates three bars in place without allocation and
+ * memory per book is fixed. Bar of a trade is chosen by the entry timestamp of the incoming order, timestamps that go
+ * back, i.e. of an amended order, are counted into the current bar. Interval without trades has no bar.
+ * <p>
+ * Single writer - the book event subscriber - updates bars under the write lock of {@link StampedLock}, readers copy
+ * them optimistically and retry if a trade has been applied meanwhile (seqlock), so reading never blocks the book.
+ * Bars are kept in memory only, after restart they are rebuilt from journaled events replayed after the latest
+ * snapshot.
+ */
+public class CandleFeed {
+
+    /**
+     * Bars kept per interval - 17 minutes of 1s bars, 17 hours of 1m bars, 42 days of 1h bars
+     */
+    public static final int CAPACITY = 1024;
+    /**
+     * The stream sends the current bar at most this often
+     */
+    public static final Duration STREAM_PERIOD = Duration.ofMillis(250);
+
+    private static final int SPIN_TRIES = 256;
+    private static final long PARK_NANOS = 1_000L;
+    private static final long DAY_SECONDS = 24 * 3_600;
+
+    private final String aggregateId;
+    private final BookSpec spec;
+    private final StampedLock lock = new StampedLock();
+    private final Bars[] bars = new Bars[CandleInterval.values().length];
+    private long lastTicks;
+    private long lastSecond = Long.MIN_VALUE;
+    private int lastNanos;
+
+    public CandleFeed(String aggregateId, BookSpec spec) {
+        this.aggregateId = aggregateId;
+        this.spec = spec;
+        for (CandleInterval interval : CandleInterval.values()) {
+            bars[interval.ordinal()] = new Bars(interval.seconds());
+        }
+    }
+
+    /**
+     * Receives book events, called by a single subscriber of the book events
+     *
+     * @param event book event
+     */
+    public void accept(Event event) {
+        if (!(event instanceof OrderMatchedEvent evt)) {
+            return;
+        }
+        long ticks = spec.toTicks(evt.restingPrice());
+        long units = spec.toUnits(evt.previousRestingAmount()) - spec.toUnits(evt.restingRemainingAmount());
+        Instant timestamp = evt.entryTimestamp();
+        long stamp = lock.writeLock();
+        try {
+            if (timestamp.getEpochSecond() > lastSecond) {
+                lastSecond = timestamp.getEpochSecond();
+                lastNanos = timestamp.getNano();
+            }
+            lastTicks = ticks;
+            for (Bars interval : bars) {
+                interval.trade(lastSecond, ticks, units);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * The latest bars, lock free
+     *
+     * @param interval - bar interval
+     * @param limit    - maximum number of bars
+     * @return bars from the oldest to the current one
+     */
+    public List<Candle> candles(CandleInterval interval, int limit) {
+        Bars source = bars[interval.ordinal()];
+        Bars copy = new Bars(interval.seconds(), Math.max(0, Math.min(limit, CAPACITY)));
+        int tries = 0;
+        while (true) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                source.copyLatest(copy);
+                if (lock.validate(stamp)) {
+                    break;
+                }
+            }
+            tries = backOff(tries);
+        }
+        List<Candle> candles = new ArrayList<>(copy.size);
+        //copy holds the latest bar first
+        for (int i = copy.size - 1; i >= 0; i--) {
+            candles.add(toCandle(interval, copy, i));
+        }
+        return candles;
+    }
+
+    /**
+     * @param interval - bar interval
+     * @return the current bar, null before the first trade
+     */
+    public Candle current(CandleInterval interval) {
+        List<Candle> candles = candles(interval, 1);
+        return candles.isEmpty() ? null : candles.get(0);
+    }
+
+    /**
+     * Current bar of interval, sent when it has changed and at most once per {@link #STREAM_PERIOD}. Slow subscriber
+     * gets the latest state of the bar instead of every trade.
+     *
+     * @param interval - bar interval
+     * @return stream of bar updates
+     */
+    public Flux<Candle> updates(CandleInterval interval) {
+        return Flux.interval(Duration.ZERO, STREAM_PERIOD)
+                   .onBackpressureDrop()
+                   .concatMapIterable(tick -> {
+                       Candle current = current(interval);
+                       return current != null ? List.of(current) : Collections.<Candle>emptyList();
+                   })
+                   .distinctUntilChanged();
+    }
+
+    /**
+     * Last trade and totals of hourly bars that started within the last 24 hours, lock free
+     *
+     * @return trade statistics
+     */
+    public TradeStats stats() {
+        return stats(Instant.now().getEpochSecond());
+    }
+
+    TradeStats stats(long nowSecond) {
+        Bars hours = bars[CandleInterval.HOUR.ordinal()];
+        Bars copy = new Bars(CandleInterval.HOUR.seconds(), (int) (DAY_SECONDS / CandleInterval.HOUR.seconds()));
+        long ticks;
+        long second;
+        int nanos;
+        int tries = 0;
+        while (true) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                ticks = lastTicks;
+                second = lastSecond;
+                nanos = lastNanos;
+                hours.copyLatest(copy);
+                if (lock.validate(stamp)) {
+                    break;
+                }
+            }
+            tries = backOff(tries);
+        }
+        if (second == Long.MIN_VALUE) {
+            return new TradeStats(aggregateId, null, null, BigDecimal.ZERO, null, 0);
+        }
+        long units = 0;
+        double notional = 0;
+        long trades = 0;
+        for (int i = 0; i < copy.size; i++) {
+            if (copy.starts[i] > nowSecond - DAY_SECONDS) {
+                units += copy.volumes[i];
+                notional += copy.notionals[i];
+                trades += copy.trades[i];
+            }
+        }
+        return new TradeStats(aggregateId,
+                              spec.toPrice(ticks),
+                              Instant.ofEpochSecond(second, nanos),
+                              spec.toAmount(units),
+                              units > 0 ? vwap(notional, units) : null,
+                              trades);
+    }
+
+    private Candle toCandle(CandleInterval interval, Bars copy, int i) {
+        return new Candle(aggregateId,
+                          interval.label(),
+                          Instant.ofEpochSecond(copy.starts[i]),
+                          spec.toPrice(copy.opens[i]),
+                          spec.toPrice(copy.highs[i]),
+                          spec.toPrice(copy.lows[i]),
+                          spec.toPrice(copy.closes[i]),
+                          spec.toAmount(copy.volumes[i]),
+                          vwap(copy.notionals[i], copy.volumes[i]),
+                          copy.trades[i]);
+    }
+
+    /**
+     * Notional is summed as double, price times amount in ticks and units would overflow long
+     */
+    private BigDecimal vwap(double notional, long units) {
+        return BigDecimal.valueOf(notional / units)
+                         .movePointLeft(spec.priceScale())
+                         .setScale(spec.priceScale(), RoundingMode.HALF_EVEN);
+    }
+
+    /**
+     * Writer holds the lock only for a few array writes
+     */
+    private static int backOff(int tries) {
+        if (++tries < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return tries;
+    }
+
+    /**
+     * Ring of bars of one interval, slot of bar number n (start / interval) is n % capacity
+     */
+    private static final class Bars {
+
+        private final long seconds;
+        private final long[] starts;
+        private final long[] opens;
+        private final long[] highs;
+        private final long[] lows;
+        private final long[] closes;
+        private final long[] volumes;
+        private final long[] trades;
+        private final double[] notionals;
+        private long current = Long.MIN_VALUE;
+        /**
+         * Number of bars of a copy
+         */
+        private int size;
+
+        private Bars(long seconds) {
+            this(seconds, CAPACITY);
+        }
+
+        private Bars(long seconds, int capacity) {
+            this.seconds = seconds;
+            this.starts = new long[capacity];
+            this.opens = new long[capacity];
+            this.highs = new long[capacity];
+            this.lows = new long[capacity];
+            this.closes = new long[capacity];
+            this.volumes = new long[capacity];
+            this.trades = new long[capacity];
+            this.notionals = new double[capacity];
+        }
+
+        private void trade(long second, long ticks, long units) {
+            long bar = Math.floorDiv(second, seconds);
+            int slot = (int) Math.floorMod(bar, (long) CAPACITY);
+            if (bar != current) {
+                current = bar;
+                starts[slot] = bar * seconds;
+                opens[slot] = ticks;
+                highs[slot] = ticks;
+                lows[slot] = ticks;
+                volumes[slot] = 0;
+                trades[slot] = 0;
+                notionals[slot] = 0;
+            }
+            highs[slot] = Math.max(highs[slot], ticks);
+            lows[slot] = Math.min(lows[slot], ticks);
+            closes[slot] = ticks;
+            volumes[slot] += units;
+            trades[slot]++;
+            notionals[slot] += (double) ticks * units;
+        }
+
+        /**
+         * Copies the latest bars, the current one first, skipping intervals without trades. Bars of the ring older
+         * than its capacity are stale and never copied.
+         */
+        private void copyLatest(Bars copy) {
+            copy.size = 0;
+            long current = this.current;
+            if (current == Long.MIN_VALUE) {
+                return;
+            }
+            for (long bar = current; bar > current - CAPACITY && copy.size < copy.starts.length; bar--) {
+                int slot = (int) Math.floorMod(bar, (long) CAPACITY);
+                if (starts[slot] != bar * seconds || volumes[slot] == 0 && trades[slot] == 0) {
+                    continue;
+                }
+                int i = copy.size++;
+                copy.starts[i] = starts[slot];
+                copy.opens[i] = opens[slot];
+                copy.highs[i] = highs[slot];
+                copy.lows[i] = lows[slot];
+                copy.closes[i] = closes[slot];
+                copy.volumes[i] = volumes[slot];
+                copy.trades[i] = trades[slot];
+                copy.notionals[i] = notionals[slot];
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.zapata.reactivestockmarket.domain.feed;
+
+/**
+ * Bar intervals kept by {@link CandleFeed}
+ */
+public enum CandleInterval {
+
+    SECOND("1s", 1),
+    MINUTE("1m", 60),
+    HOUR("1h", 3_600);
+
+    private final String label;
+    private final long seconds;
+
+    CandleInterval(String label, long seconds) {
+        this.label = label;
+        this.seconds = seconds;
+    }
+
+    /**
+     * @param label - interval label, i.e. {@code 1m}
+     * @return interval with label
+     * @throws IllegalArgumentException if no interval has the label
+     */
+    public static CandleInterval of(String label) {
+        for (CandleInterval interval : values()) {
+            if (interval.label.equals(label)) {
+                return interval;
+            }
+        }
+        throw new IllegalArgumentException("Unknown candle interval " + label + ", supported are 1s, 1m and 1h");
+    }
+
+    public String label() {
+        return label;
+    }
+
+    public long seconds() {
+        return seconds;
+    }
+}
@@ -0,0 +1,245 @@
+package com.zapata.reactivestockmarket.domain.feed;
+
+import com.zapata.reactivestockmarket.cqrs.Event;
+import com.zapata.reactivestockmarket.cqrs.UpdateEvent;
+import com.zapata.reactivestockmarket.domain.dtos.DepthLevel;
+import com.zapata.reactivestockmarket.domain.dtos.DepthUpdate;
+import com.zapata.reactivestockmarket.domain.engine.events.OrderAmendedEvent;
+import com.zapata.reactivestockmarket.domain.engine.events.OrderCanceledEvent;
+import com.zapata.reactivestockmarket.domain.engine.events.OrderMatchedEvent;
+import com.zapata.reactivestockmarket.domain.engine.events.OrderPlacedEvent;
+import com.zapata.reactivestockmarket.domain.engine.events.OrdersCanceledEvent;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Aggregated depth (L2) feed of single book - amount of resting orders per price level, derived from matching engine
+ * events.
+ * <p>
+ * Matching thread only enqueues events, levels are maintained by a single feed thread shared by all books. Every
+ * level change is recorded into a fixed size changelog ring. Subscriber keeps just a cursor into the changelog and
+ * once it has demand, it reads levels changed since its cursor and gets the latest state of each of them in one
+ * message - slow subscriber gets conflated updates instead of an ever-growing queue. Subscriber that falls behind
+ * the whole changelog gets a new snapshot. Memory is bounded by the number of levels and the changelog size,
+ * regardless of the number of subscribers.
+ */
+public class DepthFeed {
+
+    private static final int CHANGELOG_SIZE = 8192;
+    private static final int MASK = CHANGELOG_SIZE - 1;
+    private static final int MAX_EVENTS_PER_SIGNAL = 1024;
+    private static final Scheduler FEED_SCHEDULER = Schedulers.newSingle("depth-feed", true);
+
+    private final String aggregateId;
+    private final ConcurrentSkipListMap<BigDecimal, BigDecimal> bids =
+            new ConcurrentSkipListMap<>(Comparator.reverseOrder());
+    private final ConcurrentSkipListMap<BigDecimal, BigDecimal> asks = new ConcurrentSkipListMap<>();
+
+    private final Queue<UpdateEvent> events = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger eventsWip = new AtomicInteger();
+
+    /**
+     * Level changed by change number n is stored at index n & MASK, written by the feed thread only
+     */
+    private final AtomicReferenceArray<LevelChange> changelog = new AtomicReferenceArray<>(CHANGELOG_SIZE);
+    /**
+     * Number of level changes, published after the change has been applied and recorded
+     */
+    private volatile long sequence;
+
+    private final Set<DepthSubscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    public DepthFeed(String aggregateId) {
+        this.aggregateId = aggregateId;
+    }
+
+    /**
+     * Receives book events, called on the matching thread so it only enqueues engine events for the feed thread
+     *
+     * @param event book event
+     */
+    public void accept(Event event) {
+        if (!(event instanceof OrderPlacedEvent || event instanceof OrderMatchedEvent
+                || event instanceof OrderCanceledEvent || event instanceof OrdersCanceledEvent
+                || event instanceof OrderAmendedEvent)) {
+            return;
+        }
+        events.offer((UpdateEvent) event);
+        if (eventsWip.getAndIncrement() == 0) {
+            FEED_SCHEDULER.schedule(this::drainEvents);
+        }
+    }
+
+    /**
+     * Hot stream of depth messages, the first one is a snapshot of all levels
+     *
+     * @return depth messages
+     */
+    public Flux<DepthUpdate> updates() {
+        return Flux.create(sink -> {
+            DepthSubscriber subscriber = new DepthSubscriber(sink);
+            subscribers.add(subscriber);
+            sink.onDispose(() -> subscribers.remove(subscriber));
+            sink.onRequest(n -> subscriber.signal());
+        });
+    }
+
+    /**
+     * @return number of level changes applied so far
+     */
+    public long sequence() {
+        return sequence;
+    }
+
+    private void drainEvents() {
+        int missed = 1;
+        do {
+            while (!events.isEmpty()) {
+                UpdateEvent event;
+                for (int i = 0; i < MAX_EVENTS_PER_SIGNAL && (event = events.poll()) != null; i++) {
+                    apply(event);
+                }
+                for (DepthSubscriber subscriber : subscribers) {
+                    subscriber.signal();
+                }
+            }
+            missed = eventsWip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void apply(UpdateEvent event) {
+        switch (event) {
+            case OrderPlacedEvent evt -> change(evt.orderType(), evt.price(), evt.amount());
+            case OrderMatchedEvent evt -> change(evt.orderType() == OrderType.BUY ? OrderType.SELL : OrderType.BUY,
+                                                 evt.restingPrice(),
+                                                 evt.restingRemainingAmount().subtract(evt.previousRestingAmount()));
+            case OrderCanceledEvent evt -> change(evt.orderType(), evt.price(), evt.canceledAmount().negate());
+            case OrderAmendedEvent evt -> {
+                change(evt.orderType(), evt.previousPrice(), evt.previousAmount().negate());
+                if (evt.remainingAmount().signum() > 0) {
+                    change(evt.orderType(), evt.price(), evt.remainingAmount());
+                }
+            }
+            case OrdersCanceledEvent evt -> {
+                for (OrdersCanceledEvent.CanceledLevel level : evt.levels()) {
+                    change(level.orderType(), level.price(), level.canceledAmount().negate());
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void change(OrderType side, BigDecimal price, BigDecimal delta) {
+        (side == OrderType.BUY ? bids : asks).merge(price, delta, (amount, change) -> {
+            BigDecimal changed = amount.add(change);
+            return changed.signum() > 0 ? changed : null;
+        });
+        long next = sequence;
+        changelog.lazySet((int) next & MASK, new LevelChange(side, price));
+        sequence = next + 1;
+    }
+
+    private static List<DepthLevel> levels(Map<BigDecimal, BigDecimal> levels) {
+        List<DepthLevel> result = new ArrayList<>(levels.size());
+        levels.forEach((price, amount) -> result.add(new DepthLevel(price, amount)));
+        return result;
+    }
+
+    private static List<DepthLevel> levels(NavigableSet<BigDecimal> prices, Map<BigDecimal, BigDecimal> levels) {
+        List<DepthLevel> result = new ArrayList<>(prices.size());
+        for (BigDecimal price : prices) {
+            BigDecimal amount = levels.get(price);
+            result.add(new DepthLevel(price, amount != null ? amount : BigDecimal.ZERO));
+        }
+        return result;
+    }
+
+    private record LevelChange(OrderType side, BigDecimal price) {
+    }
+
+    /**
+     * Conflating subscriber, messages are built only when downstream has demand and at most one drain runs at a time
+     */
+    private final class DepthSubscriber {
+
+        private final FluxSink<DepthUpdate> sink;
+        private final AtomicInteger wip = new AtomicInteger();
+        /**
+         * Sequence up to which changes have been sent, -1 until snapshot has been sent
+         */
+        private volatile long cursor = -1;
+
+        private DepthSubscriber(FluxSink<DepthUpdate> sink) {
+            this.sink = sink;
+        }
+
+        private void signal() {
+            if (sink.requestedFromDownstream() > 0 && cursor != sequence && wip.getAndIncrement() == 0) {
+                Schedulers.parallel().schedule(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                while (sink.requestedFromDownstream() > 0 && !sink.isCancelled()) {
+                    DepthUpdate update = poll();
+                    if (update == null) {
+                        break;
+                    }
+                    sink.next(update);
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private DepthUpdate poll() {
+            long head = sequence;
+            if (cursor < 0 || head - cursor > CHANGELOG_SIZE) {
+                return snapshot(head);
+            }
+            if (head == cursor) {
+                return null;
+            }
+            NavigableSet<BigDecimal> changedBids = new TreeSet<>(Comparator.reverseOrder());
+            NavigableSet<BigDecimal> changedAsks = new TreeSet<>();
+            for (long n = cursor; n < head; n++) {
+                LevelChange change = changelog.get((int) n & MASK);
+                (change.side() == OrderType.BUY ? changedBids : changedAsks).add(change.price());
+            }
+            //feed thread may have overwritten changes that were just read
+            if (sequence - cursor >= CHANGELOG_SIZE) {
+                return snapshot(sequence);
+            }
+            cursor = head;
+            return new DepthUpdate(aggregateId, head, false, levels(changedBids, bids), levels(changedAsks, asks));
+        }
+
+        /**
+         * Levels may already include changes after head, they are sent once more by the next update
+         */
+        private DepthUpdate snapshot(long head) {
+            cursor = head;
+            return new DepthUpdate(aggregateId, head, true, levels(bids), levels(asks));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.zapata.reactivestockmarket.domain.journal;
+
+/**
+ * Defines when journaled events are forced to the storage device.
+ * <p>
+ * Appends always go to the memory-mapped file, so they survive a crash of the process with any policy - the policy
+ * only decides what survives a crash of the operating system or power loss.
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Group commit - flusher thread forces everything appended since the previous force, commands are acknowledged
+     * only after the force that covers their event
+     */
+    BATCH,
+
+    /**
+     * Flusher thread forces journals every fsync interval, commands are acknowledged immediately
+     */
+    INTERVAL,
+
+    /**
+     * Journals are forced only on close, writing back is left to the operating system
+     */
+    NONE
+}
@@ -0,0 +1,305 @@
+package com.zapata.reactivestockmarket.domain.journal;
+
+import com.zapata.reactivestockmarket.MarketProperties;
+import com.zapata.reactivestockmarket.cqrs.EventJournal;
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Write-ahead journal of book sourcing events, configured by {@code market.journal.*} properties.
+ * <p>
+ * Each aggregate has its own append-only journal file in the journal directory, see {@link MappedEventJournal}.
+ * Appends only copy the record into a memory-mapped file, forcing it to the storage device is left to a single
+ * flusher thread shared by all journals, according to {@link FsyncPolicy}. With {@link FsyncPolicy#BATCH} the
+ * flusher forces everything appended while the previous force was running, so one force commits a whole batch of
+ * commands.
+ * <p>
+ * Book snapshots are kept next to journals by {@link SnapshotStore}, so that recovery replays only the journal tail.
+ * <p>
+ * Records of open journals can be read by other threads while they are appended, i.e. to stream them to a replica,
+ * see {@link #read} and {@link #decode}. Only records that are durable according to the policy are read, so a replica
+ * never has an event its primary can lose in a crash.
+ * <p>
+ * Disabled journal opens {@link EventJournal#NONE} for every aggregate and never takes snapshots.
+ */
+@Component
+public class Journal {
+
+    private static final String FILE_SUFFIX = ".journal";
+    private static final long MAX_IDLE_NANOS = 100_000_000L;
+
+    private final Logger logger = LoggerFactory.getLogger(Journal.class);
+
+    private final boolean enabled;
+    private final Path directory;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    private final int regionSize;
+    private final SnapshotStore snapshots;
+
+    private final List<MappedEventJournal> journals = new CopyOnWriteArrayList<>();
+    private final Map<String, MappedEventJournal> opened = new ConcurrentHashMap<>();
+    private final AtomicLong syncs = new AtomicLong();
+    private final AtomicLong syncNanos = new AtomicLong();
+
+    private final Thread flusher;
+    private volatile boolean flusherWaiting;
+    private volatile boolean running = true;
+
+    public Journal(MarketProperties marketProperties) {
+        MarketProperties.JournalProperties properties = marketProperties.journal();
+        this.enabled = properties.enabled();
+        this.directory = Paths.get(properties.directory());
+        this.fsyncPolicy = properties.fsyncPolicy();
+        this.fsyncIntervalNanos = properties.fsyncInterval().toNanos();
+        this.regionSize = properties.regionSize();
+        this.snapshots = enabled ? new SnapshotStore(directory, properties.snapshotInterval())
+                                 : SnapshotStore.DISABLED;
+
+        if (enabled) {
+            try {
+                Files.createDirectories(directory);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't create journal directory " + directory, e);
+            }
+        }
+        if (enabled && fsyncPolicy != FsyncPolicy.NONE) {
+            flusher = new Thread(this::runFlusher, "journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Lists aggregates that have a journal in journal directory
+     *
+     * @return aggregate identifiers
+     */
+    public List<String> aggregateIds() {
+        if (!enabled) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                        .filter(name -> name.endsWith(FILE_SUFFIX))
+                        .map(name -> URLDecoder.decode(name.substring(0, name.length() - FILE_SUFFIX.length()),
+                                                       StandardCharsets.UTF_8))
+                        .sorted()
+                        .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't list journal directory " + directory, e);
+        }
+    }
+
+    /**
+     * Opens journal of aggregate, creates it if it doesn't exist yet.
+     * Journal has to be replayed before the first append.
+     *
+     * @param aggregateId - asset name / aggregate identifier
+     * @return aggregate journal
+     */
+    public EventJournal open(String aggregateId) {
+        if (!enabled) {
+            return EventJournal.NONE;
+        }
+        MappedEventJournal journal = new MappedEventJournal(aggregateId,
+                                                            directory.resolve(fileName(aggregateId, FILE_SUFFIX)),
+                                                            this);
+        journals.add(journal);
+        opened.put(aggregateId, journal);
+        return journal;
+    }
+
+    /**
+     * @return aggregates whose journal has been opened since start, i.e. books created or recovered
+     */
+    public Set<String> openAggregateIds() {
+        return Collections.unmodifiableSet(opened.keySet());
+    }
+
+    /**
+     * @param aggregateId - asset name / aggregate identifier
+     * @return position right after the last appended record, -1 if journal of aggregate is not open
+     */
+    public long head(String aggregateId) {
+        MappedEventJournal journal = opened.get(aggregateId);
+        return journal != null ? journal.head() : -1;
+    }
+
+    /**
+     * @param aggregateId - asset name / aggregate identifier
+     * @return position right after the last record {@link #read} copies, the last forced one unless fsync policy is
+     * {@link FsyncPolicy#NONE}, -1 if journal of aggregate is not open
+     */
+    public long shippableHead(String aggregateId) {
+        MappedEventJournal journal = opened.get(aggregateId);
+        return journal != null ? journal.shippable() : -1;
+    }
+
+    /**
+     * Copies complete records of aggregate at or after position up to {@link #shippableHead} into target, as they are
+     * in the journal file. Safe to call from any thread while the aggregate appends.
+     *
+     * @param aggregateId  - asset name / aggregate identifier
+     * @param fromPosition - position of the first record to copy, returned by the previous read or 0
+     * @param target       - buffer records are copied to, must fit the largest record
+     * @return position after the last copied record, {@code fromPosition} if there are no new records
+     */
+    public long read(String aggregateId, long fromPosition, ByteBuffer target) {
+        MappedEventJournal journal = opened.get(aggregateId);
+        if (journal == null) {
+            throw new IllegalStateException("Journal of " + aggregateId + " is not open!");
+        }
+        return journal.read(fromPosition, target);
+    }
+
+    /**
+     * Decodes records copied by {@link #read}
+     *
+     * @param aggregateId - asset name / aggregate identifier
+     * @param records     - complete records
+     * @param consumer    - receives id of the command that materialized the event, null if it has not been journaled,
+     *                    and decoded event
+     * @return number of decoded events
+     * @throws IllegalStateException if record is incomplete or its checksum doesn't match
+     */
+    public static int decode(String aggregateId, ByteBuffer records, BiConsumer<UUID, SourcingEvent> consumer) {
+        return MappedEventJournal.decode(aggregateId, records, consumer);
+    }
+
+    public SnapshotStore snapshots() {
+        return snapshots;
+    }
+
+    public JournalStats stats() {
+        long events = 0;
+        long bytes = 0;
+        for (MappedEventJournal journal : journals) {
+            events += journal.appendedEvents();
+            bytes += journal.appendedBytes();
+        }
+        return new JournalStats(fsyncPolicy, journals.size(), events, bytes, syncs.get(), syncNanos.get());
+    }
+
+    FsyncPolicy fsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    int regionSize() {
+        return regionSize;
+    }
+
+    /**
+     * Wakes the flusher up if it waits for appends
+     */
+    void requestSync() {
+        if (flusherWaiting) {
+            flusherWaiting = false;
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    void timedForce(MappedByteBuffer buffer, int index, int length) {
+        long start = System.nanoTime();
+        buffer.force(index, length);
+        syncNanos.addAndGet(System.nanoTime() - start);
+        syncs.incrementAndGet();
+    }
+
+    private void runFlusher() {
+        while (running) {
+            if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+                LockSupport.parkNanos(this, fsyncIntervalNanos);
+                syncAll();
+            } else if (!syncAll()) {
+                flusherWaiting = true;
+                //re-check after announcing, writer either sees the flag or the flusher sees the pending sync
+                if (!hasPendingSync()) {
+                    LockSupport.parkNanos(this, MAX_IDLE_NANOS);
+                }
+                flusherWaiting = false;
+            }
+        }
+    }
+
+    private boolean syncAll() {
+        boolean synced = false;
+        for (MappedEventJournal journal : journals) {
+            try {
+                synced |= journal.sync();
+            } catch (RuntimeException e) {
+                logger.error("Journal sync failed", e);
+            }
+        }
+        return synced;
+    }
+
+    private boolean hasPendingSync() {
+        for (MappedEventJournal journal : journals) {
+            if (journal.hasPendingSync()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits for snapshots being written, stops the flusher and forces all journals
+     */
+    @PreDestroy
+    public void close() {
+        snapshots.close();
+        running = false;
+        if (flusher != null) {
+            LockSupport.unpark(flusher);
+            try {
+                flusher.join(1_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        journals.forEach(MappedEventJournal::close);
+        journals.clear();
+        opened.clear();
+    }
+
+    /**
+     * Encodes aggregate identifier into a file name that is safe on any file system
+     */
+    static String fileName(String aggregateId, String suffix) {
+        return URLEncoder.encode(aggregateId, StandardCharsets.UTF_8)
+                         .replace(".", "%2E")
+                         .replace("*", "%2A") + suffix;
+    }
+}
@@ -0,0 +1,220 @@
+package com.zapata.reactivestockmarket.domain.journal;
+
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+import com.zapata.reactivestockmarket.domain.events.AmendmentRequestedEvent;
+import com.zapata.reactivestockmarket.domain.events.CancellationRequestedEvent;
+import com.zapata.reactivestockmarket.domain.events.MassCancelRequestedEvent;
+import com.zapata.reactivestockmarket.domain.events.OrderAcceptedEvent;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Binary encoding of journaled sourcing events.
+ * <p>
+ * Aggregate identifier is not encoded, each aggregate has its own journal file. Decimals are encoded as scale and
+ * unscaled value, unscaled values with more than 18 digits fall back to two's-complement bytes.
+ * <p>
+ * Id of the command that materialized the event follows the event, flagged by {@link #WITH_COMMAND_ID} in the record
+ * type. Records written without it are read the same as before.
+ */
+final class JournalCodec {
+
+    private static final byte ORDER_ACCEPTED = 1;
+    private static final byte CANCELLATION_REQUESTED = 2;
+    private static final byte MASS_CANCEL_REQUESTED = 3;
+    private static final byte AMENDMENT_REQUESTED = 4;
+    private static final byte WITH_COMMAND_ID = 0x40;
+
+    private static final byte BOTH_SIDES = -1;
+    private static final byte MIN_PRICE = 1;
+    private static final byte MAX_PRICE = 2;
+
+    private static final byte LONG_DECIMAL = 0;
+    private static final byte BIG_DECIMAL = 1;
+
+    private static final OrderType[] ORDER_TYPES = OrderType.values();
+
+    private JournalCodec() {
+    }
+
+    /**
+     * @return number of bytes {@link #encode} writes for event
+     */
+    static int encodedSize(UUID commandId, SourcingEvent event) {
+        return eventSize(event) + (commandId != null ? 16 : 0);
+    }
+
+    private static int eventSize(SourcingEvent event) {
+        return switch (event) {
+            case OrderAcceptedEvent evt -> 1 + 16 + 8 + 1 + decimalSize(evt.amount()) + decimalSize(evt.price()) + 12;
+            case CancellationRequestedEvent evt -> 1 + 16 + 8 + 1 + decimalSize(evt.newAmount());
+            case AmendmentRequestedEvent evt -> 1 + 16 + 8 + decimalSize(evt.newPrice()) + decimalSize(evt.newAmount());
+            case MassCancelRequestedEvent evt -> 1 + 16 + 1 + 1
+                    + (evt.minPrice() != null ? decimalSize(evt.minPrice()) : 0)
+                    + (evt.maxPrice() != null ? decimalSize(evt.maxPrice()) : 0);
+            default -> throw new IllegalArgumentException(event.getClass().getSimpleName() + ": event not journaled!");
+        };
+    }
+
+    /**
+     * @param commandId - command that materialized the event, null if not known
+     * @param event     - event to encode
+     * @param buffer    - target buffer with {@link #encodedSize} bytes remaining
+     */
+    static void encode(UUID commandId, SourcingEvent event, ByteBuffer buffer) {
+        int start = buffer.position();
+        encode(event, buffer);
+        if (commandId != null) {
+            buffer.put(start, (byte) (buffer.get(start) | WITH_COMMAND_ID));
+            putUuid(buffer, commandId);
+        }
+    }
+
+    /**
+     * Reads command id of record without moving the buffer position
+     *
+     * @param buffer - record payload, from its position to its limit
+     * @return command that materialized the event, null if the record has none
+     */
+    static UUID commandId(ByteBuffer buffer) {
+        if ((buffer.get(buffer.position()) & WITH_COMMAND_ID) == 0) {
+            return null;
+        }
+        return new UUID(buffer.getLong(buffer.limit() - 16), buffer.getLong(buffer.limit() - 8));
+    }
+
+    private static void encode(SourcingEvent event, ByteBuffer buffer) {
+        switch (event) {
+            case OrderAcceptedEvent evt -> {
+                buffer.put(ORDER_ACCEPTED);
+                putUuid(buffer, evt.eventId());
+                buffer.putLong(evt.orderId());
+                buffer.put((byte) evt.type().ordinal());
+                putDecimal(buffer, evt.amount());
+                putDecimal(buffer, evt.price());
+                buffer.putLong(evt.entryTimestamp().getEpochSecond());
+                buffer.putInt(evt.entryTimestamp().getNano());
+            }
+            case CancellationRequestedEvent evt -> {
+                buffer.put(CANCELLATION_REQUESTED);
+                putUuid(buffer, evt.eventId());
+                buffer.putLong(evt.orderId());
+                buffer.put((byte) (evt.cancelAll() ? 1 : 0));
+                putDecimal(buffer, evt.newAmount());
+            }
+            case AmendmentRequestedEvent evt -> {
+                buffer.put(AMENDMENT_REQUESTED);
+                putUuid(buffer, evt.eventId());
+                buffer.putLong(evt.orderId());
+                putDecimal(buffer, evt.newPrice());
+                putDecimal(buffer, evt.newAmount());
+            }
+            case MassCancelRequestedEvent evt -> {
+                buffer.put(MASS_CANCEL_REQUESTED);
+                putUuid(buffer, evt.eventId());
+                buffer.put(evt.side() != null ? (byte) evt.side().ordinal() : BOTH_SIDES);
+                buffer.put((byte) ((evt.minPrice() != null ? MIN_PRICE : 0)
+                        | (evt.maxPrice() != null ? MAX_PRICE : 0)));
+                if (evt.minPrice() != null) {
+                    putDecimal(buffer, evt.minPrice());
+                }
+                if (evt.maxPrice() != null) {
+                    putDecimal(buffer, evt.maxPrice());
+                }
+            }
+            default -> throw new IllegalArgumentException(event.getClass().getSimpleName() + ": event not journaled!");
+        }
+    }
+
+    /**
+     * Decodes event of record, command id is skipped, see {@link #commandId}
+     */
+    static SourcingEvent decode(String aggregateId, ByteBuffer buffer) {
+        byte tag = (byte) (buffer.get() & ~WITH_COMMAND_ID);
+        return switch (tag) {
+            case ORDER_ACCEPTED -> new OrderAcceptedEvent(aggregateId,
+                                                          getUuid(buffer),
+                                                          buffer.getLong(),
+                                                          ORDER_TYPES[buffer.get()],
+                                                          getDecimal(buffer),
+                                                          getDecimal(buffer),
+                                                          Instant.ofEpochSecond(buffer.getLong(), buffer.getInt()));
+            case CANCELLATION_REQUESTED -> new CancellationRequestedEvent(aggregateId,
+                                                                          getUuid(buffer),
+                                                                          buffer.getLong(),
+                                                                          buffer.get() == 1,
+                                                                          getDecimal(buffer));
+            case MASS_CANCEL_REQUESTED -> decodeMassCancel(aggregateId, buffer);
+            case AMENDMENT_REQUESTED -> new AmendmentRequestedEvent(aggregateId,
+                                                                    getUuid(buffer),
+                                                                    buffer.getLong(),
+                                                                    getDecimal(buffer),
+                                                                    getDecimal(buffer));
+            default -> throw new IllegalStateException("Unknown journal record type " + tag);
+        };
+    }
+
+    private static MassCancelRequestedEvent decodeMassCancel(String aggregateId, ByteBuffer buffer) {
+        UUID eventId = getUuid(buffer);
+        byte side = buffer.get();
+        byte bounds = buffer.get();
+        return new MassCancelRequestedEvent(aggregateId,
+                                            eventId,
+                                            side != BOTH_SIDES ? ORDER_TYPES[side] : null,
+                                            (bounds & MIN_PRICE) != 0 ? getDecimal(buffer) : null,
+                                            (bounds & MAX_PRICE) != 0 ? getDecimal(buffer) : null);
+    }
+
+    private static void putUuid(ByteBuffer buffer, UUID uuid) {
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID getUuid(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private static int decimalSize(BigDecimal value) {
+        if (fitsLong(value)) {
+            return 1 + 4 + 8;
+        }
+        return 1 + 4 + 4 + value.unscaledValue().toByteArray().length;
+    }
+
+    private static void putDecimal(ByteBuffer buffer, BigDecimal value) {
+        if (fitsLong(value)) {
+            buffer.put(LONG_DECIMAL);
+            buffer.putInt(value.scale());
+            buffer.putLong(value.unscaledValue().longValue());
+        } else {
+            byte[] bytes = value.unscaledValue().toByteArray();
+            buffer.put(BIG_DECIMAL);
+            buffer.putInt(value.scale());
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    /**
+     * Precision is cached by {@link BigDecimal}, unlike unscaled value it is computed without allocation
+     */
+    private static boolean fitsLong(BigDecimal value) {
+        return value.precision() <= 18;
+    }
+
+    private static BigDecimal getDecimal(ByteBuffer buffer) {
+        byte kind = buffer.get();
+        int scale = buffer.getInt();
+        if (kind == LONG_DECIMAL) {
+            return BigDecimal.valueOf(buffer.getLong(), scale);
+        }
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new BigDecimal(new BigInteger(bytes), scale);
+    }
+}
@@ -0,0 +1,22 @@
+package com.zapata.reactivestockmarket.domain.journal;
+
+/**
+ * Journal counters since start, used to compare throughput cost of fsync policies.
+ *
+ * @param fsyncPolicy    - configured fsync policy
+ * @param journals       - number of open aggregate journals
+ * @param appendedEvents - number of events appended since start
+ * @param appendedBytes  - number of bytes appended since start
+ * @param syncs          - number of forces to the storage device
+ * @param syncNanos      - total time spent in forces
+ */
+public record JournalStats(FsyncPolicy fsyncPolicy, int journals, long appendedEvents, long appendedBytes,
+                           long syncs, long syncNanos) {
+
+    /**
+     * @return average number of events covered by single force
+     */
+    public double eventsPerSync() {
+        return syncs == 0 ? 0 : (double) appendedEvents / syncs;
+    }
+}
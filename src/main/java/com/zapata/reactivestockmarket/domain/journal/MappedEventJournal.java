@@ -0,0 +1,345 @@
+package com.zapata.reactivestockmarket.domain.journal;
+
+import com.zapata.reactivestockmarket.cqrs.EventJournal;
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * {@link EventJournal} of single aggregate, appends records to a memory-mapped region of the journal file.
+ * <p>
+ * Record layout is {@code [int payload length][int CRC32C of payload][payload]}, records never span regions. Replay
+ * stops at the first record with zero length or wrong checksum - the torn tail of a crash - and the file is truncated
+ * there, so stale bytes can't be mistaken for records appended after the restart.
+ * <p>
+ * Appends are done by the aggregate thread only, forces by the {@link Journal} flusher thread.
+ */
+final class MappedEventJournal implements EventJournal {
+
+    private static final int HEADER_SIZE = 8;
+
+    private final Logger logger = LoggerFactory.getLogger(MappedEventJournal.class);
+
+    private final String aggregateId;
+    private final Path file;
+    private final FileChannel channel;
+    private final Journal owner;
+    private final CRC32C crc = new CRC32C();
+
+    /**
+     * Current region, replaced by the writer once full. Previous region is forced before replacing it.
+     */
+    private volatile Region region;
+    private long writePosition = -1;
+    private long replayedPosition;
+    /**
+     * End of the last appended record, read by the flusher
+     */
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong appendedEvents = new AtomicLong();
+    /**
+     * End of the last forced record, written by the flusher
+     */
+    private volatile long durable;
+    private final Queue<PendingAck> pendingAcks = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    MappedEventJournal(String aggregateId, Path file, Journal owner) {
+        this.aggregateId = aggregateId;
+        this.file = file;
+        this.owner = owner;
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                            StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't open journal " + file, e);
+        }
+    }
+
+    @Override
+    public void replay(long fromPosition, BiConsumer<UUID, SourcingEvent> consumer) {
+        if (writePosition >= 0) {
+            throw new IllegalStateException("Journal " + file + " has been already replayed!");
+        }
+        long position = fromPosition;
+        int records = 0;
+        try {
+            if (fromPosition > channel.size()) {
+                throw new IllegalStateException("Journal " + file + " ends before position " + fromPosition + "!");
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel.position(fromPosition)), 1 << 16));
+            byte[] payload = new byte[256];
+            while (true) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || length > owner.regionSize() - HEADER_SIZE) {
+                    break;
+                }
+                if (payload.length < length) {
+                    payload = new byte[length];
+                }
+                in.readFully(payload, 0, length);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                ByteBuffer record = ByteBuffer.wrap(payload, 0, length);
+                consumer.accept(JournalCodec.commandId(record), JournalCodec.decode(aggregateId, record));
+                position += HEADER_SIZE + length;
+                records++;
+            }
+        } catch (EOFException e) {
+            //end of file, last record is complete
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't replay journal " + file, e);
+        }
+
+        try {
+            if (channel.size() > position) {
+                channel.truncate(position);
+            }
+            logger.debug("Replayed {} records of {}", records, aggregateId);
+            writePosition = position;
+            replayedPosition = position;
+            published.set(position);
+            durable = position;
+            region = map(position);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't open journal " + file, e);
+        }
+    }
+
+    @Override
+    public long position() {
+        return writePosition;
+    }
+
+    @Override
+    public void append(UUID commandId, SourcingEvent event) {
+        if (writePosition < 0 || closed) {
+            throw new IllegalStateException("Journal " + file + " is not open!");
+        }
+        int length = JournalCodec.encodedSize(commandId, event);
+        int recordSize = HEADER_SIZE + length;
+        Region current = region;
+        if (writePosition + recordSize > current.start() + owner.regionSize()) {
+            current = nextRegion(current, recordSize);
+        }
+
+        MappedByteBuffer buffer = current.buffer();
+        int offset = (int) (writePosition - current.start());
+        buffer.position(offset + HEADER_SIZE);
+        JournalCodec.encode(commandId, event, buffer);
+        buffer.limit(offset + recordSize).position(offset + HEADER_SIZE);
+        crc.reset();
+        crc.update(buffer);
+        buffer.limit(buffer.capacity());
+        buffer.putInt(offset, length);
+        buffer.putInt(offset + 4, (int) crc.getValue());
+
+        writePosition += recordSize;
+        published.lazySet(writePosition);
+        appendedEvents.lazySet(appendedEvents.get() + 1);
+    }
+
+    @Override
+    public void whenDurable(Runnable action) {
+        if (owner.fsyncPolicy() != FsyncPolicy.BATCH || durable >= writePosition) {
+            action.run();
+            return;
+        }
+        pendingAcks.add(new PendingAck(writePosition, action));
+        owner.requestSync();
+    }
+
+    private Region nextRegion(Region current, int recordSize) {
+        if (recordSize > owner.regionSize()) {
+            throw new IllegalStateException("Journal record of " + recordSize + " bytes exceeds region size!");
+        }
+        try {
+            if (owner.fsyncPolicy() != FsyncPolicy.NONE) {
+                owner.timedForce(current.buffer(), 0, (int) (writePosition - current.start()));
+            }
+            Region next = map(writePosition);
+            region = next;
+            return next;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't extend journal " + file, e);
+        }
+    }
+
+    private Region map(long start) throws IOException {
+        return new Region(channel.map(FileChannel.MapMode.READ_WRITE, start, owner.regionSize()), start);
+    }
+
+    /**
+     * Forces records appended since the last sync and runs acknowledgements they cover, called by the flusher only
+     *
+     * @return true if anything has been forced
+     */
+    boolean sync() {
+        long target = published.get();
+        boolean forced = false;
+        if (target > durable) {
+            Region current = region;
+            //records before the current region have been forced by the writer when it moved to the current one
+            long from = Math.max(durable, current.start());
+            if (target > from) {
+                owner.timedForce(current.buffer(), (int) (from - current.start()), (int) (target - from));
+            }
+            durable = target;
+            forced = true;
+        }
+        PendingAck ack;
+        while ((ack = pendingAcks.peek()) != null && ack.position() <= durable) {
+            pendingAcks.poll();
+            ack.action().run();
+        }
+        return forced;
+    }
+
+    /**
+     * @return true if there are records or acknowledgements waiting for {@link #sync()}
+     */
+    boolean hasPendingSync() {
+        return published.get() > durable || !pendingAcks.isEmpty();
+    }
+
+    /**
+     * @return end of the last appended record, safe to call from any thread
+     */
+    long head() {
+        return published.get();
+    }
+
+    /**
+     * @return end of the last record that may leave the process, safe to call from any thread. That is the last forced
+     * record, or the last appended one with {@link FsyncPolicy#NONE} that forces nothing before close.
+     */
+    long shippable() {
+        return owner.fsyncPolicy() == FsyncPolicy.NONE ? published.get() : durable;
+    }
+
+    /**
+     * Copies complete records at or after position up to {@link #shippable()} into target, safe to call from any
+     * thread while the aggregate appends. Records are read through the file channel, the page cache is shared with
+     * the mapping.
+     *
+     * @return position after the last copied record
+     */
+    long read(long fromPosition, ByteBuffer target) {
+        long end = shippable();
+        if (fromPosition >= end) {
+            return fromPosition;
+        }
+        int start = target.position();
+        int length = (int) Math.min(target.remaining(), end - fromPosition);
+        ByteBuffer window = target.slice(start, length);
+        try {
+            while (window.hasRemaining()) {
+                if (channel.read(window, fromPosition + window.position()) < 0) {
+                    throw new IllegalStateException("Journal " + file + " ends before position " + end + "!");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't read journal " + file, e);
+        }
+        int complete = 0;
+        while (complete + HEADER_SIZE <= length) {
+            int recordSize = HEADER_SIZE + window.getInt(complete);
+            if (complete + recordSize > length) {
+                break;
+            }
+            complete += recordSize;
+        }
+        if (complete == 0) {
+            throw new IllegalStateException("Journal record at " + fromPosition + " of " + file
+                                                    + " doesn't fit " + length + " bytes!");
+        }
+        target.position(start + complete);
+        return fromPosition + complete;
+    }
+
+    /**
+     * Decodes records copied by {@link #read}, checksums are verified like on replay. Records position is moved past
+     * each record once the consumer has taken its event, so it stays at the failed record on error.
+     *
+     * @return number of decoded events
+     */
+    static int decode(String aggregateId, ByteBuffer records, BiConsumer<UUID, SourcingEvent> consumer) {
+        CRC32C checksum = new CRC32C();
+        int events = 0;
+        while (records.hasRemaining()) {
+            int offset = records.position();
+            int length = records.remaining() >= HEADER_SIZE ? records.getInt(offset) : -1;
+            if (length <= 0 || length > records.remaining() - HEADER_SIZE) {
+                throw new IllegalStateException("Incomplete journal record of " + aggregateId + "!");
+            }
+            ByteBuffer payload = records.slice(offset + HEADER_SIZE, length);
+            checksum.reset();
+            checksum.update(payload.duplicate());
+            if ((int) checksum.getValue() != records.getInt(offset + 4)) {
+                throw new IllegalStateException("Corrupted journal record of " + aggregateId + "!");
+            }
+            consumer.accept(JournalCodec.commandId(payload), JournalCodec.decode(aggregateId, payload));
+            records.position(offset + HEADER_SIZE + length);
+            events++;
+        }
+        return events;
+    }
+
+    long appendedEvents() {
+        return appendedEvents.get();
+    }
+
+    long appendedBytes() {
+        return published.get() - replayedPosition;
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            Region current = region;
+            if (current != null) {
+                current.buffer().force();
+                durable = published.get();
+            }
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Can't close journal {}", file, e);
+        }
+        PendingAck ack;
+        while ((ack = pendingAcks.poll()) != null) {
+            ack.action().run();
+        }
+    }
+
+    private record Region(MappedByteBuffer buffer, long start) {
+    }
+
+    private record PendingAck(long position, Runnable action) {
+    }
+}
@@ -0,0 +1,217 @@
+package com.zapata.reactivestockmarket.domain.journal;
+
+import com.zapata.reactivestockmarket.domain.engine.EngineSnapshot;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Stores the latest book snapshot of each aggregate next to its journal, so that recovery replays only the journal
+ * tail after the snapshot.
+ * <p>
+ * Snapshots are written by a single background thread into a temporary file that is forced and atomically renamed,
+ * so a crash while writing leaves the previous snapshot in place. File layout is a header (magic, version, CRC32C of
+ * the rest of the file), journal position, last order id, term, order count and resting orders row by row.
+ * Snapshot that can't be read is ignored and the whole journal is replayed.
+ */
+public class SnapshotStore {
+
+    /**
+     * Store that never takes snapshots
+     */
+    public static final SnapshotStore DISABLED = new SnapshotStore(null, 0);
+
+    private static final String FILE_SUFFIX = ".snapshot";
+    private static final int MAGIC = 0x534E4150;
+    private static final int VERSION = 2;
+    private static final long CHECKSUM_OFFSET = 8;
+    private static final OrderType[] ORDER_TYPES = OrderType.values();
+
+    private final Logger logger = LoggerFactory.getLogger(SnapshotStore.class);
+
+    private final Path directory;
+    private final long interval;
+    private final ExecutorService writer;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    SnapshotStore(Path directory, long interval) {
+        this.directory = directory;
+        this.interval = interval;
+        this.writer = interval > 0 ? Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * @return number of applied events between snapshots of one book, 0 if snapshots are disabled
+     */
+    public long interval() {
+        return interval;
+    }
+
+    /**
+     * Reserves snapshot of aggregate, there is at most one snapshot of each aggregate being written
+     *
+     * @param aggregateId - asset name / aggregate identifier
+     * @return false if previous snapshot of aggregate is still being written
+     */
+    public boolean tryBegin(String aggregateId) {
+        return writer != null && inFlight.add(aggregateId);
+    }
+
+    /**
+     * Writes snapshot reserved by {@link #tryBegin} in background
+     *
+     * @param aggregateId - asset name / aggregate identifier
+     * @param snapshot    - book state
+     */
+    public void save(String aggregateId, Snapshot snapshot) {
+        try {
+            writer.execute(() -> {
+                try {
+                    long start = System.nanoTime();
+                    write(aggregateId, snapshot);
+                    logger.info("Snapshot of {} with {} orders written in {} ms", aggregateId,
+                                snapshot.engine().size(), (System.nanoTime() - start) / 1_000_000);
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Snapshot of {} failed", aggregateId, e);
+                } finally {
+                    inFlight.remove(aggregateId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(aggregateId);
+        }
+    }
+
+    /**
+     * Loads the latest snapshot of aggregate
+     *
+     * @param aggregateId - asset name / aggregate identifier
+     * @return snapshot or null if there is none or it can't be read
+     */
+    public Snapshot load(String aggregateId) {
+        if (directory == null) {
+            return null;
+        }
+        Path file = directory.resolve(Journal.fileName(aggregateId, FILE_SUFFIX));
+        CRC32C crc = new CRC32C();
+        try (InputStream stream = Files.newInputStream(file)) {
+            DataInputStream header = new DataInputStream(stream);
+            if (header.readInt() != MAGIC || header.readInt() != VERSION) {
+                logger.warn("Ignoring snapshot {} of unknown format", file);
+                return null;
+            }
+            int checksum = header.readInt();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new CheckedInputStream(stream, crc),
+                                                                             1 << 16));
+            long journalPosition = in.readLong();
+            long lastOrderId = in.readLong();
+            EngineSnapshot engine = EngineSnapshot.allocate(in.readLong(), in.readInt());
+            for (int i = 0; i < engine.size(); i++) {
+                engine.ids()[i] = in.readLong();
+                engine.types()[i] = ORDER_TYPES[in.readByte()];
+                engine.priceTicks()[i] = in.readLong();
+                engine.priceScales()[i] = in.readInt();
+                engine.remainingUnits()[i] = in.readLong();
+                engine.amountScales()[i] = in.readInt();
+                engine.terms()[i] = in.readLong();
+                engine.entrySeconds()[i] = in.readLong();
+                engine.entryNanos()[i] = in.readInt();
+            }
+            if (in.read() != -1 || (int) crc.getValue() != checksum) {
+                logger.warn("Ignoring snapshot {} with wrong checksum", file);
+                return null;
+            }
+            return new Snapshot(journalPosition, lastOrderId, engine);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring snapshot {} that can't be read", file, e);
+            return null;
+        }
+    }
+
+    private void write(String aggregateId, Snapshot snapshot) throws IOException {
+        Path file = directory.resolve(Journal.fileName(aggregateId, FILE_SUFFIX));
+        Path temporary = directory.resolve(Journal.fileName(aggregateId, FILE_SUFFIX + ".tmp"));
+        EngineSnapshot engine = snapshot.engine();
+        CRC32C crc = new CRC32C();
+        try (FileOutputStream stream = new FileOutputStream(temporary.toFile())) {
+            DataOutputStream header = new DataOutputStream(stream);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeInt(0);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(stream, crc), 1 << 16));
+            out.writeLong(snapshot.journalPosition());
+            out.writeLong(snapshot.lastOrderId());
+            out.writeLong(engine.term());
+            out.writeInt(engine.size());
+            for (int i = 0; i < engine.size(); i++) {
+                out.writeLong(engine.ids()[i]);
+                out.writeByte(engine.types()[i].ordinal());
+                out.writeLong(engine.priceTicks()[i]);
+                out.writeInt(engine.priceScales()[i]);
+                out.writeLong(engine.remainingUnits()[i]);
+                out.writeInt(engine.amountScales()[i]);
+                out.writeLong(engine.terms()[i]);
+                out.writeLong(engine.entrySeconds()[i]);
+                out.writeInt(engine.entryNanos()[i]);
+            }
+            out.flush();
+            stream.getChannel().write(ByteBuffer.allocate(4).putInt(0, (int) crc.getValue()), CHECKSUM_OFFSET);
+            stream.getChannel().force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Waits for snapshots being written
+     */
+    void close() {
+        if (writer == null) {
+            return;
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Book state at journal position
+     *
+     * @param journalPosition - journal position right after the last event included in the snapshot
+     * @param lastOrderId     - the last order id accepted by the book
+     * @param engine          - matching engine state
+     */
+    public record Snapshot(long journalPosition, long lastOrderId, EngineSnapshot engine) {
+    }
+}
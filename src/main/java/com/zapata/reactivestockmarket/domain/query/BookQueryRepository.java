@@ -1,101 +1,238 @@
 package com.zapata.reactivestockmarket.domain.query;
 
+import com.zapata.reactivestockmarket.MarketProperties;
+import com.zapata.reactivestockmarket.domain.engine.events.OrderAmendedEvent;
 import com.zapata.reactivestockmarket.domain.engine.events.OrderCanceledEvent;
 import com.zapata.reactivestockmarket.domain.engine.events.OrderMatchedEvent;
 import com.zapata.reactivestockmarket.domain.engine.events.OrderPlacedEvent;
+import com.zapata.reactivestockmarket.domain.engine.events.OrdersCanceledEvent;
 import com.zapata.reactivestockmarket.cqrs.Event;
 import com.zapata.reactivestockmarket.cqrs.QueryRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
-import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-
-import static com.zapata.reactivestockmarket.Config.DEFAULT_CONCURRENCY_LEVEL;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Thread-safe implementation of {@link QueryRepository} used to store order & book projections.
- *¿
+ * <p>
+ * Orders are kept in {@link OrderProjectionStore} - keyed by primitive order id, with prices and amounts packed into
+ * longs and trades appended to a per order log.
+ * <p>
+ * If archive is enabled by {@code market.projection.*} properties, a background archiver periodically moves fully
+ * matched and canceled orders over the retention age or count to {@link OrderArchive}, so the heap stays flat over
+ * long runs. Order queries fall back to the archive transparently.
+ * <p>
+ * {@link #awaitProjection} lets a writer read its own order without polling - it completes as soon as the order's
+ * first event has been applied.
+ * <p>
+ * Books feed their events by {@link #project}, {@link ProjectionPipeline} applies them in batches on worker threads
+ * configured by {@code market.projection.workers} and {@code market.projection.max-batch-size}.
  */
 @Component
 public class BookQueryRepository implements QueryRepository<com.zapata.reactivestockmarket.domain.query.OrderEntry> {
 
-    private final ConcurrentHashMap<Long, com.zapata.reactivestockmarket.domain.query.OrderEntry> projection = new ConcurrentHashMap<>(32,0.75f,DEFAULT_CONCURRENCY_LEVEL);
+    private final Logger logger = LoggerFactory.getLogger(BookQueryRepository.class);
+
+    private final OrderProjectionStore projection = new OrderProjectionStore();
+    private final OrderArchive archive;
+    private final Duration retentionAge;
+    private final int retentionCount;
+    private final Duration awaitTimeout;
+    private final ScheduledExecutorService archiver;
+    private final ProjectionPipeline pipeline;
+
+    public BookQueryRepository() {
+        this(MarketProperties.DEFAULT);
+    }
+
+    @Autowired
+    public BookQueryRepository(MarketProperties marketProperties) {
+        MarketProperties.ProjectionProperties properties = marketProperties.projection();
+        this.retentionAge = properties.retentionAge();
+        this.retentionCount = properties.retentionCount();
+        this.awaitTimeout = properties.awaitTimeout();
+        this.pipeline = new ProjectionPipeline(this::apply, properties.workers(), properties.maxBatchSize());
+        if (properties.archiveEnabled()) {
+            this.archive = new OrderArchive(Paths.get(properties.archiveDirectory()), properties.archiveCacheSize());
+            this.archiver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "projection-archiver");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = properties.archiveInterval().toNanos();
+            archiver.scheduleWithFixedDelay(this::archiveTerminalOrders, interval, interval, TimeUnit.NANOSECONDS);
+        } else {
+            this.archive = OrderArchive.DISABLED;
+            this.archiver = null;
+        }
+    }
 
     /**
-     * Returns current order projection
+     * Returns current order projection, orders that are no longer in memory are read from archive
      *
      * @param orderId - order identifier
-     * @return - materialized projection
+     * @return - materialized projection, copy that later updates don't change
      */
     @Override
     public Mono<com.zapata.reactivestockmarket.domain.query.OrderEntry> getProjection(long orderId) {
-        return Mono.fromCallable(() -> projection.get(orderId));
+        return Mono.fromCallable(() -> {
+            OrderEntry order = projection.get(orderId);
+            return order != null ? order : archive.get(orderId);
+        });
+    }
+
+    /**
+     * Returns order projection once the order is materialized - right away if it already is, otherwise as soon as
+     * its {@link OrderPlacedEvent} or {@link OrderMatchedEvent} has been applied. Meant for orders that are known to
+     * be accepted, the wait is bounded by {@code market.projection.await-timeout} and the waiter is released when it
+     * times out or the subscription is canceled.
+     *
+     * @param orderId - order identifier
+     * @return - materialized projection, copy that later updates don't change, or {@link TimeoutException} error
+     */
+    public Mono<com.zapata.reactivestockmarket.domain.query.OrderEntry> awaitProjection(long orderId) {
+        return Mono.<OrderEntry>create(sink -> {
+            OrderProjectionStore.Waiter waiter = projection.await(orderId, sink::success);
+            if (waiter == null) {
+                return;
+            }
+            sink.onDispose(() -> projection.cancelAwait(orderId, waiter));
+            if (!waiter.mayBeArchived()) {
+                return;
+            }
+            //archive has the order before the store drops it
+            OrderEntry archived = archive.get(orderId);
+            if (archived != null && projection.cancelAwait(orderId, waiter)) {
+                sink.success(archived);
+            }
+        }).timeout(awaitTimeout);
+    }
+
+    /**
+     * Projection counters, event rate of the pipeline is computed over the time since the previous call
+     *
+     * @return projection statistics
+     */
+    public ProjectionStats stats() {
+        return new ProjectionStats(projection.size(), projection.terminalCount(), archive.archivedOrders(),
+                                   archive.archivedBytes(), archive.indexRuns(), archive.cacheHits(),
+                                   archive.cacheMisses(), projection.awaitingCount(), pipeline.stats());
     }
 
     /**
-     * Updates projection with event. Repository uses this event to create/maintain projections.
+     * Keeps projection of book up to date, events are applied in order in batches by one of the pipeline workers
+     *
+     * @param aggregateId - asset name / aggregate identifier
+     * @param events      - all events of the book
+     */
+    public void project(String aggregateId, Flux<? extends Event> events) {
+        pipeline.project(aggregateId, events);
+    }
+
+    /**
+     * Stops the pipeline and the archiver and closes the archive
+     */
+    @PreDestroy
+    public void close() {
+        pipeline.close();
+        if (archiver == null) {
+            return;
+        }
+        archiver.shutdown();
+        try {
+            archiver.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        archive.close();
+    }
+
+    private void archiveTerminalOrders() {
+        try {
+            long start = System.nanoTime();
+            int archived = projection.archive(archive, retentionAge, retentionCount);
+            if (archived > 0 && logger.isDebugEnabled()) {
+                logger.debug("Archived {} orders in {} ms", archived, (System.nanoTime() - start) / 1_000_000);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Archiving of terminal orders failed", e);
+        }
+    }
+
+    /**
+     * Updates projection with event on the subscribing thread. Repository uses this event to create/maintain
+     * projections, books go through {@link #project} instead.
      *
      * @param event - materialized event
      */
     @Override
     public Mono<Void> updateProjection(Event event) {
-        return (switch (event) {
+        return Mono.fromRunnable(() -> apply(event));
+    }
+
+    /**
+     * Applies event to the projection, events of one book must be applied in order by one thread at a time
+     *
+     * @param event - materialized event
+     */
+    void apply(Event event) {
+        switch (event) {
             case OrderPlacedEvent evt -> handleOrderPlacedEvent(evt);
             case OrderMatchedEvent evt -> handleOrderMatchedEvent(evt);
-            case OrderCanceledEvent evt -> handleOrderCanceledEvent(evt);
-            default -> Mono.empty();
-        }).subscribeOn(Schedulers.parallel())
-          .then();
+            case OrderCanceledEvent evt -> projection.updateIfPresent(evt.orderId(), evt.remainingAmount(), null);
+            case OrderAmendedEvent evt -> projection.amend(evt.orderId(), evt.price(), evt.remainingAmount());
+            case OrdersCanceledEvent evt -> projection.cancelAll(evt.orderIds());
+            default -> {
+            }
+        }
     }
 
-    private Mono<com.zapata.reactivestockmarket.domain.query.OrderEntry> handleOrderPlacedEvent(OrderPlacedEvent evt) {
-        return Mono.fromCallable(() -> projection.computeIfAbsent(evt.orderId(), orderId ->
-                new com.zapata.reactivestockmarket.domain.query.OrderEntry(orderId,
+    private void handleOrderPlacedEvent(OrderPlacedEvent evt) {
+        projection.addIfAbsent(evt.orderId(),
                                evt.timestamp(),
                                evt.aggregateId(),
+                               evt.orderType(),
                                evt.price(),
                                evt.amount(),
-                               evt.orderType(),
-                               new CopyOnWriteArrayList<>(),
-                               evt.amount())));
-    }
-
-    private Mono<com.zapata.reactivestockmarket.domain.query.OrderEntry> handleOrderMatchedEvent(OrderMatchedEvent evt) {
-        return Mono.fromCallable(() -> {
-            //update previous
-            projection.computeIfPresent(evt.restingId(), (key, order) -> {
-                order.setPendingAmount(evt.restingRemainingAmount());
-                order.trades().add(
-                        new com.zapata.reactivestockmarket.domain.query.OrderTradeEntry(evt.incomingId(),
-                                            evt.incomingAmount(),
-                                            evt.restingPrice()));
-                return order;
-            });
-            //enter new
-            return projection.computeIfAbsent(evt.incomingId(), incomingId ->
-                    new com.zapata.reactivestockmarket.domain.query.OrderEntry(incomingId,
-                                   evt.entryTimestamp(),
-                                   evt.aggregateId(),
-                                   evt.incomingPrice(),
-                                   evt.incomingAmount(),
-                                   evt.orderType(),
-                                   new CopyOnWriteArrayList<>(List.of(new com.zapata.reactivestockmarket.domain.query.OrderTradeEntry(
-                                           evt.restingId(),
-                                           evt.previousRestingAmount().subtract(evt.restingRemainingAmount()),
-                                           evt.restingPrice()
-                                   ))),
-                                   evt.incomingAmount()
-                                      .subtract(evt.previousRestingAmount().subtract(evt.restingRemainingAmount()))));
-        });
+                               evt.amount(),
+                               null);
     }
 
-    private Mono<com.zapata.reactivestockmarket.domain.query.OrderEntry> handleOrderCanceledEvent(OrderCanceledEvent evt) {
-        return Mono.fromCallable(() -> projection.computeIfPresent(evt.orderId(), (key, order) -> {
-            order.setPendingAmount(evt.remainingAmount());
-            return order;
-        }));
+    private void handleOrderMatchedEvent(OrderMatchedEvent evt) {
+        //update previous
+        projection.updateIfPresent(evt.restingId(),
+                                   evt.restingRemainingAmount(),
+                                   new OrderTradeEntry(evt.incomingId(),
+                                                       evt.incomingAmount(),
+                                                       evt.restingPrice()));
+        BigDecimal matchedAmount = evt.previousRestingAmount().subtract(evt.restingRemainingAmount());
+        OrderTradeEntry trade = new OrderTradeEntry(evt.restingId(), matchedAmount, evt.restingPrice());
+        if (!evt.firstFill()) {
+            //incoming order matched before or amended, an order the projection doesn't know is not created
+            projection.updateIfPresent(evt.incomingId(), evt.incomingAmount().subtract(matchedAmount), trade);
+            return;
+        }
+        //enter new
+        projection.addIfAbsent(evt.incomingId(),
+                               evt.entryTimestamp(),
+                               evt.aggregateId(),
+                               evt.orderType(),
+                               evt.incomingPrice(),
+                               evt.incomingAmount(),
+                               evt.incomingAmount().subtract(matchedAmount),
+                               trade);
     }
 }
@@ -0,0 +1,560 @@
+package com.zapata.reactivestockmarket.domain.query;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Append-only on-disk archive of terminal orders evicted from {@link OrderProjectionStore}.
+ * <p>
+ * Orders are appended to a single data file. Every appended batch also writes an index run - pairs of order id and
+ * data file offset sorted by order id. The heap keeps only every {@value IndexRun#BLOCK_ENTRIES}th order id of a
+ * run, lookup finds the block in it and reads the block with a single positional read. Nothing is memory-mapped, so
+ * the archive costs page cache, not resident memory. The newest run absorbs older runs that are at most twice as
+ * large, so run sizes grow geometrically - there are O(log n) runs and each entry is rewritten O(log n) times.
+ * Recently read orders are served from a small LRU cache.
+ * <p>
+ * Archive is part of the projection and is rebuilt with it, it is cleared when opened and never forced to the storage
+ * device. Appends come from a single archiver thread, lookups from any thread.
+ */
+final class OrderArchive {
+
+    /**
+     * Archive that stores nothing
+     */
+    static final OrderArchive DISABLED = new OrderArchive();
+
+    private static final String DATA_FILE = "orders.data";
+    private static final String INDEX_PREFIX = "orders-";
+    private static final String INDEX_SUFFIX = ".index";
+
+    private static final byte LONG_DECIMAL = 0;
+    private static final byte BIG_DECIMAL = 1;
+    private static final OrderType[] ORDER_TYPES = OrderType.values();
+
+    private final Path directory;
+    private final FileChannel data;
+    private final Map<Long, OrderEntry> cache;
+    private final int cacheSize;
+
+    /**
+     * Index runs newest first, replaced as a whole by the archiver thread
+     */
+    private volatile List<IndexRun> runs = List.of();
+    private volatile long dataSize;
+    private long nextRunId;
+
+    private final AtomicLong archivedOrders = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    private OrderArchive() {
+        this.directory = null;
+        this.data = null;
+        this.cache = null;
+        this.cacheSize = 0;
+    }
+
+    OrderArchive(Path directory, int cacheSize) {
+        this.directory = directory;
+        this.cacheSize = cacheSize;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, OrderEntry> eldest) {
+                return size() > OrderArchive.this.cacheSize;
+            }
+        };
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.filter(OrderArchive::isIndexRun).toList()) {
+                    Files.delete(file);
+                }
+            }
+            this.data = FileChannel.open(directory.resolve(DATA_FILE), StandardOpenOption.CREATE,
+                                         StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                         StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't open order archive in " + directory, e);
+        }
+    }
+
+    boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Appends orders and makes them visible to {@link #get}, called by the archiver thread only
+     *
+     * @param orders - terminal orders, an order archived again replaces the previous copy
+     */
+    void append(List<OrderEntry> orders) throws IOException {
+        if (orders.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(orders.size() * 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        ByteArrayOutputStream record = new ByteArrayOutputStream(128);
+        DataOutputStream recordOut = new DataOutputStream(record);
+        long[] index = new long[orders.size() * 2];
+        for (int i = 0; i < orders.size(); i++) {
+            OrderEntry order = orders.get(i);
+            index[2 * i] = order.orderId();
+            index[2 * i + 1] = dataSize + out.size();
+            record.reset();
+            encode(order, recordOut);
+            out.writeInt(record.size());
+            record.writeTo(out);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        while (buffer.hasRemaining()) {
+            data.write(buffer, dataSize + buffer.position());
+        }
+        dataSize += buffer.limit();
+
+        List<IndexRun> updated = new ArrayList<>(runs);
+        List<IndexRun> merged = new ArrayList<>();
+        IndexRun newest = writeRun(sorted(index));
+        while (!updated.isEmpty() && updated.get(0).size() <= 2 * newest.size()) {
+            IndexRun older = updated.remove(0);
+            IndexRun absorbed = newest;
+            newest = merge(newest, older);
+            absorbed.delete();
+            merged.add(older);
+        }
+        updated.add(0, newest);
+        runs = List.copyOf(updated);
+        //lookups that still search merged runs retry with the new ones
+        merged.forEach(IndexRun::delete);
+        synchronized (cache) {
+            orders.forEach(order -> cache.remove(order.orderId()));
+        }
+        archivedOrders.addAndGet(orders.size());
+    }
+
+    /**
+     * Finds archived order
+     *
+     * @param orderId - order identifier
+     * @return archived order or null if it hasn't been archived
+     */
+    OrderEntry get(long orderId) {
+        if (!isEnabled()) {
+            return null;
+        }
+        synchronized (cache) {
+            OrderEntry cached = cache.get(orderId);
+            if (cached != null) {
+                cacheHits.incrementAndGet();
+                return cached;
+            }
+        }
+        cacheMisses.incrementAndGet();
+        long offset = find(orderId);
+        if (offset < 0) {
+            return null;
+        }
+        OrderEntry order = read(offset);
+        synchronized (cache) {
+            cache.put(orderId, order);
+        }
+        return order;
+    }
+
+    private long find(long orderId) {
+        while (true) {
+            List<IndexRun> current = runs;
+            try {
+                for (IndexRun run : current) {
+                    long offset = run.find(orderId);
+                    if (offset >= 0) {
+                        return offset;
+                    }
+                }
+                return -1;
+            } catch (ClosedChannelException e) {
+                if (runs == current) {
+                    throw new UncheckedIOException("Index of order archive in " + directory + " is closed", e);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't read index of order archive in " + directory, e);
+            }
+        }
+    }
+
+    long archivedOrders() {
+        return archivedOrders.get();
+    }
+
+    long archivedBytes() {
+        return dataSize;
+    }
+
+    int indexRuns() {
+        return runs.size();
+    }
+
+    long cacheHits() {
+        return cacheHits.get();
+    }
+
+    long cacheMisses() {
+        return cacheMisses.get();
+    }
+
+    void close() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            data.close();
+            for (IndexRun run : runs) {
+                run.channel.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't close order archive in " + directory, e);
+        }
+    }
+
+    private OrderEntry read(long offset) {
+        try {
+            ByteBuffer length = readFully(ByteBuffer.allocate(Integer.BYTES), offset);
+            return decode(readFully(ByteBuffer.allocate(length.getInt(0)), offset + Integer.BYTES));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't read order archive in " + directory, e);
+        }
+    }
+
+    private ByteBuffer readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (data.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Order archive ends at " + (position + buffer.position()));
+            }
+        }
+        return buffer.flip();
+    }
+
+    private IndexRun writeRun(long[] sortedIndex) throws IOException {
+        try (IndexRun.Writer writer = new IndexRun.Writer(nextRunFile())) {
+            for (int i = 0; i < sortedIndex.length; i += 2) {
+                writer.write(sortedIndex[i], sortedIndex[i + 1]);
+            }
+            return writer.finish();
+        }
+    }
+
+    /**
+     * Merges two runs into one, the newer copy of an order archived more than once wins
+     */
+    private IndexRun merge(IndexRun newer, IndexRun older) throws IOException {
+        try (IndexRun.Writer writer = new IndexRun.Writer(nextRunFile());
+             IndexRun.Cursor newerCursor = newer.cursor();
+             IndexRun.Cursor olderCursor = older.cursor()) {
+            newerCursor.next();
+            olderCursor.next();
+            while (newerCursor.valid() || olderCursor.valid()) {
+                if (!olderCursor.valid() || newerCursor.valid() && newerCursor.orderId() <= olderCursor.orderId()) {
+                    if (olderCursor.valid() && olderCursor.orderId() == newerCursor.orderId()) {
+                        olderCursor.next();
+                    }
+                    writer.write(newerCursor.orderId(), newerCursor.offset());
+                    newerCursor.next();
+                } else {
+                    writer.write(olderCursor.orderId(), olderCursor.offset());
+                    olderCursor.next();
+                }
+            }
+            return writer.finish();
+        }
+    }
+
+    private Path nextRunFile() {
+        return directory.resolve(INDEX_PREFIX + nextRunId++ + INDEX_SUFFIX);
+    }
+
+    private static long[] sorted(long[] index) {
+        Integer[] order = new Integer[index.length / 2];
+        Arrays.setAll(order, i -> i);
+        //stable sort keeps the last copy of an order last, lookup takes the first one
+        Arrays.sort(order, Comparator.comparingLong(i -> index[2 * i]));
+        long[] sorted = new long[index.length];
+        int size = 0;
+        for (int i = 0; i < order.length; i++) {
+            if (i + 1 < order.length && index[2 * order[i]] == index[2 * order[i + 1]]) {
+                continue;
+            }
+            sorted[size++] = index[2 * order[i]];
+            sorted[size++] = index[2 * order[i] + 1];
+        }
+        return Arrays.copyOf(sorted, size);
+    }
+
+    private static boolean isIndexRun(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(INDEX_PREFIX) && name.endsWith(INDEX_SUFFIX);
+    }
+
+    /**
+     * Record layout - order id, entry timestamp, asset, direction, price, amount, pending amount and trades, the
+     * record is preceded by its length
+     */
+    private static void encode(OrderEntry order, DataOutputStream out) throws IOException {
+        out.writeLong(order.orderId());
+        out.writeLong(order.entryTimestamp().getEpochSecond());
+        out.writeInt(order.entryTimestamp().getNano());
+        byte[] asset = order.asset().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(asset.length);
+        out.write(asset);
+        out.writeByte(order.direction().ordinal());
+        writeDecimal(out, order.price());
+        writeDecimal(out, order.amount());
+        writeDecimal(out, order.pendingAmount());
+        out.writeInt(order.trades().size());
+        for (OrderTradeEntry trade : order.trades()) {
+            out.writeLong(trade.orderId());
+            writeDecimal(out, trade.amount());
+            writeDecimal(out, trade.price());
+        }
+    }
+
+    private static OrderEntry decode(ByteBuffer in) {
+        long orderId = in.getLong();
+        Instant entryTimestamp = Instant.ofEpochSecond(in.getLong(), in.getInt());
+        byte[] asset = new byte[in.getInt()];
+        in.get(asset);
+        OrderType direction = ORDER_TYPES[in.get()];
+        BigDecimal price = readDecimal(in);
+        BigDecimal amount = readDecimal(in);
+        BigDecimal pendingAmount = readDecimal(in);
+        int tradeCount = in.getInt();
+        List<OrderTradeEntry> trades = new ArrayList<>(tradeCount);
+        for (int i = 0; i < tradeCount; i++) {
+            trades.add(new OrderTradeEntry(in.getLong(), readDecimal(in), readDecimal(in)));
+        }
+        return new OrderEntry(orderId, entryTimestamp, new String(asset, StandardCharsets.UTF_8), price, amount,
+                              direction, trades, pendingAmount);
+    }
+
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        //precision is cached by BigDecimal, unlike unscaled value it is computed without allocation
+        if (value.precision() <= 18) {
+            out.writeByte(LONG_DECIMAL);
+            out.writeInt(value.scale());
+            out.writeLong(value.unscaledValue().longValue());
+        } else {
+            byte[] bytes = value.unscaledValue().toByteArray();
+            out.writeByte(BIG_DECIMAL);
+            out.writeInt(value.scale());
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static BigDecimal readDecimal(ByteBuffer in) {
+        byte kind = in.get();
+        int scale = in.getInt();
+        if (kind == LONG_DECIMAL) {
+            return BigDecimal.valueOf(in.getLong(), scale);
+        }
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new BigDecimal(new BigInteger(bytes), scale);
+    }
+
+    /**
+     * Index run file - pairs of order id and data file offset sorted by order id. Heap keeps the first order id of
+     * each block of {@link #BLOCK_ENTRIES} pairs.
+     */
+    private static final class IndexRun {
+
+        private static final int BLOCK_ENTRIES = 256;
+        private static final int ENTRY_BYTES = 2 * Long.BYTES;
+
+        private final Path file;
+        private final FileChannel channel;
+        private final int size;
+        private final long[] blockOrderIds;
+        private final long maxOrderId;
+
+        private IndexRun(Path file, int size, long[] blockOrderIds, long maxOrderId) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.size = size;
+            this.blockOrderIds = blockOrderIds;
+            this.maxOrderId = maxOrderId;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        /**
+         * @return data file offset of order or -1 if the run doesn't contain it
+         */
+        private long find(long orderId) throws IOException {
+            if (orderId < blockOrderIds[0] || orderId > maxOrderId) {
+                return -1;
+            }
+            int block = Arrays.binarySearch(blockOrderIds, orderId);
+            if (block >= 0) {
+                return readBlock(block, 1).getLong(Long.BYTES);
+            }
+            block = -block - 2;
+            ByteBuffer entries = readBlock(block, Math.min(BLOCK_ENTRIES, size - block * BLOCK_ENTRIES));
+            int low = 0;
+            int high = entries.limit() / ENTRY_BYTES - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long middleId = entries.getLong(middle * ENTRY_BYTES);
+                if (middleId < orderId) {
+                    low = middle + 1;
+                } else if (middleId > orderId) {
+                    high = middle - 1;
+                } else {
+                    return entries.getLong(middle * ENTRY_BYTES + Long.BYTES);
+                }
+            }
+            return -1;
+        }
+
+        private ByteBuffer readBlock(int block, int entries) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(entries * ENTRY_BYTES);
+            long position = (long) block * BLOCK_ENTRIES * ENTRY_BYTES;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("Index run " + file + " ends at " + (position + buffer.position()));
+                }
+            }
+            return buffer.flip();
+        }
+
+        private Cursor cursor() throws IOException {
+            return new Cursor(new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16)),
+                              size);
+        }
+
+        private void delete() {
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't delete index run " + file, e);
+            }
+        }
+
+        /**
+         * Writes new run, pairs have to be written in order id order
+         */
+        private static final class Writer implements Closeable {
+
+            private final Path file;
+            private final DataOutputStream out;
+            private long[] blockOrderIds = new long[16];
+            private int size;
+            private long lastOrderId;
+
+            private Writer(Path file) throws IOException {
+                this.file = file;
+                this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+            }
+
+            private void write(long orderId, long offset) throws IOException {
+                if (size % BLOCK_ENTRIES == 0) {
+                    int block = size / BLOCK_ENTRIES;
+                    if (block == blockOrderIds.length) {
+                        blockOrderIds = Arrays.copyOf(blockOrderIds, block << 1);
+                    }
+                    blockOrderIds[block] = orderId;
+                }
+                out.writeLong(orderId);
+                out.writeLong(offset);
+                lastOrderId = orderId;
+                size++;
+            }
+
+            private IndexRun finish() throws IOException {
+                out.close();
+                int blocks = (size + BLOCK_ENTRIES - 1) / BLOCK_ENTRIES;
+                return new IndexRun(file, size, Arrays.copyOf(blockOrderIds, blocks), lastOrderId);
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        }
+
+        /**
+         * Reads run sequentially
+         */
+        private static final class Cursor implements Closeable {
+
+            private final DataInputStream in;
+            private int remaining;
+            private boolean valid;
+            private long orderId;
+            private long offset;
+
+            private Cursor(DataInputStream in, int size) {
+                this.in = in;
+                this.remaining = size;
+            }
+
+            /**
+             * Moves to the next pair
+             *
+             * @return false if there is none
+             */
+            private boolean next() throws IOException {
+                valid = remaining > 0;
+                if (valid) {
+                    orderId = in.readLong();
+                    offset = in.readLong();
+                    remaining--;
+                }
+                return valid;
+            }
+
+            private boolean valid() {
+                return valid;
+            }
+
+            private long orderId() {
+                return orderId;
+            }
+
+            private long offset() {
+                return offset;
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        }
+    }
+}
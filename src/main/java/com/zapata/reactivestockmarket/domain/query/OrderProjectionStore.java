@@ -0,0 +1,680 @@
+package com.zapata.reactivestockmarket.domain.query;
+
+import com.zapata.reactivestockmarket.domain.OrderIdGenerator;
+import com.zapata.reactivestockmarket.util.LongHashMap;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.zapata.reactivestockmarket.Config.DEFAULT_CONCURRENCY_LEVEL;
+
+/**
+ * Thread-safe store of order projections kept in compact form.
+ * <p>
+ * Orders are keyed by primitive order id in {@link LongHashMap}s, one per lock stripe. Prices and amounts are packed
+ * into a single {@code long} - unscaled value and scale - and trades are appended to a growable {@code long[]} log of
+ * the order, so an order with k trades costs one array and amortized O(k) copying. Values that can't be packed, which
+ * the engine never produces, move the order to the exact {@link OrderEntry} form.
+ * <p>
+ * Readers get a new {@link OrderEntry} materialized under the stripe lock, it is a consistent copy that later
+ * updates don't change.
+ * <p>
+ * Each stripe also queues its terminal orders - fully matched or canceled - in the order they became terminal, so
+ * that {@link #archive} can move the oldest ones to {@link OrderArchive}.
+ * <p>
+ * Readers that wait for an order which is not stored yet register a {@link Waiter} under the stripe lock, it is
+ * notified with the first materialized copy right after the order has been added. Order ids are monotonic only within
+ * a shard of {@link OrderIdGenerator}, so the highest archived id is kept per shard to tell whether the awaited order
+ * could have been archived already.
+ */
+final class OrderProjectionStore {
+
+    private static final int STRIPES = Integer.highestOneBit(DEFAULT_CONCURRENCY_LEVEL - 1) << 1;
+    private static final int ID_SHARDS = 1 << OrderIdGenerator.DEFAULT_SHARD_BITS;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    OrderProjectionStore() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Returns copy of order projection
+     *
+     * @param orderId - order identifier
+     * @return order or null if order is unknown
+     */
+    OrderEntry get(long orderId) {
+        return stripe(orderId).get(orderId);
+    }
+
+    /**
+     * Stores new order, existing order is kept as it is
+     *
+     * @param orderId       - order identifier
+     * @param timestamp     - entry timestamp
+     * @param asset         - book the order belongs to
+     * @param direction     - buy or sell
+     * @param price         - limit price
+     * @param amount        - order amount
+     * @param pendingAmount - amount not matched yet
+     * @param trade         - first trade of the order or null
+     */
+    void addIfAbsent(long orderId, Instant timestamp, String asset, OrderType direction, BigDecimal price,
+                     BigDecimal amount, BigDecimal pendingAmount, OrderTradeEntry trade) {
+        Waiter waiter = stripe(orderId).addIfAbsent(orderId, timestamp, asset, direction, price, amount,
+                                                    pendingAmount, trade);
+        //listeners run outside of the stripe lock
+        for (; waiter != null; waiter = waiter.next) {
+            waiter.listener.accept(waiter.entry);
+        }
+    }
+
+    /**
+     * Calls listener with copy of the order as soon as the order is stored. If the order is already stored, listener
+     * is called at once on the calling thread, otherwise on the thread that adds the order.
+     *
+     * @param orderId  - order identifier
+     * @param listener - receives copy of the order
+     * @return waiter to pass to {@link #cancelAwait} or null if listener has already been called
+     */
+    Waiter await(long orderId, Consumer<OrderEntry> listener) {
+        Waiter waiter = new Waiter(listener);
+        OrderEntry order = stripe(orderId).getOrAwait(orderId, waiter);
+        if (order != null) {
+            listener.accept(order);
+            return null;
+        }
+        return waiter;
+    }
+
+    /**
+     * Stops waiting for order, listener that has already been notified or removed is ignored
+     *
+     * @param orderId - order identifier
+     * @param waiter  - waiter returned by {@link #await}
+     * @return true if waiter was removed before it was notified
+     */
+    boolean cancelAwait(long orderId, Waiter waiter) {
+        return stripe(orderId).cancelAwait(orderId, waiter);
+    }
+
+    /**
+     * Updates pending amount of existing order and appends trade to it, unknown order is ignored
+     *
+     * @param orderId       - order identifier
+     * @param pendingAmount - amount not matched yet
+     * @param trade         - trade to append or null
+     */
+    void updateIfPresent(long orderId, BigDecimal pendingAmount, OrderTradeEntry trade) {
+        stripe(orderId).updateIfPresent(orderId, pendingAmount, trade);
+    }
+
+    /**
+     * Updates price and pending amount of existing amended order, unknown order is ignored
+     *
+     * @param orderId       - order identifier
+     * @param price         - new limit price
+     * @param pendingAmount - amount not matched yet
+     */
+    void amend(long orderId, BigDecimal price, BigDecimal pendingAmount) {
+        stripe(orderId).amend(orderId, price, pendingAmount);
+    }
+
+    /**
+     * Sets pending amount of existing orders to zero, unknown orders are ignored. Orders are grouped by lock stripe
+     * first, so each stripe is locked once per call instead of once per order.
+     *
+     * @param orderIds - identifiers of canceled orders
+     */
+    void cancelAll(long[] orderIds) {
+        int[] ends = new int[STRIPES];
+        for (long orderId : orderIds) {
+            ends[stripeIndex(orderId)]++;
+        }
+        for (int i = 1; i < STRIPES; i++) {
+            ends[i] += ends[i - 1];
+        }
+        long[] grouped = new long[orderIds.length];
+        for (int i = orderIds.length - 1; i >= 0; i--) {
+            grouped[--ends[stripeIndex(orderIds[i])]] = orderIds[i];
+        }
+        //ends now hold the start of each stripe's group
+        for (int i = 0; i < STRIPES; i++) {
+            int to = i + 1 < STRIPES ? ends[i + 1] : grouped.length;
+            if (ends[i] < to) {
+                stripes[i].cancelAll(grouped, ends[i], to);
+            }
+        }
+    }
+
+    /**
+     * Moves terminal orders to archive - those that became terminal before {@code maxAge} and the oldest ones over
+     * {@code maxTerminalOrders}, which is split evenly among lock stripes. Orders are removed from the store only
+     * after the archive has them, so readers find them in one of the two. Called by a single archiver thread.
+     *
+     * @param archive           - archive to append to
+     * @param maxAge            - how long terminal order stays in the store
+     * @param maxTerminalOrders - how many terminal orders stay in the store
+     * @return number of archived orders
+     */
+    int archive(OrderArchive archive, Duration maxAge, int maxTerminalOrders) throws IOException {
+        long terminalBefore = System.nanoTime() - maxAge.toNanos();
+        int keep = maxTerminalOrders / STRIPES;
+        List<OrderEntry> batch = new ArrayList<>();
+        int[] counts = new int[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            List<OrderEntry> expired = stripes[i].expired(terminalBefore, keep);
+            counts[i] = expired.size();
+            batch.addAll(expired);
+        }
+        archive.append(batch);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i].removeExpired(counts[i]);
+        }
+        return batch.size();
+    }
+
+    /**
+     * @return number of orders in the store
+     */
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return number of terminal orders in the store
+     */
+    int terminalCount() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.terminalCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return number of readers waiting for orders that are not stored yet
+     */
+    int awaitingCount() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.awaitingCount();
+        }
+        return count;
+    }
+
+    private Stripe stripe(long orderId) {
+        return stripes[stripeIndex(orderId)];
+    }
+
+    private static int stripeIndex(long orderId) {
+        return (int) (orderId ^ (orderId >>> 32)) & (STRIPES - 1);
+    }
+
+    /**
+     * Ids beyond the shards of {@link OrderIdGenerator} share the last shard, which only makes their waiters check
+     * the archive more often
+     */
+    private static int idShard(long orderId) {
+        return (int) Math.min(orderId >>> OrderIdGenerator.DEFAULT_SEQUENCE_BITS, ID_SHARDS - 1);
+    }
+
+    /**
+     * Orders of one lock stripe
+     */
+    private static final class Stripe {
+
+        private final LongHashMap<StoredOrder> orders = new LongHashMap<>();
+        private final TerminalQueue terminal = new TerminalQueue();
+        /**
+         * Readers waiting for orders that are not stored yet, chained by {@link Waiter#next}
+         */
+        private final LongHashMap<Waiter> waiters = new LongHashMap<>();
+        private int waiterCount;
+        /**
+         * Highest order id moved to archive per order id shard, orders of the shard above it can't have been archived
+         */
+        private final long[] maxArchivedIds = new long[ID_SHARDS];
+
+        private Stripe() {
+            Arrays.fill(maxArchivedIds, Long.MIN_VALUE);
+        }
+
+        private synchronized OrderEntry get(long orderId) {
+            StoredOrder order = orders.get(orderId);
+            return order != null ? order.toEntry(orderId) : null;
+        }
+
+        private synchronized OrderEntry getOrAwait(long orderId, Waiter waiter) {
+            StoredOrder order = orders.get(orderId);
+            if (order != null) {
+                return order.toEntry(orderId);
+            }
+            waiter.next = waiters.put(orderId, waiter);
+            waiter.mayBeArchived = orderId <= maxArchivedIds[idShard(orderId)];
+            waiterCount++;
+            return null;
+        }
+
+        private synchronized boolean cancelAwait(long orderId, Waiter waiter) {
+            Waiter head = waiters.get(orderId);
+            if (head == waiter) {
+                if (waiter.next != null) {
+                    waiters.put(orderId, waiter.next);
+                } else {
+                    waiters.remove(orderId);
+                }
+                waiterCount--;
+                return true;
+            }
+            for (Waiter previous = head; previous != null; previous = previous.next) {
+                if (previous.next == waiter) {
+                    previous.next = waiter.next;
+                    waiterCount--;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private synchronized int awaitingCount() {
+            return waiterCount;
+        }
+
+        /**
+         * @return waiters of the order, each with its own copy of the order, or null
+         */
+        private synchronized Waiter addIfAbsent(long orderId, Instant timestamp, String asset, OrderType direction,
+                                                BigDecimal price, BigDecimal amount, BigDecimal pendingAmount,
+                                                OrderTradeEntry trade) {
+            if (orders.containsKey(orderId)) {
+                return null;
+            }
+            StoredOrder order = CompactOrder.of(timestamp, asset, direction, price, amount, pendingAmount);
+            if (order == null) {
+                order = new ExactOrder(new OrderEntry(orderId, timestamp, asset, price, amount, direction,
+                                                      new ArrayList<>(), pendingAmount));
+            }
+            if (trade != null) {
+                order = order.withTrade(orderId, trade);
+            }
+            orders.put(orderId, order);
+            if (order.terminal()) {
+                terminal.add(orderId, System.nanoTime());
+            }
+            if (waiterCount == 0) {
+                return null;
+            }
+            Waiter waiter = waiters.remove(orderId);
+            for (Waiter next = waiter; next != null; next = next.next) {
+                next.entry = order.toEntry(orderId);
+                waiterCount--;
+            }
+            return waiter;
+        }
+
+        private synchronized void updateIfPresent(long orderId, BigDecimal pendingAmount, OrderTradeEntry trade) {
+            update(orderId, pendingAmount, trade);
+        }
+
+        private synchronized void amend(long orderId, BigDecimal price, BigDecimal pendingAmount) {
+            StoredOrder order = orders.get(orderId);
+            if (order == null) {
+                return;
+            }
+            StoredOrder repriced = order.withPrice(orderId, price);
+            if (repriced != order) {
+                orders.put(orderId, repriced);
+            }
+            update(orderId, pendingAmount, null);
+        }
+
+        private synchronized void cancelAll(long[] orderIds, int from, int to) {
+            for (int i = from; i < to; i++) {
+                update(orderIds[i], BigDecimal.ZERO, null);
+            }
+        }
+
+        private void update(long orderId, BigDecimal pendingAmount, OrderTradeEntry trade) {
+            StoredOrder order = orders.get(orderId);
+            if (order == null) {
+                return;
+            }
+            boolean wasTerminal = order.terminal();
+            StoredOrder updated = order.withPendingAmount(orderId, pendingAmount);
+            if (trade != null) {
+                updated = updated.withTrade(orderId, trade);
+            }
+            if (updated != order) {
+                orders.put(orderId, updated);
+            }
+            if (!wasTerminal && updated.terminal()) {
+                terminal.add(orderId, System.nanoTime());
+            }
+        }
+
+        private synchronized int size() {
+            return orders.size();
+        }
+
+        private synchronized int terminalCount() {
+            return terminal.size();
+        }
+
+        /**
+         * @return copies of the oldest terminal orders that have to be archived, oldest first
+         */
+        private synchronized List<OrderEntry> expired(long terminalBefore, int keep) {
+            List<OrderEntry> expired = new ArrayList<>();
+            for (int i = 0; i < terminal.size(); i++) {
+                if (terminal.size() - i <= keep && terminal.since(i) - terminalBefore > 0) {
+                    break;
+                }
+                long orderId = terminal.orderId(i);
+                expired.add(orders.get(orderId).toEntry(orderId));
+            }
+            return expired;
+        }
+
+        /**
+         * Removes the oldest terminal orders returned by {@link #expired}, only archiver removes terminal orders
+         */
+        private synchronized void removeExpired(int count) {
+            for (int i = 0; i < count; i++) {
+                long orderId = terminal.orderId(0);
+                orders.remove(orderId);
+                int shard = idShard(orderId);
+                maxArchivedIds[shard] = Math.max(maxArchivedIds[shard], orderId);
+                terminal.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * Reader waiting for an order, see {@link #await}
+     */
+    static final class Waiter {
+
+        private final Consumer<OrderEntry> listener;
+        private Waiter next;
+        /**
+         * Copy of the order, set under the stripe lock when the order is added
+         */
+        private OrderEntry entry;
+        private boolean mayBeArchived;
+
+        private Waiter(Consumer<OrderEntry> listener) {
+            this.listener = listener;
+        }
+
+        /**
+         * @return true if the order could have been archived before the waiter was registered
+         */
+        boolean mayBeArchived() {
+            return mayBeArchived;
+        }
+    }
+
+    /**
+     * FIFO of terminal orders - order id and {@link System#nanoTime()} when the order became terminal
+     */
+    private static final class TerminalQueue {
+
+        private long[] orderIds = new long[16];
+        private long[] since = new long[16];
+        private int head;
+        private int size;
+
+        private void add(long orderId, long nanoTime) {
+            if (size == orderIds.length) {
+                orderIds = unwrap(orderIds);
+                since = unwrap(since);
+                head = 0;
+            }
+            int tail = (head + size) & (orderIds.length - 1);
+            orderIds[tail] = orderId;
+            since[tail] = nanoTime;
+            size++;
+        }
+
+        private long[] unwrap(long[] ring) {
+            long[] grown = new long[ring.length << 1];
+            System.arraycopy(ring, head, grown, 0, ring.length - head);
+            System.arraycopy(ring, 0, grown, ring.length - head, head);
+            return grown;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private long orderId(int index) {
+            return orderIds[(head + index) & (orderIds.length - 1)];
+        }
+
+        private long since(int index) {
+            return since[(head + index) & (since.length - 1)];
+        }
+
+        private void removeFirst() {
+            head = (head + 1) & (orderIds.length - 1);
+            size--;
+        }
+    }
+
+    private sealed interface StoredOrder permits CompactOrder, ExactOrder {
+
+        /**
+         * Updates pending amount, compact order is updated in place
+         *
+         * @return this order or its exact form if amount doesn't fit the compact one
+         */
+        StoredOrder withPendingAmount(long orderId, BigDecimal pendingAmount);
+
+        /**
+         * @return this order or its exact form if trade doesn't fit the compact one
+         */
+        StoredOrder withTrade(long orderId, OrderTradeEntry trade);
+
+        /**
+         * Updates limit price of amended order
+         *
+         * @return this order or its exact form if price doesn't fit the compact one
+         */
+        StoredOrder withPrice(long orderId, BigDecimal price);
+
+        /**
+         * @return true if the order has no pending amount left
+         */
+        boolean terminal();
+
+        OrderEntry toEntry(long orderId);
+    }
+
+    /**
+     * Order with values packed into longs, see {@link #pack(BigDecimal)}
+     */
+    private static final class CompactOrder implements StoredOrder {
+
+        private static final int SCALE_BITS = 5;
+        private static final int MAX_SCALE = (1 << SCALE_BITS) - 1;
+        /**
+         * Unscaled values need at most this many bits besides sign, so that no packed value is {@link #NOT_PACKED}
+         */
+        private static final int MAX_UNSCALED_BITS = Long.SIZE - SCALE_BITS - 2;
+        private static final long NOT_PACKED = Long.MIN_VALUE;
+        /**
+         * Trade log stride - order id, packed amount, packed price
+         */
+        private static final int TRADE_LONGS = 3;
+        private static final long[] NO_TRADES = new long[0];
+
+        private final long timestampSeconds;
+        private final int timestampNanos;
+        private final String asset;
+        private final OrderType direction;
+        private final long amount;
+        private long price;
+        private long pendingAmount;
+        private long[] trades = NO_TRADES;
+        private int tradeCount;
+
+        private CompactOrder(Instant timestamp, String asset, OrderType direction, long price, long amount,
+                             long pendingAmount) {
+            this.timestampSeconds = timestamp.getEpochSecond();
+            this.timestampNanos = timestamp.getNano();
+            this.asset = asset;
+            this.direction = direction;
+            this.price = price;
+            this.amount = amount;
+            this.pendingAmount = pendingAmount;
+        }
+
+        /**
+         * @return compact order or null if any of values can't be packed
+         */
+        private static CompactOrder of(Instant timestamp, String asset, OrderType direction, BigDecimal price,
+                                       BigDecimal amount, BigDecimal pendingAmount) {
+            long packedPrice = pack(price);
+            long packedAmount = pack(amount);
+            long packedPending = pack(pendingAmount);
+            if (packedPrice == NOT_PACKED || packedAmount == NOT_PACKED || packedPending == NOT_PACKED) {
+                return null;
+            }
+            return new CompactOrder(timestamp, asset, direction, packedPrice, packedAmount, packedPending);
+        }
+
+        @Override
+        public StoredOrder withPendingAmount(long orderId, BigDecimal pendingAmount) {
+            long packed = pack(pendingAmount);
+            if (packed == NOT_PACKED) {
+                return toExact(orderId).withPendingAmount(orderId, pendingAmount);
+            }
+            this.pendingAmount = packed;
+            return this;
+        }
+
+        @Override
+        public StoredOrder withTrade(long orderId, OrderTradeEntry trade) {
+            long packedAmount = pack(trade.amount());
+            long packedPrice = pack(trade.price());
+            if (packedAmount == NOT_PACKED || packedPrice == NOT_PACKED) {
+                return toExact(orderId).withTrade(orderId, trade);
+            }
+            int offset = tradeCount * TRADE_LONGS;
+            if (offset == trades.length) {
+                trades = Arrays.copyOf(trades, Math.max(TRADE_LONGS, trades.length << 1));
+            }
+            trades[offset] = trade.orderId();
+            trades[offset + 1] = packedAmount;
+            trades[offset + 2] = packedPrice;
+            tradeCount++;
+            return this;
+        }
+
+        @Override
+        public StoredOrder withPrice(long orderId, BigDecimal price) {
+            long packed = pack(price);
+            if (packed == NOT_PACKED) {
+                return toExact(orderId).withPrice(orderId, price);
+            }
+            this.price = packed;
+            return this;
+        }
+
+        @Override
+        public boolean terminal() {
+            return pendingAmount >> SCALE_BITS == 0;
+        }
+
+        @Override
+        public OrderEntry toEntry(long orderId) {
+            List<OrderTradeEntry> entries = new ArrayList<>(tradeCount);
+            for (int i = 0; i < tradeCount * TRADE_LONGS; i += TRADE_LONGS) {
+                entries.add(new OrderTradeEntry(trades[i], unpack(trades[i + 1]), unpack(trades[i + 2])));
+            }
+            return new OrderEntry(orderId,
+                                  Instant.ofEpochSecond(timestampSeconds, timestampNanos),
+                                  asset,
+                                  unpack(price),
+                                  unpack(amount),
+                                  direction,
+                                  entries,
+                                  unpack(pendingAmount));
+        }
+
+        private ExactOrder toExact(long orderId) {
+            return new ExactOrder(toEntry(orderId));
+        }
+
+        /**
+         * Packs unscaled value and scale into one long, scale takes the lowest {@link #SCALE_BITS} bits
+         *
+         * @return packed value or {@link #NOT_PACKED} if scale is negative or either part is too big
+         */
+        private static long pack(BigDecimal value) {
+            int scale = value.scale();
+            if (scale < 0 || scale > MAX_SCALE) {
+                return NOT_PACKED;
+            }
+            BigInteger unscaled = value.unscaledValue();
+            if (unscaled.bitLength() > MAX_UNSCALED_BITS) {
+                return NOT_PACKED;
+            }
+            return unscaled.longValue() << SCALE_BITS | scale;
+        }
+
+        private static BigDecimal unpack(long packed) {
+            return BigDecimal.valueOf(packed >> SCALE_BITS, (int) (packed & MAX_SCALE));
+        }
+    }
+
+    /**
+     * Order with values that don't fit {@link CompactOrder}, kept as mutable {@link OrderEntry}
+     */
+    private record ExactOrder(OrderEntry entry) implements StoredOrder {
+
+        @Override
+        public StoredOrder withPendingAmount(long orderId, BigDecimal pendingAmount) {
+            entry.setPendingAmount(pendingAmount);
+            return this;
+        }
+
+        @Override
+        public StoredOrder withTrade(long orderId, OrderTradeEntry trade) {
+            entry.trades().add(trade);
+            return this;
+        }
+
+        @Override
+        public StoredOrder withPrice(long orderId, BigDecimal price) {
+            return new ExactOrder(new OrderEntry(orderId, entry.entryTimestamp(), entry.asset(), price, entry.amount(),
+                                                 entry.direction(), entry.trades(), entry.pendingAmount()));
+        }
+
+        @Override
+        public boolean terminal() {
+            return entry.pendingAmount().signum() == 0;
+        }
+
+        @Override
+        public OrderEntry toEntry(long orderId) {
+            return new OrderEntry(orderId, entry.entryTimestamp(), entry.asset(), entry.price(), entry.amount(),
+                                  entry.direction(), new ArrayList<>(entry.trades()), entry.pendingAmount());
+        }
+    }
+}
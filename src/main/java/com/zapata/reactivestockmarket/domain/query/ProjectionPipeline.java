@@ -0,0 +1,306 @@
+package com.zapata.reactivestockmarket.domain.query;
+
+import com.zapata.reactivestockmarket.cqrs.Event;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.util.concurrent.Queues;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Applies book events to the projection in micro-batches on a fixed set of worker threads.
+ * <p>
+ * Each book is pinned to one worker by its aggregate id, so events of a book are applied in order by one thread
+ * without being handed over per event. The book thread only puts events into a bounded single-producer queue of the
+ * book and schedules a drain if none is pending. The drain applies whatever has queued up, at most the batch limit of
+ * the book, so at light load batches are single events applied right away and books sharing a worker take turns
+ * between batches.
+ * <p>
+ * The batch limit adapts to the backlog of the book - it starts at {@link #MIN_BATCH_SIZE}, doubles up to
+ * {@code maxBatchSize} while the book has events left over after a full batch, and halves back once batches take less
+ * than half of it. Book that keeps up gets short turns that don't hold back the other books of its worker, book under
+ * sustained load gets long ones that amortize the hand-over.
+ * <p>
+ * The pipeline requests unbounded demand, so the only thread that calls {@link BookPipeline#onNext} once the
+ * subscription is set up is the book thread publishing the event - the worker never requests and never re-enters
+ * {@code onNext}, and the queue keeps a single producer. Book that outpaces its worker waits in {@code onNext} until
+ * the queue has room, the same way {@link com.zapata.reactivestockmarket.cqrs.EventFanout} holds back a book for
+ * a {@link com.zapata.reactivestockmarket.cqrs.OverflowPolicy#BLOCK} subscriber.
+ * <p>
+ * Worker threads are started on the first book pinned to them.
+ */
+public class ProjectionPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProjectionPipeline.class);
+
+    /**
+     * Initial batch limit of a book, capped by the max batch size
+     */
+    static final int MIN_BATCH_SIZE = 16;
+    /**
+     * Queue capacity of a book in max batches, so the book doesn't wait for its worker between batches
+     */
+    private static final int QUEUED_BATCHES = 4;
+    private static final int SPIN_TRIES = 256;
+    private static final long PARK_NANOS = 1_000L;
+
+    private final Consumer<Event> projection;
+    private final int maxBatchSize;
+    private final int minBatchSize;
+    private final AtomicReferenceArray<ExecutorService> workers;
+    private final List<BookPipeline> books = new CopyOnWriteArrayList<>();
+    /**
+     * Time and applied events of the previous {@link #stats()} call, rates are computed over the time since then
+     */
+    private long lastStatsNanos = System.nanoTime();
+    private long lastApplied;
+    private volatile boolean closed;
+
+    /**
+     * @param projection   - applies single event, called by worker threads
+     * @param workers      - number of worker threads
+     * @param maxBatchSize - the largest batch limit, maximum number of events applied by a worker before it moves to
+     *                     another book
+     */
+    public ProjectionPipeline(Consumer<Event> projection, int workers, int maxBatchSize) {
+        if (workers < 1 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("Projection workers and max batch size must be positive!");
+        }
+        this.projection = projection;
+        this.maxBatchSize = maxBatchSize;
+        this.minBatchSize = Math.min(MIN_BATCH_SIZE, maxBatchSize);
+        this.workers = new AtomicReferenceArray<>(workers);
+    }
+
+    /**
+     * Applies events of book until the stream completes or the pipeline is closed
+     *
+     * @param aggregateId - asset name / aggregate identifier, selects the worker
+     * @param events      - events of the book, in order
+     */
+    public void project(String aggregateId, Flux<? extends Event> events) {
+        BookPipeline book = new BookPipeline(aggregateId, worker(Math.floorMod(aggregateId.hashCode(),
+                                                                               workers.length())));
+        books.add(book);
+        events.subscribe(book);
+    }
+
+    /**
+     * Counters summed over all books, event rate is computed over the time since the previous call
+     *
+     * @return pipeline statistics
+     */
+    public synchronized PipelineStats stats() {
+        long now = System.nanoTime();
+        double seconds = Math.max(now - lastStatsNanos, 1) / 1e9;
+        long received = 0;
+        long applied = 0;
+        long batches = 0;
+        long blockedOffers = 0;
+        int maxBatch = 0;
+        for (BookPipeline book : books) {
+            //applied first, so that lag is never negative
+            long bookApplied = book.applied.get();
+            received += book.received.get();
+            applied += bookApplied;
+            batches += book.batches;
+            blockedOffers += book.blockedOffers;
+            maxBatch = Math.max(maxBatch, book.maxBatch);
+        }
+        double eventsPerSecond = (applied - lastApplied) / seconds;
+        lastStatsNanos = now;
+        lastApplied = applied;
+        return new PipelineStats(applied, eventsPerSecond, received - applied, batches, maxBatch, blockedOffers);
+    }
+
+    /**
+     * Stops taking events of books and stops worker threads once the scheduled batches are applied
+     */
+    public void close() {
+        closed = true;
+        books.forEach(book -> book.upstream.cancel());
+        for (int i = 0; i < workers.length(); i++) {
+            ExecutorService worker = workers.get(i);
+            if (worker != null) {
+                worker.shutdown();
+                try {
+                    worker.awaitTermination(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private ExecutorService worker(int index) {
+        ExecutorService worker = workers.get(index);
+        if (worker != null) {
+            return worker;
+        }
+        ExecutorService created = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "projection-" + index);
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (workers.compareAndSet(index, null, created)) {
+            return created;
+        }
+        created.shutdown();
+        return workers.get(index);
+    }
+
+    /**
+     * Pipeline counters
+     *
+     * @param appliedEvents   - number of events applied since start
+     * @param eventsPerSecond - applied events per second since the previous read
+     * @param lagEvents       - number of events received from books and not applied yet
+     * @param batches         - number of batches applied since start
+     * @param maxBatch        - the largest batch applied since start
+     * @param blockedOffers   - number of events a book waited with for room in its queue
+     */
+    public record PipelineStats(long appliedEvents, double eventsPerSecond, long lagEvents, long batches,
+                                int maxBatch, long blockedOffers) {
+    }
+
+    /**
+     * Queue of one book, {@link #onNext} is called by the book thread and {@link #drain()} by the worker only
+     * <p>
+     * {@code onNext} calls are serial, and after the unbounded request of {@link #onSubscribe} the event source only
+     * delivers from its producer. A producer that has published before {@code onSubscribe} may have its first events
+     * delivered by the subscribing thread inside the request, still serially and with the hand-over ordered by the
+     * source, so the queue never has two producers at a time.
+     */
+    private final class BookPipeline implements Subscriber<Event> {
+
+        private final String aggregateId;
+        private final ExecutorService worker;
+        private final Queue<Event> queue = Queues.<Event>get(maxBatchSize * QUEUED_BATCHES).get();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicLong received = new AtomicLong();
+        private final AtomicLong applied = new AtomicLong();
+        /**
+         * Written by the worker only, read racy by {@link #stats()}
+         */
+        private volatile long batches;
+        private volatile int maxBatch;
+        /**
+         * Written by the book thread only, read racy by {@link #stats()}
+         */
+        private volatile long blockedOffers;
+        /**
+         * Accessed by the worker only
+         */
+        private int batchLimit = minBatchSize;
+        private Subscription upstream;
+
+        private BookPipeline(String aggregateId, ExecutorService worker) {
+            this.aggregateId = aggregateId;
+            this.worker = worker;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            upstream = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(Event event) {
+            if (!queue.offer(event) && !awaitOffer(event)) {
+                return;
+            }
+            received.lazySet(received.get() + 1);
+            if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+                schedule();
+            }
+        }
+
+        /**
+         * Waits for the worker to make room, a full queue always has a drain scheduled
+         *
+         * @param event - event that didn't fit
+         * @return false if the pipeline has been closed before the event fit
+         */
+        private boolean awaitOffer(Event event) {
+            int tries = 0;
+            do {
+                if (closed) {
+                    return false;
+                }
+                if (++tries < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+            } while (!queue.offer(event));
+            blockedOffers = blockedOffers + 1;
+            return true;
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            logger.error("Projection events of {} failed", aggregateId, error);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        private void drain() {
+            int batch = 0;
+            Event event;
+            while (batch < batchLimit && (event = queue.poll()) != null) {
+                try {
+                    projection.accept(event);
+                } catch (RuntimeException e) {
+                    logger.error("Projection of {} failed to apply {}", aggregateId, event, e);
+                }
+                batch++;
+            }
+            if (batch > 0) {
+                applied.lazySet(applied.get() + batch);
+                batches = batches + 1;
+                if (batch > maxBatch) {
+                    maxBatch = batch;
+                }
+            }
+            adaptBatchLimit(batch);
+            scheduled.set(false);
+            //event queued after the last poll found the drain still scheduled
+            if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+                schedule();
+            }
+        }
+
+        private void adaptBatchLimit(int batch) {
+            if (batch == batchLimit && !queue.isEmpty()) {
+                batchLimit = Math.min(batchLimit * 2, maxBatchSize);
+            } else if (batch < batchLimit / 2) {
+                batchLimit = Math.max(batchLimit / 2, minBatchSize);
+            }
+        }
+
+        private void schedule() {
+            try {
+                worker.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                //pipeline is closed, the rest of the queue is never applied
+            }
+        }
+    }
+}
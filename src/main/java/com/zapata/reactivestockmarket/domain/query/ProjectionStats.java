@@ -0,0 +1,20 @@
+package com.zapata.reactivestockmarket.domain.query;
+
+/**
+ * Order projection counters, used to check that retention keeps the heap flat and that the projection keeps up with
+ * the books.
+ *
+ * @param orders         - number of orders kept in memory
+ * @param terminalOrders - number of terminal orders kept in memory, waiting for archiving
+ * @param archivedOrders - number of orders moved to the archive since start
+ * @param archivedBytes  - size of archive data file in bytes
+ * @param indexRuns      - number of archive index runs a lookup may search
+ * @param cacheHits      - number of archive reads served by the cache
+ * @param cacheMisses    - number of archive reads that searched the index
+ * @param awaitingReads  - number of readers waiting for orders that are not materialized yet
+ * @param pipeline       - applied events, event rate and lag of the event pipeline
+ */
+public record ProjectionStats(int orders, int terminalOrders, long archivedOrders, long archivedBytes, int indexRuns,
+                              long cacheHits, long cacheMisses, int awaitingReads,
+                              ProjectionPipeline.PipelineStats pipeline) {
+}
@@ -0,0 +1,326 @@
+package com.zapata.reactivestockmarket.gateway;
+
+import com.zapata.reactivestockmarket.cqrs.Command;
+import com.zapata.reactivestockmarket.domain.command.AmendOrderCommand;
+import com.zapata.reactivestockmarket.domain.command.CancelOrderCommand;
+import com.zapata.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.zapata.reactivestockmarket.domain.dtos.ExecutionReport;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Fixed layout binary order entry protocol.
+ * <p>
+ * Every message is a frame of unsigned 16-bit big-endian length followed by that many bytes, the first of them is
+ * the message type. Numbers are big-endian, decimals are a signed scale byte followed by 64-bit unscaled value, scale
+ * {@link #ABSENT} marks unset decimal. Asset is {@link #ASSET_LENGTH} bytes of US-ASCII padded with zeros. Client
+ * numbers its requests by {@code clientId}, responses carry the id of the request and execution reports the id of the
+ * request that placed the order.
+ * <pre>
+ * NEW_ORDER  'N' clientId:8 asset:16 side:1 ('B' or 'S') price:9 amount:9             44 bytes
+ * CANCEL     'C' clientId:8 asset:16 orderId:8                                         33 bytes
+ * AMEND      'A' clientId:8 asset:16 orderId:8 price:9 amount:9 (unset keeps value)    51 bytes
+ * ACK        'a' clientId:8 orderId:8 epochNanos:8                                     25 bytes
+ * REJECT     'r' clientId:8 length:2 reason:length (UTF-8)                        11+ bytes
+ * EXECUTION  'e' clientId:8 orderId:8 type:1 ('T', 'C' or 'A') counterOrderId:8
+ *                price:9 amount:9 remainingAmount:9                                    53 bytes
+ * </pre>
+ * Requests are decoded straight from the frame into commands, the command id is made of the session id and the
+ * client id, so request resent on the same connection within the deduplication window gets the original result.
+ * Codec is not thread-safe, each connection has its own.
+ */
+public class OrderEntryCodec {
+
+    public static final int LENGTH_FIELD = 2;
+    public static final int MAX_FRAME_LENGTH = 1024;
+    public static final int ASSET_LENGTH = 16;
+    public static final byte ABSENT = -1;
+
+    public static final byte NEW_ORDER = 'N';
+    public static final byte CANCEL = 'C';
+    public static final byte AMEND = 'A';
+    public static final byte ACK = 'a';
+    public static final byte REJECT = 'r';
+    public static final byte EXECUTION = 'e';
+
+    public static final int NEW_ORDER_LENGTH = 44;
+    public static final int CANCEL_LENGTH = 33;
+    public static final int AMEND_LENGTH = 51;
+    public static final int ACK_LENGTH = 25;
+    public static final int EXECUTION_LENGTH = 53;
+
+    private static final int DECIMAL_LENGTH = 9;
+    private static final int MAX_REASON_LENGTH = 256;
+    /**
+     * Direct mapped cache of decoded assets, clients trade a handful of assets so the name is rarely decoded
+     */
+    private static final int ASSET_CACHE_SIZE = 64;
+
+    private final long sessionId;
+    private final long[] assetKeys = new long[ASSET_CACHE_SIZE * 2];
+    private final String[] assets = new String[ASSET_CACHE_SIZE];
+
+    /**
+     * @param sessionId - identifier of the connection, the most significant half of command ids
+     */
+    public OrderEntryCodec(long sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    /**
+     * @return decoder that splits connection bytes into frames without the length field, one per connection
+     */
+    public static LengthFieldBasedFrameDecoder frameDecoder() {
+        return new LengthFieldBasedFrameDecoder(LENGTH_FIELD + MAX_FRAME_LENGTH, 0, LENGTH_FIELD, 0, LENGTH_FIELD);
+    }
+
+    /**
+     * @param commandId - identifier of command created by {@link #decode}
+     * @return client id of the request
+     */
+    public static long clientId(UUID commandId) {
+        return commandId.getLeastSignificantBits();
+    }
+
+    /**
+     * Decodes request frame, reader index is left at the end of the frame
+     *
+     * @param frame - message type and body, without the length field
+     * @return {@link MakeOrderCommand}, {@link CancelOrderCommand} or {@link AmendOrderCommand}
+     * @throws IllegalArgumentException if the message type is unknown or the frame is malformed
+     */
+    public Command decode(ByteBuf frame) {
+        byte type = frame.readByte();
+        int expected = switch (type) {
+            case NEW_ORDER -> NEW_ORDER_LENGTH;
+            case CANCEL -> CANCEL_LENGTH;
+            case AMEND -> AMEND_LENGTH;
+            default -> throw new IllegalArgumentException("Unknown message type " + type + "!");
+        };
+        if (frame.readableBytes() != expected - 1) {
+            throw new IllegalArgumentException("Message of type " + (char) type + " must have " + expected
+                                                       + " bytes!");
+        }
+        UUID commandId = new UUID(sessionId, frame.readLong());
+        String asset = readAsset(frame);
+        return switch (type) {
+            case NEW_ORDER -> {
+                OrderType side = readSide(frame);
+                BigDecimal price = readDecimal(frame);
+                BigDecimal amount = readDecimal(frame);
+                if (price == null || amount == null) {
+                    throw new IllegalArgumentException("New order must have price and amount!");
+                }
+                yield new MakeOrderCommand(asset, commandId, side, amount, price);
+            }
+            case CANCEL -> new CancelOrderCommand(asset, commandId, frame.readLong(), true, BigDecimal.ZERO);
+            default -> new AmendOrderCommand(asset, commandId, frame.readLong(), readDecimal(frame),
+                                             readDecimal(frame));
+        };
+    }
+
+    /**
+     * Reads client id of request frame without moving the reader index, used to reject malformed request
+     *
+     * @param frame - message type and body
+     * @return client id, 0 if the frame is too short
+     */
+    public static long peekClientId(ByteBuf frame) {
+        return frame.readableBytes() >= 9 ? frame.getLong(frame.readerIndex() + 1) : 0;
+    }
+
+    /**
+     * @param alloc    - allocator of the connection
+     * @param clientId - id of the acknowledged request
+     * @param orderId  - placed, canceled or amended order
+     * @param time     - epoch nanos of acceptance
+     * @return framed acknowledgement
+     */
+    public static ByteBuf encodeAck(ByteBufAllocator alloc, long clientId, long orderId, long time) {
+        ByteBuf buffer = alloc.directBuffer(LENGTH_FIELD + ACK_LENGTH);
+        return buffer.writeShort(ACK_LENGTH)
+                     .writeByte(ACK)
+                     .writeLong(clientId)
+                     .writeLong(orderId)
+                     .writeLong(time);
+    }
+
+    /**
+     * @param alloc    - allocator of the connection
+     * @param clientId - id of the rejected request
+     * @param reason   - why the request has been rejected, truncated to 256 bytes
+     * @return framed rejection
+     */
+    public static ByteBuf encodeReject(ByteBufAllocator alloc, long clientId, String reason) {
+        byte[] text = (reason == null ? "" : reason).getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(text.length, MAX_REASON_LENGTH);
+        ByteBuf buffer = alloc.directBuffer(LENGTH_FIELD + 11 + length);
+        return buffer.writeShort(11 + length)
+                     .writeByte(REJECT)
+                     .writeLong(clientId)
+                     .writeShort(length)
+                     .writeBytes(text, 0, length);
+    }
+
+    /**
+     * @param alloc  - allocator of the connection
+     * @param report - change of order placed by the connection
+     * @return framed execution report
+     */
+    public static ByteBuf encodeExecution(ByteBufAllocator alloc, ExecutionReport report) {
+        ByteBuf buffer = alloc.directBuffer(LENGTH_FIELD + EXECUTION_LENGTH);
+        buffer.writeShort(EXECUTION_LENGTH)
+              .writeByte(EXECUTION)
+              .writeLong(clientId(report.commandId()))
+              .writeLong(report.orderId())
+              .writeByte(switch (report.type()) {
+                  case TRADE -> 'T';
+                  case CANCELED -> 'C';
+                  case AMENDED -> 'A';
+              })
+              .writeLong(report.counterOrderId());
+        writeDecimal(buffer, report.price());
+        writeDecimal(buffer, report.amount());
+        writeDecimal(buffer, report.remainingAmount());
+        return buffer;
+    }
+
+    /**
+     * Client side of {@link #NEW_ORDER}
+     *
+     * @param buffer   - target buffer, the framed request is appended to it
+     * @param clientId - client's id of the request
+     * @param asset    - asset name, at most {@link #ASSET_LENGTH} ASCII characters
+     * @param side     - buy or sell
+     * @param price    - limit price
+     * @param amount   - order amount
+     * @return the buffer
+     */
+    public static ByteBuf encodeNewOrder(ByteBuf buffer, long clientId, String asset, OrderType side,
+                                         BigDecimal price, BigDecimal amount) {
+        buffer.writeShort(NEW_ORDER_LENGTH)
+              .writeByte(NEW_ORDER)
+              .writeLong(clientId);
+        writeAsset(buffer, asset);
+        buffer.writeByte(side == OrderType.BUY ? 'B' : 'S');
+        writeDecimal(buffer, price);
+        writeDecimal(buffer, amount);
+        return buffer;
+    }
+
+    /**
+     * Client side of {@link #CANCEL}
+     *
+     * @param buffer   - target buffer, the framed request is appended to it
+     * @param clientId - client's id of the request
+     * @param asset    - asset of the order
+     * @param orderId  - order to cancel
+     * @return the buffer
+     */
+    public static ByteBuf encodeCancel(ByteBuf buffer, long clientId, String asset, long orderId) {
+        buffer.writeShort(CANCEL_LENGTH)
+              .writeByte(CANCEL)
+              .writeLong(clientId);
+        writeAsset(buffer, asset);
+        return buffer.writeLong(orderId);
+    }
+
+    /**
+     * Client side of {@link #AMEND}
+     *
+     * @param buffer   - target buffer, the framed request is appended to it
+     * @param clientId - client's id of the request
+     * @param asset    - asset of the order
+     * @param orderId  - order to amend
+     * @param price    - new price, null keeps the price
+     * @param amount   - new amount, null keeps the amount
+     * @return the buffer
+     */
+    public static ByteBuf encodeAmend(ByteBuf buffer, long clientId, String asset, long orderId, BigDecimal price,
+                                      BigDecimal amount) {
+        buffer.writeShort(AMEND_LENGTH)
+              .writeByte(AMEND)
+              .writeLong(clientId);
+        writeAsset(buffer, asset);
+        buffer.writeLong(orderId);
+        writeDecimal(buffer, price);
+        writeDecimal(buffer, amount);
+        return buffer;
+    }
+
+    /**
+     * Writes decimal as scale and unscaled value, null as {@link #ABSENT}
+     *
+     * @param buffer - target buffer
+     * @param value  - decimal with at most 18 significant digits and scale in 0..127
+     */
+    public static void writeDecimal(ByteBuf buffer, BigDecimal value) {
+        if (value == null) {
+            buffer.writeByte(ABSENT).writeLong(0);
+            return;
+        }
+        BigDecimal scaled = value.scale() < 0 ? value.setScale(0) : value;
+        buffer.writeByte(scaled.scale()).writeLong(scaled.unscaledValue().longValueExact());
+    }
+
+    /**
+     * @param buffer - source buffer
+     * @return decimal, null if it's {@link #ABSENT}
+     */
+    public static BigDecimal readDecimal(ByteBuf buffer) {
+        byte scale = buffer.readByte();
+        long unscaled = buffer.readLong();
+        if (scale == ABSENT) {
+            return null;
+        }
+        if (scale < 0) {
+            throw new IllegalArgumentException("Decimal scale must not be negative!");
+        }
+        return BigDecimal.valueOf(unscaled, scale);
+    }
+
+    private static void writeAsset(ByteBuf buffer, String asset) {
+        byte[] name = asset.getBytes(StandardCharsets.US_ASCII);
+        if (name.length == 0 || name.length > ASSET_LENGTH) {
+            throw new IllegalArgumentException("Asset must have 1 to " + ASSET_LENGTH + " characters!");
+        }
+        buffer.writeBytes(name).writeZero(ASSET_LENGTH - name.length);
+    }
+
+    private static OrderType readSide(ByteBuf frame) {
+        return switch (frame.readByte()) {
+            case 'B' -> OrderType.BUY;
+            case 'S' -> OrderType.SELL;
+            default -> throw new IllegalArgumentException("Side must be B or S!");
+        };
+    }
+
+    private String readAsset(ByteBuf frame) {
+        int index = frame.readerIndex();
+        long high = frame.readLong();
+        long low = frame.readLong();
+        int slot = (int) ((high * 31 + low) >>> 58) & (ASSET_CACHE_SIZE - 1);
+        String asset = assets[slot];
+        if (asset != null && assetKeys[slot * 2] == high && assetKeys[slot * 2 + 1] == low) {
+            return asset;
+        }
+        int length = 0;
+        while (length < ASSET_LENGTH && frame.getByte(index + length) != 0) {
+            length++;
+        }
+        if (length == 0) {
+            throw new IllegalArgumentException("Asset must not be empty!");
+        }
+        asset = frame.toString(index, length, StandardCharsets.US_ASCII);
+        assetKeys[slot * 2] = high;
+        assetKeys[slot * 2 + 1] = low;
+        assets[slot] = asset;
+        return asset;
+    }
+}
@@ -0,0 +1,148 @@
+package com.zapata.reactivestockmarket.gateway;
+
+import com.zapata.reactivestockmarket.MarketProperties;
+import com.zapata.reactivestockmarket.cqrs.Command;
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+import com.zapata.reactivestockmarket.domain.BookAggregateRepository;
+import com.zapata.reactivestockmarket.domain.ExecutionReports;
+import com.zapata.reactivestockmarket.domain.bus.CommandBus;
+import com.zapata.reactivestockmarket.domain.command.AmendOrderCommand;
+import com.zapata.reactivestockmarket.domain.command.CancelOrderCommand;
+import com.zapata.reactivestockmarket.domain.events.OrderAcceptedEvent;
+import com.zapata.reactivestockmarket.util.UuidGenerator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PreDestroy;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.NettyInbound;
+import reactor.netty.NettyOutbound;
+import reactor.netty.tcp.TcpServer;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Binary order entry listener next to the REST API, for clients that keep a connection open and pipeline requests.
+ * <p>
+ * Frames of {@link OrderEntryCodec} are decoded on the connection's event loop straight into commands, without JSON
+ * or intermediate objects, and sent to the {@link CommandBus} without waiting for the previous request. At most
+ * {@code market.gateway.max-in-flight} requests of a connection are in flight, the connection isn't read further until
+ * some of them are acknowledged. Requests are sent to the bus in the order they are read, so requests of one asset are
+ * handled in order, acknowledgements of different assets may overtake each other.
+ * <p>
+ * Acknowledgement is sent once the command is durable, the same point the REST API responds at, without waiting for
+ * the projection. Trades, cancellations and amendments of orders placed by the connection are pushed as execution
+ * reports through {@link ExecutionReports}.
+ */
+@Component
+public class OrderEntryServer {
+
+    private final Logger logger = LoggerFactory.getLogger(OrderEntryServer.class);
+
+    private final CommandBus commandBus;
+    private final ExecutionReports executionReports;
+    private final MarketProperties.GatewayProperties properties;
+    private final AtomicLong connections = new AtomicLong();
+    private final DisposableServer server;
+
+    public OrderEntryServer(CommandBus commandBus, BookAggregateRepository bookAggregateRepository,
+                            MarketProperties marketProperties) {
+        this.commandBus = commandBus;
+        this.executionReports = bookAggregateRepository.executionReports();
+        this.properties = marketProperties.gateway();
+        this.server = properties.enabled() ? start() : null;
+    }
+
+    /**
+     * @return port the listener is bound to, -1 if it's disabled
+     */
+    public int port() {
+        return server != null ? server.port() : -1;
+    }
+
+    /**
+     * @return number of connections accepted since start
+     */
+    public long connections() {
+        return connections.get();
+    }
+
+    /**
+     * Stops listening and closes open connections on bean destruction
+     */
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.disposeNow();
+        }
+    }
+
+    private DisposableServer start() {
+        DisposableServer bound = TcpServer.create()
+                                          .host(properties.host())
+                                          .port(properties.port())
+                                          .childOption(ChannelOption.TCP_NODELAY, true)
+                                          .doOnConnection(connection -> connection.addHandlerLast(
+                                                  "orderEntryFrames", OrderEntryCodec.frameDecoder()))
+                                          .handle(this::handle)
+                                          .bindNow();
+        logger.info("Order entry listening on {}:{}", properties.host(), bound.port());
+        return bound;
+    }
+
+    private Publisher<Void> handle(NettyInbound inbound, NettyOutbound outbound) {
+        connections.incrementAndGet();
+        OrderEntrySession session = new OrderEntrySession(UuidGenerator.next().getMostSignificantBits(),
+                                                          properties.reportBuffer(), commandBus, executionReports);
+        inbound.withConnection(session::attach);
+        OrderEntryCodec codec = new OrderEntryCodec(session.sessionId());
+        ByteBufAllocator alloc = outbound.alloc();
+        Flux<ByteBuf> responses = inbound.receive()
+                                         .flatMap(frame -> execute(session, codec, frame, alloc),
+                                                  properties.maxInFlight());
+        Flux<ByteBuf> reports = session.reports()
+                                       .map(report -> OrderEntryCodec.encodeExecution(alloc, report));
+        return outbound.send(Flux.merge(responses, reports)
+                                 .doFinally(signal -> session.close()))
+                       .then();
+    }
+
+    /**
+     * Decodes the frame before it is released, called on the event loop for each frame in order
+     */
+    private Mono<ByteBuf> execute(OrderEntrySession session, OrderEntryCodec codec, ByteBuf frame,
+                                  ByteBufAllocator alloc) {
+        long clientId = OrderEntryCodec.peekClientId(frame);
+        Command command;
+        try {
+            command = codec.decode(frame);
+        } catch (RuntimeException e) {
+            return Mono.just(OrderEntryCodec.encodeReject(alloc, clientId, e.getMessage()));
+        }
+        return session.send(command)
+                      .map(event -> OrderEntryCodec.encodeAck(alloc, clientId, orderId(command, event),
+                                                              epochNanos(event)))
+                      .onErrorResume(e -> Mono.just(OrderEntryCodec.encodeReject(alloc, clientId,
+                                                                                 e.getMessage())));
+    }
+
+    private static long orderId(Command command, SourcingEvent event) {
+        return switch (command) {
+            case CancelOrderCommand cmd -> cmd.orderId();
+            case AmendOrderCommand cmd -> cmd.orderId();
+            default -> ((OrderAcceptedEvent) event).orderId();
+        };
+    }
+
+    private static long epochNanos(SourcingEvent event) {
+        Instant time = event instanceof OrderAcceptedEvent accepted ? accepted.entryTimestamp() : Instant.now();
+        return time.getEpochSecond() * 1_000_000_000L + time.getNano();
+    }
+}
@@ -0,0 +1,120 @@
+package com.zapata.reactivestockmarket.gateway;
+
+import com.zapata.reactivestockmarket.cqrs.Command;
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+import com.zapata.reactivestockmarket.domain.ExecutionReports;
+import com.zapata.reactivestockmarket.domain.bus.CommandBus;
+import com.zapata.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.zapata.reactivestockmarket.domain.dtos.ExecutionReport;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.util.UUID;
+
+/**
+ * One order entry connection, binary or WebSocket - sends its commands and collects execution reports of its orders.
+ * <p>
+ * Command id is made of the session id and the client's request id, so request resent on the same connection within
+ * the deduplication window gets the original result, and reports can be matched to the request that placed the order.
+ * <p>
+ * Reports are pushed by aggregate threads into a bounded queue drained by the connection, connection that lets the
+ * queue fill up is closed instead of slowing down the books.
+ */
+class OrderEntrySession implements ExecutionReports.Listener {
+
+    private final long sessionId;
+    private final CommandBus commandBus;
+    private final ExecutionReports executionReports;
+    private final Sinks.Many<ExecutionReport> reports;
+    private Disposable connection;
+    private boolean closed;
+
+    /**
+     * @param sessionId        - identifier of the connection, the most significant half of command ids
+     * @param reportBuffer     - maximum number of queued execution reports
+     * @param commandBus       - bus commands are sent to
+     * @param executionReports - index the session registers its orders in
+     */
+    OrderEntrySession(long sessionId, int reportBuffer, CommandBus commandBus, ExecutionReports executionReports) {
+        this.sessionId = sessionId;
+        this.commandBus = commandBus;
+        this.executionReports = executionReports;
+        this.reports = Sinks.many().unicast().onBackpressureBuffer(Queues.<ExecutionReport>get(reportBuffer).get());
+    }
+
+    long sessionId() {
+        return sessionId;
+    }
+
+    /**
+     * @param requestId - client's id of the request
+     * @return command id of the request
+     */
+    UUID commandId(long requestId) {
+        return new UUID(sessionId, requestId);
+    }
+
+    /**
+     * @param commandId - command id of a session request
+     * @return client's id of the request
+     */
+    static long requestId(UUID commandId) {
+        return commandId.getLeastSignificantBits();
+    }
+
+    synchronized void attach(Disposable connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Sends command of the session, order placed by it is reported to the session
+     *
+     * @param command - command created with {@link #commandId}
+     * @return sourcing event once the command is durable
+     */
+    Mono<SourcingEvent> send(Command command) {
+        if (!(command instanceof MakeOrderCommand)) {
+            return commandBus.sendCommand(command);
+        }
+        //registered before the book can accept the order, so reports of its first trades aren't missed
+        executionReports.expect(command.commandId(), this);
+        return commandBus.sendCommand(command)
+                         .doFinally(signal -> executionReports.forget(command.commandId()));
+    }
+
+    /**
+     * @return execution reports of the session orders, single subscriber
+     */
+    Flux<ExecutionReport> reports() {
+        return reports.asFlux();
+    }
+
+    @Override
+    public synchronized boolean onExecution(ExecutionReport report) {
+        if (closed) {
+            return false;
+        }
+        if (reports.tryEmitNext(report).isFailure()) {
+            //connection doesn't keep up with its orders, nor the book nor other sessions wait for it
+            close();
+            if (connection != null) {
+                connection.dispose();
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stops taking reports, orders of the session are dropped from the index with their next event
+     */
+    synchronized void close() {
+        if (!closed) {
+            closed = true;
+            reports.tryEmitComplete();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.zapata.reactivestockmarket.gateway;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zapata.reactivestockmarket.MarketProperties;
+import com.zapata.reactivestockmarket.cqrs.Command;
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+import com.zapata.reactivestockmarket.domain.BookAggregateRepository;
+import com.zapata.reactivestockmarket.domain.ExecutionReports;
+import com.zapata.reactivestockmarket.domain.bus.CommandBus;
+import com.zapata.reactivestockmarket.domain.command.AmendOrderCommand;
+import com.zapata.reactivestockmarket.domain.command.CancelOrderCommand;
+import com.zapata.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.zapata.reactivestockmarket.domain.dtos.ExecutionReport;
+import com.zapata.reactivestockmarket.domain.dtos.SessionMessage;
+import com.zapata.reactivestockmarket.domain.dtos.SessionRequest;
+import com.zapata.reactivestockmarket.domain.events.OrderAcceptedEvent;
+import com.zapata.reactivestockmarket.domain.query.BookQueryRepository;
+import com.zapata.reactivestockmarket.domain.query.OrderEntry;
+import com.zapata.reactivestockmarket.util.UuidGenerator;
+import jakarta.annotation.PreDestroy;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.websocket.WebsocketInbound;
+import reactor.netty.http.websocket.WebsocketOutbound;
+
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebSocket order entry session - client streams {@link SessionRequest}s as JSON text messages over one connection
+ * and gets {@link SessionMessage} acknowledgements, rejections and execution reports of its own orders as they
+ * happen, instead of placing each order with a REST call and polling it for fills.
+ * <p>
+ * Requests are pipelined the same way as on the binary {@link OrderEntryServer}, at most
+ * {@code market.gateway.max-in-flight} of them are in flight and they are sent to the bus in the order they are
+ * read, except cancel and amend without asset of orders that are not routed by
+ * {@link com.zapata.reactivestockmarket.domain.OrderRoutes} any more, those wait for the projection lookup.
+ * Acknowledgement is sent once the command is durable. Execution reports come from {@link ExecutionReports}, books
+ * push reports of session orders only, there is no broadcast of book events to sessions.
+ * <p>
+ * Listens on its own port with reactor-netty, the application's web server is servlet based.
+ */
+@Component
+public class OrderEntryWebSocketServer {
+
+    public static final String PATH = "/orders/session";
+
+    private final Logger logger = LoggerFactory.getLogger(OrderEntryWebSocketServer.class);
+
+    private final CommandBus commandBus;
+    private final BookAggregateRepository bookAggregateRepository;
+    private final BookQueryRepository bookQueryRepository;
+    private final ObjectMapper objectMapper;
+    private final MarketProperties.GatewayProperties properties;
+    private final AtomicLong sessions = new AtomicLong();
+    private final DisposableServer server;
+
+    public OrderEntryWebSocketServer(CommandBus commandBus,
+                                     BookAggregateRepository bookAggregateRepository,
+                                     BookQueryRepository bookQueryRepository,
+                                     ObjectMapper objectMapper,
+                                     MarketProperties marketProperties) {
+        this.commandBus = commandBus;
+        this.bookAggregateRepository = bookAggregateRepository;
+        this.bookQueryRepository = bookQueryRepository;
+        this.objectMapper = objectMapper;
+        this.properties = marketProperties.gateway();
+        this.server = properties.webSocketEnabled() ? start() : null;
+    }
+
+    /**
+     * @return port the listener is bound to, -1 if it's disabled
+     */
+    public int port() {
+        return server != null ? server.port() : -1;
+    }
+
+    /**
+     * @return number of sessions opened since start
+     */
+    public long sessions() {
+        return sessions.get();
+    }
+
+    /**
+     * Stops listening and closes open sessions on bean destruction
+     */
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.disposeNow();
+        }
+    }
+
+    private DisposableServer start() {
+        DisposableServer bound = HttpServer.create()
+                                           .host(properties.host())
+                                           .port(properties.webSocketPort())
+                                           .route(routes -> routes.ws(PATH, this::handle))
+                                           .bindNow();
+        logger.info("Order entry sessions listening on ws://{}:{}{}", properties.host(), bound.port(), PATH);
+        return bound;
+    }
+
+    private Publisher<Void> handle(WebsocketInbound inbound, WebsocketOutbound outbound) {
+        sessions.incrementAndGet();
+        OrderEntrySession session = new OrderEntrySession(UuidGenerator.next().getMostSignificantBits(),
+                                                          properties.reportBuffer(), commandBus,
+                                                          bookAggregateRepository.executionReports());
+        inbound.withConnection(session::attach);
+        Flux<SessionMessage> responses = inbound.aggregateFrames()
+                                                .receive()
+                                                .asString()
+                                                .flatMap(text -> execute(session, text), properties.maxInFlight());
+        Flux<SessionMessage> reports = session.reports()
+                                              .map(OrderEntryWebSocketServer::toMessage);
+        return outbound.sendString(Flux.merge(responses, reports)
+                                       .map(this::write)
+                                       .doFinally(signal -> session.close()))
+                       .then();
+    }
+
+    private Mono<SessionMessage> execute(OrderEntrySession session, String text) {
+        SessionRequest request;
+        try {
+            request = objectMapper.readValue(text, SessionRequest.class);
+        } catch (JsonProcessingException e) {
+            return Mono.just(reject(0, "Malformed request!"));
+        }
+        return Mono.defer(() -> toCommand(session, request))
+                   .flatMap(command -> session.send(command)
+                                              .map(event -> ack(request.requestId(), command, event)))
+                   .onErrorResume(e -> Mono.just(reject(request.requestId(), e.getMessage())));
+    }
+
+    private Mono<Command> toCommand(OrderEntrySession session, SessionRequest request) {
+        if (request.type() == null) {
+            return Mono.error(new IllegalArgumentException("Request type must be set!"));
+        }
+        return switch (request.type()) {
+            case PLACE -> {
+                if (request.asset() == null || request.direction() == null || request.price() == null
+                        || request.amount() == null) {
+                    yield Mono.error(new IllegalArgumentException(
+                            "Order must have asset, direction, price and amount!"));
+                }
+                yield Mono.just(new MakeOrderCommand(request.asset(),
+                                                     session.commandId(request.requestId()),
+                                                     request.direction(),
+                                                     BigDecimal.valueOf(request.amount()),
+                                                     BigDecimal.valueOf(request.price())));
+            }
+            case CANCEL -> routeOf(request).map(asset -> new CancelOrderCommand(
+                    asset,
+                    session.commandId(request.requestId()),
+                    request.orderId(),
+                    true,
+                    BigDecimal.ZERO));
+            case AMEND -> routeOf(request).map(asset -> new AmendOrderCommand(
+                    asset,
+                    session.commandId(request.requestId()),
+                    request.orderId(),
+                    request.price() != null ? BigDecimal.valueOf(request.price()) : null,
+                    request.amount() != null ? BigDecimal.valueOf(request.amount()) : null));
+        };
+    }
+
+    /**
+     * @return asset given by the request or asset of the order, error if the order is unknown
+     */
+    private Mono<String> routeOf(SessionRequest request) {
+        if (request.orderId() == null) {
+            return Mono.error(new IllegalArgumentException("Order id must be set!"));
+        }
+        if (request.asset() != null) {
+            return Mono.just(request.asset());
+        }
+        String asset = bookAggregateRepository.orderRoutes().assetOf(request.orderId());
+        return (asset != null ? Mono.just(asset) : bookQueryRepository.getProjection(request.orderId())
+                                                                      .map(OrderEntry::asset))
+                .switchIfEmpty(Mono.error(new IllegalArgumentException("Order not found!")));
+    }
+
+    private static SessionMessage ack(long requestId, Command command, SourcingEvent event) {
+        SessionMessage.SessionMessageBuilder message = SessionMessage.builder()
+                                                                     .type(SessionMessage.Type.ACK)
+                                                                     .requestId(requestId);
+        return switch (command) {
+            case CancelOrderCommand cmd -> message.orderId(cmd.orderId())
+                                                  .timestamp(Instant.now().toString())
+                                                  .build();
+            case AmendOrderCommand cmd -> message.orderId(cmd.orderId())
+                                                 .timestamp(Instant.now().toString())
+                                                 .build();
+            default -> {
+                OrderAcceptedEvent accepted = (OrderAcceptedEvent) event;
+                yield message.orderId(accepted.orderId())
+                             .timestamp(accepted.entryTimestamp().toString())
+                             .build();
+            }
+        };
+    }
+
+    private static SessionMessage reject(long requestId, String error) {
+        return SessionMessage.builder()
+                             .type(SessionMessage.Type.REJECT)
+                             .requestId(requestId)
+                             .error(error)
+                             .build();
+    }
+
+    private static SessionMessage toMessage(ExecutionReport report) {
+        return SessionMessage.builder()
+                             .type(SessionMessage.Type.EXECUTION)
+                             .requestId(OrderEntrySession.requestId(report.commandId()))
+                             .orderId(report.orderId())
+                             .asset(report.asset())
+                             .execution(report.type())
+                             .counterOrderId(report.counterOrderId())
+                             .price(report.price())
+                             .amount(report.amount())
+                             .remainingAmount(report.remainingAmount())
+                             .build();
+    }
+
+    private String write(SessionMessage message) {
+        try {
+            return objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.zapata.reactivestockmarket.metrics;
+
+import java.util.Map;
+
+/**
+ * Latency statistics of one asset since start.
+ *
+ * @param appliedEvents   - number of sourcing events applied by the book
+ * @param eventsPerSecond - applied events per second since the previous read
+ * @param stages          - latency of each stage
+ */
+public record AssetLatencyStats(long appliedEvents, double eventsPerSecond, Map<Stage, StageLatency> stages) {
+}
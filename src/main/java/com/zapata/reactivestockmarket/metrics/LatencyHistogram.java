@@ -0,0 +1,111 @@
+package com.zapata.reactivestockmarket.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds.
+ * <p>
+ * Buckets are log-linear like in HdrHistogram - every power of two is split into {@link #SUB_BUCKETS} equal buckets,
+ * so any recorded value is reported with relative error below 1/16. Values from 0 to {@link #MAX_VALUE} take
+ * {@link #BUCKETS} counters, larger values are counted as {@link #MAX_VALUE}. Recording is a single atomic increment
+ * that doesn't allocate, any number of threads may record while others read.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_VALUE_BITS = 40;
+    /**
+     * About 18 minutes
+     */
+    static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    static final int BUCKETS = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records latency, negative value is recorded as 0
+     *
+     * @param nanos - latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(bucketOf(value));
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Adds counts of this histogram to {@code target}, concurrent records may or may not be included
+     *
+     * @param target - counts of {@link #BUCKETS} buckets
+     * @return the highest recorded value
+     */
+    long addTo(long[] target) {
+        for (int i = 0; i < BUCKETS; i++) {
+            target[i] += counts.get(i);
+        }
+        return max.get();
+    }
+
+    /**
+     * Summarizes bucket counts of one or more histograms, percentiles are reported as the highest value of their
+     * bucket
+     *
+     * @param counts - counts of {@link #BUCKETS} buckets
+     * @param max    - the highest recorded value
+     * @return count and percentiles
+     */
+    static StageLatency summarize(long[] counts, long max) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return StageLatency.EMPTY;
+        }
+        return new StageLatency(total,
+                                valueAt(counts, total, 0.5, max),
+                                valueAt(counts, total, 0.9, max),
+                                valueAt(counts, total, 0.99, max),
+                                valueAt(counts, total, 0.999, max),
+                                max);
+    }
+
+    private static long valueAt(long[] counts, long total, double quantile, long max) {
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Values below {@code 2 * SUB_BUCKETS} have a bucket each, above it bucket is picked by the highest set bit and
+     * the next {@link #SUB_BUCKET_BITS} bits
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS << 1) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS << 1) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,186 @@
+package com.zapata.reactivestockmarket.metrics;
+
+import com.zapata.reactivestockmarket.MarketProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Per stage and per asset latency histograms of commands, see {@link Stage}.
+ * <p>
+ * Stages are stamped by the component that owns them and recorded to the {@link AssetLatency} of the command's
+ * asset - one lock-free {@link LatencyHistogram} per stage, so recording never blocks the aggregate thread.
+ * Histograms of all assets are merged only when {@link #stats()} are read.
+ * <p>
+ * Reading the clock costs tens of nanoseconds, so only one of {@code market.metrics.sample-interval} commands is
+ * timed - {@link #sample()} returns 0 for the others and their stages don't read the clock at all. Applied events
+ * are counted for every command. If disabled by {@code market.metrics.enabled}, nothing is recorded.
+ */
+@Component
+public class LatencyMetrics {
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final boolean enabled;
+    private final int sampleInterval;
+    private final Map<String, AssetLatency> assets = new ConcurrentHashMap<>();
+    private final LongAdder emitFailures = new LongAdder();
+    private final long startNanos = System.nanoTime();
+    private volatile LongSupplier queueDepth = () -> 0;
+    /**
+     * Time of the previous {@link #stats()} call, rates are computed over the time since then
+     */
+    private long lastStatsNanos = startNanos;
+
+    public LatencyMetrics() {
+        this(MarketProperties.DEFAULT);
+    }
+
+    @Autowired
+    public LatencyMetrics(MarketProperties marketProperties) {
+        this.enabled = marketProperties.metrics().enabled();
+        this.sampleInterval = marketProperties.metrics().sampleInterval();
+    }
+
+    /**
+     * Starts timing of a command, called once where the command enters the system
+     *
+     * @return {@link System#nanoTime()} if the command is sampled, 0 if it is not or metrics are disabled
+     */
+    public long sample() {
+        if (!enabled || sampleInterval > 1 && ThreadLocalRandom.current().nextInt(sampleInterval) != 0) {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Histograms of asset, callers on hot paths should keep the returned instance instead of looking it up for
+     * every record
+     *
+     * @param asset - asset name / aggregate identifier
+     * @return asset histograms, shared no-op instance if metrics are disabled
+     */
+    public AssetLatency asset(String asset) {
+        if (!enabled) {
+            return AssetLatency.DISABLED;
+        }
+        AssetLatency latency = assets.get(asset);
+        return latency != null ? latency : assets.computeIfAbsent(asset, k -> new AssetLatency(true));
+    }
+
+    /**
+     * Counts command that could not be handed over to the command bus at first attempt
+     */
+    public void recordEmitFailure() {
+        if (enabled) {
+            emitFailures.increment();
+        }
+    }
+
+    /**
+     * @param queueDepth - number of commands waiting in the command bus
+     */
+    public void queueDepth(LongSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Merges histograms of all assets, event rates are computed over the time since the previous call
+     *
+     * @return latency statistics since start
+     */
+    public synchronized LatencyStats stats() {
+        long now = System.nanoTime();
+        double seconds = Math.max(now - lastStatsNanos, 1) / 1e9;
+        lastStatsNanos = now;
+
+        long[][] merged = new long[STAGES.length][LatencyHistogram.BUCKETS];
+        long[] mergedMax = new long[STAGES.length];
+        long appliedEvents = 0;
+        double eventsPerSecond = 0;
+        Map<String, AssetLatencyStats> assetStats = new TreeMap<>();
+        for (Map.Entry<String, AssetLatency> entry : assets.entrySet()) {
+            AssetLatency asset = entry.getValue();
+            Map<Stage, StageLatency> stages = new EnumMap<>(Stage.class);
+            for (Stage stage : STAGES) {
+                long[] counts = new long[LatencyHistogram.BUCKETS];
+                long max = asset.histograms[stage.ordinal()].addTo(counts);
+                stages.put(stage, LatencyHistogram.summarize(counts, max));
+                long[] total = merged[stage.ordinal()];
+                for (int i = 0; i < counts.length; i++) {
+                    total[i] += counts[i];
+                }
+                mergedMax[stage.ordinal()] = Math.max(mergedMax[stage.ordinal()], max);
+            }
+            long applied = asset.appliedEvents.get();
+            double rate = (applied - asset.lastAppliedEvents) / seconds;
+            asset.lastAppliedEvents = applied;
+            appliedEvents += applied;
+            eventsPerSecond += rate;
+            assetStats.put(entry.getKey(), new AssetLatencyStats(applied, rate, stages));
+        }
+        Map<Stage, StageLatency> stages = new EnumMap<>(Stage.class);
+        for (Stage stage : STAGES) {
+            stages.put(stage, LatencyHistogram.summarize(merged[stage.ordinal()], mergedMax[stage.ordinal()]));
+        }
+        return new LatencyStats(enabled, (now - startNanos) / 1_000_000, queueDepth.getAsLong(),
+                                emitFailures.sum(), appliedEvents, eventsPerSecond, stages, assetStats);
+    }
+
+    /**
+     * Latency histograms and applied event counter of one asset
+     */
+    public static final class AssetLatency {
+
+        private static final AssetLatency DISABLED = new AssetLatency(false);
+
+        private final LatencyHistogram[] histograms;
+        private final AtomicLong appliedEvents = new AtomicLong();
+        /**
+         * Applied events at the previous {@link #stats()} call, guarded by {@link LatencyMetrics} monitor
+         */
+        private long lastAppliedEvents;
+
+        private AssetLatency(boolean enabled) {
+            this.histograms = new LatencyHistogram[enabled ? STAGES.length : 0];
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LatencyHistogram();
+            }
+        }
+
+        /**
+         * Records latency of stage that started at {@code startNanos} and ends now, stages of commands that are not
+         * sampled are ignored
+         *
+         * @param stage      - stage to record
+         * @param startNanos - {@link LatencyMetrics#sample()} or end of the previous stage, 0 if not sampled
+         * @return now, the start of the next stage, or 0 if not sampled
+         */
+        public long record(Stage stage, long startNanos) {
+            if (startNanos == 0 || this == DISABLED) {
+                return 0;
+            }
+            long now = System.nanoTime();
+            histograms[stage.ordinal()].record(now - startNanos);
+            return now;
+        }
+
+        /**
+         * @param count - number of sourcing events applied by the asset's book
+         */
+        public void applied(int count) {
+            if (this != DISABLED) {
+                appliedEvents.addAndGet(count);
+            }
+        }
+    }
+}
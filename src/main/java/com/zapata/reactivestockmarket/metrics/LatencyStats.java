@@ -0,0 +1,20 @@
+package com.zapata.reactivestockmarket.metrics;
+
+import java.util.Map;
+
+/**
+ * Latency statistics of all assets since start.
+ *
+ * @param enabled         - false if instrumentation is disabled and nothing is recorded
+ * @param uptimeMillis    - time since metrics were created
+ * @param queueDepth      - number of commands waiting in the command bus now
+ * @param emitFailures    - number of commands that could not be handed over to the command bus at first attempt
+ * @param appliedEvents   - number of sourcing events applied by all books
+ * @param eventsPerSecond - applied events per second since the previous read
+ * @param stages          - latency of each stage merged over all assets
+ * @param assets          - latency of each stage per asset
+ */
+public record LatencyStats(boolean enabled, long uptimeMillis, long queueDepth, long emitFailures,
+                           long appliedEvents, double eventsPerSecond, Map<Stage, StageLatency> stages,
+                           Map<String, AssetLatencyStats> assets) {
+}
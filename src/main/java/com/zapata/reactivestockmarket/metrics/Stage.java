@@ -0,0 +1,32 @@
+package com.zapata.reactivestockmarket.metrics;
+
+/**
+ * Stages of a command from the REST endpoint to the order projection, each stage is timed from the end of the
+ * previous one
+ */
+public enum Stage {
+    /**
+     * Command waits in the command bus, from {@code CommandBus.sendCommand} until its aggregate thread takes it
+     */
+    QUEUE,
+    /**
+     * Book handles command - validation, order id and journal append
+     */
+    HANDLE,
+    /**
+     * Book applies sourcing event - matching engine and event publishing
+     */
+    APPLY,
+    /**
+     * From applied event until the journal is durable and the command is acknowledged
+     */
+    DURABLE,
+    /**
+     * From acknowledged order until it is visible in the order projection
+     */
+    PROJECTION,
+    /**
+     * Whole {@code placeOrder} request, from its subscription until the order is visible in the order projection
+     */
+    PLACE_ORDER
+}
@@ -0,0 +1,16 @@
+package com.zapata.reactivestockmarket.metrics;
+
+/**
+ * Latency of one stage since start, in nanoseconds. Percentiles are within 1/16 of the exact value.
+ *
+ * @param count - number of recorded latencies
+ * @param p50   - median
+ * @param p90   - 90th percentile
+ * @param p99   - 99th percentile
+ * @param p999  - 99.9th percentile
+ * @param max   - the highest recorded latency
+ */
+public record StageLatency(long count, long p50, long p90, long p99, long p999, long max) {
+
+    static final StageLatency EMPTY = new StageLatency(0, 0, 0, 0, 0, 0);
+}
@@ -0,0 +1,294 @@
+package com.zapata.reactivestockmarket.replication;
+
+import com.zapata.reactivestockmarket.MarketProperties;
+import com.zapata.reactivestockmarket.domain.Book;
+import com.zapata.reactivestockmarket.domain.BookAggregateRepository;
+import com.zapata.reactivestockmarket.domain.bus.CommandBus;
+import com.zapata.reactivestockmarket.domain.journal.Journal;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PreDestroy;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.Connection;
+import reactor.netty.NettyInbound;
+import reactor.netty.NettyOutbound;
+import reactor.netty.tcp.TcpClient;
+import reactor.util.retry.Retry;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hot-standby replica, follows the journal of the primary and is promoted to primary when the primary is gone.
+ * <p>
+ * Records of each book are decoded and replicated into the local book as they arrive, see {@link Book#replicate}, so
+ * the local journal, matching engine, projection and feeds are the same as if the replica had handled the commands
+ * itself - queries of orders and books are served by the replica while commands are rejected by the read-only
+ * {@link CommandBus}. Local journal is written at the same positions as the primary's, so replica restarted with its
+ * journal subscribes with the positions it has recovered and gets only the rest. Lost connection is reopened every
+ * {@value #RECONNECT_SECONDS} s and subscribes with the positions applied so far.
+ * <p>
+ * Event loop of the connection only copies frames off the socket, they are applied one by one on the
+ * {@value #THREAD_NAME} thread. Book waiting for its {@link com.zapata.reactivestockmarket.cqrs.OverflowPolicy#BLOCK}
+ * subscribers parks that thread instead of the event loop, the connection stops reading once a few frames are waiting
+ * and TCP flow control holds the primary back.
+ * <p>
+ * Replica applies frames of its {@link ReplicationEpoch} or a later one and adopts the later epoch, connection to a
+ * primary of an earlier epoch is closed. Promotion stops following the primary, waits for the frame being applied,
+ * starts the next epoch and makes the command bus writable. Primary that is still connected gets a fence and rejects
+ * commands from then on, primary that is not reachable is fenced once any replica of the new epoch subscribes to it.
+ * <p>
+ * Command ids are replicated with their events, so a command retried against the promoted replica gets the original
+ * event instead of being handled again, see {@link Book#replicate}.
+ */
+@Component
+public class ReplicaClient {
+
+    private static final long RECONNECT_SECONDS = 1;
+    private static final long FENCE_TIMEOUT_MILLIS = 100;
+    private static final String THREAD_NAME = "replication";
+
+    private final Logger logger = LoggerFactory.getLogger(ReplicaClient.class);
+
+    private final BookAggregateRepository bookAggregateRepository;
+    private final CommandBus commandBus;
+    private final ReplicationEpoch epoch;
+    private final MarketProperties.ReplicationProperties properties;
+    /**
+     * Applied position and the primary's head of each asset, written by the replication thread
+     */
+    private final Map<String, Long> positions = new ConcurrentHashMap<>();
+    private final Map<String, Long> heads = new ConcurrentHashMap<>();
+    private final TcpClient client;
+    private final Scheduler replication;
+    private volatile Connection connection;
+    private volatile Disposable connecting;
+    private volatile boolean promoted;
+    private volatile long frames;
+    private volatile long bytes;
+    private volatile long events;
+    private volatile long lagNanos;
+    private volatile long lastFrameNanos;
+
+    public ReplicaClient(BookAggregateRepository bookAggregateRepository, CommandBus commandBus,
+                         ReplicationEpoch epoch, MarketProperties marketProperties) {
+        this.bookAggregateRepository = bookAggregateRepository;
+        this.commandBus = commandBus;
+        this.epoch = epoch;
+        this.properties = marketProperties.replication();
+        if (properties.role() == ReplicationRole.REPLICA) {
+            commandBus.readOnly(true);
+            for (String asset : bookAggregateRepository.assets()) {
+                positions.put(asset, bookAggregateRepository.getOrCreate(asset).journalPosition());
+            }
+            replication = Schedulers.newSingle(THREAD_NAME, true);
+            client = TcpClient.create()
+                              .host(properties.host())
+                              .port(properties.port())
+                              .option(ChannelOption.TCP_NODELAY, true)
+                              .doOnConnected(connected -> connected.addHandlerLast(
+                                      "replicationFrames", ReplicationCodec.frameDecoder()))
+                              .handle(this::handle);
+            connect();
+        } else {
+            replication = null;
+            client = null;
+        }
+    }
+
+    /**
+     * @return true if this instance follows a primary and hasn't been promoted yet
+     */
+    public boolean isReplica() {
+        return client != null && !promoted;
+    }
+
+    /**
+     * Stops following the primary, starts the next epoch and accepts commands from now on
+     *
+     * @return time the promotion took
+     * @throws IllegalStateException if this instance is not a replica
+     */
+    public synchronized Duration promote() {
+        if (client == null) {
+            throw new IllegalStateException("Only replica can be promoted!");
+        }
+        long start = System.nanoTime();
+        if (promoted) {
+            return Duration.ZERO;
+        }
+        promoted = true;
+        Disposable pending = connecting;
+        if (pending != null) {
+            pending.dispose();
+        }
+        //frame being applied is finished before books take commands, the frames after it are skipped
+        Mono.fromRunnable(() -> { }).subscribeOn(replication).block();
+        Connection current = connection;
+        long promotedEpoch = epoch.next();
+        if (current != null) {
+            //best effort, primary that doesn't get the fence now is fenced by the next subscription
+            current.channel()
+                   .writeAndFlush(ReplicationCodec.encodeFence(current.channel().alloc(), promotedEpoch))
+                   .awaitUninterruptibly(FENCE_TIMEOUT_MILLIS);
+            current.dispose();
+        }
+        commandBus.readOnly(false);
+        Duration took = Duration.ofNanos(System.nanoTime() - start);
+        logger.info("Promoted to primary of epoch {} in {} us with {} books, {} events replicated", promotedEpoch,
+                    took.toNanos() / 1_000, positions.size(), events);
+        return took;
+    }
+
+    /**
+     * @return counters of replicated records and how far behind the primary this replica is
+     */
+    public ReplicationStats stats() {
+        long behind = 0;
+        for (Map.Entry<String, Long> head : heads.entrySet()) {
+            behind += Math.max(0, head.getValue() - positions.getOrDefault(head.getKey(), 0L));
+        }
+        long lastFrame = lastFrameNanos;
+        return new ReplicationStats(promoted ? ReplicationRole.PRIMARY : properties.role(),
+                                    connection != null ? 1 : 0,
+                                    frames,
+                                    bytes,
+                                    events,
+                                    behind,
+                                    lagNanos / 1_000,
+                                    lastFrame != 0 ? (System.nanoTime() - lastFrame) / 1_000_000 : 0,
+                                    epoch.current(),
+                                    false);
+    }
+
+    /**
+     * Disconnects from the primary on bean destruction
+     */
+    @PreDestroy
+    public void close() {
+        promoted = true;
+        Disposable pending = connecting;
+        if (pending != null) {
+            pending.dispose();
+        }
+        Connection current = connection;
+        if (current != null) {
+            current.dispose();
+        }
+        if (replication != null) {
+            replication.dispose();
+        }
+    }
+
+    private void connect() {
+        connecting = client.connect()
+                           .doOnError(e -> logger.debug("Primary {}:{} is not reachable: {}", properties.host(),
+                                                        properties.port(), e.getMessage()))
+                           .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, Duration.ofSeconds(RECONNECT_SECONDS))
+                                           .filter(e -> !promoted))
+                           .subscribe(this::connected,
+                                      e -> logger.error("Replica stopped connecting to primary", e));
+    }
+
+    private void connected(Connection opened) {
+        if (promoted) {
+            opened.dispose();
+            return;
+        }
+        connection = opened;
+        lastFrameNanos = System.nanoTime();
+        logger.info("Replica connected to primary {}:{}", properties.host(), properties.port());
+        opened.onDispose(() -> {
+            connection = null;
+            if (!promoted) {
+                logger.warn("Replica lost connection to primary, reconnecting");
+                connecting = Mono.delay(Duration.ofSeconds(RECONNECT_SECONDS))
+                                 .subscribe(tick -> connect());
+            }
+        });
+    }
+
+    /**
+     * Subscribes with applied positions, then applies frames until the connection is closed. Positions are read on the
+     * replication thread, after the frame of the previous connection that may still be applied.
+     */
+    private Publisher<Void> handle(NettyInbound inbound, NettyOutbound outbound) {
+        return outbound.send(Mono.fromSupplier(() -> ReplicationCodec.encodeSubscribe(outbound.alloc(),
+                                                                                      epoch.current(),
+                                                                                      Map.copyOf(positions)))
+                                 .subscribeOn(replication))
+                       .then()
+                       .thenMany(inbound.receive()
+                                        .map(this::received)
+                                        .concatMap(frame -> Mono.fromRunnable(() -> onFrame(frame))
+                                                                .subscribeOn(replication)))
+                       .then();
+    }
+
+    /**
+     * Called on the event loop for each frame, copies it before the event loop releases it
+     */
+    private ByteBuf received(ByteBuf frame) {
+        lastFrameNanos = System.nanoTime();
+        return Unpooled.copiedBuffer(frame);
+    }
+
+    /**
+     * Called on the replication thread for each frame in the order of arrival. Failed frame closes the connection,
+     * the next one subscribes from the last record applied.
+     */
+    private void onFrame(ByteBuf frame) {
+        if (promoted) {
+            return;
+        }
+        byte type = frame.readByte();
+        if (type != ReplicationCodec.HEARTBEAT && type != ReplicationCodec.RECORDS) {
+            throw new IllegalStateException("Unknown replication message type " + type + "!");
+        }
+        long primaryEpoch = frame.readLong();
+        long current = epoch.current();
+        if (primaryEpoch < current) {
+            throw new IllegalStateException("Primary of epoch " + primaryEpoch + " has been replaced in epoch "
+                                                    + current + "!");
+        }
+        if (primaryEpoch > current) {
+            epoch.advanceTo(primaryEpoch);
+        }
+        if (type == ReplicationCodec.HEARTBEAT) {
+            lagNanos = Math.max(0, ReplicationCodec.epochNanos() - frame.readLong());
+            return;
+        }
+        String asset = ReplicationCodec.readAsset(frame);
+        long fromPosition = frame.readLong();
+        long head = frame.readLong();
+        long sentAt = frame.readLong();
+        long position = positions.getOrDefault(asset, 0L);
+        if (fromPosition != position) {
+            throw new IllegalStateException("Records of " + asset + " start at " + fromPosition
+                                                    + ", replica has applied up to " + position + "!");
+        }
+        Book book = bookAggregateRepository.getOrCreate(asset);
+        ByteBuffer records = frame.nioBuffer();
+        int replicated = 0;
+        try {
+            replicated = Journal.decode(asset, records, book::replicate);
+        } finally {
+            positions.put(asset, position + records.position());
+            heads.put(asset, head);
+            events += replicated;
+        }
+        frames++;
+        bytes += records.position();
+        lagNanos = Math.max(0, ReplicationCodec.epochNanos() - sentAt);
+    }
+}
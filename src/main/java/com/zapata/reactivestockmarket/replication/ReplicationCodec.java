@@ -0,0 +1,164 @@
+package com.zapata.reactivestockmarket.replication;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary protocol between primary and replica.
+ * <p>
+ * Every message is a frame of signed 32-bit big-endian length followed by that many bytes, the first of them is the
+ * message type. Asset is unsigned 16-bit length followed by UTF-8 bytes. Replica subscribes with the journal position
+ * it has applied of each asset, primary answers with journal records of each asset from that position on - from the
+ * start for assets the replica doesn't have - as they are in its journal file, see
+ * {@link com.zapata.reactivestockmarket.domain.journal.Journal#read}.
+ * <pre>
+ * SUBSCRIBE  'S' epoch:8 count:2 (asset position:8)*count                    replica to primary
+ * RECORDS    'R' epoch:8 asset fromPosition:8 head:8 sentEpochNanos:8 records primary to replica
+ * HEARTBEAT  'H' epoch:8 sentEpochNanos:8                                     primary to replica
+ * FENCE      'F' epoch:8                                                      replica to primary
+ * </pre>
+ * {@code epoch} is the {@link ReplicationEpoch} of the sender, {@code FENCE} is sent by the replica being promoted to
+ * the new epoch. {@code head} is the journal position the primary has appended up to when it sent the records,
+ * replica uses it to tell how far behind it is.
+ */
+public final class ReplicationCodec {
+
+    public static final int LENGTH_FIELD = 4;
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    public static final byte SUBSCRIBE = 'S';
+    public static final byte RECORDS = 'R';
+    public static final byte HEARTBEAT = 'H';
+    public static final byte FENCE = 'F';
+
+    private static final int HEARTBEAT_LENGTH = 1 + 8 + 8;
+    private static final int FENCE_LENGTH = 1 + 8;
+
+    private ReplicationCodec() {
+    }
+
+    /**
+     * @return decoder that splits connection bytes into frames without the length field, one per connection
+     */
+    public static LengthFieldBasedFrameDecoder frameDecoder() {
+        return new LengthFieldBasedFrameDecoder(LENGTH_FIELD + MAX_FRAME_LENGTH, 0, LENGTH_FIELD, 0, LENGTH_FIELD);
+    }
+
+    /**
+     * @param alloc     - allocator of the connection
+     * @param epoch     - epoch of the replica
+     * @param positions - applied journal position of each asset
+     * @return framed subscription
+     */
+    public static ByteBuf encodeSubscribe(ByteBufAllocator alloc, long epoch, Map<String, Long> positions) {
+        if (positions.size() > 0xFFFF) {
+            throw new IllegalArgumentException("Replica can't subscribe to more than 65535 assets!");
+        }
+        ByteBuf frame = alloc.buffer();
+        frame.writeInt(0)
+             .writeByte(SUBSCRIBE)
+             .writeLong(epoch)
+             .writeShort(positions.size());
+        positions.forEach((asset, position) -> writeAsset(frame, asset).writeLong(position));
+        return frame.setInt(0, frame.readableBytes() - LENGTH_FIELD);
+    }
+
+    /**
+     * @param frame - subscription frame without the length field, after the type and the epoch
+     * @return applied journal position of each asset
+     */
+    public static Map<String, Long> decodeSubscribe(ByteBuf frame) {
+        int count = frame.readUnsignedShort();
+        Map<String, Long> positions = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            positions.put(readAsset(frame), frame.readLong());
+        }
+        return positions;
+    }
+
+    /**
+     * Writes frame header of records, records are written right after it and {@link #endRecords} completes the frame
+     *
+     * @param frame        - buffer the frame is written to
+     * @param epoch        - epoch of the primary
+     * @param asset        - asset name / aggregate identifier
+     * @param fromPosition - journal position of the first record
+     * @param head         - journal position the primary has appended up to
+     * @return the buffer
+     */
+    public static ByteBuf beginRecords(ByteBuf frame, long epoch, String asset, long fromPosition, long head) {
+        frame.writeInt(0)
+             .writeByte(RECORDS)
+             .writeLong(epoch);
+        return writeAsset(frame, asset).writeLong(fromPosition)
+                                       .writeLong(head)
+                                       .writeLong(epochNanos());
+    }
+
+    /**
+     * @param frame - buffer with header and records
+     * @return the buffer with length field set
+     */
+    public static ByteBuf endRecords(ByteBuf frame) {
+        return frame.setInt(frame.readerIndex(), frame.readableBytes() - LENGTH_FIELD);
+    }
+
+    /**
+     * @param alloc - allocator of the connection
+     * @param epoch - epoch of the primary
+     * @return framed heartbeat
+     */
+    public static ByteBuf encodeHeartbeat(ByteBufAllocator alloc, long epoch) {
+        return alloc.buffer(LENGTH_FIELD + HEARTBEAT_LENGTH)
+                    .writeInt(HEARTBEAT_LENGTH)
+                    .writeByte(HEARTBEAT)
+                    .writeLong(epoch)
+                    .writeLong(epochNanos());
+    }
+
+    /**
+     * @param alloc - allocator of the connection
+     * @param epoch - epoch the replica has been promoted to
+     * @return framed fence
+     */
+    public static ByteBuf encodeFence(ByteBufAllocator alloc, long epoch) {
+        return alloc.buffer(LENGTH_FIELD + FENCE_LENGTH)
+                    .writeInt(FENCE_LENGTH)
+                    .writeByte(FENCE)
+                    .writeLong(epoch);
+    }
+
+    /**
+     * Reads asset of records frame, the frame is left at {@code fromPosition}
+     *
+     * @param frame - records frame without the length field, after the type
+     * @return asset name
+     */
+    public static String readAsset(ByteBuf frame) {
+        int length = frame.readUnsignedShort();
+        return frame.readCharSequence(length, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Wall clock shared by primary and replica on one host, nanoseconds since epoch
+     */
+    public static long epochNanos() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    private static ByteBuf writeAsset(ByteBuf frame, String asset) {
+        byte[] bytes = asset.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Asset name is too long!");
+        }
+        return frame.writeShort(bytes.length)
+                    .writeBytes(bytes);
+    }
+}
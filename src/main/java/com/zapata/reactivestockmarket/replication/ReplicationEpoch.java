@@ -0,0 +1,104 @@
+package com.zapata.reactivestockmarket.replication;
+
+import com.zapata.reactivestockmarket.MarketProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Fencing token of primary / replica pair, the highest epoch this instance has seen.
+ * <p>
+ * Every promotion starts a new epoch, higher than any seen before. Primary serves and replica applies records only
+ * within the highest epoch either of them knows, whoever meets a higher epoch than its own gives way - primary stops
+ * taking commands, replica drops the connection to the stale primary. Epoch is kept in {@value #FILE_NAME} next to
+ * the journal and forced before it is used, so a restarted instance doesn't fall back to an epoch it has left.
+ * Without journal the epoch is kept in memory only.
+ */
+@Component
+public class ReplicationEpoch {
+
+    static final String FILE_NAME = "replication.epoch";
+
+    private final Path file;
+    private volatile long current;
+
+    /**
+     * @param marketProperties - journal directory the epoch is kept in, if the journal is enabled
+     */
+    public ReplicationEpoch(MarketProperties marketProperties) {
+        MarketProperties.JournalProperties journal = marketProperties.journal();
+        this.file = journal.enabled() ? Paths.get(journal.directory()).resolve(FILE_NAME) : null;
+        this.current = file != null ? load(file) : 0;
+    }
+
+    /**
+     * @return the highest epoch seen, 0 before the first promotion
+     */
+    public long current() {
+        return current;
+    }
+
+    /**
+     * Moves to the epoch if it's higher than the current one, the epoch is durable once this returns
+     *
+     * @param epoch - epoch seen or started
+     * @return true if the epoch is higher than the current one
+     */
+    public synchronized boolean advanceTo(long epoch) {
+        if (epoch <= current) {
+            return false;
+        }
+        if (file != null) {
+            store(file, epoch);
+        }
+        current = epoch;
+        return true;
+    }
+
+    /**
+     * Starts the next epoch, called on promotion
+     *
+     * @return the new epoch
+     */
+    public synchronized long next() {
+        long epoch = current + 1;
+        advanceTo(epoch);
+        return epoch;
+    }
+
+    private static long load(Path file) {
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            if (bytes.length != Long.BYTES) {
+                throw new IllegalStateException("Replication epoch " + file + " is corrupted!");
+            }
+            return ByteBuffer.wrap(bytes).getLong();
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't read replication epoch " + file, e);
+        }
+    }
+
+    private static void store(Path file, long epoch) {
+        Path temporary = file.resolveSibling(FILE_NAME + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (FileOutputStream stream = new FileOutputStream(temporary.toFile())) {
+                stream.getChannel().write(ByteBuffer.allocate(Long.BYTES).putLong(0, epoch));
+                stream.getChannel().force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't write replication epoch " + file, e);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.zapata.reactivestockmarket.replication;
+
+/**
+ * Role of an instance in primary / hot-standby replication.
+ *
+ */
+public enum ReplicationRole {
+
+    /**
+     * Neither serves nor follows a journal
+     */
+    NONE,
+
+    /**
+     * Handles commands and serves its journal to replicas {@link ReplicationServer}
+     */
+    PRIMARY,
+
+    /**
+     * Applies journal of the primary and rejects commands until it's promoted {@link ReplicaClient}
+     */
+    REPLICA
+}
@@ -0,0 +1,269 @@
+package com.zapata.reactivestockmarket.replication;
+
+import com.zapata.reactivestockmarket.MarketProperties;
+import com.zapata.reactivestockmarket.domain.bus.CommandBus;
+import com.zapata.reactivestockmarket.domain.journal.Journal;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PreDestroy;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.netty.Connection;
+import reactor.netty.DisposableServer;
+import reactor.netty.NettyInbound;
+import reactor.netty.NettyOutbound;
+import reactor.netty.tcp.TcpServer;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replication listener of the primary, streams journal records of all books to connected replicas.
+ * <p>
+ * Journal is the sequenced stream of sourcing events - records of a book are in the order the book handled its
+ * commands and the journal position of a record identifies it. Each replica has a sender thread that reads records
+ * appended to open journals past the position the replica has, see {@link Journal#read}, and sends them as they are
+ * in the file, without decoding them. Books don't know about replicas, a slow replica only makes its sender wait for
+ * the connection to become writable, the journal keeps everything it hasn't sent yet. Idle sender polls journals
+ * every {@value #IDLE_PARK_NANOS} ns and sends a heartbeat every {@code market.replication.heartbeat-interval}.
+ * <p>
+ * Records are sent once they are durable, see {@link Journal#shippableHead}, so replica never gets an event the primary
+ * loses in a crash - with {@link com.zapata.reactivestockmarket.domain.journal.FsyncPolicy#INTERVAL} that delays them
+ * by up to the fsync interval. With {@link com.zapata.reactivestockmarket.domain.journal.FsyncPolicy#NONE} nothing is
+ * forced before close and records are sent once they are appended.
+ * <p>
+ * Primary serves its replicas within its {@link ReplicationEpoch}. Replica that subscribes with a later epoch or
+ * sends a fence on promotion has taken over - primary moves to that epoch, rejects commands from then on and
+ * disconnects its replicas. Commands the primary has accepted before are not in the journal of the promoted replica
+ * unless they have been replicated.
+ */
+@Component
+public class ReplicationServer {
+
+    private static final long IDLE_PARK_NANOS = 100_000L;
+    private static final long BLOCKED_PARK_NANOS = 50_000L;
+
+    private final Logger logger = LoggerFactory.getLogger(ReplicationServer.class);
+
+    private final Journal journal;
+    private final CommandBus commandBus;
+    private final ReplicationEpoch epoch;
+    private final MarketProperties.ReplicationProperties properties;
+    private final List<Sender> senders = new CopyOnWriteArrayList<>();
+    private final DisposableServer server;
+    private volatile boolean fenced;
+
+    public ReplicationServer(Journal journal, CommandBus commandBus, ReplicationEpoch epoch,
+                             MarketProperties marketProperties) {
+        this.journal = journal;
+        this.commandBus = commandBus;
+        this.epoch = epoch;
+        this.properties = marketProperties.replication();
+        boolean primary = properties.role() == ReplicationRole.PRIMARY;
+        if (primary && !journal.isEnabled()) {
+            throw new IllegalStateException("Primary replicates its journal, market.journal.enabled must be true!");
+        }
+        this.server = primary ? start() : null;
+    }
+
+    /**
+     * @return port the listener is bound to, -1 if this instance is not primary
+     */
+    public int port() {
+        return server != null ? server.port() : -1;
+    }
+
+    /**
+     * @return true if a promoted replica has taken over and this primary rejects commands
+     */
+    public boolean isFenced() {
+        return fenced;
+    }
+
+    /**
+     * @return counters of all replicas, behind bytes of the replica furthest behind
+     */
+    public ReplicationStats stats() {
+        long frames = 0;
+        long bytes = 0;
+        long behind = 0;
+        for (Sender sender : senders) {
+            frames += sender.frames;
+            bytes += sender.bytes;
+            behind = Math.max(behind, sender.behindBytes);
+        }
+        return new ReplicationStats(properties.role(), senders.size(), frames, bytes, 0, behind, 0, 0, epoch.current(),
+                                    fenced);
+    }
+
+    /**
+     * Stops listening and disconnects replicas on bean destruction
+     */
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.disposeNow();
+        }
+        senders.forEach(Sender::stop);
+    }
+
+    private DisposableServer start() {
+        DisposableServer bound = TcpServer.create()
+                                          .host(properties.host())
+                                          .port(properties.port())
+                                          .childOption(ChannelOption.TCP_NODELAY, true)
+                                          .doOnConnection(connection -> connection.addHandlerLast(
+                                                  "replicationFrames", ReplicationCodec.frameDecoder()))
+                                          .handle(this::handle)
+                                          .bindNow();
+        logger.info("Replication listening on {}:{}", properties.host(), bound.port());
+        return bound;
+    }
+
+    /**
+     * Replica sends one subscription, sender is started once it has arrived and stopped once the connection is closed.
+     * Replica being promoted sends a fence before it closes the connection.
+     */
+    private Publisher<Void> handle(NettyInbound inbound, NettyOutbound outbound) {
+        Sender[] sender = new Sender[1];
+        inbound.withConnection(connection -> {
+            sender[0] = new Sender(connection);
+            connection.onDispose(sender[0]::stop);
+        });
+        return inbound.receive()
+                      .doOnNext(frame -> onFrame(sender[0], frame))
+                      .then();
+    }
+
+    private void onFrame(Sender sender, ByteBuf frame) {
+        byte type = frame.readByte();
+        if (type != ReplicationCodec.SUBSCRIBE && type != ReplicationCodec.FENCE) {
+            throw new IllegalArgumentException("Unknown replication message type " + type + "!");
+        }
+        long replicaEpoch = frame.readLong();
+        if (replicaEpoch > epoch.current()) {
+            fence(replicaEpoch);
+        }
+        if (type == ReplicationCodec.FENCE || fenced) {
+            sender.connection.dispose();
+            return;
+        }
+        sender.start(ReplicationCodec.decodeSubscribe(frame));
+    }
+
+    /**
+     * Gives way to the replica promoted to a later epoch, commands are rejected before the epoch is stored
+     */
+    private synchronized void fence(long replicaEpoch) {
+        commandBus.readOnly(true);
+        epoch.advanceTo(replicaEpoch);
+        fenced = true;
+        senders.forEach(Sender::stop);
+        logger.warn("Replica has been promoted to epoch {}, primary is fenced and rejects commands", replicaEpoch);
+    }
+
+    private final class Sender implements Runnable {
+
+        private final Connection connection;
+        /**
+         * Position the replica has been sent up to of each asset, accessed by the sender thread only
+         */
+        private final Map<String, Long> positions = new HashMap<>();
+        private final ByteBuffer batch = ByteBuffer.allocateDirect(properties.batchSize());
+        private volatile Thread thread;
+        private volatile boolean running = true;
+        private volatile long frames;
+        private volatile long bytes;
+        private volatile long behindBytes;
+
+        private Sender(Connection connection) {
+            this.connection = connection;
+        }
+
+        private void start(Map<String, Long> subscribed) {
+            if (thread != null) {
+                throw new IllegalStateException("Replica has already subscribed!");
+            }
+            positions.putAll(subscribed);
+            thread = new Thread(this, "replication-sender-" + connection.channel().id().asShortText());
+            thread.setDaemon(true);
+            senders.add(this);
+            thread.start();
+            logger.info("Replica {} subscribed with {} assets", connection.address(), subscribed.size());
+        }
+
+        private void stop() {
+            running = false;
+            Thread current = thread;
+            if (current != null) {
+                LockSupport.unpark(current);
+            }
+        }
+
+        @Override
+        public void run() {
+            Channel channel = connection.channel();
+            long heartbeatNanos = properties.heartbeatInterval().toNanos();
+            long lastSent = System.nanoTime();
+            try {
+                while (running && !fenced && channel.isActive()) {
+                    if (!channel.isWritable()) {
+                        LockSupport.parkNanos(this, BLOCKED_PARK_NANOS);
+                        continue;
+                    }
+                    boolean sent = false;
+                    long behind = 0;
+                    for (String asset : journal.openAggregateIds()) {
+                        long position = positions.getOrDefault(asset, 0L);
+                        long head = journal.head(asset);
+                        if (journal.shippableHead(asset) > position && channel.isWritable()) {
+                            position = send(channel, asset, position, head);
+                            sent = true;
+                        }
+                        behind += Math.max(0, head - position);
+                    }
+                    behindBytes = behind;
+                    long now = System.nanoTime();
+                    if (sent) {
+                        channel.flush();
+                        lastSent = now;
+                    } else if (now - lastSent >= heartbeatNanos) {
+                        channel.writeAndFlush(ReplicationCodec.encodeHeartbeat(channel.alloc(), epoch.current()));
+                        lastSent = now;
+                    } else {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Replication to {} failed", connection.address(), e);
+                connection.dispose();
+            } finally {
+                senders.remove(this);
+            }
+        }
+
+        /**
+         * @return position after the sent records
+         */
+        private long send(Channel channel, String asset, long position, long head) {
+            batch.clear();
+            long next = journal.read(asset, position, batch);
+            batch.flip();
+            ByteBuf frame = channel.alloc().buffer(64 + asset.length() * 3 + batch.remaining());
+            ReplicationCodec.beginRecords(frame, epoch.current(), asset, position, head)
+                            .writeBytes(batch);
+            channel.write(ReplicationCodec.endRecords(frame));
+            positions.put(asset, next);
+            frames++;
+            bytes += next - position;
+            return next;
+        }
+    }
+}
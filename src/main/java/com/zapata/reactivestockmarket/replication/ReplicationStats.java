@@ -0,0 +1,20 @@
+package com.zapata.reactivestockmarket.replication;
+
+/**
+ * Replication counters since start, sent by the primary or applied by the replica.
+ *
+ * @param role        - current role, replica reports {@link ReplicationRole#PRIMARY} once it has been promoted
+ * @param connections - number of connected replicas, 1 if the replica is connected to its primary
+ * @param frames      - number of frames of journal records sent or applied
+ * @param bytes       - number of journal bytes sent or applied
+ * @param events      - number of events applied, 0 on the primary that sends records without decoding them
+ * @param behindBytes - journal bytes appended by the primary and not sent or applied yet, as known to this side
+ * @param lagMicros   - time from sending the last frame to having it applied, measured by the replica, 0 on the
+ *                    primary
+ * @param idleMillis  - time since the last frame or heartbeat on the replica, growing value means the primary is gone
+ * @param epoch       - the highest {@link ReplicationEpoch} this side has seen, it grows with each promotion
+ * @param fenced      - true if the primary has given way to a promoted replica and rejects commands, false on replica
+ */
+public record ReplicationStats(ReplicationRole role, int connections, long frames, long bytes, long events,
+                               long behindBytes, long lagMicros, long idleMillis, long epoch, boolean fenced) {
+}
@@ -0,0 +1,57 @@
+package com.zapata.reactivestockmarket.util;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cheap unique identifiers of commands and events, replacing {@link UUID#randomUUID()} that reads
+ * {@link SecureRandom} for every identifier.
+ * <p>
+ * Identifiers are RFC 9562 version 8 (custom) UUIDs - the most significant half is random, drawn once per process,
+ * the least significant half is a 62 bit sequence. Threads take blocks of {@link #BLOCK_SIZE} sequence numbers from a
+ * shared counter and hand them out without synchronization, so the shared counter is touched once per block. The
+ * random prefix keeps identifiers of separate processes and restarts apart.
+ * <p>
+ * Identifiers are unique, but not ordered across threads and must not be used where unpredictability matters.
+ */
+public final class UuidGenerator {
+
+    private static final int BLOCK_BITS = 16;
+    private static final long BLOCK_SIZE = 1L << BLOCK_BITS;
+    private static final long VERSION_MASK = 0xF000L;
+    private static final long VERSION_8 = 0x8000L;
+    private static final long VARIANT = Long.MIN_VALUE;
+    private static final long SEQUENCE_MASK = Long.MAX_VALUE >>> 1;
+
+    private static final long PREFIX = new SecureRandom().nextLong() & ~VERSION_MASK | VERSION_8;
+    private static final AtomicLong BLOCKS = new AtomicLong();
+    private static final ThreadLocal<Block> BLOCK = ThreadLocal.withInitial(Block::new);
+
+    private UuidGenerator() {
+    }
+
+    /**
+     * @return new unique identifier
+     */
+    public static UUID next() {
+        return new UUID(PREFIX, VARIANT | BLOCK.get().next() & SEQUENCE_MASK);
+    }
+
+    /**
+     * Sequence numbers reserved by one thread
+     */
+    private static final class Block {
+
+        private long next;
+        private long end;
+
+        private long next() {
+            if (next == end) {
+                next = BLOCKS.getAndIncrement() << BLOCK_BITS;
+                end = next + BLOCK_SIZE;
+            }
+            return next++;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.zapata.reactivestockmarket.web;
+
+import com.zapata.reactivestockmarket.cluster.AssetAssignment;
+import com.zapata.reactivestockmarket.cluster.ClusterRouter;
+import com.zapata.reactivestockmarket.domain.dtos.AssetOwner;
+import com.zapata.reactivestockmarket.domain.dtos.ClusterStatus;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Implements REST Endpoints to inspect and change the assignment of assets to cluster nodes. Changes apply to the node
+ * receiving them only, they have to be sent to every node, and move new commands of the asset, not its resting orders.
+ */
+@RestController
+public class ClusterController {
+
+    private final ClusterRouter clusterRouter;
+
+    public ClusterController(ClusterRouter clusterRouter) {
+        this.clusterRouter = clusterRouter;
+    }
+
+    /**
+     * @return nodes and explicit assignments known to this node
+     */
+    @GetMapping("/cluster")
+    public ClusterStatus cluster() {
+        AssetAssignment assignment = assignment();
+        return new ClusterStatus(clusterRouter.nodeId(), assignment.nodes(), assignment.assignments());
+    }
+
+    /**
+     * @param asset - asset name
+     * @return owner of the asset
+     */
+    @GetMapping("/cluster/assets/{asset}")
+    public AssetOwner owner(@PathVariable String asset) {
+        assignment();
+        String owner = clusterRouter.owner(asset);
+        return new AssetOwner(asset, owner, clusterRouter.httpUrl(owner), clusterRouter.isLocal(asset));
+    }
+
+    /**
+     * Assigns asset to node explicitly, i.e. to move a hot asset to a less busy node
+     *
+     * @param asset - asset name
+     * @param node  - identifier of the new owner
+     * @return owner of the asset
+     */
+    @PutMapping("/cluster/assets/{asset}")
+    public AssetOwner assign(@PathVariable String asset, @RequestParam String node) {
+        try {
+            assignment().assign(asset, node);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        return owner(asset);
+    }
+
+    /**
+     * Returns asset to the node chosen by hash
+     *
+     * @param asset - asset name
+     * @return owner of the asset
+     */
+    @DeleteMapping("/cluster/assets/{asset}")
+    public AssetOwner unassign(@PathVariable String asset) {
+        assignment().unassign(asset);
+        return owner(asset);
+    }
+
+    private AssetAssignment assignment() {
+        if (!clusterRouter.enabled()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Cluster mode is disabled!");
+        }
+        return clusterRouter.assignment();
+    }
+}
@@ -0,0 +1,53 @@
+package com.zapata.reactivestockmarket.web;
+
+import com.zapata.reactivestockmarket.cluster.ClusterRouter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Redirects queries of books and market data of assets owned by other nodes to the owner, the book and its feeds exist
+ * only there. Temporary redirect keeps the method, so clients follow it for streams as well and may cache the owner
+ * until the assignment changes.
+ */
+@Component
+public class ClusterRedirectFilter extends OncePerRequestFilter {
+
+    private static final Pattern ASSET_PATH = Pattern.compile("^/(?:book|market)/([^/]+)(?:/.*)?$");
+
+    private final ClusterRouter clusterRouter;
+
+    public ClusterRedirectFilter(ClusterRouter clusterRouter) {
+        this.clusterRouter = clusterRouter;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        return !clusterRouter.enabled();
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        Matcher matcher = ASSET_PATH.matcher(request.getRequestURI());
+        if (matcher.matches() && !clusterRouter.isLocal(matcher.group(1))) {
+            String owner = clusterRouter.owner(matcher.group(1));
+            String query = request.getQueryString();
+            response.setStatus(HttpStatus.TEMPORARY_REDIRECT.value());
+            response.setHeader(HttpHeaders.LOCATION, clusterRouter.httpUrl(owner) + request.getRequestURI()
+                                                     + (query != null ? "?" + query : ""));
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+}
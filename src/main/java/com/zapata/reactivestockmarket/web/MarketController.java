@@ -1,32 +1,65 @@
 package com.zapata.reactivestockmarket.web;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zapata.reactivestockmarket.cluster.ClusterRouter;
 import com.zapata.reactivestockmarket.cqrs.Event;
+import com.zapata.reactivestockmarket.cqrs.FanoutStats;
+import com.zapata.reactivestockmarket.cqrs.OverflowPolicy;
 import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
 import com.zapata.reactivestockmarket.domain.bus.CommandBus;
+import com.zapata.reactivestockmarket.domain.command.AmendOrderCommand;
 import com.zapata.reactivestockmarket.domain.command.CancelOrderCommand;
 import com.zapata.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.zapata.reactivestockmarket.domain.command.MassCancelCommand;
+import com.zapata.reactivestockmarket.domain.dtos.AmendOrderRequest;
+import com.zapata.reactivestockmarket.domain.dtos.BookDepth;
+import com.zapata.reactivestockmarket.domain.dtos.Candle;
+import com.zapata.reactivestockmarket.domain.dtos.DepthUpdate;
+import com.zapata.reactivestockmarket.domain.dtos.MassCancelRequest;
 import com.zapata.reactivestockmarket.domain.dtos.OrderStatusResponse;
 import com.zapata.reactivestockmarket.domain.dtos.PlaceOrderRequest;
+import com.zapata.reactivestockmarket.domain.dtos.PlaceOrderResult;
+import com.zapata.reactivestockmarket.domain.dtos.TopOfBook;
 import com.zapata.reactivestockmarket.domain.dtos.Trade;
+import com.zapata.reactivestockmarket.domain.dtos.TradeStats;
+import com.zapata.reactivestockmarket.domain.events.CancellationRequestedEvent;
+import com.zapata.reactivestockmarket.domain.events.CommandRejectedEvent;
 import com.zapata.reactivestockmarket.domain.events.OrderAcceptedEvent;
+import com.zapata.reactivestockmarket.domain.feed.CandleFeed;
+import com.zapata.reactivestockmarket.domain.feed.CandleInterval;
+import com.zapata.reactivestockmarket.domain.journal.Journal;
+import com.zapata.reactivestockmarket.domain.journal.JournalStats;
 import com.zapata.reactivestockmarket.domain.query.BookQueryRepository;
 import com.zapata.reactivestockmarket.domain.query.OrderEntry;
 import com.zapata.reactivestockmarket.domain.query.OrderType;
+import com.zapata.reactivestockmarket.domain.query.ProjectionStats;
 import com.zapata.reactivestockmarket.domain.Book;
 import com.zapata.reactivestockmarket.domain.BookAggregateRepository;
+import com.zapata.reactivestockmarket.domain.OrderRoutes;
+import com.zapata.reactivestockmarket.metrics.LatencyMetrics;
+import com.zapata.reactivestockmarket.metrics.LatencyStats;
+import com.zapata.reactivestockmarket.metrics.Stage;
+import com.zapata.reactivestockmarket.util.UuidGenerator;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
-import java.time.Duration;
-import java.util.UUID;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 /**
@@ -39,32 +72,88 @@ public class MarketController {
     private final CommandBus commandBus;
     private final BookAggregateRepository bookAggregateRepository;
     private final BookQueryRepository bookQueryRepository;
+    private final Journal journal;
+    private final ObjectMapper objectMapper;
+    private final LatencyMetrics latencyMetrics;
+    private final ClusterRouter clusterRouter;
 
     public MarketController(CommandBus commandBus,
                             BookAggregateRepository bookAggregateRepository,
-                            BookQueryRepository bookQueryRepository) {
+                            BookQueryRepository bookQueryRepository,
+                            Journal journal,
+                            ObjectMapper objectMapper,
+                            LatencyMetrics latencyMetrics,
+                            ClusterRouter clusterRouter) {
         this.commandBus = commandBus;
         this.bookAggregateRepository = bookAggregateRepository;
         this.bookQueryRepository = bookQueryRepository;
+        this.journal = journal;
+        this.objectMapper = objectMapper;
+        this.latencyMetrics = latencyMetrics;
+        this.clusterRouter = clusterRouter;
     }
 
     /**
-     * Places order into trading system
+     * Places order into trading system, response is sent as soon as the order has been applied to the projection.
+     * Order that is not applied within {@code market.projection.await-timeout} is answered with 504, the order is
+     * accepted nevertheless and can be read later.
+     * Request retried with the same {@code commandId} within the deduplication window returns the original order.
+     * Order of asset owned by another node is forwarded to it, response is sent as soon as the owner has accepted the
+     * order and has no trades, get the order from the owner to see them.
      *
      * @param request user request to place order
      * @return order status
      */
     @PostMapping(value = "/orders", consumes = MediaType.APPLICATION_JSON_VALUE)
     public Mono<OrderStatusResponse> placeOrder(@RequestBody PlaceOrderRequest request) {
-        return commandBus.sendCommand(toMakeOrderCommand(request))
-                         .cast(OrderAcceptedEvent.class)
-                         .flatMap(this::getOrderProjection)
-                         .map(this::toOrderStatus);
+        if (!clusterRouter.isLocal(request.asset())) {
+            return Mono.defer(() -> clusterRouter.sendCommand(toMakeOrderCommand(request)))
+                       .cast(OrderAcceptedEvent.class)
+                       .map(MarketController::toAcceptedStatus);
+        }
+        return Mono.defer(() -> {
+            long received = latencyMetrics.sample();
+            return commandBus.sendCommand(toMakeOrderCommand(request))
+                             .cast(OrderAcceptedEvent.class)
+                             .flatMap(ev -> getOrderProjection(ev, received))
+                             .map(this::toOrderStatus);
+        });
+    }
+
+    /**
+     * Places orders in batch, orders of one asset are applied to the book in one pass. Orders of assets owned by
+     * other nodes are forwarded to them.
+     *
+     * @param requests user requests to place orders
+     * @return result of each order in the order of requests
+     */
+    @PostMapping(value = "/orders/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Flux<PlaceOrderResult> placeOrders(@RequestBody List<PlaceOrderRequest> requests) {
+        return clusterRouter.sendCommands(Flux.fromIterable(requests).map(this::toMakeOrderCommand))
+                            .zipWithIterable(requests, MarketController::toPlaceOrderResult);
+    }
+
+    /**
+     * Places orders in batch sent as newline delimited JSON, see {@link #placeOrders}
+     *
+     * @param body one order request per line
+     * @return result of each order in the order of requests, one per line
+     */
+    @PostMapping(value = "/orders/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<PlaceOrderResult> placeOrdersStream(InputStream body) throws IOException {
+        //read the whole body on the request thread, command bus threads must not block on request input
+        try (MappingIterator<PlaceOrderRequest> lines = objectMapper.readerFor(PlaceOrderRequest.class)
+                                                                     .readValues(body)) {
+            return placeOrders(lines.readAll());
+        }
     }
 
     /**
      * Not used - POC
-     * Intended to UI or client applications to maintain their own projection
+     * Intended to UI or client applications to maintain their own projection. Client that falls behind never slows
+     * down the book, it gets {@link com.zapata.reactivestockmarket.domain.engine.events.BookResyncEvent} with all
+     * levels instead of the events it has missed.
      *
      * @param asset
      * @return streams all events from aggregate
@@ -72,7 +161,99 @@ public class MarketController {
     @GetMapping(value = "/book/{asset}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public Flux<Event> bookEvents(@PathVariable String asset) {
         return bookAggregateRepository.load(asset)
-                                      .flatMapMany(Book::aggregateEvents);
+                                      .flatMapMany(book -> book.aggregateEvents(OverflowPolicy.RESYNC));
+    }
+
+    /**
+     * Counters of book event ring, blocked publishes show how often subscribers have slowed down the book
+     *
+     * @param asset - asset name
+     * @return event ring statistics
+     * @throws ResponseStatusException 404 if the book doesn't exist
+     */
+    @GetMapping("/book/{asset}/events/stats")
+    public FanoutStats bookEventStats(@PathVariable String asset) {
+        return existingBook(asset).eventStats();
+    }
+
+    /**
+     * Aggregated depth feed - snapshot of all price levels followed by updates of changed levels. Updates are
+     * conflated, slow client gets the latest amount of each changed level instead of every change.
+     *
+     * @param asset - asset name
+     * @return streams depth messages
+     */
+    @GetMapping(value = "/book/{asset}/depth", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<DepthUpdate> bookDepth(@PathVariable String asset) {
+        return bookAggregateRepository.load(asset)
+                                      .flatMapMany(book -> book.depthFeed().updates());
+    }
+
+    /**
+     * Best bid and ask of the book, read from the engine's book view without going through the command bus
+     *
+     * @param asset - asset name
+     * @return top of the book
+     * @throws ResponseStatusException 404 if the book doesn't exist
+     */
+    @GetMapping("/book/{asset}/top")
+    public TopOfBook topOfBook(@PathVariable String asset) {
+        return existingBook(asset).topOfBook();
+    }
+
+    /**
+     * Current aggregated depth of the book, read from the engine's book view. Clients that follow the book should
+     * use the depth feed stream instead of polling.
+     *
+     * @param asset  - asset name
+     * @param levels - maximum number of levels per side
+     * @return aggregated depth
+     * @throws ResponseStatusException 404 if the book doesn't exist
+     */
+    @GetMapping(value = "/book/{asset}/depth", produces = MediaType.APPLICATION_JSON_VALUE)
+    public BookDepth bookDepthLevels(@PathVariable String asset, @RequestParam(defaultValue = "10") int levels) {
+        return existingBook(asset).depth(levels);
+    }
+
+    /**
+     * The latest OHLCV bars of the book, read from the book's candle feed without going through the command bus
+     *
+     * @param asset    - asset name
+     * @param interval - bar interval, 1s, 1m or 1h
+     * @param limit    - maximum number of bars, at most {@link CandleFeed#CAPACITY}
+     * @return bars from the oldest to the current one
+     * @throws ResponseStatusException 404 if the book doesn't exist
+     */
+    @GetMapping(value = "/market/{asset}/candles", produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<Candle> candles(@PathVariable String asset, @RequestParam(defaultValue = "1m") String interval,
+                                @RequestParam(defaultValue = "100") int limit) {
+        return existingBook(asset).candleFeed().candles(candleInterval(interval), limit);
+    }
+
+    /**
+     * Current bar of the book, sent when it changes and at most every {@link CandleFeed#STREAM_PERIOD}
+     *
+     * @param asset    - asset name
+     * @param interval - bar interval, 1s, 1m or 1h
+     * @return streams bar updates
+     */
+    @GetMapping(value = "/market/{asset}/candles", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<Candle> candleUpdates(@PathVariable String asset, @RequestParam(defaultValue = "1m") String interval) {
+        CandleInterval candleInterval = candleInterval(interval);
+        return bookAggregateRepository.load(asset)
+                                      .flatMapMany(book -> book.candleFeed().updates(candleInterval));
+    }
+
+    /**
+     * Last trade price, 24h volume and VWAP of the book
+     *
+     * @param asset - asset name
+     * @return trade statistics
+     * @throws ResponseStatusException 404 if the book doesn't exist
+     */
+    @GetMapping("/market/{asset}/stats")
+    public TradeStats tradeStats(@PathVariable String asset) {
+        return existingBook(asset).candleFeed().stats();
     }
 
     /**
@@ -89,43 +270,217 @@ public class MarketController {
 
     /**
      * POC
-     * Cancels pending order from book.
+     * Requests cancellation of pending order. Order is routed to its book by {@link OrderRoutes}, the projection is
+     * read only for orders without route. Order of asset owned by another node is known to the owner only, its asset
+     * has to be sent.
+     * <p>
+     * Response 202 with OK acknowledges the request, not its outcome - the book has validated the cancellation against
+     * its resting order, journaled {@link CancellationRequestedEvent} and applied it to the engine. Nothing of the book
+     * runs between the validation and the engine call, but the canceled amount is published only by the engine's
+     * {@code OrderCanceledEvent}, read the order or follow its execution reports to see it.
      * @param orderId - order identifier
-     * @return response OK or error with error message
+     * @param asset   - asset of the order, optional for orders of this node
+     * @return response OK once the cancellation has been requested, or error with error message
      */
     @PostMapping("/orders/{orderId}/cancel")
-    public Mono<ResponseEntity<String>> cancelOrder(@PathVariable Long orderId) {
-        return bookQueryRepository.getProjection(orderId)
-                                  .flatMap(MarketController::validateOrderAmount)
-                                  .flatMap(this::sendCancelCommand)
-                                  .switchIfEmpty(Mono.error(new IllegalStateException(
-                                          "You can't cancel non-existing order.")))
-                                  .map(order -> ResponseEntity.accepted().body("OK"))
-                                  .onErrorResume(e -> Mono.just(ResponseEntity.badRequest().body(e.getMessage())));
+    public Mono<ResponseEntity<String>> cancelOrder(@PathVariable Long orderId,
+                                                    @RequestParam(required = false) String asset) {
+        return routeOf(orderId, asset).flatMap(route -> sendCancelCommand(route, orderId))
+                                      .switchIfEmpty(Mono.error(new IllegalStateException(
+                                              "You can't cancel non-existing order.")))
+                                      .map(event -> ResponseEntity.accepted().body("OK"))
+                                      .onErrorResume(e -> Mono.just(ResponseEntity.badRequest().body(e.getMessage())));
     }
 
-    private Mono<SourcingEvent> sendCancelCommand(OrderEntry order) {
-        return commandBus.sendCommand(new CancelOrderCommand(order.asset(),
-                                                             UUID.randomUUID(),
-                                                             order.orderId(),
-                                                             true,
-                                                             BigDecimal.ZERO));
+    /**
+     * Changes price and/or reduces amount of pending order in one command, routed like {@link #cancelOrder}. Order
+     * with reduced amount keeps its time priority, repriced order is matched at the new price and loses it.
+     * <p>
+     * Response 202 with OK acknowledges the request like {@link #cancelOrder}, trades and the resting amount are
+     * published by the engine's {@code OrderMatchedEvent}s and {@code OrderAmendedEvent}.
+     *
+     * @param orderId - order identifier
+     * @param asset   - asset of the order, optional for orders of this node
+     * @param request - new price and/or amount
+     * @return response OK once the amendment has been requested, or error with error message
+     */
+    @PostMapping(value = "/orders/{orderId}/amend", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<String>> amendOrder(@PathVariable Long orderId,
+                                                   @RequestParam(required = false) String asset,
+                                                   @RequestBody AmendOrderRequest request) {
+        return routeOf(orderId, asset).flatMap(route -> clusterRouter.sendCommand(
+                                              toAmendOrderCommand(route, orderId, request)))
+                                      .switchIfEmpty(Mono.error(new IllegalStateException(
+                                              "You can't amend non-existing order.")))
+                                      .map(event -> ResponseEntity.accepted().body("OK"))
+                                      .onErrorResume(e -> Mono.just(ResponseEntity.badRequest().body(e.getMessage())));
+    }
+
+    /**
+     * Cancels all resting orders matching the filter, each book cancels its orders in one pass and publishes them as
+     * one event, so the projection and depth feed apply them in bulk as well. Request without asset is sent to all
+     * books of this node, request for asset owned by another node is redirected to the owner.
+     *
+     * @param request - filter of orders to cancel
+     * @return response OK or error with error message
+     */
+    @PostMapping(value = "/orders/cancel", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<String>> cancelOrders(@RequestBody MassCancelRequest request) {
+        if (request.asset() != null && !clusterRouter.isLocal(request.asset())) {
+            String owner = clusterRouter.httpUrl(clusterRouter.owner(request.asset()));
+            return Mono.just(ResponseEntity.status(HttpStatus.TEMPORARY_REDIRECT)
+                                           .header(HttpHeaders.LOCATION, owner + "/orders/cancel")
+                                           .build());
+        }
+        List<String> assets = request.asset() != null ? List.of(request.asset())
+                                                      : List.copyOf(bookAggregateRepository.assets());
+        return commandBus.sendCommands(Flux.fromIterable(assets).map(asset -> toMassCancelCommand(asset, request)))
+                         .filter(CommandRejectedEvent.class::isInstance)
+                         .cast(CommandRejectedEvent.class)
+                         .next()
+                         .map(rejected -> ResponseEntity.badRequest().body(rejected.cause()))
+                         .defaultIfEmpty(ResponseEntity.accepted().body("OK"))
+                         .onErrorResume(e -> Mono.just(ResponseEntity.badRequest().body(e.getMessage())));
+    }
+
+    /**
+     * Journal counters, compare appended events and time spent in forces to see the cost of fsync policy
+     *
+     * @return journal statistics
+     */
+    @GetMapping("/journal/stats")
+    public Mono<JournalStats> journalStats() {
+        return Mono.fromSupplier(journal::stats);
+    }
+
+    /**
+     * Order projection counters, compare orders kept in memory with archived ones to see the effect of retention
+     *
+     * @return projection statistics
+     */
+    @GetMapping("/projection/stats")
+    public Mono<ProjectionStats> projectionStats() {
+        return Mono.fromSupplier(bookQueryRepository::stats);
+    }
+
+    /**
+     * Latency of each command stage per asset and merged over all assets, with command bus queue depth, emit failures
+     * and applied events per second since the previous read
+     *
+     * @return latency statistics
+     */
+    @GetMapping("/metrics/latency")
+    public Mono<LatencyStats> latencyStats() {
+        return Mono.fromSupplier(latencyMetrics::stats);
+    }
+
+    /**
+     * @param asset - asset sent by the client, trusted as is
+     * @return asset of order, empty if the order is unknown
+     */
+    private Mono<String> routeOf(long orderId, String asset) {
+        if (asset != null) {
+            return Mono.just(asset);
+        }
+        asset = bookAggregateRepository.orderRoutes().assetOf(orderId);
+        return asset != null ? Mono.just(asset) : bookQueryRepository.getProjection(orderId)
+                                                                     .map(OrderEntry::asset);
+    }
+
+    private static AmendOrderCommand toAmendOrderCommand(String asset, long orderId, AmendOrderRequest request) {
+        return new AmendOrderCommand(asset,
+                                     request.commandId() != null ? request.commandId() : UuidGenerator.next(),
+                                     orderId,
+                                     request.price() != null ? BigDecimal.valueOf(request.price()) : null,
+                                     request.amount() != null ? BigDecimal.valueOf(request.amount()) : null);
+    }
+
+    private Mono<SourcingEvent> sendCancelCommand(String asset, long orderId) {
+        return clusterRouter.sendCommand(new CancelOrderCommand(asset,
+                                                                UuidGenerator.next(),
+                                                                orderId,
+                                                                true,
+                                                                BigDecimal.ZERO));
+    }
+
+    private static MassCancelCommand toMassCancelCommand(String asset, MassCancelRequest request) {
+        return new MassCancelCommand(asset,
+                                     UuidGenerator.next(),
+                                     request.direction(),
+                                     request.minPrice() != null ? BigDecimal.valueOf(request.minPrice()) : null,
+                                     request.maxPrice() != null ? BigDecimal.valueOf(request.maxPrice()) : null);
+    }
+
+    /**
+     * @param received - {@link LatencyMetrics#sample()} when the request was received
+     */
+    private Mono<? extends OrderEntry> getOrderProjection(OrderAcceptedEvent ev, long received) {
+        Mono<OrderEntry> projection = bookQueryRepository.awaitProjection(ev.orderId())
+                                                         .onErrorMap(TimeoutException.class, e -> notProjected(ev));
+        if (received == 0) {
+            return projection;
+        }
+        long accepted = System.nanoTime();
+        return projection.doOnNext(order -> {
+            LatencyMetrics.AssetLatency latency = latencyMetrics.asset(ev.aggregateId());
+            latency.record(Stage.PROJECTION, accepted);
+            latency.record(Stage.PLACE_ORDER, received);
+        });
     }
 
-    private Mono<? extends OrderEntry> getOrderProjection(OrderAcceptedEvent ev) {
-        return bookQueryRepository.getProjection(ev.orderId())
-                                  .repeatWhenEmpty(10, o -> o.delayElements(
-                                          Duration.ofMillis(50)));
+    /**
+     * Reads must not create books, otherwise any asset name would leave a book and its journal file behind
+     */
+    private Book existingBook(String asset) {
+        Book book = bookAggregateRepository.find(asset);
+        if (book == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Book " + asset + " doesn't exist!");
+        }
+        return book;
+    }
+
+    private static ResponseStatusException notProjected(OrderAcceptedEvent event) {
+        return new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Order " + event.orderId()
+                + " has been accepted but is not in the projection yet!");
     }
 
     private MakeOrderCommand toMakeOrderCommand(PlaceOrderRequest request) {
         return new MakeOrderCommand(request.asset(),
-                                    UUID.randomUUID(),
+                                    request.commandId() != null ? request.commandId() : UuidGenerator.next(),
                                     OrderType.valueOf(request.direction().name()),
                                     BigDecimal.valueOf(request.amount()),
                                     BigDecimal.valueOf(request.price()));
     }
 
+    private static PlaceOrderResult toPlaceOrderResult(SourcingEvent event, PlaceOrderRequest request) {
+        PlaceOrderResult.PlaceOrderResultBuilder result = PlaceOrderResult.builder()
+                                                                          .asset(request.asset())
+                                                                          .price(request.price())
+                                                                          .amount(request.amount())
+                                                                          .direction(request.direction());
+        return switch (event) {
+            case OrderAcceptedEvent evt -> result.id(evt.orderId())
+                                                 .timestamp(evt.entryTimestamp().toString())
+                                                 .amount(evt.amount().doubleValue())
+                                                 .build();
+            case CommandRejectedEvent evt -> result.error(evt.cause()).build();
+            default -> throw new IllegalStateException(event.getClass().getSimpleName() + ": unexpected result!");
+        };
+    }
+
+    private static OrderStatusResponse toAcceptedStatus(OrderAcceptedEvent event) {
+        return OrderStatusResponse.builder()
+                                  .id(event.orderId())
+                                  .timestamp(event.entryTimestamp().toString())
+                                  .asset(event.aggregateId())
+                                  .amount(event.amount().doubleValue())
+                                  .price(event.price().doubleValue())
+                                  .direction(event.type())
+                                  .trades(List.of())
+                                  .pendingAmount(event.amount().doubleValue())
+                                  .build();
+    }
+
     private OrderStatusResponse toOrderStatus(OrderEntry order) {
         return OrderStatusResponse.builder()
                                   .id(order.orderId())
@@ -148,12 +503,11 @@ public class MarketController {
                                   .build();
     }
 
-    private static Mono<? extends OrderEntry> validateOrderAmount(OrderEntry order) {
-        if (order.price().compareTo(BigDecimal.ZERO) > 0) {
-            return Mono.just(order);
-        } else {
-            return Mono.error(new IllegalStateException("Order already executed."));
+    private static CandleInterval candleInterval(String interval) {
+        try {
+            return CandleInterval.of(interval);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
         }
     }
-
 }
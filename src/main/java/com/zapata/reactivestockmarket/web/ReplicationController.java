@@ -0,0 +1,54 @@
+package com.zapata.reactivestockmarket.web;
+
+import com.zapata.reactivestockmarket.MarketProperties;
+import com.zapata.reactivestockmarket.replication.ReplicaClient;
+import com.zapata.reactivestockmarket.replication.ReplicationRole;
+import com.zapata.reactivestockmarket.replication.ReplicationServer;
+import com.zapata.reactivestockmarket.replication.ReplicationStats;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+/**
+ * Implements REST Endpoints to watch replication and promote replica to primary.
+ */
+@RestController
+public class ReplicationController {
+
+    private final ReplicationServer replicationServer;
+    private final ReplicaClient replicaClient;
+    private final boolean replica;
+
+    public ReplicationController(ReplicationServer replicationServer, ReplicaClient replicaClient,
+                                 MarketProperties marketProperties) {
+        this.replicationServer = replicationServer;
+        this.replicaClient = replicaClient;
+        this.replica = marketProperties.replication().role() == ReplicationRole.REPLICA;
+    }
+
+    /**
+     * Replication counters, replica shows how many journal bytes it is behind the primary and how long the last
+     * frame took from the primary to being applied
+     *
+     * @return replication statistics
+     */
+    @GetMapping("/replication/stats")
+    public Mono<ReplicationStats> replicationStats() {
+        return Mono.fromSupplier(() -> replica ? replicaClient.stats() : replicationServer.stats());
+    }
+
+    /**
+     * Promotes replica to primary, it stops following the primary, starts the next replication epoch and accepts
+     * commands. The old primary is fenced once it gets the new epoch, see {@link ReplicaClient}.
+     *
+     * @return response with the time the promotion took or error with error message
+     */
+    @PostMapping("/replication/promote")
+    public Mono<ResponseEntity<String>> promote() {
+        return Mono.fromCallable(replicaClient::promote)
+                   .map(took -> ResponseEntity.ok("Promoted in " + took.toNanos() / 1_000 + " us"))
+                   .onErrorResume(e -> Mono.just(ResponseEntity.badRequest().body(e.getMessage())));
+    }
+}
@@ -0,0 +1,78 @@
+package com.zapata.reactivestockmarket.cluster;
+
+import org.junit.jupiter.api.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AssetAssignmentTest {
+
+    private static final int VIRTUAL_NODES = 128;
+    private static final List<String> ASSETS = IntStream.range(0, 3_000).mapToObj(i -> "ASSET" + i).toList();
+
+    @Test
+    public void nodesAgreeOnOwners() {
+        AssetAssignment first = new AssetAssignment(List.of("a", "b", "c"), VIRTUAL_NODES);
+        AssetAssignment second = new AssetAssignment(List.of("c", "a", "b"), VIRTUAL_NODES);
+
+        for (String asset : ASSETS) {
+            assertEquals(first.owner(asset), second.owner(asset));
+        }
+    }
+
+    @Test
+    public void spreadsAssetsOverNodes() {
+        AssetAssignment assignment = new AssetAssignment(List.of("a", "b", "c"), VIRTUAL_NODES);
+
+        Map<String, Integer> owned = new HashMap<>();
+        ASSETS.forEach(asset -> owned.merge(assignment.owner(asset), 1, Integer::sum));
+
+        assertEquals(3, owned.size());
+        //a third each, give or take the variance of 128 points per node
+        owned.values().forEach(count -> assertTrue(count > ASSETS.size() / 4 && count < ASSETS.size() / 2,
+                                                   "unbalanced " + owned));
+    }
+
+    @Test
+    public void addedNodeTakesAssetsOnlyFromOthers() {
+        AssetAssignment assignment = new AssetAssignment(List.of("a", "b", "c"), VIRTUAL_NODES);
+        Map<String, String> before = new HashMap<>();
+        ASSETS.forEach(asset -> before.put(asset, assignment.owner(asset)));
+
+        assignment.nodes(List.of("a", "b", "c", "d"));
+
+        int moved = 0;
+        for (String asset : ASSETS) {
+            String owner = assignment.owner(asset);
+            if (!owner.equals(before.get(asset))) {
+                assertEquals("d", owner);
+                moved++;
+            }
+        }
+        assertTrue(moved > ASSETS.size() / 8 && moved < ASSETS.size() / 3, "moved " + moved);
+    }
+
+    @Test
+    public void explicitAssignmentTakesPrecedence() {
+        AssetAssignment assignment = new AssetAssignment(List.of("a", "b"), VIRTUAL_NODES);
+        String hashed = assignment.owner("BTC");
+        String other = hashed.equals("a") ? "b" : "a";
+
+        assignment.assign("BTC", other);
+        assertEquals(other, assignment.owner("BTC"));
+        assertEquals(Map.of("BTC", other), assignment.assignments());
+
+        assignment.unassign("BTC");
+        assertEquals(hashed, assignment.owner("BTC"));
+
+        assertThrows(IllegalArgumentException.class, () -> assignment.assign("BTC", "z"));
+        assignment.assign("BTC", "b");
+        assignment.nodes(List.of("a"));
+        assertTrue(assignment.assignments().isEmpty());
+        assertEquals("a", assignment.owner("BTC"));
+    }
+}
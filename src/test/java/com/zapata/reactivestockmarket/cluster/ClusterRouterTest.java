@@ -0,0 +1,128 @@
+package com.zapata.reactivestockmarket.cluster;
+
+import com.zapata.reactivestockmarket.MarketProperties;
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+import com.zapata.reactivestockmarket.domain.BookAggregateRepository;
+import com.zapata.reactivestockmarket.domain.bus.CommandBus;
+import com.zapata.reactivestockmarket.domain.command.CancelOrderCommand;
+import com.zapata.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.zapata.reactivestockmarket.domain.events.CancellationRequestedEvent;
+import com.zapata.reactivestockmarket.domain.events.CommandRejectedEvent;
+import com.zapata.reactivestockmarket.domain.events.OrderAcceptedEvent;
+import com.zapata.reactivestockmarket.domain.journal.Journal;
+import com.zapata.reactivestockmarket.domain.query.BookQueryRepository;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import com.zapata.reactivestockmarket.gateway.OrderEntryServer;
+import com.zapata.reactivestockmarket.util.UuidGenerator;
+import org.junit.jupiter.api.*;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterRouterTest {
+
+    private BookQueryRepository ownerQueryRepository;
+    private BookAggregateRepository ownerAggregateRepository;
+    private CommandBus ownerCommandBus;
+    private OrderEntryServer ownerServer;
+    private BookQueryRepository queryRepository;
+    private BookAggregateRepository aggregateRepository;
+    private CommandBus commandBus;
+    private ClusterRouter router;
+
+    @BeforeEach
+    public void setUp() {
+        //node b, only its binary listener is used
+        MarketProperties ownerProperties = new MarketProperties(null, null, null, null, null, null,
+                                                                new MarketProperties.GatewayProperties(true, null, 0,
+                                                                                                       null, null,
+                                                                                                       null, null),
+                                                                null, null);
+        ownerQueryRepository = new BookQueryRepository(ownerProperties);
+        ownerAggregateRepository = new BookAggregateRepository(ownerQueryRepository, ownerProperties,
+                                                               new Journal(ownerProperties));
+        ownerCommandBus = new CommandBus(ownerAggregateRepository, ownerProperties);
+        ownerServer = new OrderEntryServer(ownerCommandBus, ownerAggregateRepository, ownerProperties);
+
+        //node a, routing BTC to b and ETH to itself
+        MarketProperties.ClusterProperties cluster = new MarketProperties.ClusterProperties(
+                true, "a",
+                Map.of("a", new MarketProperties.NodeProperties(null, null, null),
+                       "b", new MarketProperties.NodeProperties(null, ownerServer.port(), 8180)),
+                null, Map.of("BTC", "b", "ETH", "a"));
+        MarketProperties properties = new MarketProperties(null, null, null, null, null, null, null, cluster, null);
+        queryRepository = new BookQueryRepository(properties);
+        aggregateRepository = new BookAggregateRepository(queryRepository, properties, new Journal(properties));
+        commandBus = new CommandBus(aggregateRepository, properties);
+        router = new ClusterRouter(commandBus, properties);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        router.close();
+        ownerServer.stop();
+        commandBus.destroy();
+        ownerCommandBus.destroy();
+        queryRepository.close();
+        ownerQueryRepository.close();
+    }
+
+    @Test
+    public void resolvesOwners() {
+        assertTrue(router.enabled());
+        assertEquals("b", router.owner("BTC"));
+        assertFalse(router.isLocal("BTC"));
+        assertTrue(router.isLocal("ETH"));
+        assertEquals("http://127.0.0.1:8180", router.httpUrl("b"));
+        assertThrows(IllegalArgumentException.class, () -> router.httpUrl("z"));
+    }
+
+    @Test
+    public void forwardsCommandsOfForeignAssets() {
+        SourcingEvent placed = router.sendCommand(makeOrder("BTC", OrderType.SELL, "100", "2"))
+                                     .block(Duration.ofSeconds(10));
+
+        OrderAcceptedEvent accepted = assertInstanceOf(OrderAcceptedEvent.class, placed);
+        assertEquals("BTC", accepted.aggregateId());
+        assertNotNull(ownerAggregateRepository.orderRoutes().assetOf(accepted.orderId()));
+        assertNull(aggregateRepository.orderRoutes().assetOf(accepted.orderId()));
+
+        SourcingEvent canceled = router.sendCommand(new CancelOrderCommand("BTC", UuidGenerator.next(),
+                                                                           accepted.orderId(), true, BigDecimal.ZERO))
+                                       .block(Duration.ofSeconds(10));
+        assertEquals(accepted.orderId(), assertInstanceOf(CancellationRequestedEvent.class, canceled).orderId());
+
+        IllegalStateException rejected = assertThrows(IllegalStateException.class, () -> router.sendCommand(
+                makeOrder("BTC", OrderType.BUY, "-1", "1")).block(Duration.ofSeconds(10)));
+        assertEquals("Amount/Price needs to be larger then zero!", rejected.getMessage());
+    }
+
+    @Test
+    public void keepsOrderOfMixedBatch() {
+        List<SourcingEvent> events = router.sendCommands(Flux.just(makeOrder("BTC", OrderType.SELL, "100", "1"),
+                                                                   makeOrder("ETH", OrderType.SELL, "10", "1"),
+                                                                   makeOrder("BTC", OrderType.BUY, "-1", "1"),
+                                                                   makeOrder("ETH", OrderType.BUY, "9", "1")))
+                                           .collectList()
+                                           .block(Duration.ofSeconds(10));
+
+        assertNotNull(events);
+        assertEquals(4, events.size());
+        assertEquals("BTC", assertInstanceOf(OrderAcceptedEvent.class, events.get(0)).aggregateId());
+        OrderAcceptedEvent eth = assertInstanceOf(OrderAcceptedEvent.class, events.get(1));
+        assertEquals("ETH", eth.aggregateId());
+        assertEquals("ETH", aggregateRepository.orderRoutes().assetOf(eth.orderId()));
+        assertEquals("Amount/Price needs to be larger then zero!",
+                     assertInstanceOf(CommandRejectedEvent.class, events.get(2)).cause());
+        assertEquals("ETH", assertInstanceOf(OrderAcceptedEvent.class, events.get(3)).aggregateId());
+    }
+
+    private static MakeOrderCommand makeOrder(String asset, OrderType type, String price, String amount) {
+        return new MakeOrderCommand(asset, UuidGenerator.next(), type, new BigDecimal(amount), new BigDecimal(price));
+    }
+}
@@ -1,5 +1,6 @@
 package com.zapata.reactivestockmarket.cqrs;
 
+import com.zapata.reactivestockmarket.MarketProperties;
 import com.zapata.reactivestockmarket.domain.Book;
 import com.zapata.reactivestockmarket.domain.BookAggregateRepository;
 import com.zapata.reactivestockmarket.domain.bus.CommandBus;
@@ -7,16 +8,24 @@ import com.zapata.reactivestockmarket.domain.command.CancelOrderCommand;
 import com.zapata.reactivestockmarket.domain.command.MakeOrderCommand;
 import com.zapata.reactivestockmarket.domain.engine.MatchingEngine;
 import com.zapata.reactivestockmarket.domain.events.CancellationRequestedEvent;
+import com.zapata.reactivestockmarket.domain.events.CommandRejectedEvent;
 import com.zapata.reactivestockmarket.domain.events.OrderAcceptedEvent;
+import com.zapata.reactivestockmarket.domain.query.BookQueryRepository;
 import com.zapata.reactivestockmarket.domain.query.OrderType;
+import com.zapata.reactivestockmarket.metrics.LatencyMetrics;
+import com.zapata.reactivestockmarket.metrics.LatencyStats;
+import com.zapata.reactivestockmarket.metrics.Stage;
 import org.junit.jupiter.api.*;
 import org.mockito.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -26,14 +35,34 @@ class CommandBusTest {
 
     private CommandBus commandBus;
     private MatchingEngine matchingEngineMock;
+    private LatencyMetrics latencyMetrics;
 
     @BeforeEach
     public void setUp() {
         BookAggregateRepository aggregateRepositoryMock = mock(BookAggregateRepository.class);
         matchingEngineMock = mock(MatchingEngine.class);
+        when(matchingEngineMock.events()).thenReturn(new EventFanout<>(EventFanout.DEFAULT_CAPACITY));
+        //every order is resting with amount 100, except order 404
+        when(matchingEngineMock.remainingAmount(anyLong())).thenReturn(BigDecimal.valueOf(100));
+        when(matchingEngineMock.remainingAmount(404)).thenReturn(null);
         Book book = new Book("instrumentId", matchingEngineMock);
         when(aggregateRepositoryMock.load("instrumentId")).thenReturn(Mono.just(book));
-        commandBus = new CommandBus(aggregateRepositoryMock);
+        when(aggregateRepositoryMock.getOrCreate("instrumentId")).thenReturn(book);
+        //time every command
+        latencyMetrics = new LatencyMetrics(new MarketProperties(null, null, null, null, null,
+                                                                 new MarketProperties.MetricsProperties(true, 1),
+                                                                 null, null, null));
+        when(aggregateRepositoryMock.latencyMetrics()).thenReturn(latencyMetrics);
+        commandBus = createCommandBus(aggregateRepositoryMock);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        commandBus.destroy();
+    }
+
+    protected CommandBus createCommandBus(BookAggregateRepository aggregateRepository) {
+        return new CommandBus(aggregateRepository);
     }
 
 
@@ -58,6 +87,26 @@ class CommandBusTest {
                                               eq(BigDecimal.ONE));
     }
 
+    @Test
+    public void testStagesAreRecorded() {
+        Flux.range(0, 10)
+            .concatMap(i -> commandBus.sendCommand(new MakeOrderCommand("instrumentId",
+                                                                        UUID.randomUUID(),
+                                                                        OrderType.BUY,
+                                                                        BigDecimal.ONE,
+                                                                        BigDecimal.valueOf(1))))
+            .blockLast();
+
+        LatencyStats stats = latencyMetrics.stats();
+        assertEquals(10, stats.appliedEvents());
+        assertEquals(0, stats.queueDepth());
+        for (Stage stage : List.of(Stage.QUEUE, Stage.HANDLE, Stage.APPLY, Stage.DURABLE)) {
+            assertEquals(10, stats.stages().get(stage).count(), stage.name());
+            assertEquals(10, stats.assets().get("instrumentId").stages().get(stage).count(), stage.name());
+        }
+        assertEquals(0, stats.stages().get(Stage.PROJECTION).count());
+    }
+
     @Test
     public void testMakeOrderCommandMany() {
         Mono<Void> sendCommands = commandBus.sendCommand(new MakeOrderCommand("instrumentId",
@@ -156,4 +205,136 @@ class CommandBusTest {
                     .verify();
         verify(matchingEngineMock, times(0)).cancel(anyLong(), anyString(), any(BigDecimal.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCancelOrderThatIsNotOpen() {
+        StepVerifier.create(commandBus.sendCommand(new CancelOrderCommand("instrumentId",
+                                                                          UUID.randomUUID(),
+                                                                          404,
+                                                                          true,
+                                                                          BigDecimal.ZERO)))
+                    .expectErrorMatches(err -> err instanceof IllegalStateException
+                            && err.getMessage().equals("Cancellation: order is not open!"))
+                    .verify();
+        StepVerifier.create(commandBus.sendCommand(new CancelOrderCommand("instrumentId",
+                                                                          UUID.randomUUID(),
+                                                                          1,
+                                                                          false,
+                                                                          BigDecimal.valueOf(100))))
+                    .expectErrorMatches(err -> err instanceof IllegalStateException
+                            && err.getMessage().startsWith("Cancellation: new amount must be lower"))
+                    .verify();
+        verify(matchingEngineMock, times(0)).cancelAll(anyLong(), anyString());
+        verify(matchingEngineMock, times(0)).cancel(anyLong(), anyString(), any(BigDecimal.class));
+    }
+
+    @Test
+    public void testSendCommandsKeepsOrderAndRejectsSingleCommand() {
+        StepVerifier.create(commandBus.sendCommands(Flux.just(new MakeOrderCommand("instrumentId",
+                                                                                   UUID.randomUUID(),
+                                                                                   OrderType.BUY,
+                                                                                   BigDecimal.ONE,
+                                                                                   BigDecimal.ONE),
+                                                              new MakeOrderCommand("instrumentId",
+                                                                                   UUID.randomUUID(),
+                                                                                   OrderType.SELL,
+                                                                                   BigDecimal.valueOf(-1),
+                                                                                   BigDecimal.ONE),
+                                                              new CancelOrderCommand("instrumentId",
+                                                                                     UUID.randomUUID(),
+                                                                                     1,
+                                                                                     true,
+                                                                                     BigDecimal.ZERO))))
+                    .expectNextMatches(result -> result instanceof OrderAcceptedEvent)
+                    .expectNextMatches(result -> result instanceof CommandRejectedEvent
+                            && ((CommandRejectedEvent) result).cause()
+                                                              .startsWith("Amount/Price needs to be larger then zero!"))
+                    .expectNextMatches(result -> result instanceof CancellationRequestedEvent)
+                    .verifyComplete();
+        verify(matchingEngineMock, times(1)).placeOrder(anyLong(),
+                                                        anyString(),
+                                                        any(Instant.class),
+                                                        any(), any(BigDecimal.class), any(BigDecimal.class));
+        verify(matchingEngineMock).cancelAll(1, "instrumentId");
+    }
+
+    @Test
+    public void testRetriedCommandGetsOriginalEvent() {
+        MakeOrderCommand command = new MakeOrderCommand("instrumentId",
+                                                        UUID.randomUUID(),
+                                                        OrderType.BUY,
+                                                        BigDecimal.ONE,
+                                                        BigDecimal.ONE);
+        SourcingEvent original = commandBus.sendCommand(command).block();
+
+        StepVerifier.create(commandBus.sendCommand(command))
+                    .expectNextMatches(result -> result == original)
+                    .verifyComplete();
+        StepVerifier.create(commandBus.sendCommands(Flux.just(command, command)))
+                    .expectNextMatches(result -> result == original)
+                    .expectNextMatches(result -> result == original)
+                    .verifyComplete();
+        verify(matchingEngineMock, times(1)).placeOrder(anyLong(),
+                                                        anyString(),
+                                                        any(Instant.class),
+                                                        any(), any(BigDecimal.class), any(BigDecimal.class));
+    }
+
+    @Test
+    public void testSendCommandsFailsWhenEventCanNotBeApplied() {
+        doThrow(new IllegalStateException("engine failure")).doNothing()
+                                                            .when(matchingEngineMock)
+                                                            .placeOrder(anyLong(),
+                                                                        anyString(),
+                                                                        any(Instant.class),
+                                                                        any(), any(BigDecimal.class),
+                                                                        any(BigDecimal.class));
+        MakeOrderCommand command = new MakeOrderCommand("instrumentId",
+                                                        UUID.randomUUID(),
+                                                        OrderType.BUY,
+                                                        BigDecimal.ONE,
+                                                        BigDecimal.ONE);
+
+        StepVerifier.create(commandBus.sendCommands(Flux.just(command)))
+                    .expectErrorMatches(e -> e instanceof IllegalStateException
+                            && e.getMessage().equals("engine failure"))
+                    .verify();
+        //event has been handled, retry gets it instead of a rejection
+        StepVerifier.create(commandBus.sendCommands(Flux.just(command)))
+                    .expectNextMatches(result -> result instanceof OrderAcceptedEvent)
+                    .verifyComplete();
+    }
+
+    @Test
+    public void testSendCommandsOfManyAssets() {
+        CommandBus bus = createCommandBus(new BookAggregateRepository(new BookQueryRepository()));
+        try {
+            List<String> assets = List.of("BTC", "ETH", "SOL", "ADA", "DOT");
+            //more than one batch
+            int count = CommandBus.MAX_BATCH_SIZE * 2 + 100;
+
+            List<SourcingEvent> results = bus.sendCommands(Flux.range(0, count)
+                                                               .map(i -> new MakeOrderCommand(
+                                                                       assets.get(i % assets.size()),
+                                                                       UUID.randomUUID(),
+                                                                       i % 2 == 0 ? OrderType.BUY : OrderType.SELL,
+                                                                       BigDecimal.ONE,
+                                                                       BigDecimal.valueOf(100 + i % 7))))
+                                             .collectList()
+                                             .block();
+
+            assertNotNull(results);
+            assertEquals(count, results.size());
+            Map<String, Long> lastOrderIds = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                OrderAcceptedEvent accepted = (OrderAcceptedEvent) results.get(i);
+                assertEquals(assets.get(i % assets.size()), accepted.aggregateId());
+                //books handle their commands in input order
+                Long previous = lastOrderIds.put(accepted.aggregateId(), accepted.orderId());
+                assertTrue(previous == null || previous < accepted.orderId());
+            }
+        } finally {
+            bus.destroy();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.zapata.reactivestockmarket.cqrs;
+
+import org.junit.jupiter.api.*;
+import reactor.core.Exceptions;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventFanoutTest {
+
+    private static final int CAPACITY = 16;
+
+    private final EventFanout<Integer> fanout = new EventFanout<>(CAPACITY);
+
+    @Test
+    public void blockingSubscriberGatesProducer() throws InterruptedException {
+        fanout.publish(-1);
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        StepVerifier.Step<Integer> step = StepVerifier.create(fanout.events(OverflowPolicy.BLOCK)
+                                                                    .doOnNext(received::add), 1);
+        Thread producer = new Thread(() -> IntStream.range(0, 100).forEach(fanout::publish));
+
+        step.then(producer::start)
+            .expectNext(0)
+            .then(() -> {
+                //producer can't overwrite event 1 that the subscriber hasn't taken yet
+                long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+                while (fanout.published() < 1 + 1 + CAPACITY) {
+                    assertTrue(System.nanoTime() < deadline, "producer hasn't filled the ring");
+                    Thread.onSpinWait();
+                }
+                LockSupport.parkNanos(Duration.ofMillis(50).toNanos());
+                assertEquals(1 + 1 + CAPACITY, fanout.published());
+            })
+            .thenRequest(Long.MAX_VALUE)
+            .expectNextCount(99)
+            .thenCancel()
+            .verify(Duration.ofSeconds(5));
+        producer.join();
+
+        //the event published before the subscription is not replayed
+        assertEquals(IntStream.range(0, 100).boxed().toList(), received);
+        FanoutStats stats = fanout.stats();
+        assertEquals(101, stats.published());
+        assertEquals(0, stats.subscribers());
+        assertTrue(stats.blockedPublishes() > 0);
+        assertTrue(stats.blockedNanos() > 0);
+    }
+
+    @Test
+    public void droppingSubscriberIsTerminatedOnceOverwritten() {
+        StepVerifier.create(fanout.events(OverflowPolicy.DROP), 0)
+                    .then(() -> IntStream.range(0, CAPACITY + 1).forEach(fanout::publish))
+                    .thenRequest(1)
+                    .expectErrorMatches(Exceptions::isOverflow)
+                    .verify(Duration.ofSeconds(5));
+
+        assertEquals(1, fanout.stats().droppedSubscribers());
+        assertEquals(0, fanout.stats().subscribers());
+        assertEquals(0, fanout.stats().blockedPublishes());
+    }
+
+    @Test
+    public void resyncingSubscriberGetsSnapshotInsteadOfMissedEvents() {
+        StepVerifier.create(fanout.events(OverflowPolicy.RESYNC,
+                                          () -> new EventFanout.Snapshot<>(fanout.published(), List.of(-1))), 0)
+                    .then(() -> fanout.publish(0))
+                    .thenRequest(1)
+                    .expectNext(0)
+                    .then(() -> IntStream.range(1, 3 * CAPACITY).forEach(fanout::publish))
+                    .thenRequest(3)
+                    .expectNext(-1)
+                    .then(() -> IntStream.range(3 * CAPACITY, 3 * CAPACITY + 2).forEach(fanout::publish))
+                    .expectNext(3 * CAPACITY, 3 * CAPACITY + 1)
+                    .thenCancel()
+                    .verify(Duration.ofSeconds(5));
+
+        assertEquals(1, fanout.stats().resyncs());
+    }
+}
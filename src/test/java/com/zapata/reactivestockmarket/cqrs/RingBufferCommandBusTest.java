@@ -0,0 +1,68 @@
+package com.zapata.reactivestockmarket.cqrs;
+
+import com.zapata.reactivestockmarket.MarketProperties;
+import com.zapata.reactivestockmarket.domain.BookAggregateRepository;
+import com.zapata.reactivestockmarket.domain.bus.BusType;
+import com.zapata.reactivestockmarket.domain.bus.CommandBus;
+import com.zapata.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.zapata.reactivestockmarket.domain.events.OrderAcceptedEvent;
+import com.zapata.reactivestockmarket.domain.query.BookQueryRepository;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import org.junit.jupiter.api.*;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs all {@link CommandBusTest} scenarios against {@link BusType#RING_BUFFER} backend
+ */
+class RingBufferCommandBusTest extends CommandBusTest {
+
+    private static final MarketProperties RING_BUFFER_PROPERTIES = new MarketProperties(
+            null, null, new MarketProperties.BusProperties(BusType.RING_BUFFER, 2, 16, null, null), null, null, null,
+            null, null, null);
+
+    @Override
+    protected CommandBus createCommandBus(BookAggregateRepository aggregateRepository) {
+        return new CommandBus(aggregateRepository, RING_BUFFER_PROPERTIES);
+    }
+
+    @Test
+    public void concurrentProducersKeepPerAggregateOrder() {
+        CommandBus bus = createCommandBus(new BookAggregateRepository(new BookQueryRepository()));
+        try {
+            List<String> assets = List.of("BTC", "ETH", "SOL", "ADA", "DOT");
+
+            List<OrderAcceptedEvent> accepted = Flux.range(0, 10_000)
+                                                    .parallel(8)
+                                                    .runOn(Schedulers.parallel())
+                                                    .flatMap(i -> bus.sendCommand(new MakeOrderCommand(
+                                                            assets.get(i % assets.size()),
+                                                            UUID.randomUUID(),
+                                                            i % 2 == 0 ? OrderType.BUY : OrderType.SELL,
+                                                            BigDecimal.ONE,
+                                                            BigDecimal.valueOf(100 + i % 7))))
+                                                    .sequential()
+                                                    .cast(OrderAcceptedEvent.class)
+                                                    .collectList()
+                                                    .block();
+
+            assertNotNull(accepted);
+            assertEquals(10_000, accepted.size());
+            Map<String, Long> perAsset = accepted.stream()
+                                                 .collect(Collectors.groupingBy(OrderAcceptedEvent::aggregateId,
+                                                                                Collectors.counting()));
+            assets.forEach(asset -> assertEquals(2_000L, perAsset.get(asset)));
+            assertEquals(10_000, accepted.stream().mapToLong(OrderAcceptedEvent::orderId).distinct().count());
+        } finally {
+            bus.destroy();
+        }
+    }
+}
@@ -1,9 +1,36 @@
 package com.zapata.reactivestockmarket.domain;
 
+import com.zapata.reactivestockmarket.MarketProperties;
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+import com.zapata.reactivestockmarket.domain.bus.CommandBus;
+import com.zapata.reactivestockmarket.domain.command.AmendOrderCommand;
+import com.zapata.reactivestockmarket.domain.command.CancelOrderCommand;
+import com.zapata.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.zapata.reactivestockmarket.domain.command.MassCancelCommand;
+import com.zapata.reactivestockmarket.domain.dtos.ExecutionReport;
+import com.zapata.reactivestockmarket.domain.events.CancellationRequestedEvent;
+import com.zapata.reactivestockmarket.domain.events.OrderAcceptedEvent;
+import com.zapata.reactivestockmarket.domain.journal.Journal;
 import com.zapata.reactivestockmarket.domain.query.BookQueryRepository;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 import reactor.test.StepVerifier;
 
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 class BookAggregateRepositoryTest {
@@ -17,4 +44,242 @@ class BookAggregateRepositoryTest {
                 .verifyComplete();
     }
 
-}
\ No newline at end of file
+    @Test
+    public void findDoesNotCreateBook() {
+        assertNull(testSubject.find("BTC"));
+        assertFalse(testSubject.assets().contains("BTC"));
+
+        Book book = testSubject.getOrCreate("BTC");
+        assertSame(book, testSubject.find("BTC"));
+    }
+
+    @Test
+    public void bookBeingCreatedDoesNotHoldUpOtherBooks() throws Exception {
+        BookQueryRepository projection = mock(BookQueryRepository.class);
+        CountDownLatch creating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            creating.countDown();
+            release.await();
+            return null;
+        }).when(projection).project(eq("BTC"), any());
+        BookAggregateRepository repository = new BookAggregateRepository(projection);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Book> first = executor.submit(() -> repository.getOrCreate("BTC"));
+            assertTrue(creating.await(10, TimeUnit.SECONDS));
+            Future<Book> second = executor.submit(() -> repository.getOrCreate("BTC"));
+
+            assertNotNull(repository.getOrCreate("ETH"));
+            assertFalse(repository.assets().contains("BTC"));
+            assertFalse(second.isDone());
+
+            release.countDown();
+            assertSame(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+            verify(projection, times(1)).project(eq("BTC"), any());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void routesAcceptedOrdersToTheirBook() {
+        OrderAcceptedEvent btc = placeOrder(testSubject.getOrCreate("BTC"), OrderType.SELL, "1");
+        OrderAcceptedEvent eth = placeOrder(testSubject.getOrCreate("ETH"), OrderType.SELL, "1");
+
+        assertEquals("BTC", testSubject.orderRoutes().assetOf(btc.orderId()));
+        assertEquals("ETH", testSubject.orderRoutes().assetOf(eth.orderId()));
+        assertNull(testSubject.orderRoutes().assetOf(eth.orderId() + 1));
+    }
+
+    @Test
+    public void reportsExecutionsOfSessionOrders() {
+        Book book = testSubject.getOrCreate("BTC");
+        List<ExecutionReport> reports = new ArrayList<>();
+        UUID commandId = UUID.randomUUID();
+        testSubject.executionReports().expect(commandId, reports::add);
+        OrderAcceptedEvent sell = (OrderAcceptedEvent) book.handle(new MakeOrderCommand("BTC", commandId,
+                                                                                       OrderType.SELL,
+                                                                                       new BigDecimal("2"),
+                                                                                       BigDecimal.TEN));
+        book.apply(sell);
+        OrderAcceptedEvent buy = placeOrder(book, OrderType.BUY, "1");
+
+        assertEquals(0, testSubject.executionReports().expectedCount());
+        assertEquals(1, reports.size());
+        ExecutionReport trade = reports.get(0);
+        assertEquals(commandId, trade.commandId());
+        assertEquals(sell.orderId(), trade.orderId());
+        assertEquals(ExecutionReport.Type.TRADE, trade.type());
+        assertEquals(buy.orderId(), trade.counterOrderId());
+        assertEquals(0, BigDecimal.ONE.compareTo(trade.amount()));
+        assertEquals(0, BigDecimal.ONE.compareTo(trade.remainingAmount()));
+
+        book.apply(book.handle(new CancelOrderCommand("BTC", UUID.randomUUID(), sell.orderId(), true,
+                                                      BigDecimal.ZERO)));
+        assertEquals(2, reports.size());
+        assertEquals(ExecutionReport.Type.CANCELED, reports.get(1).type());
+        assertEquals(0, reports.get(1).remainingAmount().signum());
+        //unregistered orders are not reported
+        placeOrder(book, OrderType.SELL, "1");
+        placeOrder(book, OrderType.BUY, "1");
+        assertEquals(2, reports.size());
+    }
+
+    @Test
+    public void cancelOfOrderThatIsNotOpenIsRejected() {
+        Book book = testSubject.getOrCreate("BTC");
+        OrderAcceptedEvent sell = placeOrder(book, OrderType.SELL, "1");
+        placeOrder(book, OrderType.BUY, "1");
+
+        IllegalStateException rejected = assertThrows(IllegalStateException.class, () -> book.handle(
+                new CancelOrderCommand("BTC", UUID.randomUUID(), sell.orderId(), true, BigDecimal.ZERO)));
+        assertEquals("Cancellation: order is not open!", rejected.getMessage());
+    }
+
+    @Test
+    public void acknowledgedCancellationHasBeenAppliedToTheBook() {
+        CommandBus commandBus = new CommandBus(testSubject, MarketProperties.DEFAULT);
+        try {
+            Book book = testSubject.getOrCreate("BTC");
+            OrderAcceptedEvent sell = placeOrder(book, OrderType.SELL, "3");
+
+            //acknowledgement is the request, the engine has applied it by the time it is sent
+            SourcingEvent acknowledged = commandBus.sendCommand(new CancelOrderCommand(
+                    "BTC", UUID.randomUUID(), sell.orderId(), false, BigDecimal.ONE)).block(Duration.ofSeconds(10));
+            assertEquals(sell.orderId(), assertInstanceOf(CancellationRequestedEvent.class, acknowledged).orderId());
+            assertEquals(0, BigDecimal.ONE.compareTo(book.topOfBook().askAmount()));
+        } finally {
+            commandBus.destroy();
+        }
+    }
+
+    @Test
+    public void amendIsValidatedAgainstRestingOrder() {
+        Book book = testSubject.getOrCreate("BTC");
+        OrderAcceptedEvent buy = placeOrder(book, OrderType.BUY, "2");
+
+        assertEquals("Amend: new amount can't be larger than remaining amount!",
+                     assertThrows(IllegalStateException.class, () -> book.handle(
+                             new AmendOrderCommand("BTC", UUID.randomUUID(), buy.orderId(), null,
+                                                   new BigDecimal("3")))).getMessage());
+        assertEquals("Amend: order already has this price and amount!",
+                     assertThrows(IllegalStateException.class, () -> book.handle(
+                             new AmendOrderCommand("BTC", UUID.randomUUID(), buy.orderId(), new BigDecimal("10.0"),
+                                                   null))).getMessage());
+        assertEquals("Amend: order is not open!",
+                     assertThrows(IllegalStateException.class, () -> book.handle(
+                             new AmendOrderCommand("BTC", UUID.randomUUID(), buy.orderId() + 1, BigDecimal.ONE,
+                                                   null))).getMessage());
+
+        book.apply(book.handle(new AmendOrderCommand("BTC", UUID.randomUUID(), buy.orderId(), new BigDecimal("9"),
+                                                     BigDecimal.ONE)));
+        assertEquals(0, book.topOfBook().bidPrice().compareTo(new BigDecimal("9")));
+        assertEquals(0, book.topOfBook().bidAmount().compareTo(BigDecimal.ONE));
+    }
+
+    @Test
+    public void massCancelIsAppliedToProjection() {
+        BookQueryRepository projection = new BookQueryRepository();
+        Book book = new BookAggregateRepository(projection).getOrCreate("BTC");
+        OrderAcceptedEvent first = placeOrder(book, OrderType.BUY, "1");
+        OrderAcceptedEvent second = placeOrder(book, OrderType.BUY, "2");
+
+        MassCancelCommand command = new MassCancelCommand("BTC", UUID.randomUUID(), OrderType.BUY, null,
+                                                          BigDecimal.TEN);
+        book.apply(book.handle(command));
+
+        assertNull(book.topOfBook().bidPrice());
+        for (OrderAcceptedEvent order : new OrderAcceptedEvent[]{first, second}) {
+            StepVerifier.create(projection.getProjection(order.orderId())
+                                          .filter(entry -> entry.pendingAmount().signum() == 0)
+                                          .repeatWhenEmpty(10, o -> o.delayElements(Duration.ofMillis(50))))
+                        .expectNextCount(1)
+                        .verifyComplete();
+        }
+    }
+
+    @Test
+    public void massCancelWithInvalidBandIsRejected() {
+        Book book = testSubject.getOrCreate("BTC");
+
+        assertThrows(IllegalStateException.class, () -> book.handle(
+                new MassCancelCommand("BTC", UUID.randomUUID(), null, BigDecimal.TEN, BigDecimal.ONE)));
+        assertThrows(IllegalStateException.class, () -> book.handle(
+                new MassCancelCommand("BTC", UUID.randomUUID(), null, BigDecimal.ZERO, null)));
+    }
+
+    @Test
+    public void recoversBooksFromJournal(@TempDir Path directory) {
+        MarketProperties properties = new MarketProperties(null, null, null, new MarketProperties.JournalProperties(
+                true, directory.toString(), null, null, null, null), null, null, null, null, null);
+        Journal journal = new Journal(properties);
+        BookAggregateRepository repository = new BookAggregateRepository(new BookQueryRepository(), properties,
+                                                                         journal);
+        Book book = repository.getOrCreate("BTC");
+        OrderAcceptedEvent sell = placeOrder(book, OrderType.SELL, "3");
+        placeOrder(book, OrderType.BUY, "1");
+        journal.close();
+
+        Journal reopened = new Journal(properties);
+        try {
+            BookQueryRepository projection = new BookQueryRepository();
+            BookAggregateRepository recovered = new BookAggregateRepository(projection, properties, reopened);
+
+            StepVerifier.create(projection.getProjection(sell.orderId())
+                                          .repeatWhenEmpty(10, o -> o.delayElements(Duration.ofMillis(50))))
+                        .assertNext(order -> assertEquals(0, new BigDecimal("2").compareTo(order.pendingAmount())))
+                        .verifyComplete();
+            OrderAcceptedEvent next = placeOrder(recovered.getOrCreate("BTC"), OrderType.BUY, "1");
+            assertTrue(next.orderId() > sell.orderId() + 1);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void recoversBooksFromSnapshotAndJournalTail(@TempDir Path directory) throws InterruptedException {
+        MarketProperties properties = new MarketProperties(null, null, null, new MarketProperties.JournalProperties(
+                true, directory.toString(), null, null, null, 2L), null, null, null, null, null);
+        Journal journal = new Journal(properties);
+        Book book = new BookAggregateRepository(new BookQueryRepository(), properties, journal).getOrCreate("BTC");
+        OrderAcceptedEvent sell = placeOrder(book, OrderType.SELL, "3");
+        placeOrder(book, OrderType.BUY, "1");
+        Path snapshot = directory.resolve("BTC.snapshot");
+        for (int i = 0; i < 100 && !Files.exists(snapshot); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(Files.exists(snapshot));
+        OrderAcceptedEvent tail = placeOrder(book, OrderType.BUY, "1.5");
+        journal.close();
+
+        Journal reopened = new Journal(properties);
+        try {
+            BookQueryRepository projection = new BookQueryRepository();
+            BookAggregateRepository recovered = new BookAggregateRepository(projection, properties, reopened);
+
+            //projection is updated asynchronously, wait until the tail has been applied to it
+            StepVerifier.create(projection.getProjection(sell.orderId())
+                                          .filter(order -> order.pendingAmount().compareTo(new BigDecimal("2")) < 0)
+                                          .repeatWhenEmpty(10, o -> o.delayElements(Duration.ofMillis(50))))
+                        .assertNext(order -> assertEquals(0, new BigDecimal("0.5").compareTo(order.pendingAmount())))
+                        .verifyComplete();
+            OrderAcceptedEvent next = placeOrder(recovered.getOrCreate("BTC"), OrderType.BUY, "1");
+            assertTrue(next.orderId() > tail.orderId());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private static OrderAcceptedEvent placeOrder(Book book, OrderType type, String amount) {
+        OrderAcceptedEvent event = (OrderAcceptedEvent) book.handle(new MakeOrderCommand(book.aggregateId(),
+                                                                                        UUID.randomUUID(),
+                                                                                        type,
+                                                                                        new BigDecimal(amount),
+                                                                                        BigDecimal.TEN));
+        book.apply(event);
+        return event;
+    }
+
+}
@@ -1,14 +1,28 @@
 package com.zapata.reactivestockmarket.domain;
 
+import com.zapata.reactivestockmarket.MarketProperties;
+import com.zapata.reactivestockmarket.cqrs.UpdateEvent;
+import com.zapata.reactivestockmarket.domain.engine.events.OrderAmendedEvent;
+import com.zapata.reactivestockmarket.domain.engine.events.OrderCanceledEvent;
 import com.zapata.reactivestockmarket.domain.engine.events.OrderMatchedEvent;
 import com.zapata.reactivestockmarket.domain.engine.events.OrderPlacedEvent;
 import com.zapata.reactivestockmarket.domain.query.BookQueryRepository;
+import com.zapata.reactivestockmarket.domain.query.OrderEntry;
 import com.zapata.reactivestockmarket.domain.query.OrderType;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 class BookQueryRepositoryTest {
 
@@ -98,7 +112,8 @@ class BookQueryRepositoryTest {
                                                                                BigDecimal.valueOf(
                                                                                        1.0),
                                                                                BigDecimal.valueOf(
-                                                                                       0.65)
+                                                                                       0.65),
+                                                                               true
                                        ))
                                        .then(testSubject.getProjection(0L)))
                     .expectNextMatches(orderEntry -> orderEntry.orderId() == 0L
@@ -131,7 +146,8 @@ class BookQueryRepositoryTest {
                                                                                BigDecimal.valueOf(
                                                                                        0.65),
                                                                                BigDecimal.valueOf(
-                                                                                       0.0)
+                                                                                       0.0),
+                                                                               true
                                        ))
                                        .then(testSubject.getProjection(0L)))
                     .expectNextMatches(orderEntry -> orderEntry.orderId() == 0L
@@ -153,4 +169,267 @@ class BookQueryRepositoryTest {
                     .expectComplete()
                     .verify();
     }
+
+    @Test
+    void tradesAreAppendedInOrder() {
+        StepVerifier.create(testSubject.updateProjection(new OrderPlacedEvent(0L,
+                                                                              "BTC",
+                                                                              Instant.EPOCH,
+                                                                              OrderType.SELL,
+                                                                              new BigDecimal("100.00"),
+                                                                              new BigDecimal("100")))
+                                       .thenMany(Flux.range(1, 100)
+                                                     .concatMap(i -> testSubject.updateProjection(
+                                                             matched(0L, i, BigDecimal.valueOf(101 - i)))))
+                                       .then(testSubject.getProjection(0L)))
+                    .expectNextMatches(orderEntry -> orderEntry.pendingAmount().signum() == 0
+                            && orderEntry.trades().size() == 100
+                            && IntStream.range(0, 100).allMatch(i -> orderEntry.trades().get(i).orderId() == i + 1
+                            && orderEntry.trades().get(i).amount().compareTo(BigDecimal.ONE) == 0
+                            && orderEntry.trades().get(i).price().equals(new BigDecimal("100.00"))))
+                    .verifyComplete();
+    }
+
+    @Test
+    void projectionIsCopyOfCurrentState() {
+        OrderEntry placed = testSubject.updateProjection(new OrderPlacedEvent(0L,
+                                                                              "BTC",
+                                                                              Instant.EPOCH,
+                                                                              OrderType.SELL,
+                                                                              new BigDecimal("100.00"),
+                                                                              new BigDecimal("2")))
+                                       .then(testSubject.getProjection(0L))
+                                       .block();
+
+        StepVerifier.create(testSubject.updateProjection(matched(0L, 1L, new BigDecimal("2")))
+                                       .then(testSubject.getProjection(0L)))
+                    .expectNextMatches(orderEntry -> orderEntry.pendingAmount().compareTo(BigDecimal.ONE) == 0
+                            && orderEntry.trades().size() == 1)
+                    .verifyComplete();
+        assertEquals(new BigDecimal("2"), placed.pendingAmount());
+        assertTrue(placed.trades().isEmpty());
+    }
+
+    @Test
+    void valuesThatDontFitCompactFormAreKeptExactly() {
+        BigDecimal hugeAmount = new BigDecimal("123456789012345678901234567890.5");
+        BigDecimal negativeScalePrice = new BigDecimal("1E+3");
+        StepVerifier.create(testSubject.updateProjection(new OrderPlacedEvent(0L,
+                                                                              "BTC",
+                                                                              Instant.MIN,
+                                                                              OrderType.SELL,
+                                                                              new BigDecimal("100.00"),
+                                                                              BigDecimal.TEN))
+                                       .then(testSubject.updateProjection(new OrderCanceledEvent(0L,
+                                                                                                 "BTC",
+                                                                                                 OrderType.SELL,
+                                                                                                 BigDecimal.TEN,
+                                                                                                 BigDecimal.ONE,
+                                                                                                 hugeAmount)))
+                                       .then(testSubject.updateProjection(matched(0L, 1L, hugeAmount)))
+                                       .then(testSubject.getProjection(0L)))
+                    .expectNextMatches(orderEntry -> orderEntry.entryTimestamp().equals(Instant.MIN)
+                            && orderEntry.price().equals(new BigDecimal("100.00"))
+                            && orderEntry.amount().equals(BigDecimal.TEN)
+                            && orderEntry.pendingAmount().equals(hugeAmount.subtract(BigDecimal.ONE))
+                            && orderEntry.trades().size() == 1
+                            && orderEntry.trades().get(0).orderId() == 1L)
+                    .verifyComplete();
+
+        StepVerifier.create(testSubject.updateProjection(new OrderPlacedEvent(2L,
+                                                                              "BTC",
+                                                                              Instant.MAX,
+                                                                              OrderType.BUY,
+                                                                              negativeScalePrice,
+                                                                              BigDecimal.ONE))
+                                       .then(testSubject.getProjection(2L)))
+                    .expectNextMatches(orderEntry -> orderEntry.entryTimestamp().equals(Instant.MAX)
+                            && orderEntry.price().equals(negativeScalePrice))
+                    .verifyComplete();
+    }
+
+    @Test
+    void amendedOrderIsRepricedAndKeepsItsTrades() {
+        BigDecimal oldPrice = new BigDecimal("99.00");
+        BigDecimal newPrice = new BigDecimal("100.00");
+        //order 1 is repriced from 99.00 to 100.00 and reduced to 2, crosses resting order 0 and rests the rest
+        Flux<UpdateEvent> events = Flux.just(
+                new OrderPlacedEvent(0L, "BTC", Instant.EPOCH, OrderType.SELL, newPrice, BigDecimal.ONE),
+                new OrderPlacedEvent(1L, "BTC", Instant.EPOCH, OrderType.BUY, oldPrice, BigDecimal.valueOf(3)),
+                new OrderMatchedEvent(0L, "BTC", Instant.EPOCH, 1L, OrderType.BUY, newPrice, newPrice,
+                                      BigDecimal.valueOf(2), BigDecimal.ONE, BigDecimal.ZERO, false),
+                new OrderAmendedEvent(1L, "BTC", OrderType.BUY, oldPrice, BigDecimal.valueOf(3), newPrice,
+                                      BigDecimal.ONE));
+
+        StepVerifier.create(events.concatMap(testSubject::updateProjection)
+                                  .then(testSubject.getProjection(1L)))
+                    .expectNextMatches(orderEntry -> orderEntry.price().equals(newPrice)
+                            && orderEntry.amount().compareTo(BigDecimal.valueOf(3)) == 0
+                            && orderEntry.pendingAmount().compareTo(BigDecimal.ONE) == 0
+                            && orderEntry.trades().size() == 1
+                            && orderEntry.trades().get(0).orderId() == 0L
+                            && orderEntry.trades().get(0).amount().compareTo(BigDecimal.ONE) == 0)
+                    .verifyComplete();
+    }
+
+    @Test
+    void laterFillOfUnknownIncomingOrderIsNotStored() {
+        //fill of an amended or earlier matched order the projection doesn't have, e.g. archived or never seen
+        StepVerifier.create(testSubject.updateProjection(new OrderPlacedEvent(0L, "BTC", Instant.EPOCH, OrderType.SELL,
+                                                                              new BigDecimal("100.00"), BigDecimal.TEN))
+                                       .then(testSubject.updateProjection(matched(0L, 1L, BigDecimal.TEN, false)))
+                                       .then(testSubject.getProjection(1L)))
+                    .verifyComplete();
+        StepVerifier.create(testSubject.getProjection(0L))
+                    .expectNextMatches(orderEntry -> orderEntry.pendingAmount().compareTo(new BigDecimal("9")) == 0
+                            && orderEntry.trades().size() == 1)
+                    .verifyComplete();
+    }
+
+    @Test
+    void incomingOrderMatchedSeveralTimesGetsAllTrades() {
+        StepVerifier.create(testSubject.updateProjection(matched(10L, 1L, BigDecimal.ONE))
+                                       .then(testSubject.updateProjection(matched(11L, 1L, BigDecimal.ONE, false)))
+                                       .then(testSubject.getProjection(1L)))
+                    .expectNextMatches(orderEntry -> orderEntry.trades().size() == 2
+                            && orderEntry.trades().get(1).orderId() == 11L)
+                    .verifyComplete();
+    }
+
+    @Test
+    void awaitedProjectionCompletesWhenOrderIsApplied() {
+        Mono<OrderEntry> awaited = testSubject.awaitProjection(1L).cache();
+        awaited.subscribe();
+        assertEquals(1, testSubject.stats().awaitingReads());
+
+        //incoming order 1 is materialized by the match, not by a placed event
+        testSubject.updateProjection(new OrderPlacedEvent(0L, "BTC", Instant.EPOCH, OrderType.SELL,
+                                                          new BigDecimal("100.00"), BigDecimal.TEN))
+                   .then(testSubject.updateProjection(matched(0L, 1L, BigDecimal.TEN)))
+                   .block();
+
+        StepVerifier.create(awaited)
+                    .expectNextMatches(orderEntry -> orderEntry.orderId() == 1L
+                            && orderEntry.pendingAmount().signum() == 0
+                            && orderEntry.trades().size() == 1
+                            && orderEntry.trades().get(0).orderId() == 0L)
+                    .verifyComplete();
+        assertEquals(0, testSubject.stats().awaitingReads());
+    }
+
+    @Test
+    void awaitedProjectionOfStoredOrderCompletesAtOnce() {
+        StepVerifier.create(testSubject.updateProjection(new OrderPlacedEvent(1L, "BTC", Instant.EPOCH, OrderType.SELL,
+                                                                              new BigDecimal("100.00"), BigDecimal.ONE))
+                                       .then(testSubject.awaitProjection(1L)))
+                    .expectNextMatches(orderEntry -> orderEntry.orderId() == 1L)
+                    .verifyComplete();
+        assertEquals(0, testSubject.stats().awaitingReads());
+    }
+
+    @Test
+    void canceledAwaitReleasesWaiter() {
+        StepVerifier.create(testSubject.awaitProjection(1L))
+                    .expectSubscription()
+                    .expectNoEvent(Duration.ofMillis(10))
+                    .thenCancel()
+                    .verify();
+        assertEquals(0, testSubject.stats().awaitingReads());
+
+        StepVerifier.create(testSubject.updateProjection(new OrderPlacedEvent(1L, "BTC", Instant.EPOCH, OrderType.SELL,
+                                                                              new BigDecimal("100.00"), BigDecimal.ONE))
+                                       .then(testSubject.getProjection(1L)))
+                    .expectNextCount(1)
+                    .verifyComplete();
+    }
+
+    @Test
+    void awaitTimesOutAndReleasesWaiter() {
+        BookQueryRepository repository = new BookQueryRepository(new MarketProperties(
+                null, null, null, null, new MarketProperties.ProjectionProperties(null, null, null, null, null, null,
+                                                                                  null, null, Duration.ofMillis(50)),
+                null, null, null, null));
+        try {
+            StepVerifier.create(repository.awaitProjection(1L))
+                        .expectError(TimeoutException.class)
+                        .verify(Duration.ofSeconds(5));
+            assertEquals(0, repository.stats().awaitingReads());
+        } finally {
+            repository.close();
+        }
+    }
+
+    @Test
+    void terminalOrdersAreArchived(@TempDir Path directory) {
+        BookQueryRepository repository = new BookQueryRepository(new MarketProperties(
+                null, null, null, null, new MarketProperties.ProjectionProperties(true, directory.toString(),
+                                                                                  Duration.ZERO, 0,
+                                                                                  Duration.ofMillis(10), 16, null,
+                                                                                  null, null),
+                null, null, null, null));
+        try {
+            //order 0 is fully matched by order 1, order 2 is canceled, order 3 is still pending
+            Flux.just(new OrderPlacedEvent(0L, "BTC", Instant.EPOCH, OrderType.SELL, new BigDecimal("100.00"),
+                                           BigDecimal.ONE),
+                      matched(0L, 1L, BigDecimal.ONE),
+                      new OrderPlacedEvent(2L, "BTC", Instant.EPOCH, OrderType.SELL, new BigDecimal("101.00"),
+                                           BigDecimal.ONE),
+                      new OrderCanceledEvent(2L, "BTC", OrderType.SELL, new BigDecimal("101.00"), BigDecimal.ONE,
+                                             BigDecimal.ZERO),
+                      new OrderPlacedEvent(3L, "BTC", Instant.EPOCH, OrderType.SELL, new BigDecimal("102.00"),
+                                           BigDecimal.ONE))
+                .concatMap(repository::updateProjection)
+                .blockLast();
+
+            StepVerifier.create(Mono.fromSupplier(repository::stats)
+                                    .filter(stats -> stats.archivedOrders() == 3)
+                                    .repeatWhenEmpty(100, repeat -> repeat.delayElements(Duration.ofMillis(10))))
+                        .expectNextMatches(stats -> stats.orders() == 1 && stats.terminalOrders() == 0)
+                        .verifyComplete();
+            StepVerifier.create(repository.getProjection(0L))
+                        .expectNextMatches(orderEntry -> orderEntry.pendingAmount().signum() == 0
+                                && orderEntry.price().equals(new BigDecimal("100.00"))
+                                && orderEntry.trades().size() == 1
+                                && orderEntry.trades().get(0).orderId() == 1L)
+                        .verifyComplete();
+            StepVerifier.create(repository.getProjection(1L))
+                        .expectNextMatches(orderEntry -> orderEntry.trades().get(0).orderId() == 0L)
+                        .verifyComplete();
+            StepVerifier.create(repository.getProjection(2L))
+                        .expectNextMatches(orderEntry -> orderEntry.price().equals(new BigDecimal("101.00")))
+                        .verifyComplete();
+            StepVerifier.create(repository.getProjection(3L))
+                        .expectNextMatches(orderEntry -> orderEntry.pendingAmount().equals(BigDecimal.ONE))
+                        .verifyComplete();
+            StepVerifier.create(repository.getProjection(4L))
+                        .verifyComplete();
+            StepVerifier.create(repository.awaitProjection(2L))
+                        .expectNextMatches(orderEntry -> orderEntry.price().equals(new BigDecimal("101.00")))
+                        .verifyComplete();
+        } finally {
+            repository.close();
+        }
+    }
+
+    /**
+     * First fill of incoming buy order of amount 1 matched against resting sell order at 100.00
+     */
+    private static OrderMatchedEvent matched(long restingId, long incomingId, BigDecimal previousRestingAmount) {
+        return matched(restingId, incomingId, previousRestingAmount, true);
+    }
+
+    private static OrderMatchedEvent matched(long restingId, long incomingId, BigDecimal previousRestingAmount,
+                                             boolean firstFill) {
+        return new OrderMatchedEvent(restingId,
+                                     "BTC",
+                                     Instant.EPOCH,
+                                     incomingId,
+                                     OrderType.BUY,
+                                     new BigDecimal("100.00"),
+                                     new BigDecimal("100.00"),
+                                     BigDecimal.ONE,
+                                     previousRestingAmount,
+                                     previousRestingAmount.subtract(BigDecimal.ONE),
+                                     firstFill);
+    }
 }
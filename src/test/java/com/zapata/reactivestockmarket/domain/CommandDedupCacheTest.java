@@ -0,0 +1,95 @@
+package com.zapata.reactivestockmarket.domain;
+
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+import com.zapata.reactivestockmarket.domain.events.CancellationRequestedEvent;
+import org.junit.jupiter.api.*;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandDedupCacheTest {
+
+    @Test
+    public void putGet() {
+        CommandDedupCache testSubject = new CommandDedupCache(16, Duration.ofMinutes(1));
+        UUID commandId = UUID.randomUUID();
+        SourcingEvent event = event(1);
+
+        assertNull(testSubject.get(commandId));
+        testSubject.put(commandId, event);
+
+        assertSame(event, testSubject.get(commandId));
+        assertNull(testSubject.get(UUID.randomUUID()));
+        assertEquals(1, testSubject.size());
+    }
+
+    @Test
+    public void evictsOldestWhenFull() {
+        CommandDedupCache testSubject = new CommandDedupCache(1000, Duration.ofMinutes(1));
+        List<UUID> commandIds = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            UUID commandId = new UUID(42, i);
+            commandIds.add(commandId);
+            testSubject.put(commandId, event(i));
+        }
+
+        //capacity is rounded up to 1024
+        assertEquals(1024, testSubject.size());
+        for (int i = 0; i < commandIds.size(); i++) {
+            SourcingEvent event = testSubject.get(commandIds.get(i));
+            if (i < 5000 - 1024) {
+                assertNull(event);
+            } else {
+                assertEquals(i, ((CancellationRequestedEvent) event).orderId());
+            }
+        }
+    }
+
+    @Test
+    public void expiresAfterWindow() throws InterruptedException {
+        CommandDedupCache testSubject = new CommandDedupCache(16, Duration.ofMillis(20));
+        UUID commandId = UUID.randomUUID();
+        testSubject.put(commandId, event(1));
+
+        Thread.sleep(50);
+
+        assertNull(testSubject.get(commandId));
+        testSubject.put(UUID.randomUUID(), event(2));
+        assertEquals(1, testSubject.size());
+    }
+
+    @Test
+    public void randomIdsSurviveEviction() {
+        CommandDedupCache testSubject = new CommandDedupCache(64, Duration.ofMinutes(1));
+        Random random = new Random(7);
+        UUID[] window = new UUID[64];
+        for (int i = 0; i < 100_000; i++) {
+            UUID commandId = new UUID(random.nextLong(), random.nextLong());
+            testSubject.put(commandId, event(i));
+            window[i % 64] = commandId;
+            if (i >= 64) {
+                UUID live = window[random.nextInt(64)];
+                assertNotNull(testSubject.get(live));
+            }
+        }
+    }
+
+    @Test
+    public void disabledNeverFindsDuplicate() {
+        UUID commandId = UUID.randomUUID();
+        CommandDedupCache.DISABLED.put(commandId, event(1));
+
+        assertNull(CommandDedupCache.DISABLED.get(commandId));
+        assertEquals(0, CommandDedupCache.DISABLED.size());
+    }
+
+    private static SourcingEvent event(long orderId) {
+        return new CancellationRequestedEvent("BTC", UUID.randomUUID(), orderId, true, BigDecimal.ZERO);
+    }
+}
@@ -0,0 +1,65 @@
+package com.zapata.reactivestockmarket.domain;
+
+import org.junit.jupiter.api.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderIdGeneratorTest {
+
+    @Test
+    public void singleShardIsPlainSequence() {
+        OrderIdGenerator testSubject = new OrderIdGenerator(0);
+        int shard = testSubject.shardOf("BTC");
+
+        assertEquals(0, shard);
+        assertEquals(1L, testSubject.next(shard));
+        assertEquals(2L, testSubject.next(shard));
+        assertEquals(3L, testSubject.next(testSubject.shardOf("ETH")));
+    }
+
+    @Test
+    public void idsAreUniqueAndMonotonicPerShard() {
+        OrderIdGenerator testSubject = new OrderIdGenerator(OrderIdGenerator.DEFAULT_SHARD_BITS);
+        Set<Long> ids = new HashSet<>();
+        long[] last = new long[1 << OrderIdGenerator.DEFAULT_SHARD_BITS];
+        for (int i = 0; i < 10_000; i++) {
+            int shard = testSubject.shardOf("ASSET-" + i % 300);
+            long id = testSubject.next(shard);
+
+            assertTrue(ids.add(id));
+            assertTrue(id > last[shard]);
+            assertTrue(id > 0 && id < 1L << 53, "id must be exact as JSON number");
+            last[shard] = id;
+        }
+    }
+
+    @Test
+    public void shardOfAssetIsStable() {
+        OrderIdGenerator first = new OrderIdGenerator(OrderIdGenerator.DEFAULT_SHARD_BITS);
+        OrderIdGenerator second = new OrderIdGenerator(OrderIdGenerator.DEFAULT_SHARD_BITS);
+
+        assertEquals(first.shardOf("BTC"), second.shardOf("BTC"));
+    }
+
+    @Test
+    public void advancePastRecoveredIds() {
+        OrderIdGenerator before = new OrderIdGenerator(OrderIdGenerator.DEFAULT_SHARD_BITS);
+        int shard = before.shardOf("BTC");
+        long recovered = 0;
+        for (int i = 0; i < 100; i++) {
+            recovered = before.next(shard);
+        }
+
+        OrderIdGenerator after = new OrderIdGenerator(OrderIdGenerator.DEFAULT_SHARD_BITS);
+        after.advancePast(recovered);
+        //sequential ids of the previous layout
+        after.advancePast(500);
+
+        assertTrue(after.next(shard) > recovered);
+        assertEquals(501, after.maxSequence());
+        assertTrue(after.next(after.shardOf("ETH")) > 500);
+    }
+}
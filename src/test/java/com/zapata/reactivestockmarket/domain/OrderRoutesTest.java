@@ -0,0 +1,65 @@
+package com.zapata.reactivestockmarket.domain;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderRoutesTest {
+
+    @Test
+    public void routesOrderToAsset() {
+        OrderRoutes testSubject = new OrderRoutes(1024);
+        int btc = testSubject.register("BTC");
+        int eth = testSubject.register("ETH");
+
+        testSubject.put(1L, btc);
+        testSubject.put(2L, eth);
+
+        assertEquals("BTC", testSubject.assetOf(1L));
+        assertEquals("ETH", testSubject.assetOf(2L));
+        assertNull(testSubject.assetOf(3L));
+        assertNull(testSubject.assetOf(0L));
+    }
+
+    @Test
+    public void newerOrderTakesSlot() {
+        OrderRoutes testSubject = new OrderRoutes(16);
+        int btc = testSubject.register("BTC");
+        int eth = testSubject.register("ETH");
+        for (long orderId = 1; orderId <= 1000; orderId++) {
+            testSubject.put(orderId, orderId % 2 == 0 ? btc : eth);
+        }
+
+        int routed = 0;
+        for (long orderId = 1; orderId <= 1000; orderId++) {
+            String asset = testSubject.assetOf(orderId);
+            if (asset != null) {
+                assertEquals(orderId % 2 == 0 ? "BTC" : "ETH", asset);
+                routed++;
+            }
+        }
+        assertTrue(routed > 0 && routed <= 16);
+        assertEquals("BTC", testSubject.assetOf(1000L));
+    }
+
+    @Test
+    public void shardedOrderIdsAreRouted() {
+        OrderRoutes testSubject = new OrderRoutes(1024);
+        OrderIdGenerator orderIds = new OrderIdGenerator(OrderIdGenerator.DEFAULT_SHARD_BITS);
+        int book = testSubject.register("BTC");
+        long orderId = orderIds.next(orderIds.shardOf("BTC"));
+
+        testSubject.put(orderId, book);
+
+        assertEquals("BTC", testSubject.assetOf(orderId));
+    }
+
+    @Test
+    public void disabledKnowsNoRoutes() {
+        int book = OrderRoutes.DISABLED.register("BTC");
+        OrderRoutes.DISABLED.put(1L, book);
+
+        assertEquals(0, book);
+        assertNull(OrderRoutes.DISABLED.assetOf(1L));
+    }
+}
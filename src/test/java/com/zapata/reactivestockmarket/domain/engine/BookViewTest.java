@@ -0,0 +1,164 @@
+package com.zapata.reactivestockmarket.domain.engine;
+
+import com.zapata.reactivestockmarket.cqrs.OverflowPolicy;
+import com.zapata.reactivestockmarket.domain.dtos.BookDepth;
+import com.zapata.reactivestockmarket.domain.dtos.DepthLevel;
+import com.zapata.reactivestockmarket.domain.dtos.TopOfBook;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import reactor.core.Disposable;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookViewTest {
+
+    private static final String ASSET = "BTC";
+
+    private long nextOrderId = 1;
+
+    @ParameterizedTest
+    @EnumSource(OrderBookType.class)
+    public void tracksLevelsOfPlacedMatchedAndCanceledOrders(OrderBookType orderBookType) {
+        MatchingEngine engine = new MatchingEngine(new BookSpec(orderBookType, 2));
+        BookView view = engine.view();
+
+        TopOfBook empty = view.top(ASSET);
+        assertNull(empty.bidPrice());
+        assertNull(empty.askPrice());
+
+        place(engine, OrderType.BUY, "99", "1");
+        long canceled = place(engine, OrderType.BUY, "99", "2");
+        place(engine, OrderType.BUY, "98", "5");
+        place(engine, OrderType.SELL, "101", "1");
+        place(engine, OrderType.SELL, "102", "4");
+
+        TopOfBook top = view.top(ASSET);
+        assertEquals(0, new BigDecimal("99").compareTo(top.bidPrice()));
+        assertEquals(0, new BigDecimal("3").compareTo(top.bidAmount()));
+        assertEquals(0, new BigDecimal("101").compareTo(top.askPrice()));
+        assertEquals(0, new BigDecimal("1").compareTo(top.askAmount()));
+        assertEquals(5, top.version());
+
+        //sweeps 101 and takes 0.5 of 102
+        place(engine, OrderType.BUY, "102", "1.5");
+        engine.cancel(canceled, ASSET, new BigDecimal("0.5"));
+
+        BookDepth depth = view.depth(ASSET, 10);
+        assertLevels(depth.bids(), "99", "1.5", "98", "5");
+        assertLevels(depth.asks(), "102", "3.5");
+        assertEquals(7, depth.version());
+
+        assertLevels(view.depth(ASSET, 1).bids(), "99", "1.5");
+        assertTrue(view.depth(ASSET, 0).bids().isEmpty());
+
+        //canceling unknown order doesn't publish new version
+        engine.cancelAll(1_000, ASSET);
+        assertEquals(7, view.top(ASSET).version());
+    }
+
+    @Test
+    public void restoresLevelsFromSnapshot() {
+        MatchingEngine engine = new MatchingEngine(new BookSpec(OrderBookType.PRICE_LEVEL, 2));
+        for (int i = 0; i < 200; i++) {
+            place(engine, i % 2 == 0 ? OrderType.BUY : OrderType.SELL, String.valueOf(i % 2 == 0 ? 1_000 - i : 1_000 + i),
+                  "1");
+        }
+
+        MatchingEngine restored = new MatchingEngine(new BookSpec(OrderBookType.TREE, 2));
+        restored.restore(ASSET, engine.snapshot());
+
+        assertEquals(engine.view().depth(ASSET, 1_000).bids(), restored.view().depth(ASSET, 1_000).bids());
+        assertEquals(engine.view().depth(ASSET, 1_000).asks(), restored.view().depth(ASSET, 1_000).asks());
+        assertEquals(100, restored.view().depth(ASSET, 1_000).asks().size());
+    }
+
+    @Test
+    public void readersNeverSeeBookInTheMiddleOfMatch() throws InterruptedException {
+        MatchingEngine engine = new MatchingEngine(new BookSpec(OrderBookType.PRICE_LEVEL, 2));
+        BookView view = engine.view();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        AtomicLong reads = new AtomicLong();
+
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                BookDepth depth = view.depth(ASSET, 5);
+                //incoming order is added to the book only after it has taken all crossing levels
+                if (!depth.bids().isEmpty() && !depth.asks().isEmpty()
+                        && depth.bids().get(0).price().compareTo(depth.asks().get(0).price()) >= 0) {
+                    failure.set("crossed book " + depth);
+                }
+                reads.incrementAndGet();
+            }
+        });
+        reader.start();
+
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            place(engine,
+                  random.nextBoolean() ? OrderType.BUY : OrderType.SELL,
+                  String.valueOf(90 + random.nextInt(20)),
+                  String.valueOf(1 + random.nextInt(5)));
+        }
+        running.set(false);
+        reader.join();
+
+        assertNull(failure.get());
+        assertTrue(reads.get() > 0);
+    }
+
+    @Test
+    public void blockingSubscriberOnEngineThreadReadsLevelsBeforeTheCall() {
+        MatchingEngine engine = new MatchingEngine(new BookSpec(OrderBookType.PRICE_LEVEL, 2));
+        BookView view = engine.view();
+        place(engine, OrderType.BUY, "99", "1");
+        long before = engine.events().published();
+        List<BookDepth> depths = new ArrayList<>();
+        List<Long> sequences = new ArrayList<>();
+        //blocking subscriber gets events on the engine thread while the engine is in the middle of the call
+        Disposable subscription = engine.events().events(OverflowPolicy.BLOCK).subscribe(event -> {
+            depths.add(view.depth(ASSET, 10));
+            sequences.add(view.snapshot(ASSET).sequence());
+        });
+
+        place(engine, OrderType.SELL, "99", "0.4");
+        subscription.dispose();
+
+        assertFalse(depths.isEmpty());
+        for (BookDepth depth : depths) {
+            assertLevels(depth.bids(), "99", "1");
+        }
+        //events of the call come after the snapshot of levels before the call
+        assertTrue(sequences.stream().allMatch(sequence -> sequence == before), sequences::toString);
+        assertLevels(view.depth(ASSET, 10).bids(), "99", "0.6");
+        assertEquals(engine.events().published(), view.snapshot(ASSET).sequence());
+    }
+
+    private long place(MatchingEngine engine, OrderType type, String price, String amount) {
+        long orderId = nextOrderId++;
+        engine.placeOrder(orderId, ASSET, Instant.now(), type, new BigDecimal(price), new BigDecimal(amount));
+        return orderId;
+    }
+
+    /**
+     * @param expected price and amount pairs
+     */
+    private static void assertLevels(List<DepthLevel> levels, String... expected) {
+        assertEquals(expected.length / 2, levels.size(), levels::toString);
+        for (int i = 0; i < levels.size(); i++) {
+            assertEquals(0, new BigDecimal(expected[2 * i]).compareTo(levels.get(i).price()), levels::toString);
+            assertEquals(0, new BigDecimal(expected[2 * i + 1]).compareTo(levels.get(i).amount()), levels::toString);
+        }
+    }
+}
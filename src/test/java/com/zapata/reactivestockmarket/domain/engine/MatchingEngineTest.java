@@ -1,19 +1,31 @@
 package com.zapata.reactivestockmarket.domain.engine;
 
 
+import com.zapata.reactivestockmarket.cqrs.UpdateEvent;
+import com.zapata.reactivestockmarket.domain.engine.events.OrderAmendedEvent;
 import com.zapata.reactivestockmarket.domain.engine.events.OrderCanceledEvent;
 import com.zapata.reactivestockmarket.domain.engine.events.OrderMatchedEvent;
 import com.zapata.reactivestockmarket.domain.engine.events.OrderPlacedEvent;
+import com.zapata.reactivestockmarket.domain.engine.events.OrdersCanceledEvent;
 import com.zapata.reactivestockmarket.domain.query.OrderType;
 import org.junit.jupiter.api.*;
 import reactor.test.StepVerifier;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 class MatchingEngineTest {
 
-    private final MatchingEngine testSubject = new MatchingEngine();
+    protected final MatchingEngine testSubject = createEngine();
+
+    protected MatchingEngine createEngine() {
+        return new MatchingEngine();
+    }
 
     @Test
     public void stockTest() {
@@ -216,13 +228,15 @@ class MatchingEngineTest {
                             && ((OrderMatchedEvent) orderEvent).restingPrice().compareTo(BigDecimal.valueOf(999.0))
                             == 0
                             && ((OrderMatchedEvent) orderEvent).entryTimestamp().equals(Instant.MIN)
+                            && ((OrderMatchedEvent) orderEvent).firstFill()
                     )
                     .expectNextMatches(orderEvent -> orderEvent instanceof OrderMatchedEvent
                             && ((OrderMatchedEvent) orderEvent).restingId() == 1
                             && ((OrderMatchedEvent) orderEvent).restingPrice().compareTo(BigDecimal.valueOf(1000.0))
                             == 0
                             && ((OrderMatchedEvent) orderEvent).restingRemainingAmount()
-                                                               .compareTo(BigDecimal.valueOf(0.50)) == 0)
+                                                               .compareTo(BigDecimal.valueOf(0.50)) == 0
+                            && !((OrderMatchedEvent) orderEvent).firstFill())
                     .expectComplete()
                     .verify();
     }
@@ -554,4 +568,230 @@ class MatchingEngineTest {
                     .expectComplete()
                     .verify();
     }
+
+    @Test
+    public void massCancelSideWithinBand() {
+        List<UpdateEvent> events = new ArrayList<>();
+        testSubject.engineEvents().subscribe(events::add);
+        placeOrder(1, OrderType.BUY, 10, 100);
+        placeOrder(2, OrderType.BUY, 11, 100);
+        placeOrder(3, OrderType.BUY, 12, 100);
+        placeOrder(4, OrderType.BUY, 11, 50);
+        placeOrder(5, OrderType.SELL, 13, 100);
+        placeOrder(6, OrderType.SELL, 12.5, 100);
+        events.clear();
+
+        int canceled = testSubject.massCancel("BTC", OrderType.BUY, BigDecimal.valueOf(11), BigDecimal.valueOf(12));
+
+        assertEquals(3, canceled);
+        assertEquals(1, events.size());
+        OrdersCanceledEvent event = (OrdersCanceledEvent) events.get(0);
+        assertArrayEquals(new long[]{3, 2, 4}, event.orderIds());
+        assertEquals(2, event.levels().size());
+        assertEquals(0, event.levels().get(0).price().compareTo(BigDecimal.valueOf(12)));
+        assertEquals(0, event.levels().get(0).canceledAmount().compareTo(BigDecimal.valueOf(100)));
+        assertEquals(0, event.levels().get(1).price().compareTo(BigDecimal.valueOf(11)));
+        assertEquals(0, event.levels().get(1).canceledAmount().compareTo(BigDecimal.valueOf(150)));
+        assertNull(testSubject.remainingAmount(2));
+        assertNotNull(testSubject.remainingAmount(1));
+        assertNotNull(testSubject.remainingAmount(6));
+        assertEquals(0, testSubject.view().top("BTC").bidPrice().compareTo(BigDecimal.valueOf(10)));
+
+        //remaining orders still match, canceled ones are gone
+        events.clear();
+        placeOrder(7, OrderType.SELL, 10, 100);
+        assertEquals(1, events.size());
+        assertEquals(1, ((OrderMatchedEvent) events.get(0)).restingId());
+    }
+
+    @Test
+    public void massCancelWholeBook() {
+        List<UpdateEvent> events = new ArrayList<>();
+        testSubject.engineEvents().subscribe(events::add);
+        for (long orderId = 1; orderId <= 1_000; orderId++) {
+            placeOrder(orderId, orderId % 2 == 0 ? OrderType.BUY : OrderType.SELL,
+                       orderId % 2 == 0 ? 10 + orderId % 7 : 20 + orderId % 7, 1);
+        }
+        events.clear();
+
+        assertEquals(1_000, testSubject.massCancel("BTC", null, null, null));
+        assertEquals(1, events.size());
+        assertEquals(1_000, ((OrdersCanceledEvent) events.get(0)).orderIds().length);
+        assertEquals(14, ((OrdersCanceledEvent) events.get(0)).levels().size());
+        assertNull(testSubject.view().top("BTC").bidPrice());
+        assertNull(testSubject.view().top("BTC").askPrice());
+
+        //nothing left to cancel, nothing published
+        assertEquals(0, testSubject.massCancel("BTC", null, null, null));
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    public void massCancelOutsideOfBook() {
+        List<UpdateEvent> events = new ArrayList<>();
+        testSubject.engineEvents().subscribe(events::add);
+        placeOrder(1, OrderType.BUY, 10, 100);
+        placeOrder(2, OrderType.SELL, 20, 100);
+        events.clear();
+
+        assertEquals(0, testSubject.massCancel("BTC", OrderType.BUY, BigDecimal.valueOf(11), null));
+        assertEquals(0, testSubject.massCancel("BTC", OrderType.SELL, null, BigDecimal.valueOf(19)));
+        assertEquals(0, testSubject.massCancel("BTC", null, BigDecimal.valueOf(15), BigDecimal.valueOf(14)));
+        assertTrue(events.isEmpty());
+        assertNotNull(testSubject.remainingAmount(1));
+        assertNotNull(testSubject.remainingAmount(2));
+    }
+
+    @Test
+    public void amendReducedAmountKeepsPriority() {
+        List<UpdateEvent> events = new ArrayList<>();
+        testSubject.engineEvents().subscribe(events::add);
+        placeOrder(1, OrderType.BUY, 10, 100);
+        placeOrder(2, OrderType.BUY, 10, 100);
+        events.clear();
+
+        testSubject.amend(1, "BTC", BigDecimal.valueOf(10), BigDecimal.valueOf(50));
+        assertEquals(1, events.size());
+        OrderAmendedEvent amended = (OrderAmendedEvent) events.get(0);
+        assertEquals(0, amended.previousAmount().compareTo(BigDecimal.valueOf(100)));
+        assertEquals(0, amended.remainingAmount().compareTo(BigDecimal.valueOf(50)));
+        assertEquals(0, amended.price().compareTo(BigDecimal.valueOf(10)));
+        assertEquals(0, testSubject.view().top("BTC").bidAmount().compareTo(BigDecimal.valueOf(150)));
+
+        events.clear();
+        placeOrder(3, OrderType.SELL, 10, 60);
+        assertEquals(2, events.size());
+        assertEquals(1, ((OrderMatchedEvent) events.get(0)).restingId());
+        assertEquals(2, ((OrderMatchedEvent) events.get(1)).restingId());
+    }
+
+    @Test
+    public void amendedPriceLosesPriority() {
+        List<UpdateEvent> events = new ArrayList<>();
+        testSubject.engineEvents().subscribe(events::add);
+        placeOrder(1, OrderType.BUY, 10, 100);
+        placeOrder(2, OrderType.BUY, 10, 100);
+        testSubject.amend(1, "BTC", BigDecimal.valueOf(9), BigDecimal.valueOf(100));
+        testSubject.amend(1, "BTC", BigDecimal.valueOf(10), BigDecimal.valueOf(100));
+        events.clear();
+
+        placeOrder(3, OrderType.SELL, 10, 100);
+        assertEquals(1, events.size());
+        assertEquals(2, ((OrderMatchedEvent) events.get(0)).restingId());
+        assertNotNull(testSubject.remainingAmount(1));
+    }
+
+    @Test
+    public void amendedPriceMatchesAtOnce() {
+        List<UpdateEvent> events = new ArrayList<>();
+        testSubject.engineEvents().subscribe(events::add);
+        placeOrder(1, OrderType.BUY, 10, 100);
+        placeOrder(2, OrderType.SELL, 12, 40);
+        events.clear();
+
+        testSubject.amend(1, "BTC", BigDecimal.valueOf(12), BigDecimal.valueOf(100));
+
+        assertEquals(2, events.size());
+        OrderMatchedEvent matched = (OrderMatchedEvent) events.get(0);
+        assertEquals(2, matched.restingId());
+        assertEquals(1, matched.incomingId());
+        //amended order has been published before, it is not new to projections
+        assertFalse(matched.firstFill());
+        OrderAmendedEvent amended = (OrderAmendedEvent) events.get(1);
+        assertEquals(0, amended.previousPrice().compareTo(BigDecimal.valueOf(10)));
+        assertEquals(0, amended.price().compareTo(BigDecimal.valueOf(12)));
+        assertEquals(0, amended.remainingAmount().compareTo(BigDecimal.valueOf(60)));
+        assertEquals(0, testSubject.view().top("BTC").bidPrice().compareTo(BigDecimal.valueOf(12)));
+        assertEquals(0, testSubject.view().top("BTC").bidAmount().compareTo(BigDecimal.valueOf(60)));
+        assertNull(testSubject.view().top("BTC").askPrice());
+        assertEquals(0, testSubject.restingPrice(1).compareTo(BigDecimal.valueOf(12)));
+    }
+
+    @Test
+    public void ineffectiveAmend() {
+        List<UpdateEvent> events = new ArrayList<>();
+        testSubject.engineEvents().subscribe(events::add);
+        placeOrder(1, OrderType.BUY, 10, 100);
+        events.clear();
+
+        testSubject.amend(1, "BTC", BigDecimal.valueOf(10), BigDecimal.valueOf(100));
+        testSubject.amend(1, "BTC", BigDecimal.valueOf(11), BigDecimal.valueOf(200));
+        testSubject.amend(2, "BTC", BigDecimal.valueOf(11), BigDecimal.valueOf(50));
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void publishedAmountsKeepEnteredScale() {
+        List<UpdateEvent> events = new ArrayList<>();
+        testSubject.engineEvents().subscribe(events::add);
+        testSubject.placeOrder(1, "BTC", Instant.MIN, OrderType.SELL, new BigDecimal("10"), new BigDecimal("10"));
+        assertEquals(new BigDecimal("10"), ((OrderPlacedEvent) events.get(0)).amount());
+
+        testSubject.placeOrder(2, "BTC", Instant.MIN, OrderType.BUY, new BigDecimal("10"), new BigDecimal("0.5"));
+        OrderMatchedEvent matched = (OrderMatchedEvent) events.get(1);
+        assertEquals(new BigDecimal("0.5"), matched.incomingAmount());
+        assertEquals(new BigDecimal("10"), matched.previousRestingAmount());
+        assertEquals(new BigDecimal("9.5"), matched.restingRemainingAmount());
+        assertEquals(new BigDecimal("9.5"), testSubject.remainingAmount(1));
+
+        testSubject.cancel(1, "BTC", new BigDecimal("4"));
+        OrderCanceledEvent canceled = (OrderCanceledEvent) events.get(2);
+        assertEquals(new BigDecimal("5.5"), canceled.canceledAmount());
+        assertEquals(new BigDecimal("4"), canceled.remainingAmount());
+
+        testSubject.placeOrder(3, "BTC", Instant.MIN, OrderType.SELL, new BigDecimal("11"), new BigDecimal("1.25"));
+        testSubject.placeOrder(4, "BTC", Instant.MIN, OrderType.BUY, new BigDecimal("11"), new BigDecimal("6"));
+        assertEquals(new BigDecimal("6"), ((OrderMatchedEvent) events.get(4)).incomingAmount());
+        assertEquals(new BigDecimal("2"), ((OrderMatchedEvent) events.get(5)).incomingAmount());
+        assertEquals(new BigDecimal("0.75"), ((OrderPlacedEvent) events.get(6)).amount());
+
+        testSubject.massCancel("BTC", null, null, null);
+        OrdersCanceledEvent massCanceled = (OrdersCanceledEvent) events.get(7);
+        assertEquals(new BigDecimal("0.75"), massCanceled.levels().get(0).canceledAmount());
+    }
+
+    @Test
+    public void restoredEngineContinuesLikeOriginal() {
+        List<UpdateEvent> originalEvents = new ArrayList<>();
+        testSubject.engineEvents().subscribe(originalEvents::add);
+        Random random = new Random(7);
+        randomOrders(testSubject, random, 1, 5_000);
+        originalEvents.clear();
+
+        EngineSnapshot snapshot = testSubject.snapshot();
+        MatchingEngine restored = createEngine();
+        List<UpdateEvent> restoreEvents = new ArrayList<>();
+        restored.engineEvents().subscribe(restoreEvents::add);
+        restored.restore("BTC", snapshot);
+        assertEquals(snapshot.size(), restoreEvents.size());
+        assertTrue(restoreEvents.stream().allMatch(event -> event instanceof OrderPlacedEvent));
+
+        List<UpdateEvent> restoredEvents = new ArrayList<>();
+        restored.engineEvents().subscribe(restoredEvents::add);
+        long seed = random.nextLong();
+        randomOrders(testSubject, new Random(seed), 5_001, 10_000);
+        randomOrders(restored, new Random(seed), 5_001, 10_000);
+
+        assertFalse(originalEvents.isEmpty());
+        assertEquals(originalEvents, restoredEvents);
+    }
+
+    private void placeOrder(long orderId, OrderType type, double price, double amount) {
+        testSubject.placeOrder(orderId, "BTC", Instant.MIN, type, BigDecimal.valueOf(price), BigDecimal.valueOf(amount));
+    }
+
+    private static void randomOrders(MatchingEngine engine, Random random, long fromId, long toId) {
+        for (long orderId = fromId; orderId <= toId; orderId++) {
+            if (random.nextInt(4) == 0) {
+                engine.cancel(1 + random.nextLong(orderId), "BTC", BigDecimal.valueOf(random.nextInt(3)));
+            } else {
+                engine.placeOrder(orderId,
+                                  "BTC",
+                                  Instant.ofEpochSecond(orderId),
+                                  random.nextBoolean() ? OrderType.BUY : OrderType.SELL,
+                                  BigDecimal.valueOf(9_950 + random.nextInt(100), 2),
+                                  BigDecimal.valueOf(1 + random.nextInt(500), 2));
+            }
+        }
+    }
 }
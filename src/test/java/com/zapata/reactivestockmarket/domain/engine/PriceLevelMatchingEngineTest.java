@@ -0,0 +1,73 @@
+package com.zapata.reactivestockmarket.domain.engine;
+
+import com.zapata.reactivestockmarket.cqrs.UpdateEvent;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import org.junit.jupiter.api.*;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs all {@link MatchingEngineTest} scenarios against {@link OrderBookType#PRICE_LEVEL} book with pooled orders
+ */
+class PriceLevelMatchingEngineTest extends MatchingEngineTest {
+
+    private static final BookSpec PRICE_LEVEL_SPEC = new BookSpec(OrderBookType.PRICE_LEVEL,
+                                                                  8,
+                                                                  8,
+                                                                  RoundingMode.UNNECESSARY,
+                                                                  16);
+
+    @Override
+    protected MatchingEngine createEngine() {
+        return new MatchingEngine(PRICE_LEVEL_SPEC);
+    }
+
+    @Test
+    public void sameEventsAsTreeBook() {
+        MatchingEngine tree = new MatchingEngine(new BookSpec(OrderBookType.TREE, 8));
+        MatchingEngine priceLevel = new MatchingEngine(PRICE_LEVEL_SPEC);
+
+        List<UpdateEvent> treeEvents = new ArrayList<>();
+        List<UpdateEvent> priceLevelEvents = new ArrayList<>();
+        tree.engineEvents().subscribe(treeEvents::add);
+        priceLevel.engineEvents().subscribe(priceLevelEvents::add);
+
+        Random random = new Random(42);
+        for (long orderId = 1; orderId <= 20_000; orderId++) {
+            if (random.nextInt(1_000) == 0) {
+                OrderType side = random.nextBoolean() ? OrderType.BUY : random.nextBoolean() ? OrderType.SELL : null;
+                BigDecimal minPrice = BigDecimal.valueOf(9_950 + random.nextInt(100), 2);
+                BigDecimal maxPrice = minPrice.add(BigDecimal.valueOf(random.nextInt(20), 2));
+                tree.massCancel("BTC", side, minPrice, maxPrice);
+                priceLevel.massCancel("BTC", side, minPrice, maxPrice);
+            } else if (random.nextInt(10) == 0) {
+                long amendedId = 1 + random.nextLong(orderId);
+                BigDecimal price = BigDecimal.valueOf(9_950 + random.nextInt(100), 2);
+                BigDecimal amount = BigDecimal.valueOf(1 + random.nextInt(500), 2);
+                tree.amend(amendedId, "BTC", price, amount);
+                priceLevel.amend(amendedId, "BTC", price, amount);
+            } else if (random.nextInt(4) == 0) {
+                long canceledId = 1 + random.nextLong(orderId);
+                BigDecimal newAmount = BigDecimal.valueOf(random.nextInt(3));
+                tree.cancel(canceledId, "BTC", newAmount);
+                priceLevel.cancel(canceledId, "BTC", newAmount);
+            } else {
+                OrderType type = random.nextBoolean() ? OrderType.BUY : OrderType.SELL;
+                BigDecimal price = BigDecimal.valueOf(9_950 + random.nextInt(100), 2);
+                BigDecimal amount = BigDecimal.valueOf(1 + random.nextInt(500), 2);
+                tree.placeOrder(orderId, "BTC", Instant.MIN, type, price, amount);
+                priceLevel.placeOrder(orderId, "BTC", Instant.MIN, type, price, amount);
+            }
+        }
+
+        assertFalse(treeEvents.isEmpty());
+        assertEquals(treeEvents, priceLevelEvents);
+    }
+}
@@ -0,0 +1,153 @@
+package com.zapata.reactivestockmarket.domain.feed;
+
+import com.zapata.reactivestockmarket.domain.dtos.Candle;
+import com.zapata.reactivestockmarket.domain.dtos.TradeStats;
+import com.zapata.reactivestockmarket.domain.engine.BookSpec;
+import com.zapata.reactivestockmarket.domain.engine.OrderBookType;
+import com.zapata.reactivestockmarket.domain.engine.events.OrderMatchedEvent;
+import com.zapata.reactivestockmarket.domain.engine.events.OrderPlacedEvent;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import org.junit.jupiter.api.*;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandleFeedTest {
+
+    private static final String ASSET = "BTC";
+    private static final long START = 1_700_000_000L - 1_700_000_000L % 3_600;
+
+    private CandleFeed feed;
+    private long nextOrderId;
+
+    @BeforeEach
+    public void setUp() {
+        feed = new CandleFeed(ASSET, new BookSpec(OrderBookType.PRICE_LEVEL, 2));
+        nextOrderId = 1;
+    }
+
+    @Test
+    public void aggregatesTradesOfOneBar() {
+        trade(START + 1, "100", "1");
+        trade(START + 2, "102.5", "3");
+        trade(START + 30, "99", "2");
+
+        List<Candle> candles = feed.candles(CandleInterval.MINUTE, 10);
+
+        assertEquals(1, candles.size());
+        Candle candle = candles.get(0);
+        assertEquals(Instant.ofEpochSecond(START), candle.start());
+        assertEquals("1m", candle.interval());
+        assertEquals(0, new BigDecimal("100").compareTo(candle.open()));
+        assertEquals(0, new BigDecimal("102.5").compareTo(candle.high()));
+        assertEquals(0, new BigDecimal("99").compareTo(candle.low()));
+        assertEquals(0, new BigDecimal("99").compareTo(candle.close()));
+        assertEquals(0, new BigDecimal("6").compareTo(candle.volume()));
+        //(100 * 1 + 102.5 * 3 + 99 * 2) / 6
+        assertEquals(new BigDecimal("100.92"), candle.vwap());
+        assertEquals(3, candle.trades());
+    }
+
+    @Test
+    public void rollsOverToNewBar() {
+        trade(START, "100", "1");
+        trade(START + 59, "101", "1");
+        trade(START + 60, "102", "1");
+        trade(START + 180, "103", "1");
+
+        List<Candle> minutes = feed.candles(CandleInterval.MINUTE, 10);
+        assertEquals(List.of(Instant.ofEpochSecond(START), Instant.ofEpochSecond(START + 60),
+                             Instant.ofEpochSecond(START + 180)),
+                     minutes.stream().map(Candle::start).toList());
+        assertEquals(0, new BigDecimal("101").compareTo(minutes.get(0).close()));
+        assertEquals(0, new BigDecimal("102").compareTo(minutes.get(1).open()));
+
+        List<Candle> latest = feed.candles(CandleInterval.MINUTE, 2);
+        assertEquals(Instant.ofEpochSecond(START + 60), latest.get(0).start());
+        assertEquals(Instant.ofEpochSecond(START + 180), latest.get(1).start());
+
+        List<Candle> hours = feed.candles(CandleInterval.HOUR, 10);
+        assertEquals(1, hours.size());
+        assertEquals(4, hours.get(0).trades());
+        assertEquals(0, new BigDecimal("103").compareTo(hours.get(0).high()));
+    }
+
+    @Test
+    public void overwritesBarsOlderThanCapacity() {
+        for (int i = 0; i < CandleFeed.CAPACITY + 10; i++) {
+            trade(START + i, "100", "1");
+        }
+
+        List<Candle> seconds = feed.candles(CandleInterval.SECOND, Integer.MAX_VALUE);
+
+        assertEquals(CandleFeed.CAPACITY, seconds.size());
+        assertEquals(Instant.ofEpochSecond(START + 10), seconds.get(0).start());
+        assertEquals(Instant.ofEpochSecond(START + CandleFeed.CAPACITY + 9), seconds.get(seconds.size() - 1).start());
+    }
+
+    @Test
+    public void countsTimestampThatGoesBackIntoCurrentBar() {
+        trade(START + 120, "100", "1");
+        trade(START + 5, "101", "1");
+
+        List<Candle> minutes = feed.candles(CandleInterval.MINUTE, 10);
+
+        assertEquals(1, minutes.size());
+        assertEquals(Instant.ofEpochSecond(START + 120), minutes.get(0).start());
+        assertEquals(2, minutes.get(0).trades());
+    }
+
+    @Test
+    public void statsCoverLast24Hours() {
+        trade(START, "90", "5");
+        trade(START + 24 * 3_600, "100", "1");
+        trade(START + 25 * 3_600 + 10, "110", "1");
+
+        TradeStats stats = feed.stats(START + 25 * 3_600 + 20);
+
+        assertEquals(0, new BigDecimal("110").compareTo(stats.lastPrice()));
+        assertEquals(Instant.ofEpochSecond(START + 25 * 3_600 + 10), stats.lastTradeTime());
+        assertEquals(0, new BigDecimal("2").compareTo(stats.volume24h()));
+        assertEquals(new BigDecimal("105.00"), stats.vwap24h());
+        assertEquals(2, stats.trades24h());
+    }
+
+    @Test
+    public void ignoresEventsOtherThanTrades() {
+        feed.accept(new OrderPlacedEvent(1, ASSET, Instant.ofEpochSecond(START), OrderType.BUY, new BigDecimal("100"),
+                                         BigDecimal.ONE));
+
+        assertTrue(feed.candles(CandleInterval.SECOND, 10).isEmpty());
+        assertNull(feed.current(CandleInterval.SECOND));
+        TradeStats stats = feed.stats(START);
+        assertNull(stats.lastPrice());
+        assertEquals(0, stats.trades24h());
+    }
+
+    @Test
+    public void streamsChangedCurrentBar() {
+        trade(START, "100", "1");
+
+        StepVerifier.create(feed.updates(CandleInterval.MINUTE))
+                    .expectNextMatches(candle -> candle.trades() == 1)
+                    .then(() -> trade(START + 1, "101", "1"))
+                    .expectNextMatches(candle -> candle.trades() == 2
+                            && new BigDecimal("101").compareTo(candle.close()) == 0)
+                    .thenCancel()
+                    .verify(Duration.ofSeconds(5));
+    }
+
+    private void trade(long second, String price, String amount) {
+        long restingId = nextOrderId++;
+        BigDecimal tradePrice = new BigDecimal(price);
+        BigDecimal tradeAmount = new BigDecimal(amount);
+        feed.accept(new OrderMatchedEvent(restingId, ASSET, Instant.ofEpochSecond(second), nextOrderId++,
+                                          OrderType.BUY, tradePrice, tradePrice, tradeAmount, tradeAmount,
+                                          BigDecimal.ZERO, true));
+    }
+}
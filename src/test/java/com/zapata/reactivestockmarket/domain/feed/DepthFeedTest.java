@@ -0,0 +1,129 @@
+package com.zapata.reactivestockmarket.domain.feed;
+
+import com.zapata.reactivestockmarket.domain.dtos.DepthLevel;
+import com.zapata.reactivestockmarket.domain.dtos.DepthUpdate;
+import com.zapata.reactivestockmarket.domain.engine.BookSpec;
+import com.zapata.reactivestockmarket.domain.engine.MatchingEngine;
+import com.zapata.reactivestockmarket.domain.engine.OrderBookType;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import org.junit.jupiter.api.*;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DepthFeedTest {
+
+    private static final String ASSET = "BTC";
+
+    private MatchingEngine engine;
+    private DepthFeed feed;
+    private long nextOrderId;
+
+    @BeforeEach
+    public void setUp() {
+        engine = new MatchingEngine(new BookSpec(OrderBookType.PRICE_LEVEL, 2));
+        feed = new DepthFeed(ASSET);
+        engine.engineEvents().subscribe(feed::accept);
+        nextOrderId = 1;
+    }
+
+    @Test
+    public void sendsSnapshotThenChangedLevels() {
+        place(OrderType.BUY, "100", "1");
+        long cancelable = place(OrderType.BUY, "99", "2");
+        place(OrderType.SELL, "101", "3");
+        awaitSequence(3);
+
+        StepVerifier.create(feed.updates())
+                    .expectNextMatches(update -> update.snapshot()
+                            && levelsEqual(update.bids(), "100", "1", "99", "2")
+                            && levelsEqual(update.asks(), "101", "3"))
+                    .then(() -> place(OrderType.SELL, "100", "0.25"))
+                    .expectNextMatches(update -> !update.snapshot()
+                            && levelsEqual(update.bids(), "100", "0.75")
+                            && update.asks().isEmpty())
+                    .then(() -> engine.cancelAll(cancelable, ASSET))
+                    .expectNextMatches(update -> levelsEqual(update.bids(), "99", "0")
+                            && update.sequence() == 5)
+                    .thenCancel()
+                    .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void conflatesChangesForSlowSubscriber() {
+        StepVerifier.create(feed.updates(), 1)
+                    .expectNextMatches(update -> update.snapshot() && update.bids().isEmpty())
+                    .then(() -> {
+                        for (int i = 0; i < 1_000; i++) {
+                            long orderId = place(OrderType.BUY, "100", "1");
+                            if (i % 2 == 0) {
+                                engine.cancelAll(orderId, ASSET);
+                            }
+                        }
+                        place(OrderType.SELL, "105", "1");
+                        awaitSequence(1_501);
+                    })
+                    .thenRequest(1)
+                    .expectNextMatches(update -> !update.snapshot()
+                            && update.sequence() == 1_501
+                            && levelsEqual(update.bids(), "100", "500")
+                            && levelsEqual(update.asks(), "105", "1"))
+                    .thenCancel()
+                    .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void sendsSnapshotToSubscriberBehindChangelog() {
+        StepVerifier.create(feed.updates(), 1)
+                    .expectNextMatches(DepthUpdate::snapshot)
+                    .then(() -> {
+                        for (int i = 0; i < 10_000; i++) {
+                            place(OrderType.SELL, String.valueOf(200 + i % 50), "1");
+                        }
+                        awaitSequence(10_000);
+                    })
+                    .thenRequest(1)
+                    .expectNextMatches(update -> update.snapshot()
+                            && update.bids().isEmpty()
+                            && update.asks().size() == 50
+                            && update.asks().get(0).price().compareTo(new BigDecimal("200")) == 0
+                            && update.asks().get(0).amount().compareTo(new BigDecimal("200")) == 0)
+                    .thenCancel()
+                    .verify(Duration.ofSeconds(5));
+    }
+
+    private long place(OrderType type, String price, String amount) {
+        long orderId = nextOrderId++;
+        engine.placeOrder(orderId, ASSET, Instant.now(), type, new BigDecimal(price), new BigDecimal(amount));
+        return orderId;
+    }
+
+    private void awaitSequence(long sequence) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (feed.sequence() < sequence) {
+            assertTrue(System.nanoTime() < deadline, "feed didn't apply events in time");
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * @param expected price and amount pairs
+     */
+    private static boolean levelsEqual(List<DepthLevel> levels, String... expected) {
+        if (levels.size() * 2 != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < levels.size(); i++) {
+            if (levels.get(i).price().compareTo(new BigDecimal(expected[2 * i])) != 0
+                    || levels.get(i).amount().compareTo(new BigDecimal(expected[2 * i + 1])) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
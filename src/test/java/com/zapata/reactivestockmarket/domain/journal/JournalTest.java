@@ -0,0 +1,189 @@
+package com.zapata.reactivestockmarket.domain.journal;
+
+import com.zapata.reactivestockmarket.MarketProperties;
+import com.zapata.reactivestockmarket.cqrs.EventJournal;
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+import com.zapata.reactivestockmarket.domain.events.AmendmentRequestedEvent;
+import com.zapata.reactivestockmarket.domain.events.CancellationRequestedEvent;
+import com.zapata.reactivestockmarket.domain.events.MassCancelRequestedEvent;
+import com.zapata.reactivestockmarket.domain.events.OrderAcceptedEvent;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<Journal> journals = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        journals.forEach(Journal::close);
+    }
+
+    @Test
+    public void replaysAppendedEvents() {
+        List<SourcingEvent> events = List.of(accepted(1, new BigDecimal("1.5"), new BigDecimal("100.25")),
+                                             accepted(2, new BigDecimal("12345678901234567890.1"), BigDecimal.TEN),
+                                             new CancellationRequestedEvent("BTC/EUR", UUID.randomUUID(), 1, false,
+                                                                            new BigDecimal("0.5")),
+                                             new AmendmentRequestedEvent("BTC/EUR", UUID.randomUUID(), 2,
+                                                                         new BigDecimal("101.25"),
+                                                                         new BigDecimal("0.75")),
+                                             new MassCancelRequestedEvent("BTC/EUR", UUID.randomUUID(), OrderType.BUY,
+                                                                          null, new BigDecimal("100.5")),
+                                             new MassCancelRequestedEvent("BTC/EUR", UUID.randomUUID(), null,
+                                                                          BigDecimal.ONE, null));
+        Journal journal = journal(FsyncPolicy.BATCH, 4096);
+        EventJournal btc = journal.open("BTC/EUR");
+        btc.replay(event -> fail("new journal must be empty"));
+        events.forEach(btc::append);
+        journal.close();
+
+        Journal reopened = journal(FsyncPolicy.BATCH, 4096);
+        assertEquals(List.of("BTC/EUR"), reopened.aggregateIds());
+        assertEquals(events, replay(reopened.open("BTC/EUR")));
+    }
+
+    @Test
+    public void appendsOverRegionBoundaries() {
+        Journal journal = journal(FsyncPolicy.NONE, 256);
+        EventJournal btc = journal.open("BTC/EUR");
+        btc.replay(event -> fail("new journal must be empty"));
+        for (int i = 1; i <= 100; i++) {
+            btc.append(accepted(i, BigDecimal.ONE, BigDecimal.valueOf(i)));
+        }
+        journal.close();
+
+        List<SourcingEvent> replayed = replay(journal(FsyncPolicy.NONE, 256).open("BTC/EUR"));
+        assertEquals(100, replayed.size());
+        assertEquals(100, ((OrderAcceptedEvent) replayed.get(99)).orderId());
+    }
+
+    @Test
+    public void discardsTornTail() throws IOException {
+        Journal journal = journal(FsyncPolicy.BATCH, 4096);
+        EventJournal btc = journal.open("BTC/EUR");
+        btc.replay(event -> fail("new journal must be empty"));
+        btc.append(accepted(1, BigDecimal.ONE, BigDecimal.TEN));
+        btc.append(accepted(2, BigDecimal.ONE, BigDecimal.TEN));
+        btc.append(accepted(3, BigDecimal.ONE, BigDecimal.TEN));
+        journal.close();
+
+        //corrupt payload of the second record, simulates write that didn't reach the disk before crash
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve("BTC%2FEUR.journal").toFile(), "rw")) {
+            long secondRecord = file.readInt() + 8;
+            file.seek(secondRecord + 20);
+            file.writeByte(0x7f);
+        }
+
+        Journal reopened = journal(FsyncPolicy.BATCH, 4096);
+        EventJournal recovered = reopened.open("BTC/EUR");
+        assertEquals(List.of(1L), orderIds(replay(recovered)));
+        recovered.append(accepted(4, BigDecimal.ONE, BigDecimal.TEN));
+        reopened.close();
+
+        assertEquals(List.of(1L, 4L), orderIds(replay(journal(FsyncPolicy.BATCH, 4096).open("BTC/EUR"))));
+    }
+
+    @Test
+    public void acknowledgesAfterForce() throws InterruptedException {
+        Journal journal = journal(FsyncPolicy.BATCH, 4096);
+        EventJournal btc = journal.open("BTC");
+        btc.replay(event -> fail("new journal must be empty"));
+        CountDownLatch acknowledged = new CountDownLatch(10);
+        for (int i = 1; i <= 10; i++) {
+            btc.append(accepted(i, BigDecimal.ONE, BigDecimal.TEN));
+            btc.whenDurable(acknowledged::countDown);
+        }
+
+        assertTrue(acknowledged.await(5, TimeUnit.SECONDS));
+        JournalStats stats = journal.stats();
+        assertEquals(10, stats.appendedEvents());
+        assertTrue(stats.syncs() >= 1 && stats.syncs() <= 10);
+    }
+
+    @Test
+    public void replaysCommandIdsWithEvents() {
+        UUID commandId = UUID.randomUUID();
+        Journal journal = journal(FsyncPolicy.NONE, 4096);
+        EventJournal btc = journal.open("BTC");
+        btc.replay(event -> fail("new journal must be empty"));
+        btc.append(commandId, accepted(1, BigDecimal.ONE, BigDecimal.TEN));
+        btc.append(accepted(2, BigDecimal.ONE, BigDecimal.TEN));
+        journal.close();
+
+        List<UUID> commandIds = new ArrayList<>();
+        List<SourcingEvent> events = new ArrayList<>();
+        journal(FsyncPolicy.NONE, 4096).open("BTC").replay(0, (id, event) -> {
+            commandIds.add(id);
+            events.add(event);
+        });
+        assertEquals(Arrays.asList(commandId, null), commandIds);
+        assertEquals(List.of(1L, 2L), orderIds(events));
+    }
+
+    @Test
+    public void readsOnlyDurableRecords() {
+        Journal journal = new Journal(new MarketProperties(null, null, null, new MarketProperties.JournalProperties(
+                true, directory.toString(), FsyncPolicy.INTERVAL, Duration.ofHours(1), 4096, null), null, null, null,
+                                                           null, null));
+        journals.add(journal);
+        EventJournal btc = journal.open("BTC");
+        btc.replay(event -> fail("new journal must be empty"));
+        btc.append(UUID.randomUUID(), accepted(1, BigDecimal.ONE, BigDecimal.TEN));
+
+        //appended, not forced before the interval elapses
+        assertTrue(journal.head("BTC") > 0);
+        assertEquals(0, journal.shippableHead("BTC"));
+        assertEquals(0, journal.read("BTC", 0, ByteBuffer.allocate(4096)));
+    }
+
+    @Test
+    public void disabledJournalKeepsNothing() {
+        Journal journal = new Journal(MarketProperties.DEFAULT);
+        journals.add(journal);
+        assertSame(EventJournal.NONE, journal.open("BTC"));
+        assertTrue(journal.aggregateIds().isEmpty());
+    }
+
+    private Journal journal(FsyncPolicy fsyncPolicy, int regionSize) {
+        Journal journal = new Journal(new MarketProperties(null, null, null, new MarketProperties.JournalProperties(
+                true, directory.toString(), fsyncPolicy, null, regionSize, null), null, null, null, null, null));
+        journals.add(journal);
+        return journal;
+    }
+
+    private static List<SourcingEvent> replay(EventJournal journal) {
+        List<SourcingEvent> events = new ArrayList<>();
+        journal.replay(events::add);
+        return events;
+    }
+
+    private static List<Long> orderIds(List<SourcingEvent> events) {
+        return events.stream().map(event -> ((OrderAcceptedEvent) event).orderId()).toList();
+    }
+
+    private static OrderAcceptedEvent accepted(long orderId, BigDecimal amount, BigDecimal price) {
+        return new OrderAcceptedEvent("BTC/EUR", UUID.randomUUID(), orderId, OrderType.BUY, amount, price,
+                                      Instant.ofEpochSecond(1_700_000_000L, 123_456_789));
+    }
+}
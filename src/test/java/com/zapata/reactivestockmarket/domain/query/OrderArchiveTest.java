@@ -0,0 +1,114 @@
+package com.zapata.reactivestockmarket.domain.query;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderArchiveTest {
+
+    @TempDir
+    Path directory;
+
+    private OrderArchive archive;
+
+    @BeforeEach
+    public void setUp() {
+        archive = new OrderArchive(directory, 4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        archive.close();
+    }
+
+    @Test
+    public void readsArchivedOrders() throws IOException {
+        OrderEntry big = new OrderEntry(7, Instant.MIN, "BTC/EUR", new BigDecimal("1E+3"),
+                                        new BigDecimal("123456789012345678901234567890.5"), OrderType.BUY,
+                                        List.of(new OrderTradeEntry(8, BigDecimal.ONE, new BigDecimal("1E+3"))),
+                                        BigDecimal.ZERO);
+        archive.append(List.of(order(3, 0), big, order(5, 3)));
+
+        assertOrder(order(3, 0), archive.get(3));
+        assertOrder(order(5, 3), archive.get(5));
+        assertOrder(big, archive.get(7));
+        assertNull(archive.get(4));
+        assertNull(archive.get(8));
+        assertEquals(3, archive.archivedOrders());
+        assertEquals(1, archive.indexRuns());
+    }
+
+    @Test
+    public void mergesIndexRunsAndKeepsNewestCopy() throws IOException {
+        int batches = 600;
+        for (int run = 0; run < batches; run++) {
+            //runs overlap, the last order of each run is archived again by the next one with one more trade
+            List<OrderEntry> orders = new ArrayList<>();
+            for (long orderId = run * 10L; orderId <= run * 10L + 10; orderId++) {
+                orders.add(order(orderId, orderId == run * 10L && run > 0 ? 2 : 1));
+            }
+            archive.append(orders);
+        }
+
+        //runs are at least twice as large as the next newer one
+        assertTrue(archive.indexRuns() <= 10, archive.indexRuns() + " index runs");
+        LongStream.rangeClosed(0, batches * 10L).forEach(orderId -> {
+            int trades = orderId % 10 == 0 && orderId > 0 && orderId < batches * 10L ? 2 : 1;
+            assertOrder(order(orderId, trades), archive.get(orderId));
+        });
+    }
+
+    @Test
+    public void servesRecentReadsFromCache() throws IOException {
+        archive.append(LongStream.range(0, 10).mapToObj(orderId -> order(orderId, 1)).toList());
+
+        archive.get(1);
+        archive.get(1);
+        archive.get(2);
+        assertEquals(1, archive.cacheHits());
+        assertEquals(2, archive.cacheMisses());
+
+        //cache keeps 4 orders, 1 is evicted as the least recently read
+        LongStream.range(3, 7).forEach(archive::get);
+        archive.get(1);
+        assertEquals(1, archive.cacheHits());
+        assertEquals(7, archive.cacheMisses());
+    }
+
+    @Test
+    public void disabledArchiveHasNothing() {
+        assertNull(OrderArchive.DISABLED.get(1));
+        assertEquals(0, OrderArchive.DISABLED.archivedOrders());
+    }
+
+    private static OrderEntry order(long orderId, int trades) {
+        List<OrderTradeEntry> entries = new ArrayList<>();
+        for (int i = 0; i < trades; i++) {
+            entries.add(new OrderTradeEntry(orderId + 1000 + i, BigDecimal.ONE, BigDecimal.valueOf(10000 + i, 2)));
+        }
+        return new OrderEntry(orderId, Instant.ofEpochSecond(1_700_000_000L, orderId), "BTC",
+                              BigDecimal.valueOf(10000, 2), BigDecimal.valueOf(trades), OrderType.SELL, entries,
+                              BigDecimal.ZERO);
+    }
+
+    private static void assertOrder(OrderEntry expected, OrderEntry actual) {
+        assertNotNull(actual);
+        assertEquals(expected.orderId(), actual.orderId());
+        assertEquals(expected.entryTimestamp(), actual.entryTimestamp());
+        assertEquals(expected.asset(), actual.asset());
+        assertEquals(expected.price(), actual.price());
+        assertEquals(expected.amount(), actual.amount());
+        assertEquals(expected.direction(), actual.direction());
+        assertEquals(expected.trades(), actual.trades());
+        assertEquals(expected.pendingAmount(), actual.pendingAmount());
+    }
+}
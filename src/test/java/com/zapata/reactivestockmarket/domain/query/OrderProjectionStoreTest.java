@@ -0,0 +1,62 @@
+package com.zapata.reactivestockmarket.domain.query;
+
+import com.zapata.reactivestockmarket.domain.OrderIdGenerator;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderProjectionStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private OrderArchive archive;
+    private final OrderProjectionStore store = new OrderProjectionStore();
+
+    @BeforeEach
+    public void setUp() {
+        archive = new OrderArchive(directory, 4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        archive.close();
+    }
+
+    @Test
+    public void awaitedOrderMayBeArchivedOnlyBelowArchivedIdsOfItsShard() throws IOException {
+        OrderIdGenerator orderIds = new OrderIdGenerator(OrderIdGenerator.DEFAULT_SHARD_BITS);
+        int low = 1;
+        int high = 40;
+        //books of both shards interleave, the high shard's ids are far above all ids of the low one
+        List<Long> lowIds = new ArrayList<>();
+        List<Long> highIds = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            lowIds.add(orderIds.next(low));
+            highIds.add(orderIds.next(high));
+        }
+        //only the first half of the high shard becomes terminal and is archived
+        for (int i = 0; i < 10; i++) {
+            store.addIfAbsent(highIds.get(i), Instant.EPOCH, "ETH", OrderType.SELL, BigDecimal.ONE, BigDecimal.ONE,
+                              BigDecimal.ZERO, null);
+        }
+        assertEquals(10, store.archive(archive, Duration.ZERO, 0));
+
+        for (long orderId : lowIds) {
+            assertFalse(store.await(orderId, order -> fail()).mayBeArchived(), () -> "order " + orderId);
+        }
+        assertTrue(store.await(highIds.get(5), order -> fail()).mayBeArchived());
+        assertTrue(store.await(highIds.get(9), order -> fail()).mayBeArchived());
+        assertFalse(store.await(highIds.get(10), order -> fail()).mayBeArchived());
+        assertEquals(23, store.awaitingCount());
+    }
+}
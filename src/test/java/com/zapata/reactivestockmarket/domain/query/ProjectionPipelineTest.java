@@ -0,0 +1,195 @@
+package com.zapata.reactivestockmarket.domain.query;
+
+import com.zapata.reactivestockmarket.cqrs.Event;
+import com.zapata.reactivestockmarket.cqrs.EventFanout;
+import com.zapata.reactivestockmarket.cqrs.OverflowPolicy;
+import org.junit.jupiter.api.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProjectionPipelineTest {
+
+    private static final int EVENTS = 10_000;
+    private static final int MAX_BATCH_SIZE = 8;
+
+    private final Map<String, List<Integer>> applied = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> threads = new ConcurrentHashMap<>();
+    private ProjectionPipeline pipeline;
+
+    @AfterEach
+    public void tearDown() {
+        pipeline.close();
+    }
+
+    @Test
+    public void appliesEventsOfEachBookInOrderOnOneWorker() {
+        pipeline = new ProjectionPipeline(this::record, 2, MAX_BATCH_SIZE);
+        List<String> assets = List.of("BTC", "ETH", "SOL", "ADA");
+        List<Thread> producers = assets.stream().map(asset -> {
+            EventFanout<Event> events = new EventFanout<>(16);
+            pipeline.project(asset, events.events(OverflowPolicy.BLOCK));
+            return new Thread(() -> IntStream.range(0, EVENTS).forEach(i -> events.publish(new Numbered(asset, i))));
+        }).toList();
+
+        producers.forEach(Thread::start);
+        awaitApplied(assets.size() * EVENTS);
+
+        for (String asset : assets) {
+            assertEquals(IntStream.range(0, EVENTS).boxed().toList(), applied.get(asset));
+            assertEquals(1, threads.get(asset).size());
+        }
+        ProjectionPipeline.PipelineStats stats = pipeline.stats();
+        assertEquals(assets.size() * EVENTS, stats.appliedEvents());
+        assertEquals(0, stats.lagEvents());
+        assertTrue(stats.maxBatch() <= MAX_BATCH_SIZE);
+        assertTrue(stats.batches() >= assets.size() * EVENTS / MAX_BATCH_SIZE);
+    }
+
+    @Test
+    public void batchesEventsQueuedWhileWorkerIsBusy() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        pipeline = new ProjectionPipeline(event -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            record(event);
+        }, 1, MAX_BATCH_SIZE);
+        EventFanout<Event> events = new EventFanout<>(16);
+        pipeline.project("BTC", events.events(OverflowPolicy.BLOCK));
+
+        //the first event holds the worker, the rest queue up behind it
+        IntStream.range(0, 1 + MAX_BATCH_SIZE).forEach(i -> events.publish(new Numbered("BTC", i)));
+        assertEquals(1 + MAX_BATCH_SIZE, pipeline.stats().lagEvents());
+        release.countDown();
+        awaitApplied(1 + MAX_BATCH_SIZE);
+
+        ProjectionPipeline.PipelineStats stats = pipeline.stats();
+        assertEquals(2, stats.batches());
+        assertEquals(MAX_BATCH_SIZE, stats.maxBatch());
+        assertEquals(0, stats.lagEvents());
+    }
+
+    @Test
+    public void batchLimitGrowsWithBacklogAndShrinksWhenBookKeepsUp() {
+        int maxBatchSize = 64;
+        Map<Integer, CountDownLatch> holds = new ConcurrentHashMap<>();
+        pipeline = new ProjectionPipeline(event -> {
+            CountDownLatch hold = holds.get(((Numbered) event).number());
+            try {
+                if (hold != null) {
+                    hold.await(5, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            record(event);
+        }, 1, maxBatchSize);
+        EventFanout<Event> events = new EventFanout<>(16);
+        pipeline.project("BTC", events.events(OverflowPolicy.BLOCK));
+
+        //backlog of 176 events is applied in batches of 16, 32, 64 and 64
+        holds.put(0, new CountDownLatch(1));
+        IntStream.range(0, 176).forEach(i -> events.publish(new Numbered("BTC", i)));
+        holds.get(0).countDown();
+        awaitApplied(176);
+        assertEquals(4, pipeline.stats().batches());
+        assertEquals(maxBatchSize, pipeline.stats().maxBatch());
+
+        //single events halve the limit back to 16
+        events.publish(new Numbered("BTC", 176));
+        awaitApplied(177);
+        events.publish(new Numbered("BTC", 177));
+        awaitApplied(178);
+
+        //backlog of 40 events is applied in batches of 16 and 24
+        holds.put(178, new CountDownLatch(1));
+        IntStream.range(178, 218).forEach(i -> events.publish(new Numbered("BTC", i)));
+        holds.get(178).countDown();
+        awaitApplied(218);
+        assertEquals(4 + 2 + 2, pipeline.stats().batches());
+        assertEquals(IntStream.range(0, 218).boxed().toList(), applied.get("BTC"));
+    }
+
+    @Test
+    public void bookWaitsForRoomInFullQueue() {
+        CountDownLatch release = new CountDownLatch(1);
+        pipeline = new ProjectionPipeline(event -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            record(event);
+        }, 1, 1);
+        EventFanout<Event> events = new EventFanout<>(16);
+        pipeline.project("BTC", events.events(OverflowPolicy.BLOCK));
+
+        //queue of max batch size 1 holds a few events, the worker holds one more
+        int count = 100;
+        Thread producer = new Thread(() -> IntStream.range(0, count)
+                                                    .forEach(i -> events.publish(new Numbered("BTC", i))));
+        producer.start();
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (producer.getState() != Thread.State.TIMED_WAITING) {
+            assertTrue(System.nanoTime() < deadline, "book hasn't been held back");
+            Thread.onSpinWait();
+        }
+        assertTrue(pipeline.stats().lagEvents() < count);
+        release.countDown();
+        awaitApplied(count);
+
+        assertEquals(IntStream.range(0, count).boxed().toList(), applied.get("BTC"));
+        assertTrue(pipeline.stats().blockedOffers() > 0);
+    }
+
+    @Test
+    public void failedEventDoesNotStopBook() {
+        pipeline = new ProjectionPipeline(event -> {
+            if (((Numbered) event).number() == 1) {
+                throw new IllegalStateException("Broken event");
+            }
+            record(event);
+        }, 1, MAX_BATCH_SIZE);
+        EventFanout<Event> events = new EventFanout<>(16);
+        pipeline.project("BTC", events.events(OverflowPolicy.BLOCK));
+
+        IntStream.range(0, 3).forEach(i -> events.publish(new Numbered("BTC", i)));
+        awaitApplied(2);
+
+        assertEquals(List.of(0, 2), applied.get("BTC"));
+    }
+
+    private void record(Event event) {
+        Numbered numbered = (Numbered) event;
+        applied.computeIfAbsent(numbered.aggregateId(), k -> Collections.synchronizedList(new ArrayList<>()))
+               .add(numbered.number());
+        threads.computeIfAbsent(numbered.aggregateId(), k -> ConcurrentHashMap.newKeySet())
+               .add(Thread.currentThread().getName());
+    }
+
+    private void awaitApplied(int count) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        //counters are updated after the events of a batch are applied
+        while (applied.values().stream().mapToInt(List::size).sum() < count
+                || pipeline.stats().appliedEvents() < count) {
+            assertTrue(System.nanoTime() < deadline, "events haven't been applied");
+            Thread.onSpinWait();
+        }
+    }
+
+    private record Numbered(String aggregateId, int number) implements Event {
+    }
+}
@@ -0,0 +1,131 @@
+package com.zapata.reactivestockmarket.gateway;
+
+import com.zapata.reactivestockmarket.cqrs.Command;
+import com.zapata.reactivestockmarket.domain.command.AmendOrderCommand;
+import com.zapata.reactivestockmarket.domain.command.CancelOrderCommand;
+import com.zapata.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.zapata.reactivestockmarket.domain.dtos.ExecutionReport;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.*;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderEntryCodecTest {
+
+    private static final long SESSION_ID = 42;
+
+    private final OrderEntryCodec codec = new OrderEntryCodec(SESSION_ID);
+
+    @Test
+    public void decodesNewOrder() {
+        ByteBuf frame = frame(OrderEntryCodec.encodeNewOrder(Unpooled.buffer(), 7, "BTC", OrderType.SELL,
+                                                             new BigDecimal("43251.50"), new BigDecimal("0.25")));
+
+        assertEquals(OrderEntryCodec.NEW_ORDER_LENGTH, frame.readableBytes());
+        MakeOrderCommand command = (MakeOrderCommand) codec.decode(frame);
+
+        assertEquals("BTC", command.aggregateId());
+        assertEquals(new UUID(SESSION_ID, 7), command.commandId());
+        assertEquals(7, OrderEntryCodec.clientId(command.commandId()));
+        assertEquals(OrderType.SELL, command.type());
+        assertEquals(new BigDecimal("43251.50"), command.price());
+        assertEquals(new BigDecimal("0.25"), command.amount());
+        assertEquals(0, frame.readableBytes());
+    }
+
+    @Test
+    public void decodesCancelAndAmend() {
+        CancelOrderCommand cancel = (CancelOrderCommand) codec.decode(
+                frame(OrderEntryCodec.encodeCancel(Unpooled.buffer(), 8, "ETH", 1001)));
+        assertEquals("ETH", cancel.aggregateId());
+        assertEquals(1001, cancel.orderId());
+        assertTrue(cancel.cancelAll());
+
+        AmendOrderCommand amend = (AmendOrderCommand) codec.decode(
+                frame(OrderEntryCodec.encodeAmend(Unpooled.buffer(), 9, "ETH", 1002, null, new BigDecimal("1.5"))));
+        assertEquals("ETH", amend.aggregateId());
+        assertEquals(new UUID(SESSION_ID, 9), amend.commandId());
+        assertEquals(1002, amend.orderId());
+        assertNull(amend.newPrice());
+        assertEquals(new BigDecimal("1.5"), amend.newAmount());
+    }
+
+    @Test
+    public void reusesDecodedAsset() {
+        Command first = codec.decode(frame(OrderEntryCodec.encodeCancel(Unpooled.buffer(), 1, "SOL", 1)));
+        Command second = codec.decode(frame(OrderEntryCodec.encodeCancel(Unpooled.buffer(), 2, "SOL", 2)));
+
+        assertSame(first.aggregateId(), second.aggregateId());
+    }
+
+    @Test
+    public void rejectsMalformedFrames() {
+        ByteBuf unknown = Unpooled.buffer().writeByte('X').writeLong(5);
+        assertEquals(5, OrderEntryCodec.peekClientId(unknown));
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(unknown));
+
+        ByteBuf truncated = frame(OrderEntryCodec.encodeCancel(Unpooled.buffer(), 1, "SOL", 1));
+        truncated.writerIndex(truncated.writerIndex() - 1);
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(truncated));
+
+        ByteBuf noPrice = frame(OrderEntryCodec.encodeNewOrder(Unpooled.buffer(), 1, "SOL", OrderType.BUY, null,
+                                                               BigDecimal.ONE));
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(noPrice));
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> OrderEntryCodec.encodeCancel(Unpooled.buffer(), 1, "SEVENTEEN_LETTERS", 1));
+    }
+
+    @Test
+    public void encodesResponses() {
+        ByteBufAllocator alloc = ByteBufAllocator.DEFAULT;
+
+        ByteBuf ack = OrderEntryCodec.encodeAck(alloc, 3, 1001, 123_456_789L);
+        assertEquals(OrderEntryCodec.ACK_LENGTH, ack.readUnsignedShort());
+        assertEquals(OrderEntryCodec.ACK, ack.readByte());
+        assertEquals(3, ack.readLong());
+        assertEquals(1001, ack.readLong());
+        assertEquals(123_456_789L, ack.readLong());
+        ack.release();
+
+        ByteBuf reject = OrderEntryCodec.encodeReject(alloc, 4, "Price exceeds supported precision!");
+        int length = reject.readUnsignedShort();
+        assertEquals(length, reject.readableBytes());
+        assertEquals(OrderEntryCodec.REJECT, reject.readByte());
+        assertEquals(4, reject.readLong());
+        assertEquals("Price exceeds supported precision!",
+                     reject.readCharSequence(reject.readUnsignedShort(), StandardCharsets.UTF_8).toString());
+        reject.release();
+
+        ByteBuf execution = OrderEntryCodec.encodeExecution(alloc, new ExecutionReport(
+                "BTC", new UUID(SESSION_ID, 5), 1001, ExecutionReport.Type.TRADE, 1002, new BigDecimal("100.5"),
+                new BigDecimal("0.25"), BigDecimal.ZERO));
+        assertEquals(OrderEntryCodec.EXECUTION_LENGTH, execution.readUnsignedShort());
+        assertEquals(OrderEntryCodec.EXECUTION_LENGTH, execution.readableBytes());
+        assertEquals(OrderEntryCodec.EXECUTION, execution.readByte());
+        assertEquals(5, execution.readLong());
+        assertEquals(1001, execution.readLong());
+        assertEquals('T', execution.readByte());
+        assertEquals(1002, execution.readLong());
+        assertEquals(new BigDecimal("100.5"), OrderEntryCodec.readDecimal(execution));
+        assertEquals(new BigDecimal("0.25"), OrderEntryCodec.readDecimal(execution));
+        assertEquals(BigDecimal.ZERO, OrderEntryCodec.readDecimal(execution));
+        execution.release();
+    }
+
+    /**
+     * Strips the length field like the frame decoder of the server does
+     */
+    private static ByteBuf frame(ByteBuf framed) {
+        int length = framed.readUnsignedShort();
+        assertEquals(length, framed.readableBytes());
+        return framed;
+    }
+}
@@ -0,0 +1,109 @@
+package com.zapata.reactivestockmarket.gateway;
+
+import com.zapata.reactivestockmarket.MarketProperties;
+import com.zapata.reactivestockmarket.domain.BookAggregateRepository;
+import com.zapata.reactivestockmarket.domain.bus.CommandBus;
+import com.zapata.reactivestockmarket.domain.journal.Journal;
+import com.zapata.reactivestockmarket.domain.query.BookQueryRepository;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.*;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderEntryServerTest {
+
+    private BookQueryRepository queryRepository;
+    private CommandBus commandBus;
+    private OrderEntryServer server;
+
+    @BeforeEach
+    public void setUp() {
+        MarketProperties properties = new MarketProperties(null, null, null, null, null, null,
+                                                           new MarketProperties.GatewayProperties(true, null, 0,
+                                                                                                  null, null, null,
+                                                                                                  null),
+                                                           null, null);
+        queryRepository = new BookQueryRepository(properties);
+        BookAggregateRepository aggregateRepository = new BookAggregateRepository(queryRepository, properties,
+                                                                                  new Journal(properties));
+        commandBus = new CommandBus(aggregateRepository, properties);
+        server = new OrderEntryServer(commandBus, aggregateRepository, properties);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop();
+        commandBus.destroy();
+        queryRepository.close();
+    }
+
+    @Test
+    public void acknowledgesPipelinedRequestsAndReportsTrades() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.port())) {
+            socket.setSoTimeout(10_000);
+            //all requests are written before the first response is read
+            ByteBuf requests = Unpooled.buffer();
+            OrderEntryCodec.encodeNewOrder(requests, 1, "BTC", OrderType.SELL, new BigDecimal("100"),
+                                           new BigDecimal("2"));
+            OrderEntryCodec.encodeNewOrder(requests, 2, "BTC", OrderType.BUY, new BigDecimal("100"),
+                                           BigDecimal.ONE);
+            OrderEntryCodec.encodeNewOrder(requests, 3, "BTC", OrderType.BUY, new BigDecimal("-1"),
+                                           BigDecimal.ONE);
+            requests.writeShort(9).writeByte('X').writeLong(4);
+            OutputStream out = socket.getOutputStream();
+            out.write(requests.array(), requests.arrayOffset(), requests.readableBytes());
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            Map<Long, Long> acks = new HashMap<>();
+            Map<Long, String> rejects = new HashMap<>();
+            Map<Long, long[]> executions = new HashMap<>();
+            Map<Long, BigDecimal> remaining = new HashMap<>();
+            //2 acks, 2 rejects and a trade report of each side
+            for (int i = 0; i < 6; i++) {
+                int length = in.readUnsignedShort();
+                byte[] body = new byte[length];
+                in.readFully(body);
+                ByteBuf frame = Unpooled.wrappedBuffer(body);
+                byte type = frame.readByte();
+                long clientId = frame.readLong();
+                switch (type) {
+                    case OrderEntryCodec.ACK -> acks.put(clientId, frame.readLong());
+                    case OrderEntryCodec.REJECT -> rejects.put(clientId, frame.readCharSequence(
+                            frame.readUnsignedShort(), StandardCharsets.UTF_8).toString());
+                    case OrderEntryCodec.EXECUTION -> {
+                        long orderId = frame.readLong();
+                        assertEquals('T', frame.readByte());
+                        executions.put(clientId, new long[]{orderId, frame.readLong()});
+                        OrderEntryCodec.readDecimal(frame);
+                        OrderEntryCodec.readDecimal(frame);
+                        remaining.put(clientId, OrderEntryCodec.readDecimal(frame));
+                    }
+                    default -> fail("Unexpected message type " + type);
+                }
+            }
+
+            assertEquals(2, acks.size());
+            assertEquals("Amount/Price needs to be larger then zero!", rejects.get(3L));
+            assertEquals("Unknown message type 88!", rejects.get(4L));
+            long sellId = acks.get(1L);
+            long buyId = acks.get(2L);
+            assertArrayEquals(new long[]{sellId, buyId}, executions.get(1L));
+            assertArrayEquals(new long[]{buyId, sellId}, executions.get(2L));
+            assertEquals(0, BigDecimal.ONE.compareTo(remaining.get(1L)));
+            assertEquals(0, remaining.get(2L).signum());
+        }
+        assertEquals(1, server.connections());
+    }
+}
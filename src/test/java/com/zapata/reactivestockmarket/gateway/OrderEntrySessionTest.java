@@ -0,0 +1,69 @@
+package com.zapata.reactivestockmarket.gateway;
+
+import com.zapata.reactivestockmarket.domain.ExecutionReports;
+import com.zapata.reactivestockmarket.domain.dtos.ExecutionReport;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderEntrySessionTest {
+
+    private static final int REPORT_BUFFER = 8;
+
+    private final OrderEntrySession session = new OrderEntrySession(42, REPORT_BUFFER, null,
+                                                                    new ExecutionReports());
+
+    @Test
+    public void commandIdCarriesSessionAndRequest() {
+        UUID commandId = session.commandId(7);
+
+        assertEquals(42, commandId.getMostSignificantBits());
+        assertEquals(7, OrderEntrySession.requestId(commandId));
+    }
+
+    @Test
+    public void connectionThatDoesNotKeepUpIsClosed() {
+        Disposable connection = Disposables.single();
+        session.attach(connection);
+
+        //nobody drains the reports, the buffer fills up
+        int accepted = 0;
+        while (session.onExecution(report(accepted))) {
+            accepted++;
+            assertTrue(accepted <= REPORT_BUFFER, "reports of slow connection must be bounded");
+        }
+
+        assertTrue(connection.isDisposed());
+        assertFalse(session.onExecution(report(accepted)));
+        //queued reports are still delivered before the stream completes
+        StepVerifier.create(session.reports())
+                    .expectNextCount(accepted)
+                    .expectComplete()
+                    .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void closedSessionRefusesReports() {
+        StepVerifier.create(session.reports())
+                    .then(() -> {
+                        assertTrue(session.onExecution(report(1)));
+                        session.close();
+                        assertFalse(session.onExecution(report(2)));
+                    })
+                    .expectNextMatches(report -> report.orderId() == 1)
+                    .expectComplete()
+                    .verify(Duration.ofSeconds(5));
+    }
+
+    private ExecutionReport report(long orderId) {
+        return new ExecutionReport("BTC", session.commandId(orderId), orderId, ExecutionReport.Type.TRADE, 0,
+                                   BigDecimal.TEN, BigDecimal.ONE, BigDecimal.ZERO);
+    }
+}
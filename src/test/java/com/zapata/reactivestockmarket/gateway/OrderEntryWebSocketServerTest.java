@@ -0,0 +1,115 @@
+package com.zapata.reactivestockmarket.gateway;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zapata.reactivestockmarket.MarketProperties;
+import com.zapata.reactivestockmarket.domain.BookAggregateRepository;
+import com.zapata.reactivestockmarket.domain.bus.CommandBus;
+import com.zapata.reactivestockmarket.domain.dtos.ExecutionReport;
+import com.zapata.reactivestockmarket.domain.dtos.SessionMessage;
+import com.zapata.reactivestockmarket.domain.journal.Journal;
+import com.zapata.reactivestockmarket.domain.query.BookQueryRepository;
+import org.junit.jupiter.api.*;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderEntryWebSocketServerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private BookQueryRepository queryRepository;
+    private CommandBus commandBus;
+    private OrderEntryWebSocketServer server;
+
+    @BeforeEach
+    public void setUp() {
+        MarketProperties properties = new MarketProperties(null, null, null, null, null, null,
+                                                           new MarketProperties.GatewayProperties(null, null, null,
+                                                                                                  null, null, true,
+                                                                                                  0),
+                                                           null, null);
+        queryRepository = new BookQueryRepository(properties);
+        BookAggregateRepository aggregateRepository = new BookAggregateRepository(queryRepository, properties,
+                                                                                  new Journal(properties));
+        commandBus = new CommandBus(aggregateRepository, properties);
+        server = new OrderEntryWebSocketServer(commandBus, aggregateRepository, queryRepository, objectMapper,
+                                               properties);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.stop();
+        commandBus.destroy();
+        queryRepository.close();
+    }
+
+    @Test
+    public void pushesAcknowledgementsAndTradesOfSessionOrders() {
+        List<String> requests = List.of(
+                place(1, "SELL", "100", "2"),
+                place(2, "BUY", "100", "1"),
+                place(3, "BUY", "-1", "1"),
+                "not a request");
+
+        List<SessionMessage> messages = HttpClient.create()
+                                                  .websocket()
+                                                  .uri("ws://127.0.0.1:" + server.port()
+                                                               + OrderEntryWebSocketServer.PATH)
+                                                  .handle((in, out) -> out.sendString(Flux.fromIterable(requests))
+                                                                          .then()
+                                                                          .thenMany(in.receive().asString()))
+                                                  .map(this::read)
+                                                  .take(6)
+                                                  .collectList()
+                                                  .block(Duration.ofSeconds(10));
+
+        assertNotNull(messages);
+        Map<Long, SessionMessage> responses = messages.stream()
+                                                      .filter(m -> m.type() != SessionMessage.Type.EXECUTION)
+                                                      .collect(Collectors.toMap(SessionMessage::requestId,
+                                                                                Function.identity()));
+        Map<Long, SessionMessage> executions = messages.stream()
+                                                       .filter(m -> m.type() == SessionMessage.Type.EXECUTION)
+                                                       .collect(Collectors.toMap(SessionMessage::requestId,
+                                                                                 Function.identity()));
+        assertEquals(SessionMessage.Type.ACK, responses.get(1L).type());
+        assertEquals(SessionMessage.Type.ACK, responses.get(2L).type());
+        assertEquals(SessionMessage.Type.REJECT, responses.get(3L).type());
+        assertEquals("Amount/Price needs to be larger then zero!", responses.get(3L).error());
+        assertEquals("Malformed request!", responses.get(0L).error());
+
+        long sellId = responses.get(1L).orderId();
+        long buyId = responses.get(2L).orderId();
+        SessionMessage sell = executions.get(1L);
+        assertEquals(sellId, sell.orderId());
+        assertEquals(ExecutionReport.Type.TRADE, sell.execution());
+        assertEquals(buyId, sell.counterOrderId());
+        assertEquals(0, BigDecimal.ONE.compareTo(sell.remainingAmount()));
+        SessionMessage buy = executions.get(2L);
+        assertEquals(buyId, buy.orderId());
+        assertEquals(sellId, buy.counterOrderId());
+        assertEquals(0, buy.remainingAmount().signum());
+    }
+
+    private static String place(long requestId, String direction, String price, String amount) {
+        return "{\"type\":\"PLACE\",\"requestId\":" + requestId + ",\"asset\":\"BTC\",\"price\":" + price
+                + ",\"amount\":" + amount + ",\"direction\":\"" + direction + "\"}";
+    }
+
+    private SessionMessage read(String text) {
+        try {
+            return objectMapper.readValue(text, SessionMessage.class);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package com.zapata.reactivestockmarket.integration;
 
 import com.zapata.reactivestockmarket.ReactiveStockMarketApplication;
+import com.zapata.reactivestockmarket.domain.dtos.BookDepth;
+import com.zapata.reactivestockmarket.domain.dtos.DepthUpdate;
 import com.zapata.reactivestockmarket.domain.dtos.OrderStatusResponse;
+import com.zapata.reactivestockmarket.domain.dtos.PlaceOrderResult;
+import com.zapata.reactivestockmarket.domain.dtos.TopOfBook;
 import com.zapata.reactivestockmarket.domain.query.OrderType;
 import org.junit.*;
 import org.junit.runner.*;
@@ -13,12 +17,15 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 import reactor.test.StepVerifier;
 
+import java.math.BigDecimal;
 import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 @RunWith(SpringRunner.class)
@@ -193,6 +200,88 @@ public class IntegrationTest {
                     .verifyComplete();
     }
 
+    @Test
+    public void batchPlaceOrders() {
+        String orders = "[" + BTC_SELL_ORDER + "," + SOL_SELL_ORDER.replace("40000.00", "-1") + ","
+                + BTC_BUY_ORDER + "]";
+        StepVerifier.create(client.post()
+                                  .uri("/orders/batch")
+                                  .bodyValue(orders)
+                                  .retrieve()
+                                  .bodyToFlux(PlaceOrderResult.class))
+                    .expectNextMatches(result -> result.id() != null && result.asset().equals("BTC")
+                            && result.direction() == OrderType.SELL && result.error() == null)
+                    .expectNextMatches(result -> result.id() == null && result.asset().equals("SOL")
+                            && result.error().startsWith("Amount/Price needs to be larger then zero!"))
+                    .expectNextMatches(result -> result.id() != null && result.asset().equals("BTC")
+                            && result.direction() == OrderType.BUY)
+                    .verifyComplete();
+
+        String ndjson = (SOL_SELL_ORDER + SOL_BUY_ORDER).replaceAll("\\s+", " ").replace("} {", "}\n{");
+        StepVerifier.create(client.post()
+                                  .uri("/orders/batch")
+                                  .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_NDJSON_VALUE)
+                                  .accept(MediaType.APPLICATION_NDJSON)
+                                  .bodyValue(ndjson)
+                                  .retrieve()
+                                  .bodyToFlux(PlaceOrderResult.class))
+                    .expectNextMatches(result -> result.id() != null && result.direction() == OrderType.SELL)
+                    .expectNextMatches(result -> result.id() != null && result.direction() == OrderType.BUY)
+                    .verifyComplete();
+    }
+
+    @Test
+    public void topOfBookAndDepth() {
+        String order = BTC_SELL_ORDER.replace("BTC", "ETH");
+        StepVerifier.create(client.post()
+                                  .uri("/orders/batch")
+                                  .bodyValue("[" + order + "," + order.replace("40000.00", "40001.00") + "]")
+                                  .retrieve()
+                                  .bodyToFlux(PlaceOrderResult.class))
+                    .expectNextCount(2)
+                    .verifyComplete();
+
+        StepVerifier.create(client.get()
+                                  .uri("/book/ETH/top")
+                                  .retrieve()
+                                  .bodyToMono(TopOfBook.class))
+                    .expectNextMatches(top -> top.bidPrice() == null
+                            && top.askPrice().compareTo(new BigDecimal("40000")) == 0
+                            && top.askAmount().compareTo(BigDecimal.ONE) == 0)
+                    .verifyComplete();
+
+        StepVerifier.create(client.get()
+                                  .uri("/book/ETH/depth?levels=1")
+                                  .retrieve()
+                                  .bodyToMono(BookDepth.class))
+                    .expectNextMatches(depth -> depth.bids().isEmpty() && depth.asks().size() == 1
+                            && depth.asks().get(0).price().compareTo(new BigDecimal("40000")) == 0)
+                    .verifyComplete();
+
+        StepVerifier.create(client.get()
+                                  .uri("/book/ETH/depth")
+                                  .accept(MediaType.TEXT_EVENT_STREAM)
+                                  .retrieve()
+                                  .bodyToFlux(DepthUpdate.class)
+                                  .take(1))
+                    .expectNextMatches(update -> update.snapshot() && update.asks().size() == 2)
+                    .verifyComplete();
+    }
+
+    @Test
+    public void readsOfUnknownAssetDoNotCreateBook() {
+        for (String uri : List.of("/book/UNKNOWN/top", "/book/UNKNOWN/depth", "/book/UNKNOWN/events/stats",
+                                  "/market/UNKNOWN/candles", "/market/UNKNOWN/stats")) {
+            StepVerifier.create(client.get()
+                                      .uri(uri)
+                                      .accept(MediaType.APPLICATION_JSON)
+                                      .retrieve()
+                                      .toBodilessEntity())
+                        .expectErrorMatches(e -> e instanceof WebClientResponseException.NotFound)
+                        .verify();
+        }
+    }
+
     @Test
     public void stressTest() {
         Mono<OrderStatusResponse> btcSellOrderMono = WebClient.builder()
@@ -251,6 +340,10 @@ public class IntegrationTest {
                                                           btcSellOrderMono,
                                                           solBuyOrderMono);
 
+        //one request of each kind at a time warms the server and client up, 64 requests in flight on a cold JVM can
+        //take longer than the timeout on a small machine
+        Flux.range(0, 100).concatMap(unused -> buySellAll, 1).blockLast(Duration.ofSeconds(60));
+
         //16 threads
         //2 district asset
         //2 operations per asset (BUY/SELL)
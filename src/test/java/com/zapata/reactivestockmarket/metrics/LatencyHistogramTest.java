@@ -0,0 +1,78 @@
+package com.zapata.reactivestockmarket.metrics;
+
+import org.junit.jupiter.api.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverAllValuesInOrder() {
+        int previous = -1;
+        for (long value = 0; value < 100_000; value++) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(bucket == previous || bucket == previous + 1, "value " + value);
+            assertTrue(LatencyHistogram.highestValueOf(bucket) >= value);
+            previous = bucket;
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(LatencyHistogram.MAX_VALUE));
+        assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.highestValueOf(LatencyHistogram.BUCKETS - 1));
+    }
+
+    @Test
+    public void percentilesAreWithinRelativeError() {
+        LatencyHistogram testSubject = new LatencyHistogram();
+        Random random = new Random(7);
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 20);
+            testSubject.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        StageLatency latency = LatencyHistogram.summarize(counts, testSubject.addTo(counts));
+        assertEquals(values.length, latency.count());
+        assertEquals(values[values.length - 1], latency.max());
+        assertWithin(values[values.length / 2 - 1], latency.p50());
+        assertWithin(values[values.length * 99 / 100 - 1], latency.p99());
+        assertWithin(values[values.length * 999 / 1000 - 1], latency.p999());
+    }
+
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        LatencyHistogram testSubject = new LatencyHistogram();
+        testSubject.record(-5);
+        testSubject.record(Long.MAX_VALUE);
+
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        StageLatency latency = LatencyHistogram.summarize(counts, testSubject.addTo(counts));
+        assertEquals(2, latency.count());
+        assertEquals(0, latency.p50());
+        assertEquals(LatencyHistogram.MAX_VALUE, latency.max());
+    }
+
+    @Test
+    public void concurrentRecordsAreCounted() {
+        LatencyHistogram testSubject = new LatencyHistogram();
+        IntStream.range(0, 8).parallel().forEach(thread -> {
+            for (int i = 0; i < 100_000; i++) {
+                testSubject.record(i);
+            }
+        });
+
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        StageLatency latency = LatencyHistogram.summarize(counts, testSubject.addTo(counts));
+        assertEquals(800_000, latency.count());
+        assertEquals(99_999, latency.max());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 16 + 1,
+                   "expected " + expected + " got " + actual);
+    }
+}
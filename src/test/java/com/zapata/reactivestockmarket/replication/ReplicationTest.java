@@ -0,0 +1,274 @@
+package com.zapata.reactivestockmarket.replication;
+
+import com.zapata.reactivestockmarket.MarketProperties;
+import com.zapata.reactivestockmarket.cqrs.SourcingEvent;
+import com.zapata.reactivestockmarket.domain.Book;
+import com.zapata.reactivestockmarket.domain.BookAggregateRepository;
+import com.zapata.reactivestockmarket.domain.bus.CommandBus;
+import com.zapata.reactivestockmarket.domain.command.CancelOrderCommand;
+import com.zapata.reactivestockmarket.domain.command.MakeOrderCommand;
+import com.zapata.reactivestockmarket.domain.dtos.BookDepth;
+import com.zapata.reactivestockmarket.domain.events.CancellationRequestedEvent;
+import com.zapata.reactivestockmarket.domain.events.OrderAcceptedEvent;
+import com.zapata.reactivestockmarket.domain.journal.FsyncPolicy;
+import com.zapata.reactivestockmarket.domain.journal.Journal;
+import com.zapata.reactivestockmarket.domain.query.BookQueryRepository;
+import com.zapata.reactivestockmarket.domain.query.OrderEntry;
+import com.zapata.reactivestockmarket.domain.query.OrderType;
+import com.zapata.reactivestockmarket.util.UuidGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.Disposable;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicationTest {
+
+    @TempDir
+    Path directory;
+
+    private Node primary;
+    private ReplicationServer server;
+    private Node replica;
+    private ReplicaClient client;
+
+    @BeforeEach
+    public void setUp() {
+        primary = new Node(properties("primary", new MarketProperties.ReplicationProperties(
+                ReplicationRole.PRIMARY, null, 0, null, null)));
+        server = new ReplicationServer(primary.journal, primary.commandBus, primary.epoch, primary.properties);
+        replica = new Node(replicaProperties());
+        client = new ReplicaClient(replica.aggregateRepository, replica.commandBus, replica.epoch,
+                                   replica.properties);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        client.close();
+        server.stop();
+        replica.close();
+        primary.close();
+    }
+
+    @Test
+    public void replicaFollowsPrimary() throws InterruptedException {
+        OrderAcceptedEvent sell = placeOrder(primary.commandBus, "BTC", OrderType.SELL, "100", "3");
+        placeOrder(primary.commandBus, "BTC", OrderType.BUY, "100", "1");
+        OrderAcceptedEvent resting = placeOrder(primary.commandBus, "BTC", OrderType.BUY, "90", "2");
+        placeOrder(primary.commandBus, "ETH", OrderType.SELL, "10", "1");
+        primary.commandBus.sendCommand(cancel("BTC", resting.orderId())).block(Duration.ofSeconds(10));
+
+        Book book = primary.aggregateRepository.getOrCreate("BTC");
+        //record is journaled before it is applied to the book
+        BookDepth expected = book.depth(10);
+        await(() -> replica.aggregateRepository.assets().containsAll(List.of("BTC", "ETH"))
+                && replica.aggregateRepository.getOrCreate("BTC").journalPosition() == book.journalPosition()
+                && replica.aggregateRepository.getOrCreate("BTC").depth(10).bids().equals(expected.bids())
+                && client.stats().events() == 5);
+        BookDepth replicated = replica.aggregateRepository.getOrCreate("BTC").depth(10);
+        assertEquals(expected.bids(), replicated.bids());
+        assertEquals(expected.asks(), replicated.asks());
+
+        //projection of the replica is updated asynchronously
+        OrderEntry order = replica.queryRepository.awaitProjection(sell.orderId())
+                                                  .filter(entry -> entry.pendingAmount().compareTo(
+                                                          new BigDecimal("2")) == 0)
+                                                  .repeatWhenEmpty(10, attempts -> attempts.delayElements(
+                                                          Duration.ofMillis(50)))
+                                                  .block(Duration.ofSeconds(10));
+        assertNotNull(order);
+
+        ReplicationStats stats = client.stats();
+        assertEquals(ReplicationRole.REPLICA, stats.role());
+        assertEquals(1, stats.connections());
+        assertEquals(5, stats.events());
+        assertEquals(0, stats.behindBytes());
+
+        IllegalStateException rejected = assertThrows(IllegalStateException.class, () -> replica.commandBus
+                .sendCommand(makeOrder("BTC", OrderType.BUY, "100", "1")).block(Duration.ofSeconds(10)));
+        assertEquals("Replica is read-only, send commands to the primary!", rejected.getMessage());
+    }
+
+    @Test
+    public void promotedReplicaContinuesWhereThePrimaryStopped() throws InterruptedException {
+        OrderAcceptedEvent resting = placeOrder(primary.commandBus, "BTC", OrderType.SELL, "100", "3");
+        Book book = primary.aggregateRepository.getOrCreate("BTC");
+        await(() -> replica.aggregateRepository.assets().contains("BTC")
+                && replica.aggregateRepository.getOrCreate("BTC").journalPosition() == book.journalPosition());
+        server.stop();
+
+        Duration took = client.promote();
+        assertTrue(took.compareTo(Duration.ofSeconds(1)) < 0, "promotion took " + took);
+        assertFalse(client.isReplica());
+        assertEquals(ReplicationRole.PRIMARY, client.stats().role());
+
+        OrderAcceptedEvent next = placeOrder(replica.commandBus, "BTC", OrderType.BUY, "90", "1");
+        assertTrue(next.orderId() > resting.orderId());
+        SourcingEvent canceled = replica.commandBus.sendCommand(cancel("BTC", resting.orderId()))
+                                                   .block(Duration.ofSeconds(10));
+        assertEquals(resting.orderId(), assertInstanceOf(CancellationRequestedEvent.class, canceled).orderId());
+    }
+
+    @Test
+    public void promotionFencesConnectedPrimary() throws InterruptedException {
+        placeOrder(primary.commandBus, "BTC", OrderType.SELL, "100", "3");
+        Book book = primary.aggregateRepository.getOrCreate("BTC");
+        await(() -> replica.aggregateRepository.assets().contains("BTC")
+                && replica.aggregateRepository.getOrCreate("BTC").journalPosition() == book.journalPosition());
+
+        Duration took = client.promote();
+        assertTrue(took.compareTo(Duration.ofSeconds(1)) < 0, "promotion took " + took);
+        assertEquals(1, client.stats().epoch());
+        //epoch survives restart of the promoted replica
+        assertEquals(1, new ReplicationEpoch(replica.properties).current());
+
+        await(server::isFenced);
+        ReplicationStats stats = server.stats();
+        assertEquals(1, stats.epoch());
+        assertTrue(stats.fenced());
+        assertThrows(IllegalStateException.class, () -> placeOrder(primary.commandBus, "BTC", OrderType.BUY, "90",
+                                                                   "1"));
+        placeOrder(replica.commandBus, "BTC", OrderType.BUY, "90", "1");
+    }
+
+    @Test
+    public void promotedReplicaRecognizesRetriedCommand() throws InterruptedException {
+        MakeOrderCommand order = makeOrder("BTC", OrderType.SELL, "100", "3");
+        SourcingEvent accepted = primary.commandBus.sendCommand(order).block(Duration.ofSeconds(10));
+        Book book = primary.aggregateRepository.getOrCreate("BTC");
+        await(() -> replica.aggregateRepository.assets().contains("BTC")
+                && replica.aggregateRepository.getOrCreate("BTC").journalPosition() == book.journalPosition());
+        server.stop();
+        client.promote();
+
+        //client didn't get the acknowledgement before the failover and retries against the new primary
+        SourcingEvent retried = replica.commandBus.sendCommand(order).block(Duration.ofSeconds(10));
+        assertEquals(assertInstanceOf(OrderAcceptedEvent.class, accepted).orderId(),
+                     assertInstanceOf(OrderAcceptedEvent.class, retried).orderId());
+        assertEquals(1, replica.aggregateRepository.getOrCreate("BTC").depth(10).asks().size());
+    }
+
+    @Test
+    public void blockingSubscriberParksReplicationThreadNotEventLoop() throws InterruptedException {
+        placeOrder(primary.commandBus, "BTC", OrderType.SELL, "100", "3");
+        Book book = primary.aggregateRepository.getOrCreate("BTC");
+        await(() -> replica.aggregateRepository.assets().contains("BTC")
+                && replica.aggregateRepository.getOrCreate("BTC").journalPosition() == book.journalPosition());
+        CountDownLatch parked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<String> thread = new AtomicReference<>();
+        Disposable subscriber = replica.aggregateRepository.getOrCreate("BTC").aggregateEvents()
+                                       .subscribe(event -> {
+                                           if (thread.compareAndSet(null, Thread.currentThread().getName())) {
+                                               parked.countDown();
+                                               try {
+                                                   release.await();
+                                               } catch (InterruptedException e) {
+                                                   Thread.currentThread().interrupt();
+                                               }
+                                           }
+                                       });
+        try {
+            placeOrder(primary.commandBus, "BTC", OrderType.SELL, "101", "1");
+            assertTrue(parked.await(10, TimeUnit.SECONDS));
+            assertTrue(thread.get().startsWith("replication"), thread.get());
+        } finally {
+            release.countDown();
+        }
+        await(() -> replica.aggregateRepository.getOrCreate("BTC").journalPosition() == book.journalPosition());
+        subscriber.dispose();
+    }
+
+    @Test
+    public void restartedReplicaResumesFromItsJournal() throws InterruptedException {
+        placeOrder(primary.commandBus, "BTC", OrderType.SELL, "100", "3");
+        placeOrder(primary.commandBus, "BTC", OrderType.SELL, "101", "1");
+        Book book = primary.aggregateRepository.getOrCreate("BTC");
+        await(() -> replica.aggregateRepository.assets().contains("BTC")
+                && replica.aggregateRepository.getOrCreate("BTC").journalPosition() == book.journalPosition());
+        client.close();
+        replica.close();
+
+        placeOrder(primary.commandBus, "BTC", OrderType.BUY, "100", "1");
+        replica = new Node(replicaProperties());
+        assertEquals(2, replica.aggregateRepository.getOrCreate("BTC").depth(10).asks().size());
+        client = new ReplicaClient(replica.aggregateRepository, replica.commandBus, replica.epoch,
+                                   replica.properties);
+
+        await(() -> replica.aggregateRepository.getOrCreate("BTC").journalPosition() == book.journalPosition()
+                && client.stats().events() == 1);
+        assertEquals(1, client.stats().events());
+        assertEquals(book.depth(10).asks(), replica.aggregateRepository.getOrCreate("BTC").depth(10).asks());
+    }
+
+    private MarketProperties replicaProperties() {
+        return properties("replica", new MarketProperties.ReplicationProperties(ReplicationRole.REPLICA, null,
+                                                                                server.port(), null, null));
+    }
+
+    private MarketProperties properties(String name, MarketProperties.ReplicationProperties replication) {
+        return new MarketProperties(null, null, null, new MarketProperties.JournalProperties(
+                true, directory.resolve(name).toString(), FsyncPolicy.NONE, null, null, null),
+                                    null, null, null, null, replication);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 200 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static OrderAcceptedEvent placeOrder(CommandBus commandBus, String asset, OrderType type, String price,
+                                                 String amount) {
+        return assertInstanceOf(OrderAcceptedEvent.class, commandBus.sendCommand(makeOrder(asset, type, price, amount))
+                                                                    .block(Duration.ofSeconds(10)));
+    }
+
+    private static MakeOrderCommand makeOrder(String asset, OrderType type, String price, String amount) {
+        return new MakeOrderCommand(asset, UuidGenerator.next(), type, new BigDecimal(amount), new BigDecimal(price));
+    }
+
+    private static CancelOrderCommand cancel(String asset, long orderId) {
+        return new CancelOrderCommand(asset, UuidGenerator.next(), orderId, true, BigDecimal.ZERO);
+    }
+
+    /**
+     * Books of one instance with their own journal directory
+     */
+    private static final class Node {
+
+        private final MarketProperties properties;
+        private final Journal journal;
+        private final ReplicationEpoch epoch;
+        private final BookQueryRepository queryRepository;
+        private final BookAggregateRepository aggregateRepository;
+        private final CommandBus commandBus;
+
+        private Node(MarketProperties properties) {
+            this.properties = properties;
+            this.journal = new Journal(properties);
+            this.epoch = new ReplicationEpoch(properties);
+            this.queryRepository = new BookQueryRepository(properties);
+            this.aggregateRepository = new BookAggregateRepository(queryRepository, properties, journal);
+            this.commandBus = new CommandBus(aggregateRepository, properties);
+        }
+
+        private void close() {
+            commandBus.destroy();
+            journal.close();
+            queryRepository.close();
+        }
+    }
+}
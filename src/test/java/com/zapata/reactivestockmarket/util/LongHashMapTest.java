@@ -0,0 +1,53 @@
+package com.zapata.reactivestockmarket.util;
+
+import org.junit.jupiter.api.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongHashMapTest {
+
+    @Test
+    public void putGetRemove() {
+        LongHashMap<String> testSubject = new LongHashMap<>();
+
+        assertNull(testSubject.put(0L, "zero"));
+        assertNull(testSubject.put(-1L, "minus one"));
+        assertEquals("zero", testSubject.put(0L, "ZERO"));
+
+        assertEquals("ZERO", testSubject.get(0L));
+        assertEquals("minus one", testSubject.get(-1L));
+        assertNull(testSubject.get(1L));
+        assertEquals(2, testSubject.size());
+
+        assertEquals("ZERO", testSubject.remove(0L));
+        assertNull(testSubject.remove(0L));
+        assertFalse(testSubject.containsKey(0L));
+        assertEquals(1, testSubject.size());
+    }
+
+    @Test
+    public void behavesAsHashMap() {
+        LongHashMap<Long> testSubject = new LongHashMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+
+        Random random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5_000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, (long) i), testSubject.put(key, (long) i));
+            } else {
+                assertEquals(expected.remove(key), testSubject.remove(key));
+            }
+        }
+
+        assertEquals(expected.size(), testSubject.size());
+        expected.forEach((key, value) -> assertEquals(value, testSubject.get(key)));
+        Map<Long, Long> visited = new HashMap<>();
+        testSubject.forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+}
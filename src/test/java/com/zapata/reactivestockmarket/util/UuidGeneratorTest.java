@@ -0,0 +1,56 @@
+package com.zapata.reactivestockmarket.util;
+
+import org.junit.jupiter.api.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UuidGeneratorTest {
+
+    @Test
+    public void idsAreVersion8() {
+        UUID id = UuidGenerator.next();
+
+        assertEquals(8, id.version());
+        assertEquals(2, id.variant());
+        assertEquals(id, UUID.fromString(id.toString()));
+    }
+
+    @Test
+    public void idsAreUniqueAcrossBlocks() {
+        Set<UUID> ids = new HashSet<>();
+        for (int i = 0; i < 200_000; i++) {
+            assertTrue(ids.add(UuidGenerator.next()));
+        }
+    }
+
+    @Test
+    public void idsAreUniqueAcrossThreads() throws InterruptedException {
+        Set<UUID> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = IntStream.range(0, 4).mapToObj(i -> new Thread(() -> {
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (int j = 0; j < 50_000; j++) {
+                ids.add(UuidGenerator.next());
+            }
+        })).toList();
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(200_000, ids.size());
+    }
+}